@@ -0,0 +1,369 @@
+package Benchmarks;
+
+import ModelLayer.Enumerations.ServerExecutionMode;
+import ModelLayer.Networking.FrameCodec;
+import ModelLayer.Networking.MessageCodecs;
+import ModelLayer.Networking.Messages.Message;
+import ModelLayer.Networking.Messages.MessageCarStatusUpdate;
+import ModelLayer.Networking.Messages.MessageHello;
+import ModelLayer.Networking.Messages.MessageMapRequest;
+import ModelLayer.Networking.Messages.MessageMapResponse;
+import ModelLayer.Networking.Messages.MessageType;
+import ModelLayer.Networking.Server;
+import ModelLayer.Networking.ServerStatusListener;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that a client of the original protocol can still play against a current client, without any user interface.
+ * The original client writes one Java serialisation stream in each direction, without frames, and sends a plain HELLO.
+ * The current client sends frames and offers its codecs in the HELLO.
+ * For every execution mode of the server and both codecs of the current client, an in-process server is started,
+ * and the two clients look for an opponent on the same map, get paired, race by sending each other their position
+ * updates, and leave with GOODBYE. Each must receive the other's updates in order, up to the last one.
+ * Also checks that the messages the original client reads and sends still have the serialisation version
+ * it was built with; otherwise it cannot read the start of the match.
+ * <pre>
+ * java -Djava.awt.headless=true -cp Race.jar Benchmarks.CompatibilityCheck [--updates n]
+ *
+ *   --updates &lt;n&gt;   The position updates each client sends during the race. Default: 50.
+ * </pre>
+ * The process exits with 1 if any check fails.
+ */
+public class CompatibilityCheck {
+
+    /**
+     * The serialisation versions of the messages the original client reads and sends, as it was built.
+     */
+    private static final Map<Class<?>, Long> ORIGINAL_VERSIONS = new LinkedHashMap<>();
+
+    static {
+        ORIGINAL_VERSIONS.put(Message.class, 1L);
+        ORIGINAL_VERSIONS.put(MessageMapRequest.class, -6524420368718642773L);
+        ORIGINAL_VERSIONS.put(MessageMapResponse.class, 3805447903780630790L);
+        ORIGINAL_VERSIONS.put(MessageCarStatusUpdate.class, 2076360415210340322L);
+    }
+
+    /**
+     * The map both clients ask for.
+     */
+    private static final String MAP_NAME = "Easy";
+
+    /**
+     * How long a client waits for the server, in milliseconds.
+     */
+    private static final int TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(10);
+
+    /**
+     * The time between two position updates of a client during the race, in milliseconds.
+     */
+    private static final int UPDATE_INTERVAL_MILLIS = 10;
+
+    /**
+     * The X coordinate of the first update of each client. Their updates are told apart by it.
+     */
+    private static final int ORIGINAL_START_X = 100;
+    private static final int CURRENT_START_X = 1000;
+
+    /**
+     * Runs the checks.
+     *
+     * @param args [--updates n]
+     */
+    public static void main(String[] args) {
+        int updates = 50;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--updates") && i + 1 < args.length) {
+                updates = Integer.parseInt(args[++i]);
+            } else {
+                System.err.println("Usage: CompatibilityCheck [--updates n]");
+                System.exit(2);
+            }
+        }
+
+        int failures = CheckVersions();
+        for (ServerExecutionMode mode : ServerExecutionMode.values()) {
+            for (int codec : new int[]{MessageCodecs.BINARY_ID, MessageCodecs.SERIALIZED_ID}) {
+                String name = mode.name() + ", current client " + (codec == MessageCodecs.BINARY_ID ? "binary" : "serialised");
+                try {
+                    PlayMatch(mode, codec, updates);
+                    System.out.println("ok      " + name);
+                } catch (Exception e) {
+                    failures++;
+                    System.out.println("FAILED  " + name + ": " + e.getMessage());
+                }
+            }
+        }
+
+        System.out.println(failures == 0 ? "All checks passed." : Integer.toString(failures) + " check(s) failed.");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    /**
+     * Checks the serialisation versions of the messages the original client knows.
+     *
+     * @return The number of failed checks.
+     */
+    private static int CheckVersions() {
+        int failures = 0;
+        for (Map.Entry<Class<?>, Long> entry : ORIGINAL_VERSIONS.entrySet()) {
+            long version = ObjectStreamClass.lookup(entry.getKey()).getSerialVersionUID();
+            if (version == entry.getValue()) {
+                System.out.println("ok      " + entry.getKey().getSimpleName() + " version");
+            } else {
+                failures++;
+                System.out.println("FAILED  " + entry.getKey().getSimpleName() + " version: " + Long.toString(version)
+                        + ", the original clients expect " + Long.toString(entry.getValue()));
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Starts a server, plays a match between an original and a current client, and stops the server.
+     *
+     * @param mode    How the server runs its sessions.
+     * @param codec   The codec the current client offers.
+     * @param updates The position updates each client sends.
+     * @throws Exception If the match did not go as expected.
+     */
+    private static void PlayMatch(ServerExecutionMode mode, int codec, int updates) throws Exception {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port = probe.getLocalPort();
+        }
+        Server server = StartServer(mode, port);
+        OriginalClient original = null;
+        CurrentClient current = null;
+        try {
+            //The original client waits in the lobby first, as an old player would for a new one.
+            original = new OriginalClient(port);
+            original.LookForOpponent();
+            Thread.sleep(100);
+            current = new CurrentClient(port, codec);
+            current.LookForOpponent();
+            original.ReceiveType(MessageType.OPPONENTFOUNDSTARTGAME);
+            current.ReceiveType(MessageType.OPPONENTFOUNDSTARTGAME);
+
+            for (int i = 0; i < updates; i++) {
+                original.Send(CreateStatus(ORIGINAL_START_X + i));
+                current.Send(CreateStatus(CURRENT_START_X + i));
+                Thread.sleep(UPDATE_INTERVAL_MILLIS);
+            }
+            ReceiveRace("The original client", original, CURRENT_START_X, updates);
+            ReceiveRace("The current client", current, ORIGINAL_START_X, updates);
+
+            original.Send(new Message(MessageType.GOODBYE));
+            current.ReceiveType(MessageType.PLAYERDROPPED);
+            current.Send(new Message(MessageType.GOODBYE));
+        } finally {
+            if (original != null)
+                original.Close();
+            if (current != null)
+                current.Close();
+            server.StopServer();
+        }
+    }
+
+    /**
+     * Receives the opponent's position updates until the last one has arrived.
+     * Unsent updates of a car may be replaced by newer ones on the server, so not every update has to arrive,
+     * but the ones that do must be in order.
+     *
+     * @param name    The client, for the error messages.
+     * @param client  The receiving client.
+     * @param startX  The X coordinate of the opponent's first update.
+     * @param updates The updates the opponent has sent.
+     * @throws IOException If an update is out of order or the last one does not arrive.
+     */
+    private static void ReceiveRace(String name, TestClient client, int startX, int updates) throws IOException {
+        int lastX = startX + updates - 1;
+        int previousX = startX - 1;
+        while (previousX != lastX) {
+            MessageCarStatusUpdate update = (MessageCarStatusUpdate) client.ReceiveType(MessageType.INGAMEPOSITIONUPDATE);
+            if (update.get_Location_X() <= previousX || update.get_Location_X() > lastX)
+                throw new IOException(name + " received the update " + Integer.toString(update.get_Location_X() - startX)
+                        + " after " + Integer.toString(previousX - startX) + ".");
+            previousX = update.get_Location_X();
+        }
+    }
+
+    /**
+     * Creates a position update of a car.
+     *
+     * @param x The X coordinate of the car.
+     * @return The update.
+     */
+    private static MessageCarStatusUpdate CreateStatus(int x) {
+        MessageCarStatusUpdate update = new MessageCarStatusUpdate(MessageType.INGAMEPOSITIONUPDATE);
+        update.set_Location_X(x);
+        update.set_Location_Y(300);
+        update.set_CurrentAngle(45);
+        update.set_VirtualSpeed(2);
+        return update;
+    }
+
+    /**
+     * Starts a server.
+     *
+     * @param mode How the server runs its sessions.
+     * @param port The port to listen on.
+     * @return The running server.
+     * @throws Exception If the server has not started.
+     */
+    private static Server StartServer(ServerExecutionMode mode, int port) throws Exception {
+        Server server = new Server(msg -> { }, new ServerStatusListener() {
+            @Override
+            public void ServerIsUp() {
+            }
+
+            @Override
+            public void ServerIsDown() {
+            }
+        });
+        server.set_ExecutionMode(mode);
+        server.StartServer(port);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!server.IsRunning() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        if (!server.IsRunning())
+            throw new IOException("The server has not started.");
+        return server;
+    }
+
+    /**
+     * A client of the check, on blocking streams.
+     */
+    private static abstract class TestClient {
+
+        final Socket _Socket;
+
+        /**
+         * Connects to the server.
+         *
+         * @param port The port of the server on the loopback interface.
+         * @throws IOException If the server cannot be reached.
+         */
+        TestClient(int port) throws IOException {
+            _Socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            _Socket.setSoTimeout(TIMEOUT_MILLIS);
+        }
+
+        abstract void Send(Message msg) throws IOException;
+
+        /**
+         * Receives the next message.
+         *
+         * @return The message, or null if it has to be skipped.
+         * @throws IOException If the connection is lost or nothing arrives in time.
+         */
+        abstract Message Receive() throws IOException;
+
+        /**
+         * Asks for an opponent on the map of the check.
+         *
+         * @throws IOException If the request could not be sent.
+         */
+        void LookForOpponent() throws IOException {
+            MessageMapRequest request = new MessageMapRequest(MessageType.LOOKINGFOROPPONENT);
+            request.set_MapName(MAP_NAME);
+            request.set_CarImageFileIndex(0);
+            Send(request);
+        }
+
+        /**
+         * Receives messages until one of the given type arrives. Others (e.g. the offer of a UDP channel) are skipped.
+         *
+         * @param type The message type to wait for.
+         * @return The message.
+         * @throws IOException If the connection is lost or the message does not arrive in time.
+         */
+        Message ReceiveType(int type) throws IOException {
+            while (true) {
+                Message msg = Receive();
+                if (msg != null && msg.getType() == type)
+                    return msg;
+            }
+        }
+
+        void Close() {
+            try {
+                _Socket.close();
+            } catch (IOException e) {
+                //Closing anyway.
+            }
+        }
+    }
+
+    /**
+     * A client of the original protocol: one Java serialisation stream in each direction, a plain HELLO.
+     * Opens its streams in the order the original client did.
+     */
+    private static final class OriginalClient extends TestClient {
+
+        private final ObjectOutputStream _Out;
+        private final ObjectInputStream _In;
+
+        OriginalClient(int port) throws IOException {
+            super(port);
+            _Out = new ObjectOutputStream(_Socket.getOutputStream());
+            _In = new ObjectInputStream(_Socket.getInputStream());
+            Send(new Message(MessageType.HELLO));
+        }
+
+        @Override
+        void Send(Message msg) throws IOException {
+            _Out.writeObject(msg);
+            _Out.flush();
+        }
+
+        @Override
+        Message Receive() throws IOException {
+            try {
+                return (Message) _In.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Unknown class received: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * A client of the current protocol: frames, and the codec offered in the HELLO.
+     */
+    private static final class CurrentClient extends TestClient {
+
+        private final DataInputStream _In;
+        private final DataOutputStream _Out;
+        private final FrameCodec _Codec = new FrameCodec();
+
+        CurrentClient(int port, int codec) throws IOException {
+            super(port);
+            _In = new DataInputStream(new BufferedInputStream(_Socket.getInputStream()));
+            _Out = new DataOutputStream(new BufferedOutputStream(_Socket.getOutputStream()));
+
+            MessageHello hello = new MessageHello();
+            hello.set_CodecMask(codec | MessageCodecs.SERIALIZED_ID);
+            Send(hello);
+            MessageHello answer = (MessageHello) ReceiveType(MessageType.HELLO);
+            _Codec.set_SendCodec(answer.get_CodecMask());
+        }
+
+        @Override
+        void Send(Message msg) throws IOException {
+            _Codec.Write(_Out, msg);
+            _Out.flush();
+        }
+
+        @Override
+        Message Receive() throws IOException {
+            return _Codec.Read(_In);
+        }
+    }
+}
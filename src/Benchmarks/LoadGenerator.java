@@ -0,0 +1,875 @@
+package Benchmarks;
+
+import ControlLayer.SharedResources;
+import ModelLayer.Networking.FrameCodec;
+import ModelLayer.Networking.LatencyHistogram;
+import ModelLayer.Networking.MessageCodecs;
+import ModelLayer.Networking.Messages.Message;
+import ModelLayer.Networking.Messages.MessageCarStatusUpdate;
+import ModelLayer.Networking.Messages.MessageHello;
+import ModelLayer.Networking.Messages.MessageMapRequest;
+import ModelLayer.Networking.Messages.MessageType;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads a running game server with simulated players that speak the real protocol, without any user interface:
+ * HELLO (offering the binary codec), LOOKINGFOROPPONENT with a map, a position update every frame
+ * (SharedResources.FRAMERATE, 25 per second) while the match goes on, then INGAMECRASH and GOODBYE.
+ * The players arrive at random (a Poisson process) at a given rate, pick a map by the given mix, and play a match
+ * of a random length between the given bounds. The first of two opponents whose time is up reports the crash.
+ * All the players are driven by a single non-blocking thread, so that thousands of them fit in one process and
+ * the load generator's own threads do not distort the measurement.
+ * The updates carry their send time in the position, so the receiving player can tell how long the server took
+ * to relay them (both players live in this process, on the same clock). As the position jumps, the binary codec
+ * sends most of them as keyframes, a few bytes more than the deltas of a real car.
+ * <pre>
+ * java -Djava.awt.headless=true -cp Race.jar Benchmarks.LoadGenerator [options]
+ *
+ *   --host &lt;name&gt;          The server. Default: 127.0.0.1.
+ *   --port &lt;number&gt;        The port of the server. Default: the first valid port.
+ *   --players &lt;n&gt;          The number of players arriving in total. Default: 1000.
+ *   --arrival-rate &lt;n&gt;     The players arriving per second on average. Default: 100.
+ *   --match-min &lt;s&gt;        The shortest match a player plays, in seconds. Default: 20.
+ *   --match-max &lt;s&gt;        The longest match a player plays, in seconds. Default: 60.
+ *   --maps &lt;mix&gt;           The weight of each map, e.g. "Easy=3,Medium=1". Default: the maps of MSP_Maps equally.
+ *   --codec &lt;codec&gt;        BINARY or SERIALIZED. Default: BINARY.
+ *   --lobby-timeout &lt;s&gt;    A player waiting longer than this for an opponent (or the server) gives up. Default: 30.
+ *   --report-interval &lt;s&gt;  Seconds between two progress lines. Default: 5.
+ *   --seed &lt;n&gt;             The seed of the arrivals, maps and match lengths. Default: 1.
+ * </pre>
+ * The run ends when every player has left. The summary tells the throughput, the relay latency and lobby wait
+ * percentiles, and the errors by kind. The process exits with 1 if there were errors.
+ * Large player counts need a high open file limit (ulimit -n) on both the server and the load generator.
+ */
+public class LoadGenerator {
+
+    /**
+     * The phases of a simulated player.
+     */
+    private static final int CONNECTING = 0;
+    private static final int NEGOTIATING = 1;
+    private static final int WAITING = 2;
+    private static final int PLAYING = 3;
+    private static final int DONE = 4;
+
+    /**
+     * The size of the receive and the send buffer of a player. Far more than the largest frame of the protocol.
+     */
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * The send time in the position of an update: the low 30 bits of the microseconds, 15 bits in each coordinate.
+     */
+    private static final int TIME_BITS = 15;
+    private static final long TIME_MASK = (1L << (2 * TIME_BITS)) - 1;
+    private static final int COORDINATE_MASK = (1 << TIME_BITS) - 1;
+
+    /**
+     * The server.
+     */
+    private final InetSocketAddress _Address;
+
+    /**
+     * The number of players arriving in total, and the average number of them arriving per second.
+     */
+    private final int _PlayerCount;
+    private final double _ArrivalRate;
+
+    /**
+     * The bounds of the match length, in nanoseconds.
+     */
+    private final long _MatchMinNanos;
+    private final long _MatchMaxNanos;
+
+    /**
+     * The maps with their weights, in the order given.
+     */
+    private final Map<String, Integer> _MapMix;
+
+    /**
+     * The sum of the map weights.
+     */
+    private final int _MapWeightTotal;
+
+    /**
+     * True to offer the binary codec in the HELLO. The serialised codec is used otherwise.
+     */
+    private final boolean _IsBinary;
+
+    /**
+     * How long a player waits for the server or for an opponent, in nanoseconds.
+     */
+    private final long _LobbyTimeoutNanos;
+
+    /**
+     * The time between two progress lines, in nanoseconds.
+     */
+    private final long _ReportIntervalNanos;
+
+    /**
+     * Draws the arrivals, the maps and the match lengths.
+     */
+    private final Random _Random;
+
+    /**
+     * Drives the connections of all the players.
+     */
+    private Selector _Selector;
+
+    /**
+     * The players by the time of their next event: the next update while playing, the timeout otherwise.
+     */
+    private final PriorityQueue<SimulatedPlayer> _Timers = new PriorityQueue<>(Comparator.comparingLong(p -> p._Deadline));
+
+    /**
+     * The time the run started (System.nanoTime). The send times in the updates are relative to it.
+     */
+    private long _StartedAt;
+
+    /**
+     * The number of players arrived, and of the players that have not left yet.
+     */
+    private int _Arrived = 0;
+    private int _Active = 0;
+
+    /**
+     * The number of players waiting for an opponent, and playing.
+     */
+    private int _Waiting = 0;
+    private int _Playing = 0;
+
+    /**
+     * The number of players that got an opponent, and of the players that finished their match and said goodbye.
+     */
+    private long _MatchesStarted = 0;
+    private long _MatchesFinished = 0;
+
+    /**
+     * The number of position updates sent and received, and the ones received that could not be decoded
+     * (a delta whose keyframe was not received).
+     */
+    private long _UpdatesSent = 0;
+    private long _UpdatesReceived = 0;
+    private long _UpdatesSkipped = 0;
+
+    /**
+     * The number of bytes sent and received, frame headers included.
+     */
+    private long _BytesSent = 0;
+    private long _BytesReceived = 0;
+
+    /**
+     * The time the server took to relay an update from one player to the other, over the whole run and since the
+     * last progress line.
+     */
+    private final LatencyHistogram _RelayLatency = new LatencyHistogram();
+    private LatencyHistogram _IntervalRelayLatency = new LatencyHistogram();
+
+    /**
+     * The time from asking for an opponent until the match started.
+     */
+    private final LatencyHistogram _LobbyWait = new LatencyHistogram();
+
+    /**
+     * The number of errors by kind.
+     */
+    private final Map<String, Long> _Errors = new TreeMap<>();
+
+    /**
+     * The counters at the last progress line, to tell the rates since then.
+     */
+    private long _LastReportAt;
+    private long _LastUpdatesSent = 0;
+    private long _LastUpdatesReceived = 0;
+
+    /**
+     * One simulated player and its connection.
+     */
+    private static final class SimulatedPlayer {
+
+        /**
+         * The connection to the server.
+         */
+        private SocketChannel _Channel;
+
+        /**
+         * The registration of the connection with the selector.
+         */
+        private SelectionKey _Key;
+
+        /**
+         * Encodes and decodes the frames of the connection.
+         */
+        private final FrameCodec _Codec = new FrameCodec();
+
+        /**
+         * The bytes received and not processed yet.
+         */
+        private final ByteBuffer _In = ByteBuffer.allocate(BUFFER_SIZE);
+
+        /**
+         * The bytes the connection could not take yet, ready to be written (flipped) when not empty.
+         */
+        private final ByteBuffer _Out = (ByteBuffer) ByteBuffer.allocate(BUFFER_SIZE).flip();
+
+        /**
+         * The update sent every frame.
+         */
+        private final MessageCarStatusUpdate _Update = new MessageCarStatusUpdate(MessageType.INGAMEPOSITIONUPDATE);
+
+        /**
+         * The map the player asks for.
+         */
+        private final String _MapName;
+
+        /**
+         * The length of the player's match, in nanoseconds.
+         */
+        private final long _MatchLength;
+
+        /**
+         * One of the phases.
+         */
+        private int _Phase = CONNECTING;
+
+        /**
+         * The time of the player's next event (System.nanoTime).
+         */
+        private long _Deadline;
+
+        /**
+         * The time the player asked for an opponent.
+         */
+        private long _LookingSince;
+
+        /**
+         * The time the player reports the crash, once playing.
+         */
+        private long _MatchEndsAt;
+
+        /**
+         * A simulated player.
+         *
+         * @param mapName     The map the player asks for.
+         * @param matchLength The length of the player's match, in nanoseconds.
+         */
+        private SimulatedPlayer(String mapName, long matchLength) {
+            _MapName = mapName;
+            _MatchLength = matchLength;
+            _Update.set_CurrentAngle(90);
+            _Update.set_VirtualSpeed(10);
+            _Update.set_IsAccelerating(true);
+        }
+    }
+
+    /**
+     * Entry point of the load generator.
+     *
+     * @param args The options, see the class description.
+     */
+    public static void main(String[] args) {
+        LoadGenerator generator;
+        try {
+            generator = new LoadGenerator(ReadSettings(args));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            PrintUsage();
+            System.exit(2);
+            return;
+        }
+
+        try {
+            generator.Run();
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+        System.exit(generator._Errors.isEmpty() ? 0 : 1);
+    }
+
+    /**
+     * Creates a load generator with the settings of the command line.
+     *
+     * @param settings The options by name (without the dashes).
+     */
+    private LoadGenerator(Properties settings) {
+        _Address = new InetSocketAddress(settings.getProperty("host", "127.0.0.1"), ReadInt(settings, "port", SharedResources.SCP_VALID_PORT_NUMBERS[0]));
+        _PlayerCount = ReadInt(settings, "players", 1000);
+        _ArrivalRate = Math.max(0.001, ReadDouble(settings, "arrival-rate", 100));
+        _MatchMinNanos = TimeUnit.MILLISECONDS.toNanos((long) (ReadDouble(settings, "match-min", 20) * 1000));
+        _MatchMaxNanos = Math.max(_MatchMinNanos, TimeUnit.MILLISECONDS.toNanos((long) (ReadDouble(settings, "match-max", 60) * 1000)));
+        _LobbyTimeoutNanos = TimeUnit.MILLISECONDS.toNanos((long) (ReadDouble(settings, "lobby-timeout", 30) * 1000));
+        _ReportIntervalNanos = TimeUnit.MILLISECONDS.toNanos((long) (Math.max(0.1, ReadDouble(settings, "report-interval", 5)) * 1000));
+        _Random = new Random(ReadInt(settings, "seed", 1));
+        _MapMix = ReadMapMix(settings.getProperty("maps"));
+        _MapWeightTotal = _MapMix.values().stream().mapToInt(Integer::intValue).sum();
+
+        String codec = settings.getProperty("codec", "BINARY").trim().toUpperCase();
+        if (!codec.equals("BINARY") && !codec.equals("SERIALIZED"))
+            throw new IllegalArgumentException("Unknown codec: " + codec);
+        _IsBinary = codec.equals("BINARY");
+    }
+
+    /**
+     * Lets the players arrive, drives them until every one of them has left, and prints the summary.
+     *
+     * @throws IOException If the selector cannot be opened.
+     */
+    private void Run() throws IOException {
+        _Selector = Selector.open();
+        _StartedAt = System.nanoTime();
+        _LastReportAt = _StartedAt;
+        long nextArrival = _StartedAt;
+
+        System.out.println(String.format("Loading %s with %d players, %.1f arriving per second, matches of %d-%d s, maps %s, %s codec",
+                _Address, _PlayerCount, _ArrivalRate, TimeUnit.NANOSECONDS.toSeconds(_MatchMinNanos),
+                TimeUnit.NANOSECONDS.toSeconds(_MatchMaxNanos), _MapMix, _IsBinary ? "binary" : "serialised"));
+
+        while (_Arrived < _PlayerCount || _Active > 0) {
+            long now = System.nanoTime();
+            while (_Arrived < _PlayerCount && nextArrival <= now) {
+                Arrive(now);
+                nextArrival += (long) (-Math.log(1 - _Random.nextDouble()) / _ArrivalRate * 1e9);
+            }
+
+            while (!_Timers.isEmpty() && _Timers.peek()._Deadline <= now) {
+                SimulatedPlayer player = _Timers.poll();
+                if (player._Phase != DONE)
+                    DeadlineReached(player, now);
+            }
+
+            if (now - _LastReportAt >= _ReportIntervalNanos)
+                PrintProgress(now);
+
+            long next = _LastReportAt + _ReportIntervalNanos;
+            if (_Arrived < _PlayerCount)
+                next = Math.min(next, nextArrival);
+            if (!_Timers.isEmpty())
+                next = Math.min(next, _Timers.peek()._Deadline);
+            long waitMillis = TimeUnit.NANOSECONDS.toMillis(next - System.nanoTime());
+            if (waitMillis > 0)
+                _Selector.select(waitMillis);
+            else
+                _Selector.selectNow();
+
+            Iterator<SelectionKey> keys = _Selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                SimulatedPlayer player = (SimulatedPlayer) key.attachment();
+                if (key.isValid() && key.isConnectable())
+                    Connected(player);
+                if (key.isValid() && key.isWritable())
+                    Flush(player);
+                if (key.isValid() && key.isReadable())
+                    Receive(player);
+            }
+        }
+
+        _Selector.close();
+        PrintSummary(System.nanoTime());
+    }
+
+    /**
+     * A new player arrives: picks a map and a match length and starts connecting to the server.
+     *
+     * @param now The current time.
+     */
+    private void Arrive(long now) {
+        SimulatedPlayer player = new SimulatedPlayer(PickMap(), _MatchMinNanos + (long) (_Random.nextDouble() * (_MatchMaxNanos - _MatchMinNanos)));
+        _Arrived++;
+        _Active++;
+        try {
+            player._Channel = SocketChannel.open();
+            player._Channel.configureBlocking(false);
+            player._Channel.socket().setTcpNoDelay(true);
+            player._Key = player._Channel.register(_Selector, SelectionKey.OP_CONNECT, player);
+            if (player._Channel.connect(_Address))
+                Connected(player);
+        } catch (IOException e) {
+            Fail(player, "connect failed");
+            return;
+        }
+        if (player._Phase == CONNECTING)
+            Schedule(player, now + _LobbyTimeoutNanos);
+    }
+
+    /**
+     * The connection of a player has been established: says hello to the server.
+     *
+     * @param player The player.
+     */
+    private void Connected(SimulatedPlayer player) {
+        try {
+            if (!player._Channel.finishConnect())
+                return;
+        } catch (IOException e) {
+            Fail(player, "connect failed");
+            return;
+        }
+        player._Key.interestOps(SelectionKey.OP_READ);
+
+        if (_IsBinary) {
+            MessageHello hello = new MessageHello();
+            hello.set_CodecMask(MessageCodecs.SUPPORTED_MASK);
+            player._Phase = NEGOTIATING;
+            Send(player, hello);
+        } else {
+            //A plain HELLO is not answered, the connection stays serialised.
+            Send(player, new Message(MessageType.HELLO));
+            LookForOpponent(player);
+        }
+    }
+
+    /**
+     * Asks the server for an opponent on the player's map.
+     *
+     * @param player The player.
+     */
+    private void LookForOpponent(SimulatedPlayer player) {
+        if (player._Phase == DONE)
+            return;
+
+        MessageMapRequest request = new MessageMapRequest(MessageType.LOOKINGFOROPPONENT);
+        request.set_MapName(player._MapName);
+        request.set_CarImageFileIndex(_Random.nextInt(SharedResources.CSP_Number_Of_Selectable_Cars));
+        player._Phase = WAITING;
+        player._LookingSince = System.nanoTime();
+        _Waiting++;
+        Send(player, request);
+        Schedule(player, player._LookingSince + _LobbyTimeoutNanos);
+    }
+
+    /**
+     * Handles the next event of a player: sends the next update (or ends the match) while playing,
+     * gives up waiting otherwise.
+     *
+     * @param player The player.
+     * @param now    The current time.
+     */
+    private void DeadlineReached(SimulatedPlayer player, long now) {
+        if (player._Phase != PLAYING) {
+            Fail(player, player._Phase == WAITING ? "no opponent found in time" : "no answer from the server in time");
+            return;
+        }
+
+        if (now >= player._MatchEndsAt) {
+            Send(player, new Message(MessageType.INGAMECRASH));
+            Leave(player);
+            return;
+        }
+
+        long micros = TimeUnit.NANOSECONDS.toMicros(now - _StartedAt);
+        player._Update.set_Location_X((int) ((micros >>> TIME_BITS) & COORDINATE_MASK));
+        player._Update.set_Location_Y((int) (micros & COORDINATE_MASK));
+        if (Send(player, player._Update))
+            _UpdatesSent++;
+
+        //Keeps the rate even if the loop falls behind for a moment, but does not try to catch up with a burst.
+        long next = player._Deadline + TimeUnit.MILLISECONDS.toNanos(SharedResources.FRAMERATE);
+        Schedule(player, Math.max(next, now));
+    }
+
+    /**
+     * Reads what has arrived on a player's connection and handles every complete frame.
+     *
+     * @param player The player.
+     */
+    private void Receive(SimulatedPlayer player) {
+        int read;
+        try {
+            read = player._Channel.read(player._In);
+        } catch (IOException e) {
+            Fail(player, "connection reset");
+            return;
+        }
+        if (read < 0) {
+            Fail(player, "connection closed by the server");
+            return;
+        }
+        _BytesReceived += read;
+
+        player._In.flip();
+        while (player._Phase != DONE && player._In.remaining() >= FrameCodec.HEADER_SIZE) {
+            int length = player._In.getShort(player._In.position()) & 0xFFFF;
+            if (player._In.remaining() < FrameCodec.HEADER_SIZE + length)
+                break;
+
+            int end = player._In.position() + FrameCodec.HEADER_SIZE + length;
+            ByteBuffer payload = player._In.duplicate();
+            payload.position(player._In.position() + FrameCodec.HEADER_SIZE).limit(end);
+            player._In.position(end);
+
+            try {
+                Message msg = player._Codec.Decode(payload);
+                if (msg == null)
+                    _UpdatesSkipped++;
+                else
+                    Handle(player, msg);
+            } catch (IOException e) {
+                Fail(player, "corrupt frame");
+            }
+        }
+        player._In.compact();
+    }
+
+    /**
+     * Handles a message from the server according to the phase of the player.
+     *
+     * @param player The player.
+     * @param msg    The message.
+     */
+    private void Handle(SimulatedPlayer player, Message msg) {
+        long now = System.nanoTime();
+        switch (msg.getType()) {
+            case MessageType.HELLO:
+                if (player._Phase == NEGOTIATING && msg instanceof MessageHello) {
+                    player._Codec.set_SendCodec(MessageCodecs.Choose(((MessageHello) msg).get_CodecMask()));
+                    LookForOpponent(player);
+                }
+                break;
+            case MessageType.OPPONENTFOUNDSTARTGAME:
+                if (player._Phase != WAITING)
+                    break;
+                _LobbyWait.Record(now - player._LookingSince);
+                _Waiting--;
+                _Playing++;
+                _MatchesStarted++;
+                player._Phase = PLAYING;
+                player._MatchEndsAt = now + player._MatchLength;
+                Schedule(player, now);
+                break;
+            case MessageType.INGAMEPOSITIONUPDATE:
+                if (player._Phase != PLAYING || !(msg instanceof MessageCarStatusUpdate))
+                    break;
+                MessageCarStatusUpdate update = (MessageCarStatusUpdate) msg;
+                long sent = ((long) (update.get_Location_X() & COORDINATE_MASK) << TIME_BITS) | (update.get_Location_Y() & COORDINATE_MASK);
+                long latencyMicros = (TimeUnit.NANOSECONDS.toMicros(now - _StartedAt) - sent) & TIME_MASK;
+                _RelayLatency.Record(TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+                _IntervalRelayLatency.Record(TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+                _UpdatesReceived++;
+                break;
+            case MessageType.INGAMESNAPSHOT:
+                //The server simulates the match. Its snapshots carry no send time of the opponent.
+                _UpdatesReceived++;
+                break;
+            case MessageType.INGAMECRASH:
+                //The opponent's time was up first.
+                if (player._Phase == PLAYING)
+                    Leave(player);
+                break;
+            case MessageType.PLAYERDROPPED:
+                Fail(player, "opponent dropped");
+                break;
+            case MessageType.SERVERDOWN:
+                Fail(player, "server down");
+                break;
+            default:
+                //UDPCHANNEL, PONG: not used.
+                break;
+        }
+    }
+
+    /**
+     * Encodes a message and sends it, or queues it if the connection cannot take it yet.
+     *
+     * @param player The player.
+     * @param msg    The message.
+     * @return False if the message could not be sent. The player has failed then.
+     */
+    private boolean Send(SimulatedPlayer player, Message msg) {
+        if (player._Phase == DONE)
+            return false;
+
+        try {
+            ByteBuffer frame = player._Codec.Encode(msg);
+            int length = frame.remaining();
+            if (!player._Out.hasRemaining())
+                player._Channel.write(frame);
+
+            if (frame.hasRemaining()) {
+                player._Out.compact();
+                if (player._Out.remaining() < frame.remaining()) {
+                    player._Out.flip();
+                    Fail(player, "send backlog full");
+                    return false;
+                }
+                player._Out.put(frame);
+                player._Out.flip();
+                player._Key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+            _BytesSent += length;
+            return true;
+        } catch (IOException e) {
+            Fail(player, "send failed");
+            return false;
+        }
+    }
+
+    /**
+     * Writes the queued bytes of a player once the connection can take them.
+     *
+     * @param player The player.
+     */
+    private void Flush(SimulatedPlayer player) {
+        try {
+            player._Channel.write(player._Out);
+        } catch (IOException e) {
+            Fail(player, "send failed");
+            return;
+        }
+        if (!player._Out.hasRemaining())
+            player._Key.interestOps(SelectionKey.OP_READ);
+    }
+
+    /**
+     * Ends a finished match: says goodbye and closes the connection.
+     *
+     * @param player The player.
+     */
+    private void Leave(SimulatedPlayer player) {
+        Send(player, new Message(MessageType.GOODBYE));
+        if (player._Phase == DONE)
+            return;
+        _MatchesFinished++;
+        Close(player);
+    }
+
+    /**
+     * Counts an error and closes the player's connection.
+     *
+     * @param player The player.
+     * @param error  The kind of the error.
+     */
+    private void Fail(SimulatedPlayer player, String error) {
+        if (player._Phase == DONE)
+            return;
+        _Errors.merge(error, 1L, Long::sum);
+        Close(player);
+    }
+
+    /**
+     * Closes the player's connection. The player has left.
+     *
+     * @param player The player.
+     */
+    private void Close(SimulatedPlayer player) {
+        if (player._Phase == WAITING)
+            _Waiting--;
+        if (player._Phase == PLAYING)
+            _Playing--;
+        player._Phase = DONE;
+        _Active--;
+        _Timers.remove(player);
+
+        try {
+            if (player._Channel != null)
+                player._Channel.close();
+        } catch (IOException e) {
+            //Closing anyway.
+        }
+    }
+
+    /**
+     * Sets the time of a player's next event.
+     *
+     * @param player   The player.
+     * @param deadline The time (System.nanoTime).
+     */
+    private void Schedule(SimulatedPlayer player, long deadline) {
+        _Timers.remove(player);
+        player._Deadline = deadline;
+        _Timers.add(player);
+    }
+
+    /**
+     * Picks a map by the weights of the mix.
+     *
+     * @return The name of the map.
+     */
+    private String PickMap() {
+        int pick = _Random.nextInt(_MapWeightTotal);
+        for (Map.Entry<String, Integer> map : _MapMix.entrySet()) {
+            pick -= map.getValue();
+            if (pick < 0)
+                return map.getKey();
+        }
+        return SharedResources.MSP_Maps[0];
+    }
+
+    /**
+     * Prints a line about the progress since the last one.
+     *
+     * @param now The current time.
+     */
+    private void PrintProgress(long now) {
+        double seconds = (now - _LastReportAt) / 1e9;
+        LatencyHistogram.Snapshot latency = _IntervalRelayLatency.TakeSnapshot();
+        System.out.println(String.format("%6.0f s  arrived %d, waiting %d, playing %d  updates out %.0f/s, in %.0f/s  relay p50 %d us, p99 %d us  errors %d",
+                (now - _StartedAt) / 1e9, _Arrived, _Waiting, _Playing,
+                (_UpdatesSent - _LastUpdatesSent) / seconds, (_UpdatesReceived - _LastUpdatesReceived) / seconds,
+                TimeUnit.NANOSECONDS.toMicros(latency.PercentileNanos(50)), TimeUnit.NANOSECONDS.toMicros(latency.PercentileNanos(99)),
+                _Errors.values().stream().mapToLong(Long::longValue).sum()));
+
+        _LastReportAt = now;
+        _LastUpdatesSent = _UpdatesSent;
+        _LastUpdatesReceived = _UpdatesReceived;
+        _IntervalRelayLatency = new LatencyHistogram();
+    }
+
+    /**
+     * Prints the totals of the run.
+     *
+     * @param now The current time.
+     */
+    private void PrintSummary(long now) {
+        double seconds = Math.max(1, now - _StartedAt) / 1e9;
+        LatencyHistogram.Snapshot latency = _RelayLatency.TakeSnapshot();
+        LatencyHistogram.Snapshot lobby = _LobbyWait.TakeSnapshot();
+
+        System.out.println(String.format("Players: %d arrived, %d got an opponent, %d finished their match in %.1f s",
+                _Arrived, _MatchesStarted, _MatchesFinished, seconds));
+        System.out.println(String.format("Updates: %d sent (%.0f/s), %d received (%.0f/s), %d not decodable",
+                _UpdatesSent, _UpdatesSent / seconds, _UpdatesReceived, _UpdatesReceived / seconds, _UpdatesSkipped));
+        System.out.println(String.format("Bytes: %d sent (%.1f KB/s), %d received (%.1f KB/s)",
+                _BytesSent, _BytesSent / seconds / 1024, _BytesReceived, _BytesReceived / seconds / 1024));
+        System.out.println("Relay latency: " + latency.Describe(TimeUnit.MICROSECONDS)
+                + ", p90 " + TimeUnit.NANOSECONDS.toMicros(latency.PercentileNanos(90)) + " us"
+                + ", p99.9 " + TimeUnit.NANOSECONDS.toMicros(latency.PercentileNanos(99.9)) + " us");
+        System.out.println("Lobby wait: " + lobby.Describe(TimeUnit.MILLISECONDS));
+        if (_Errors.isEmpty())
+            System.out.println("Errors: none");
+        else
+            System.out.println("Errors: " + _Errors);
+    }
+
+    /**
+     * Separates the options on the command line.
+     *
+     * @param args The command line options.
+     * @return The settings by name (without the dashes).
+     */
+    private static Properties ReadSettings(String[] args) {
+        Properties settings = new Properties();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--"))
+                throw new IllegalArgumentException("Unknown argument: " + arg);
+            if (i + 1 >= args.length)
+                throw new IllegalArgumentException("Missing value for " + arg);
+            settings.setProperty(arg.substring(2), args[++i]);
+        }
+        return settings;
+    }
+
+    /**
+     * Reads the map mix, e.g. "Easy=3,Medium=1". A map without a weight counts once.
+     *
+     * @param value The setting, or null for every map equally.
+     * @return The weight of each map, in the order given.
+     */
+    private static Map<String, Integer> ReadMapMix(String value) {
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        if (value == null) {
+            for (String map : SharedResources.MSP_Maps) {
+                mix.put(map, 1);
+            }
+            return mix;
+        }
+
+        for (String part : value.split(",")) {
+            String[] nameAndWeight = part.trim().split("=");
+            String name = null;
+            for (String map : SharedResources.MSP_Maps) {
+                if (map.equalsIgnoreCase(nameAndWeight[0].trim()))
+                    name = map;
+            }
+            if (name == null)
+                throw new IllegalArgumentException("Unknown map: " + nameAndWeight[0]);
+
+            int weight;
+            try {
+                weight = nameAndWeight.length > 1 ? Integer.parseInt(nameAndWeight[1].trim()) : 1;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("The weight of " + name + " is not a number: " + nameAndWeight[1]);
+            }
+            if (weight < 0)
+                throw new IllegalArgumentException("The weight of " + name + " cannot be negative: " + weight);
+            if (weight > 0)
+                mix.put(name, weight);
+        }
+        if (mix.isEmpty())
+            throw new IllegalArgumentException("No map to play on: " + value);
+        return mix;
+    }
+
+    /**
+     * Reads a whole number setting.
+     *
+     * @param settings     The settings.
+     * @param name         The name of the setting.
+     * @param defaultValue The value if the setting is missing.
+     * @return The value of the setting.
+     */
+    private static int ReadInt(Properties settings, String name, int defaultValue) {
+        String value = settings.getProperty(name);
+        if (value == null)
+            return defaultValue;
+
+        try {
+            int result = Integer.parseInt(value.trim());
+            if (result < 0)
+                throw new IllegalArgumentException("The value of " + name + " cannot be negative: " + value);
+            return result;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The value of " + name + " is not a number: " + value);
+        }
+    }
+
+    /**
+     * Reads a decimal number setting.
+     *
+     * @param settings     The settings.
+     * @param name         The name of the setting.
+     * @param defaultValue The value if the setting is missing.
+     * @return The value of the setting.
+     */
+    private static double ReadDouble(Properties settings, String name, double defaultValue) {
+        String value = settings.getProperty(name);
+        if (value == null)
+            return defaultValue;
+
+        try {
+            double result = Double.parseDouble(value.trim());
+            if (result < 0 || Double.isNaN(result))
+                throw new IllegalArgumentException("The value of " + name + " cannot be negative: " + value);
+            return result;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The value of " + name + " is not a number: " + value);
+        }
+    }
+
+    /**
+     * Prints the options to the standard error.
+     */
+    private static void PrintUsage() {
+        System.err.println("Usage: LoadGenerator [--host <name>] [--port <number>] [--players <n>] [--arrival-rate <n>]"
+                + " [--match-min <s>] [--match-max <s>] [--maps Easy=1,Medium=1] [--codec BINARY|SERIALIZED]"
+                + " [--lobby-timeout <s>] [--report-interval <s>] [--seed <n>]");
+    }
+}
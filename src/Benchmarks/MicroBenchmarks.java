@@ -0,0 +1,1077 @@
+package Benchmarks;
+
+import ControlLayer.SharedResources;
+import ModelLayer.Car;
+import ModelLayer.CarPhysics;
+import ModelLayer.CollisionManagement.CollisionManager;
+import ModelLayer.CollisionManagement.MapObject;
+import ModelLayer.Enumerations.InGameObjectType;
+import ModelLayer.Enumerations.ServerExecutionMode;
+import ModelLayer.MapML.MapModel;
+import ModelLayer.Networking.FrameCodec;
+import ModelLayer.Networking.MessageCodecs;
+import ModelLayer.Networking.Messages.Message;
+import ModelLayer.Networking.Messages.MessageCarStatusUpdate;
+import ModelLayer.Networking.Messages.MessageHello;
+import ModelLayer.Networking.Messages.MessageInGameInput;
+import ModelLayer.Networking.Messages.MessageMapRequest;
+import ModelLayer.Networking.Messages.MessageMapResponse;
+import ModelLayer.Networking.Messages.MessageMatchSnapshot;
+import ModelLayer.Networking.Messages.MessagePing;
+import ModelLayer.Networking.Messages.MessageType;
+import ModelLayer.Networking.Messages.MessageUdpChannel;
+import ModelLayer.Networking.Server;
+import ModelLayer.Networking.ServerStatusListener;
+import ModelLayer.Player;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Measures the hot paths of the game one by one: the collision checks of the CollisionManager on both maps,
+ * CarBounds.GetCarBounds, a whole physics step of a car, encoding and decoding every message with both codecs,
+ * and the relay of a status update from one client to the other through the server's sessions and match.
+ * <p>
+ * Every benchmark is warmed up first, then measured in a number of timed iterations. The result is the average time
+ * of one operation with its standard deviation across the iterations, and the bytes allocated per operation
+ * (measured with the ThreadMXBean, on the benchmark's thread; for the relay on all the threads, the server's included).
+ * The inputs are drawn from a fixed seed, so two runs measure the same work. For numbers comparable before and after
+ * a change, run both on the same machine with the same options, e.g. with a fixed heap (-Xms1g -Xmx1g) and nothing else
+ * running, and keep the CSV of each run.
+ * <pre>
+ * java -Djava.awt.headless=true -cp Race.jar Benchmarks.MicroBenchmarks [options]
+ *
+ *   --filter &lt;regex&gt;      Runs only the benchmarks whose name contains a match. Default: all.
+ *   --warmup &lt;n&gt;          Warm-up iterations of every benchmark. Default: 5.
+ *   --iterations &lt;n&gt;      Measured iterations of every benchmark. Default: 10.
+ *   --time &lt;ms&gt;           The length of one iteration. Default: 500.
+ *   --csv &lt;file&gt;          Also writes the results to a CSV file.
+ *   --list                Prints the names of the benchmarks and exits.
+ * </pre>
+ * The physics step is the one the car takes every frame (Car.CalculateNextFrame without the sounds and the sending,
+ * which need a running game): speed, next location, and the checks against the other car, the impassable objects
+ * and the grass.
+ */
+public class MicroBenchmarks {
+
+    /**
+     * The number of different inputs each collision benchmark cycles through. A power of two.
+     */
+    private static final int INPUT_COUNT = 1024;
+
+    /**
+     * The number of trees scattered over a map to make it a detailed track, and their size in pixels.
+     */
+    private static final int DENSE_TREE_COUNT = 500;
+    private static final int TREE_SIZE = 6;
+
+    /**
+     * The seed of the inputs.
+     */
+    private static final long SEED = 42;
+
+    /**
+     * The number of operations run between two looks at the clock, at least. Grown until a batch takes a while,
+     * so that reading the clock does not count.
+     */
+    private static final int MIN_BATCH = 16;
+
+    /**
+     * The time one batch of operations should take at least, in nanoseconds.
+     */
+    private static final long BATCH_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Receives the results of the operations, so the compiler cannot drop the work as unused.
+     */
+    private static volatile long _Sink;
+
+    /**
+     * One benchmark: prepares its state, runs a number of operations and cleans up.
+     */
+    private static abstract class Benchmark {
+
+        /**
+         * The name of the benchmark, e.g. "collision/impassable/Easy".
+         */
+        private final String _Name;
+
+        /**
+         * True if the operation runs on other threads as well. The allocations of all the threads are counted then.
+         */
+        private final boolean _IsMultiThreaded;
+
+        /**
+         * A benchmark.
+         *
+         * @param name            The name of the benchmark.
+         * @param isMultiThreaded True if the operation runs on other threads as well.
+         */
+        Benchmark(String name, boolean isMultiThreaded) {
+            _Name = name;
+            _IsMultiThreaded = isMultiThreaded;
+        }
+
+        /**
+         * Prepares the state of the benchmark. Not measured.
+         *
+         * @throws Exception If the benchmark cannot run.
+         */
+        void Setup() throws Exception {
+        }
+
+        /**
+         * Runs a number of operations.
+         *
+         * @param operations The number of operations to run.
+         * @return A value computed from the results, for the sink.
+         * @throws Exception If an operation failed.
+         */
+        abstract long Run(int operations) throws Exception;
+
+        /**
+         * Releases what Setup acquired. Not measured.
+         *
+         * @throws Exception If cleaning up failed.
+         */
+        void TearDown() throws Exception {
+        }
+    }
+
+    /**
+     * The measured values of one benchmark.
+     */
+    private static class Result {
+        double _NanosPerOperation;
+        double _NanosDeviation;
+        double _BytesPerOperation;
+    }
+
+    /**
+     * Entry point of the benchmarks.
+     *
+     * @param args The options, see the class description.
+     * @throws Exception If a benchmark failed.
+     */
+    public static void main(String[] args) throws Exception {
+        Pattern filter = null;
+        int warmup = 5;
+        int iterations = 10;
+        long iterationNanos = TimeUnit.MILLISECONDS.toNanos(500);
+        String csvFile = null;
+        boolean isListOnly = false;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--filter":
+                    filter = Pattern.compile(args[++i]);
+                    break;
+                case "--warmup":
+                    warmup = Integer.parseInt(args[++i]);
+                    break;
+                case "--iterations":
+                    iterations = Math.max(1, Integer.parseInt(args[++i]));
+                    break;
+                case "--time":
+                    iterationNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, Long.parseLong(args[++i])));
+                    break;
+                case "--csv":
+                    csvFile = args[++i];
+                    break;
+                case "--list":
+                    isListOnly = true;
+                    break;
+                default:
+                    System.err.println("Usage: MicroBenchmarks [--filter <regex>] [--warmup <n>] [--iterations <n>]"
+                            + " [--time <ms>] [--csv <file>] [--list]");
+                    System.exit(2);
+            }
+        }
+
+        List<Benchmark> benchmarks = new ArrayList<>();
+        for (Benchmark benchmark : CreateBenchmarks()) {
+            if (filter == null || filter.matcher(benchmark._Name).find())
+                benchmarks.add(benchmark);
+        }
+        if (isListOnly) {
+            benchmarks.forEach(b -> System.out.println(b._Name));
+            return;
+        }
+
+        System.out.println(String.format("%s %s, %d processors, max heap %d MB; %d warm-up and %d measured iterations of %d ms",
+                System.getProperty("java.vm.name"), System.getProperty("java.version"),
+                Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().maxMemory() / (1024 * 1024),
+                warmup, iterations, TimeUnit.NANOSECONDS.toMillis(iterationNanos)));
+        System.out.println(String.format("%-48s %12s %10s %14s %12s", "Benchmark", "ns/op", "+-", "ops/s", "B/op"));
+
+        PrintWriter csv = csvFile == null ? null : new PrintWriter(new FileWriter(csvFile));
+        if (csv != null)
+            csv.println("benchmark,ns_per_op,ns_deviation,ops_per_s,bytes_per_op");
+        try {
+            for (Benchmark benchmark : benchmarks) {
+                Result result = Measure(benchmark, warmup, iterations, iterationNanos);
+                System.out.println(String.format("%-48s %12.1f %10.1f %14.0f %12s", benchmark._Name,
+                        result._NanosPerOperation, result._NanosDeviation, 1e9 / result._NanosPerOperation,
+                        Double.isNaN(result._BytesPerOperation) ? "n/a" : String.format("%.1f", result._BytesPerOperation)));
+                if (csv != null)
+                    csv.println(String.format(Locale.ROOT, "%s,%.3f,%.3f,%.1f,%.2f", benchmark._Name,
+                            result._NanosPerOperation, result._NanosDeviation, 1e9 / result._NanosPerOperation, result._BytesPerOperation));
+            }
+        } finally {
+            if (csv != null)
+                csv.close();
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Warms up and measures one benchmark.
+     *
+     * @param benchmark      The benchmark.
+     * @param warmup         The number of warm-up iterations.
+     * @param iterations     The number of measured iterations.
+     * @param iterationNanos The length of one iteration.
+     * @return The measured values.
+     * @throws Exception If the benchmark failed.
+     */
+    private static Result Measure(Benchmark benchmark, int warmup, int iterations, long iterationNanos) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        boolean isAllocationMeasured = threads.isThreadAllocatedMemorySupported();
+        if (isAllocationMeasured)
+            threads.setThreadAllocatedMemoryEnabled(true);
+
+        benchmark.Setup();
+        try {
+            //Finds a batch that takes a while, then warms up with it.
+            int batch = MIN_BATCH;
+            while (true) {
+                long start = System.nanoTime();
+                _Sink += benchmark.Run(batch);
+                if (System.nanoTime() - start >= BATCH_NANOS || batch >= 1 << 30)
+                    break;
+                batch *= 2;
+            }
+            for (int i = 0; i < warmup; i++) {
+                RunIteration(benchmark, batch, iterationNanos);
+            }
+
+            double[] nanosPerOperation = new double[iterations];
+            long totalOperations = 0;
+            long allocatedBefore = isAllocationMeasured ? AllocatedBytes(threads, benchmark._IsMultiThreaded) : 0;
+            for (int i = 0; i < iterations; i++) {
+                long start = System.nanoTime();
+                long operations = RunIteration(benchmark, batch, iterationNanos);
+                nanosPerOperation[i] = (double) (System.nanoTime() - start) / operations;
+                totalOperations += operations;
+            }
+            long allocated = isAllocationMeasured ? AllocatedBytes(threads, benchmark._IsMultiThreaded) - allocatedBefore : 0;
+
+            Result result = new Result();
+            for (double value : nanosPerOperation) {
+                result._NanosPerOperation += value / iterations;
+            }
+            double variance = 0;
+            for (double value : nanosPerOperation) {
+                variance += (value - result._NanosPerOperation) * (value - result._NanosPerOperation);
+            }
+            result._NanosDeviation = iterations > 1 ? Math.sqrt(variance / (iterations - 1)) : 0;
+            result._BytesPerOperation = isAllocationMeasured ? (double) allocated / totalOperations : Double.NaN;
+            return result;
+        } finally {
+            benchmark.TearDown();
+        }
+    }
+
+    /**
+     * Runs batches of operations until the iteration time is over.
+     *
+     * @param benchmark      The benchmark.
+     * @param batch          The number of operations between two looks at the clock.
+     * @param iterationNanos The length of the iteration.
+     * @return The number of operations run.
+     * @throws Exception If an operation failed.
+     */
+    private static long RunIteration(Benchmark benchmark, int batch, long iterationNanos) throws Exception {
+        long operations = 0;
+        long start = System.nanoTime();
+        do {
+            _Sink += benchmark.Run(batch);
+            operations += batch;
+        } while (System.nanoTime() - start < iterationNanos);
+        return operations;
+    }
+
+    /**
+     * Reads the number of bytes allocated so far.
+     *
+     * @param threads   The thread bean of the JVM.
+     * @param isAllThreads True to sum up all the live threads, false for the current thread only.
+     * @return The bytes allocated.
+     */
+    private static long AllocatedBytes(com.sun.management.ThreadMXBean threads, boolean isAllThreads) {
+        if (!isAllThreads)
+            return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+
+        long sum = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (bytes > 0)
+                sum += bytes;
+        }
+        return sum;
+    }
+
+    /**
+     * Creates all the benchmarks, in the order they run.
+     *
+     * @return The benchmarks.
+     */
+    private static List<Benchmark> CreateBenchmarks() {
+        List<Benchmark> benchmarks = new ArrayList<>();
+
+        for (String mapName : SharedResources.MSP_Maps) {
+            benchmarks.add(new CollisionBenchmark("collision/impassable/" + mapName, mapName, 0, false) {
+                @Override
+                boolean Check(Rectangle position, int angleIndex) {
+                    return _Collisions.IsCollidingWithImpassable(position, angleIndex);
+                }
+            });
+            benchmarks.add(new CollisionBenchmark("collision/grass/" + mapName, mapName, 0, false) {
+                @Override
+                boolean Check(Rectangle position, int angleIndex) {
+                    return _Collisions.IsCollidingWithGrass(position, angleIndex);
+                }
+            });
+            benchmarks.add(new CollisionBenchmark("collision/other-cars/" + mapName, mapName, 0, false) {
+                @Override
+                boolean Check(Rectangle position, int angleIndex) {
+                    return _Collisions.isCollidingWithOtherCars(_Car1, position, angleIndex);
+                }
+            });
+        }
+        //A detailed track: the check should cost about the same as on the plain one.
+        benchmarks.add(new CollisionBenchmark("collision/impassable/Medium+" + DENSE_TREE_COUNT + "trees", SharedResources.MSP_Maps[1], DENSE_TREE_COUNT, false) {
+            @Override
+            boolean Check(Rectangle position, int angleIndex) {
+                return _Collisions.IsCollidingWithImpassable(position, angleIndex);
+            }
+        });
+        //The same checks with the rasterised mask of the map objects.
+        for (String mapName : SharedResources.MSP_Maps) {
+            benchmarks.add(new CollisionBenchmark("collision/impassable/" + mapName + "/mask", mapName, 0, true) {
+                @Override
+                boolean Check(Rectangle position, int angleIndex) {
+                    return _Collisions.IsCollidingWithImpassable(position, angleIndex);
+                }
+            });
+            benchmarks.add(new CollisionBenchmark("collision/grass/" + mapName + "/mask", mapName, 0, true) {
+                @Override
+                boolean Check(Rectangle position, int angleIndex) {
+                    return _Collisions.IsCollidingWithGrass(position, angleIndex);
+                }
+            });
+        }
+        benchmarks.add(new CollisionBenchmark("collision/impassable/Medium+" + DENSE_TREE_COUNT + "trees/mask", SharedResources.MSP_Maps[1], DENSE_TREE_COUNT, true) {
+            @Override
+            boolean Check(Rectangle position, int angleIndex) {
+                return _Collisions.IsCollidingWithImpassable(position, angleIndex);
+            }
+        });
+
+        benchmarks.add(new Benchmark("car-bounds", false) {
+            private final Rectangle[] _Positions = new Rectangle[INPUT_COUNT];
+            private final int[] _AngleIndexes = new int[INPUT_COUNT];
+            private int _Next = 0;
+
+            @Override
+            void Setup() {
+                Random random = new Random(SEED);
+                for (int i = 0; i < INPUT_COUNT; i++) {
+                    _Positions[i] = new Rectangle(random.nextInt(1000), random.nextInt(700), SharedResources.CAR_Image_Size_X, SharedResources.CAR_Image_Size_Y);
+                    _AngleIndexes[i] = random.nextInt(SharedResources.CAR_Simulated_Angle_Values.length);
+                }
+            }
+
+            @Override
+            long Run(int operations) {
+                long sum = 0;
+                for (int i = 0; i < operations; i++) {
+                    int input = _Next++ & (INPUT_COUNT - 1);
+                    sum += (long) SharedResources.CAR_Simulated_Fine_Bounds[_AngleIndexes[input]].GetCarBounds(_Positions[input])[2].getX1();
+                }
+                return sum;
+            }
+        });
+
+        for (String mapName : SharedResources.MSP_Maps) {
+            benchmarks.add(new PhysicsStepBenchmark("physics-step/" + mapName, mapName));
+        }
+
+        for (Supplier<Message> message : CreateMessages()) {
+            String name = message.get().getClass().getSimpleName();
+            benchmarks.add(new CodecBenchmark("encode/serialized/" + name, MessageCodecs.SERIALIZED_ID, message.get(), false));
+            benchmarks.add(new CodecBenchmark("encode+decode/serialized/" + name, MessageCodecs.SERIALIZED_ID, message.get(), true));
+            benchmarks.add(new CodecBenchmark("encode/binary/" + name, MessageCodecs.BINARY_ID, message.get(), false));
+            benchmarks.add(new CodecBenchmark("encode+decode/binary/" + name, MessageCodecs.BINARY_ID, message.get(), true));
+        }
+
+        benchmarks.add(new RelayBenchmark("relay/threads", ServerExecutionMode.THREAD_PER_SESSION));
+        benchmarks.add(new RelayBenchmark("relay/event-loop", ServerExecutionMode.EVENT_LOOP));
+        return benchmarks;
+    }
+
+    /**
+     * Creates one message of every kind, filled in like the game does.
+     *
+     * @return A supplier of a new instance of each message.
+     */
+    private static List<Supplier<Message>> CreateMessages() {
+        List<Supplier<Message>> messages = new ArrayList<>();
+        messages.add(() -> new Message(MessageType.GOODBYE));
+        messages.add(() -> {
+            MessageHello hello = new MessageHello();
+            hello.set_CodecMask(MessageCodecs.SUPPORTED_MASK);
+            return hello;
+        });
+        messages.add(() -> {
+            MessageMapRequest request = new MessageMapRequest(MessageType.LOOKINGFOROPPONENT);
+            request.set_MapName(SharedResources.MSP_Maps[1]);
+            request.set_CarImageFileIndex(2);
+            return request;
+        });
+        messages.add(() -> {
+            MessageMapResponse response = new MessageMapResponse(MessageType.OPPONENTFOUNDSTARTGAME);
+            response.set_MapName(SharedResources.MSP_Maps[1]);
+            response.set_CarImageFileIndex(3);
+            response.set_GivenPlayerNumber(SharedResources.PLAYER_2);
+            response.set_IsStartScheduled(true);
+            response.set_StartAt(System.currentTimeMillis());
+            return response;
+        });
+        messages.add(() -> CreateStatus(400, 300));
+        messages.add(() -> {
+            MessageInGameInput input = new MessageInGameInput();
+            input.set_IsForwardPressed(true);
+            input.set_Turn(MessageInGameInput.TURN_LEFT);
+            return input;
+        });
+        messages.add(() -> {
+            MessageMatchSnapshot snapshot = new MessageMatchSnapshot();
+            snapshot.set_Tick(1234);
+            snapshot.set_Player1(CreateStatus(400, 300));
+            snapshot.set_Player2(CreateStatus(460, 300));
+            return snapshot;
+        });
+        messages.add(() -> {
+            MessagePing ping = new MessagePing(MessageType.PING);
+            ping.set_OriginateTime(System.nanoTime());
+            ping.set_RoundTrip(TimeUnit.MILLISECONDS.toNanos(20));
+            ping.set_ClockOffset(TimeUnit.MILLISECONDS.toNanos(3));
+            return ping;
+        });
+        messages.add(() -> {
+            MessageUdpChannel channel = new MessageUdpChannel();
+            channel.set_Token(0x12345678);
+            channel.set_Port(SharedResources.SCP_VALID_PORT_NUMBERS[0]);
+            return channel;
+        });
+        return messages;
+    }
+
+    /**
+     * Creates the status update of a car driving to the right.
+     *
+     * @param x The X coordinate of the car.
+     * @param y The Y coordinate of the car.
+     * @return The status update.
+     */
+    private static MessageCarStatusUpdate CreateStatus(int x, int y) {
+        MessageCarStatusUpdate status = new MessageCarStatusUpdate(MessageType.INGAMEPOSITIONUPDATE);
+        status.set_Location_X(x);
+        status.set_Location_Y(y);
+        status.set_CurrentAngle(90);
+        status.set_VirtualSpeed(120);
+        status.set_IsAccelerating(true);
+        return status;
+    }
+
+    /**
+     * Creates the players of a match on a map, with their cars at their starting points.
+     *
+     * @param map The map.
+     * @return The two players.
+     */
+    private static ArrayList<Player> CreatePlayers(MapModel map) {
+        int angleIndex = AngleIndexOf(map.getCAR_Starting_Angle());
+        ArrayList<Player> players = new ArrayList<>();
+        players.add(new HeadlessPlayer("Player 1", new HeadlessCar(map.getCAR_StartingPoint_X_Player1(), map.getCAR_StartingPoint_Y_Player1(), angleIndex)));
+        players.add(new HeadlessPlayer("Player 2", new HeadlessCar(map.getCAR_StartingPoint_X_Player2(), map.getCAR_StartingPoint_Y_Player2(), angleIndex)));
+        return players;
+    }
+
+    /**
+     * Finds the index of an angle in SharedResources.CAR_Simulated_Angle_Values.
+     *
+     * @param angle The angle in degrees.
+     * @return The index of the angle, or 0 if it is not one of the simulated angles.
+     */
+    private static int AngleIndexOf(int angle) {
+        for (int i = 0; i < SharedResources.CAR_Simulated_Angle_Values.length; i++) {
+            if (SharedResources.CAR_Simulated_Angle_Values[i] == angle)
+                return i;
+        }
+        return 0;
+    }
+
+    /**
+     * A car without a display label (which would load the car images): its position is kept here.
+     * The CollisionManager reads the position and angle of the other car through it.
+     */
+    private static final class HeadlessCar extends Car {
+
+        /**
+         * The position of the car.
+         */
+        private final Rectangle _Bounds;
+
+        /**
+         * The angle of the car, as an index of SharedResources.CAR_Simulated_Angle_Values.
+         */
+        private final int _AngleIndex;
+
+        /**
+         * A car standing at a position.
+         *
+         * @param x          The X coordinate of the top left corner.
+         * @param y          The Y coordinate of the top left corner.
+         * @param angleIndex The angle of the car.
+         */
+        private HeadlessCar(int x, int y, int angleIndex) {
+            _Bounds = new Rectangle(x, y, SharedResources.CAR_Image_Size_X, SharedResources.CAR_Image_Size_Y);
+            _AngleIndex = angleIndex;
+        }
+
+        @Override
+        public Rectangle GetBoundsAsRectangle() {
+            return _Bounds;
+        }
+
+        @Override
+        public int GetCurrentAngleIndex() {
+            return _AngleIndex;
+        }
+    }
+
+    /**
+     * A player with a headless car.
+     */
+    private static final class HeadlessPlayer extends Player {
+
+        /**
+         * The car of the player.
+         */
+        private final HeadlessCar _HeadlessCar;
+
+        /**
+         * A player with a headless car.
+         *
+         * @param name The name of the player.
+         * @param car  The car of the player.
+         */
+        private HeadlessPlayer(String name, HeadlessCar car) {
+            super(name, false);
+            _HeadlessCar = car;
+        }
+
+        @Override
+        public Car get_Car() {
+            return _HeadlessCar;
+        }
+    }
+
+    /**
+     * Checks car positions spread over a map, some of them free, some of them colliding.
+     */
+    private static abstract class CollisionBenchmark extends Benchmark {
+
+        /**
+         * The map the positions are on.
+         */
+        private final String _MapName;
+
+        /**
+         * The number of trees scattered over the map, in addition to its own objects.
+         */
+        private final int _TreeCount;
+
+        /**
+         * True to check the map with the rasterised mask of its objects instead of their geometry.
+         */
+        private final boolean _IsMaskUsed;
+
+        /**
+         * Checks the collisions on the map, with both cars of a match.
+         */
+        CollisionManager _Collisions;
+
+        /**
+         * The car of player 1, the one being checked.
+         */
+        Car _Car1;
+
+        /**
+         * The positions checked, and the angles of the car in them.
+         */
+        private final Rectangle[] _Positions = new Rectangle[INPUT_COUNT];
+        private final int[] _AngleIndexes = new int[INPUT_COUNT];
+
+        /**
+         * The index of the next input.
+         */
+        private int _Next = 0;
+
+        /**
+         * A collision benchmark.
+         *
+         * @param name       The name of the benchmark.
+         * @param mapName    The map the positions are on.
+         * @param treeCount  The number of trees scattered over the map, in addition to its own objects.
+         * @param isMaskUsed True to check the map with the rasterised mask of its objects instead of their geometry.
+         */
+        CollisionBenchmark(String name, String mapName, int treeCount, boolean isMaskUsed) {
+            super(name, false);
+            _MapName = mapName;
+            _TreeCount = treeCount;
+            _IsMaskUsed = isMaskUsed;
+        }
+
+        @Override
+        void Setup() {
+            MapModel map = MapModel.CreateByName(_MapName);
+            ArrayList<MapObject> mapObjects = map.GetMapObjects();
+            ArrayList<Player> players = CreatePlayers(map);
+
+            //The positions (and the trees) are spread over the area of the map's objects, and a bit around the other car.
+            Rectangle area = null;
+            for (MapObject mapObject : mapObjects) {
+                Rectangle bounds = mapObject.Rec != null ? mapObject.Rec : mapObject.Line.getBounds();
+                area = area == null ? new Rectangle(bounds) : area.union(bounds);
+            }
+            Random random = new Random(SEED);
+            for (int i = 0; i < _TreeCount; i++) {
+                MapObject tree = new MapObject();
+                tree.Type = InGameObjectType.TREE;
+                tree.Rec = new Rectangle(area.x + random.nextInt(area.width), area.y + random.nextInt(area.height), TREE_SIZE, TREE_SIZE);
+                mapObjects.add(tree);
+            }
+            _Collisions = new CollisionManager(players, mapObjects, _IsMaskUsed);
+            _Car1 = players.get(0).get_Car();
+            Rectangle other = players.get(1).get_Car().GetBoundsAsRectangle();
+            for (int i = 0; i < INPUT_COUNT; i++) {
+                int x, y;
+                if (i % 8 == 0) {
+                    x = other.x + random.nextInt(2 * other.width) - other.width;
+                    y = other.y + random.nextInt(2 * other.height) - other.height;
+                } else {
+                    x = area.x + random.nextInt(Math.max(1, area.width - SharedResources.CAR_Image_Size_X));
+                    y = area.y + random.nextInt(Math.max(1, area.height - SharedResources.CAR_Image_Size_Y));
+                }
+                _Positions[i] = new Rectangle(x, y, SharedResources.CAR_Image_Size_X, SharedResources.CAR_Image_Size_Y);
+                _AngleIndexes[i] = random.nextInt(SharedResources.CAR_Simulated_Angle_Values.length);
+            }
+        }
+
+        @Override
+        long Run(int operations) {
+            long hits = 0;
+            for (int i = 0; i < operations; i++) {
+                int input = _Next++ & (INPUT_COUNT - 1);
+                if (Check(_Positions[input], _AngleIndexes[input]))
+                    hits++;
+            }
+            return hits;
+        }
+
+        /**
+         * Runs one check.
+         *
+         * @param position   The position of the car.
+         * @param angleIndex The angle of the car.
+         * @return The result of the check.
+         */
+        abstract boolean Check(Rectangle position, int angleIndex);
+    }
+
+    /**
+     * Drives a car around a map, one frame per operation, the way Car.CalculateNextFrame does:
+     * updates the speed, calculates the next location, checks it against the other car, the impassable objects
+     * and the grass, then moves the car. The car turns every now and then and when it hits the wall,
+     * and starts over from its starting point if it runs into the other car.
+     */
+    private static final class PhysicsStepBenchmark extends Benchmark {
+
+        /**
+         * The map the car drives on.
+         */
+        private final String _MapName;
+
+        /**
+         * The map model, for the starting point.
+         */
+        private MapModel _Map;
+
+        /**
+         * Checks the collisions on the map, with both cars of a match.
+         */
+        private CollisionManager _Collisions;
+
+        /**
+         * The car driving, and its movement model.
+         */
+        private HeadlessCar _Car;
+        private final CarPhysics _Physics = new CarPhysics();
+
+        /**
+         * The location and angle of the car.
+         */
+        private final Point _Location = new Point();
+        private int _AngleIndex;
+
+        /**
+         * Decides when the car turns.
+         */
+        private final Random _Random = new Random(SEED);
+
+        /**
+         * A physics step benchmark.
+         *
+         * @param name    The name of the benchmark.
+         * @param mapName The map the car drives on.
+         */
+        PhysicsStepBenchmark(String name, String mapName) {
+            super(name, false);
+            _MapName = mapName;
+        }
+
+        @Override
+        void Setup() {
+            _Map = MapModel.CreateByName(_MapName);
+            ArrayList<Player> players = CreatePlayers(_Map);
+            _Collisions = new CollisionManager(players, _Map.GetMapObjects());
+            _Car = (HeadlessCar) players.get(0).get_Car();
+            Restart();
+        }
+
+        /**
+         * Puts the car back to its starting point.
+         */
+        private void Restart() {
+            _Physics.Reset();
+            _Location.setLocation(_Map.getCAR_StartingPoint_X_Player1(), _Map.getCAR_StartingPoint_Y_Player1());
+            _AngleIndex = AngleIndexOf(_Map.getCAR_Starting_Angle());
+            _Car._Bounds.setLocation(_Location);
+        }
+
+        @Override
+        long Run(int operations) {
+            long moved = 0;
+            int angleCount = SharedResources.CAR_Simulated_Angle_Values.length;
+            for (int i = 0; i < operations; i++) {
+                _Physics.UpdateSpeed(true, false);
+                Point next = _Physics.NextLocation(_Location, SharedResources.CAR_Simulated_Angle_Values[_AngleIndex]);
+                Rectangle bounds = new Rectangle(next.x, next.y, SharedResources.CAR_Image_Size_X, SharedResources.CAR_Image_Size_Y);
+
+                if (_Collisions.isCollidingWithOtherCars(_Car, bounds, _AngleIndex)) {
+                    Restart();
+                    continue;
+                }
+                if (_Collisions.IsCollidingWithImpassable(bounds, _AngleIndex)) {
+                    _Physics.HitTheWall();
+                    _AngleIndex = (_AngleIndex + 1 + _Random.nextInt(angleCount - 1)) % angleCount;
+                    continue;
+                }
+                _Location.setLocation(next);
+                _Car._Bounds.setLocation(next);
+                _Physics.Moved(_Collisions.IsCollidingWithGrass(bounds, _AngleIndex));
+                moved++;
+
+                if (_Random.nextInt(32) == 0)
+                    _AngleIndex = (_AngleIndex + (_Random.nextBoolean() ? 1 : angleCount - 1)) % angleCount;
+            }
+            return moved;
+        }
+    }
+
+    /**
+     * Encodes a message into a frame, and optionally decodes it on a second codec, like the other side would.
+     * A status update moves a little with every operation, so the binary codec sends deltas against its keyframes.
+     */
+    private static final class CodecBenchmark extends Benchmark {
+
+        /**
+         * The codec the message is encoded with.
+         */
+        private final int _CodecId;
+
+        /**
+         * The message.
+         */
+        private final Message _Message;
+
+        /**
+         * True to decode the encoded frame as well.
+         */
+        private final boolean _IsDecoded;
+
+        /**
+         * The sending and the receiving side.
+         */
+        private FrameCodec _Sender;
+        private FrameCodec _Receiver;
+
+        /**
+         * The number of operations so far.
+         */
+        private int _Count = 0;
+
+        /**
+         * A codec benchmark.
+         *
+         * @param name      The name of the benchmark.
+         * @param codecId   The codec the message is encoded with (see MessageCodecs).
+         * @param message   The message.
+         * @param isDecoded True to decode the encoded frame as well.
+         */
+        CodecBenchmark(String name, int codecId, Message message, boolean isDecoded) {
+            super(name, false);
+            _CodecId = codecId;
+            _Message = message;
+            _IsDecoded = isDecoded;
+        }
+
+        @Override
+        void Setup() {
+            _Sender = new FrameCodec();
+            _Sender.set_SendCodec(_CodecId);
+            _Receiver = new FrameCodec();
+        }
+
+        @Override
+        long Run(int operations) throws IOException {
+            long sum = 0;
+            for (int i = 0; i < operations; i++) {
+                if (_Message instanceof MessageCarStatusUpdate)
+                    ((MessageCarStatusUpdate) _Message).set_Location_X(400 + (_Count++ & 15));
+
+                ByteBuffer frame = _Sender.Encode(_Message);
+                sum += frame.remaining();
+                if (_IsDecoded) {
+                    frame.position(FrameCodec.HEADER_SIZE);
+                    Message decoded = _Receiver.Decode(frame);
+                    if (decoded != null)
+                        sum += decoded.getType();
+                }
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * Relays status updates through a server running in this process: one client sends an update, the server's
+     * session of it passes it to the match, which sends it to the other client's session, and the other client
+     * reads it. One operation is one update from sending until it has arrived on the other side.
+     */
+    private static final class RelayBenchmark extends Benchmark {
+
+        /**
+         * How the server runs its sessions.
+         */
+        private final ServerExecutionMode _Mode;
+
+        /**
+         * The server.
+         */
+        private Server _Server;
+
+        /**
+         * The two players of the match.
+         */
+        private BlockingClient _Sender;
+        private BlockingClient _Receiver;
+
+        /**
+         * The number of operations so far.
+         */
+        private int _Count = 0;
+
+        /**
+         * A relay benchmark.
+         *
+         * @param name The name of the benchmark.
+         * @param mode How the server runs its sessions.
+         */
+        RelayBenchmark(String name, ServerExecutionMode mode) {
+            super(name, true);
+            _Mode = mode;
+        }
+
+        @Override
+        void Setup() throws Exception {
+            int port;
+            try (ServerSocket probe = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+                port = probe.getLocalPort();
+            }
+
+            _Server = new Server(msg -> { }, new ServerStatusListener() {
+                @Override
+                public void ServerIsUp() {
+                }
+
+                @Override
+                public void ServerIsDown() {
+                }
+            });
+            _Server.set_ExecutionMode(_Mode);
+            _Server.StartServer(port);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!_Server.IsRunning() && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            if (!_Server.IsRunning())
+                throw new IOException("The server has not started.");
+
+            _Sender = new BlockingClient(port);
+            _Receiver = new BlockingClient(port);
+            _Sender.LookForOpponent(0);
+            _Receiver.LookForOpponent(1);
+            _Sender.ReceiveType(MessageType.OPPONENTFOUNDSTARTGAME);
+            _Receiver.ReceiveType(MessageType.OPPONENTFOUNDSTARTGAME);
+        }
+
+        @Override
+        long Run(int operations) throws IOException {
+            long sum = 0;
+            MessageCarStatusUpdate update = CreateStatus(400, 300);
+            for (int i = 0; i < operations; i++) {
+                update.set_Location_X(400 + (_Count++ & 15));
+                _Sender.Send(update);
+                Message received = _Receiver.ReceiveType(MessageType.INGAMEPOSITIONUPDATE);
+                if (received != null)
+                    sum += ((MessageCarStatusUpdate) received).get_Location_X();
+            }
+            return sum;
+        }
+
+        @Override
+        void TearDown() throws Exception {
+            if (_Sender != null)
+                _Sender.Close();
+            if (_Receiver != null)
+                _Receiver.Close();
+            if (_Server != null)
+                _Server.StopServer();
+        }
+    }
+
+    /**
+     * A client of the real protocol on blocking streams, negotiating the binary codec.
+     */
+    private static final class BlockingClient {
+
+        private final Socket _Socket;
+        private final DataInputStream _In;
+        private final DataOutputStream _Out;
+        private final FrameCodec _Codec = new FrameCodec();
+
+        /**
+         * Connects to the server and negotiates the codec.
+         *
+         * @param port The port of the server on the loopback interface.
+         * @throws IOException If the server cannot be reached or does not answer.
+         */
+        BlockingClient(int port) throws IOException {
+            _Socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            _Socket.setTcpNoDelay(true);
+            _Socket.setSoTimeout((int) TimeUnit.SECONDS.toMillis(10));
+            _In = new DataInputStream(new BufferedInputStream(_Socket.getInputStream()));
+            _Out = new DataOutputStream(new BufferedOutputStream(_Socket.getOutputStream()));
+
+            MessageHello hello = new MessageHello();
+            hello.set_CodecMask(MessageCodecs.SUPPORTED_MASK);
+            Send(hello);
+            MessageHello answer = (MessageHello) ReceiveType(MessageType.HELLO);
+            _Codec.set_SendCodec(MessageCodecs.Choose(answer.get_CodecMask()));
+        }
+
+        /**
+         * Asks for an opponent on the first map.
+         *
+         * @param carIndex The car design of the player.
+         * @throws IOException If sending failed.
+         */
+        void LookForOpponent(int carIndex) throws IOException {
+            MessageMapRequest request = new MessageMapRequest(MessageType.LOOKINGFOROPPONENT);
+            request.set_MapName(SharedResources.MSP_Maps[0]);
+            request.set_CarImageFileIndex(carIndex);
+            Send(request);
+        }
+
+        /**
+         * Sends a message.
+         *
+         * @param msg The message.
+         * @throws IOException If sending failed.
+         */
+        void Send(Message msg) throws IOException {
+            _Codec.Write(_Out, msg);
+            _Out.flush();
+        }
+
+        /**
+         * Reads messages until one of the given type has arrived. Others (e.g. the UDP channel offer) are skipped.
+         *
+         * @param type The message type waited for.
+         * @return The message, or null if it is a status update that could not be decoded.
+         * @throws IOException If the connection failed or timed out.
+         */
+        Message ReceiveType(int type) throws IOException {
+            while (true) {
+                ByteBuffer payload = _Codec.ReadPayload(_In);
+                int payloadType = MessageCodecs.PeekBinaryType(payload);
+                Message msg = _Codec.Decode(payload);
+                if (msg == null && payloadType == type)
+                    return null;
+                if (msg != null && msg.getType() == type)
+                    return msg;
+            }
+        }
+
+        /**
+         * Says goodbye and closes the connection.
+         */
+        void Close() {
+            try {
+                Send(new Message(MessageType.GOODBYE));
+            } catch (IOException e) {
+                //Closing anyway.
+            }
+            try {
+                _Socket.close();
+            } catch (IOException e) {
+                //Closing anyway.
+            }
+        }
+    }
+}
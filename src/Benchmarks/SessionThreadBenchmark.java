@@ -0,0 +1,351 @@
+package Benchmarks;
+
+import ModelLayer.Networking.FrameCodec;
+import ModelLayer.Networking.Messages.Message;
+import ModelLayer.Networking.Messages.MessageCarStatusUpdate;
+import ModelLayer.Networking.Messages.MessageType;
+import ModelLayer.Networking.SessionThreads;
+import ModelLayer.Enumerations.ServerExecutionMode;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares platform and virtual threads for running blocking sessions, the way the server does in the
+ * "Threads" and "Virtual threads" execution modes.
+ * A loopback server runs a blocking frame reading loop for every connection, on one thread each, and echoes the
+ * car status updates back. The simulated clients are driven by a single non-blocking thread, so that the client side
+ * does not distort the thread count. Every client sends a number of status updates one after the other.
+ * <p>
+ * Usage: SessionThreadBenchmark [rounds per client] [client count...]
+ * Defaults to 20 rounds and 1000, 5000 and 20000 clients.
+ * Virtual threads are only measured on Java 21 or newer. Large client counts need a high open file limit (ulimit -n).
+ */
+public class SessionThreadBenchmark {
+
+    /**
+     * The number of status updates each client sends if not given on the command line.
+     */
+    private static final int DEFAULT_ROUNDS = 20;
+
+    /**
+     * The client counts measured if not given on the command line.
+     */
+    private static final int[] DEFAULT_CLIENT_COUNTS = {1000, 5000, 20000};
+
+    /**
+     * The longest time a single measurement may take.
+     */
+    private static final long TIMEOUT_SECONDS = 300;
+
+    /**
+     * Entry point of the benchmark.
+     *
+     * @param args Optional: the number of rounds followed by the client counts.
+     * @throws Exception If a measurement could not be completed.
+     */
+    public static void main(String[] args) throws Exception {
+        int rounds = DEFAULT_ROUNDS;
+        int[] clientCounts = DEFAULT_CLIENT_COUNTS;
+        if (args.length > 0)
+            rounds = Integer.parseInt(args[0]);
+        if (args.length > 1) {
+            clientCounts = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                clientCounts[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+
+        List<ServerExecutionMode> modes = new ArrayList<>();
+        modes.add(ServerExecutionMode.THREAD_PER_SESSION);
+        if (SessionThreads.IsVirtualThreadSupported())
+            modes.add(ServerExecutionMode.VIRTUAL_THREAD);
+        else
+            System.out.println("Virtual threads are not supported by this Java version. Only platform threads are measured.");
+
+        System.out.println(String.format("%-16s %8s %12s %14s %12s %14s %12s",
+                "Mode", "Clients", "Connect ms", "Updates/s", "OS threads", "Heap used MB", "RSS MB"));
+
+        for (int clients : clientCounts) {
+            for (ServerExecutionMode mode : modes) {
+                Result result = Measure(mode, clients, rounds);
+                System.out.println(String.format("%-16s %8d %12d %14.0f %12d %14.1f %12s",
+                        mode.toString(), clients, result._ConnectMillis, result._UpdatesPerSecond,
+                        result._PeakThreadCount, result._HeapUsedMB, result._ResidentMB));
+            }
+        }
+    }
+
+    /**
+     * Runs one measurement: connects the clients, exchanges the status updates and then closes everything.
+     *
+     * @param mode    Tells which kind of threads run the server side sessions.
+     * @param clients The number of simulated clients.
+     * @param rounds  The number of status updates each client sends.
+     * @return The measured values.
+     * @throws Exception If the measurement could not be completed.
+     */
+    private static Result Measure(ServerExecutionMode mode, int clients, int rounds) throws Exception {
+        System.gc();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+
+        Result result = new Result();
+        ExecutorService sessions = Executors.newCachedThreadPool(SessionThreads.CreateFactory(mode));
+        ServerSocket serverSocket = new ServerSocket(0, clients, InetAddress.getLoopbackAddress());
+        CountDownLatch started = new CountDownLatch(clients);
+        Thread acceptor = new Thread(() -> AcceptLoop(serverSocket, sessions, started), "Benchmark-Acceptor");
+        acceptor.start();
+
+        byte[] frame = EncodeStatusUpdateFrame();
+        List<SocketChannel> channels = new ArrayList<>(clients);
+        try {
+            long connectStart = System.nanoTime();
+            InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+            for (int i = 0; i < clients; i++) {
+                SocketChannel channel = SocketChannel.open(address);
+                channel.socket().setTcpNoDelay(true);
+                channels.add(channel);
+            }
+            if (!started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+                throw new IOException("Not all the sessions have started in time.");
+            result._ConnectMillis = (System.nanoTime() - connectStart) / 1000000;
+
+            long exchangeStart = System.nanoTime();
+            ExchangeUpdates(channels, frame, rounds);
+            double seconds = (System.nanoTime() - exchangeStart) / 1e9;
+            result._UpdatesPerSecond = ((double) clients * rounds) / seconds;
+
+            //All the sessions are still alive and blocked in reading. This is the memory the server needs to hold them.
+            System.gc();
+            Runtime runtime = Runtime.getRuntime();
+            result._HeapUsedMB = (runtime.totalMemory() - runtime.freeMemory()) / (1024.0 * 1024.0);
+            result._ResidentMB = ReadResidentMemory();
+            result._PeakThreadCount = threads.getPeakThreadCount();
+        } finally {
+            for (SocketChannel channel : channels) {
+                channel.close();
+            }
+            serverSocket.close();
+            acceptor.join();
+            sessions.shutdown();
+            sessions.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+        return result;
+    }
+
+    /**
+     * Accepts the connections and starts a blocking session for each one, like the server does.
+     *
+     * @param serverSocket The server socket to accept on.
+     * @param sessions     The executor that runs the sessions.
+     * @param started      Counted down when a session has started.
+     */
+    private static void AcceptLoop(ServerSocket serverSocket, ExecutorService sessions, CountDownLatch started) {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket client = serverSocket.accept();
+                client.setTcpNoDelay(true);
+                sessions.submit(() -> Echo(client, started));
+            } catch (IOException e) {
+                //The server socket is closed at the end of the measurement.
+            }
+        }
+    }
+
+    /**
+     * A simplified session: reads frames in a blocking way and sends every decoded message back.
+     *
+     * @param client  The connection to serve.
+     * @param started Counted down when the session has opened its streams.
+     */
+    private static void Echo(Socket client, CountDownLatch started) {
+        try (Socket socket = client) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            FrameCodec frames = new FrameCodec();
+            started.countDown();
+            while (true) {
+                Message msg = frames.Read(in);
+                frames.Write(out, msg);
+                out.flush();
+            }
+        } catch (EOFException e) {
+            //The client has closed the connection.
+        } catch (Exception e) {
+            //Connection reset at the end of the measurement.
+        }
+    }
+
+    /**
+     * Drives all the clients from one thread. Every client sends a status update, waits for the echo
+     * and repeats until it has sent the given number of updates.
+     *
+     * @param channels The connected client channels.
+     * @param frame    One encoded status update frame.
+     * @param rounds   The number of updates each client sends.
+     * @throws IOException If a client could not send or receive.
+     */
+    private static void ExchangeUpdates(List<SocketChannel> channels, byte[] frame, int rounds) throws IOException {
+        Selector selector = Selector.open();
+        AtomicInteger finished = new AtomicInteger(0);
+        for (SocketChannel channel : channels) {
+            channel.configureBlocking(false);
+            SimulatedClient client = new SimulatedClient(frame.length, rounds);
+            channel.register(selector, SelectionKey.OP_READ, client);
+            SendFully(channel, frame);
+        }
+
+        ByteBuffer readBuffer = ByteBuffer.allocate(64 * 1024);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (finished.get() < channels.size()) {
+            if (System.nanoTime() > deadline)
+                throw new IOException("The updates were not echoed back in time.");
+
+            selector.select(1000);
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                SocketChannel channel = (SocketChannel) key.channel();
+                SimulatedClient client = (SimulatedClient) key.attachment();
+
+                readBuffer.clear();
+                if (channel.read(readBuffer) < 0)
+                    throw new IOException("The server has closed a connection.");
+
+                int echoed = client.Received(readBuffer.position());
+                for (int i = 0; i < echoed; i++) {
+                    if (client.HasMoreToSend())
+                        SendFully(channel, frame);
+                    else if (client.IsDone()) {
+                        finished.incrementAndGet();
+                        key.cancel();
+                        break;
+                    }
+                }
+            }
+        }
+        selector.close();
+        for (SocketChannel channel : channels) {
+            channel.configureBlocking(true);
+        }
+    }
+
+    /**
+     * Writes a whole frame to a non-blocking channel. The frames are tiny, so this practically never loops.
+     *
+     * @param channel The channel to write to.
+     * @param frame   The frame to write.
+     * @throws IOException If the channel is closed.
+     */
+    private static void SendFully(SocketChannel channel, byte[] frame) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(frame);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Encodes the status update that the simulated clients send.
+     *
+     * @return One complete frame.
+     * @throws IOException If the message could not be encoded.
+     */
+    private static byte[] EncodeStatusUpdateFrame() throws IOException {
+        MessageCarStatusUpdate msg = new MessageCarStatusUpdate(MessageType.INGAMEPOSITIONUPDATE);
+        msg.set_Location_X(400);
+        msg.set_Location_Y(300);
+        msg.set_CurrentAngle(90);
+        ByteBuffer frame = new FrameCodec().Encode(msg);
+        byte[] bytes = new byte[frame.remaining()];
+        frame.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Reads the resident memory of the process. Only available on Linux.
+     *
+     * @return The resident memory in megabytes, or "n/a".
+     */
+    private static String ReadResidentMemory() {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    long kiloBytes = Long.parseLong(line.replaceAll("[^0-9]", ""));
+                    return String.format("%.1f", kiloBytes / 1024.0);
+                }
+            }
+        } catch (Exception e) {
+            //Not Linux.
+        }
+        return "n/a";
+    }
+
+    /**
+     * The progress of one simulated client.
+     */
+    private static class SimulatedClient {
+        final int _FrameSize;
+        final int _Rounds;
+        int _Sent = 1;
+        long _ReceivedBytes = 0;
+        int _Echoed = 0;
+
+        SimulatedClient(int frameSize, int rounds) {
+            _FrameSize = frameSize;
+            _Rounds = rounds;
+        }
+
+        /**
+         * Counts the received bytes.
+         *
+         * @param bytes The number of bytes just received.
+         * @return The number of frames completed by these bytes.
+         */
+        int Received(int bytes) {
+            _ReceivedBytes += bytes;
+            int echoedNow = (int) (_ReceivedBytes / _FrameSize) - _Echoed;
+            _Echoed += echoedNow;
+            return echoedNow;
+        }
+
+        boolean HasMoreToSend() {
+            if (_Sent >= _Rounds)
+                return false;
+            _Sent++;
+            return true;
+        }
+
+        boolean IsDone() {
+            return _Echoed >= _Rounds;
+        }
+    }
+
+    /**
+     * The values measured by one run.
+     */
+    private static class Result {
+        long _ConnectMillis;
+        double _UpdatesPerSecond;
+        int _PeakThreadCount;
+        double _HeapUsedMB;
+        String _ResidentMB;
+    }
+}
@@ -1,9 +1,14 @@
 package ControlLayer;
 
 import ModelLayer.Networking.Client;
+import ModelLayer.Networking.ReplayReader;
 import ViewLayer.SoundEngine;
 import ViewLayer.SwingUICore;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
 /**
  * Switches between the main flows of the application.
  * Acts as the "Maestro" in an orchestra, and there is only one single instance of it.
@@ -167,6 +172,38 @@ public class Controller {
         }
     }
 
+    /**
+     * Plays a recorded match on the InGameScreen.
+     * This is called when the user picks a replay file from the MenuBar. Refused while a game is running.
+     *
+     * @param file The replay file.
+     */
+    public void UserInitiatesReplay(File file)
+    {
+        if (_GameEngine != null && !(_GameEngine instanceof ReplayEngine))
+            return;
+
+        ReplayReader reader;
+        try {
+            reader = new ReplayReader(file.toPath());
+        } catch (IOException e) {
+            _UICore.DisplayReplayErrorPopup(e.getMessage());
+            return;
+        }
+        if (!Arrays.asList(SharedResources.MSP_Maps).contains(reader.get_MapName())) {
+            _UICore.DisplayReplayErrorPopup("Unknown map: " + reader.get_MapName());
+            return;
+        }
+
+        //Stop the replay being watched, if any.
+        if (_GameEngine != null)
+            _GameEngine.ShutDown();
+
+        _IsWaitingForOpponentCallback = false;
+        _GameEngine = new ReplayEngine(_UICore, _SoundEngine, reader);
+        _GameEngine.StartGame();
+    }
+
     /** Directs the SoundEngine to turn on/off the background music.
      * This is called when user clicks on the relevant option on the MenuBar.
      * @param newState True to turn on the music. False for turning it off.
@@ -65,6 +65,23 @@ public class CurrentGameSession
         _RealPlayerIndex = 0;
     }
 
+    /**
+     * Instantiates the Player objects of a replay. Neither car is controlled or simulated locally,
+     * both display the recorded statuses.
+     *
+     * @param carIndexPlayer1 The car type (design) index of player 1.
+     * @param carIndexPlayer2 The car type (design) index of player 2.
+     */
+    public static void CreateReplayPlayers(int carIndexPlayer1, int carIndexPlayer2) {
+        _CurrentPlayers = new ArrayList<>();
+        _CurrentPlayers.add(new Player("Player 1", false));
+        _CurrentPlayers.add(new Player("Player 2", false));
+        _CurrentPlayers.get(0).get_Car().set_CarImageFileIndex(carIndexPlayer1);
+        _CurrentPlayers.get(1).get_Car().set_CarImageFileIndex(carIndexPlayer2);
+        _CurrentPlayers.forEach(p -> p.get_Car().set_IsServerSimulated(true));
+        _RealPlayerIndex = 0;
+    }
+
     /**
      * Getter for the CurrentPlayers
      * @return Returns a list of Player objects. This list could contain 1 or 2 players.
@@ -1,8 +1,10 @@
 package ControlLayer;
 
+import ModelLayer.Car;
 import ModelLayer.CollisionManagement.CollisionManager;
 import ModelLayer.MapML.EasyMapML;
 import ModelLayer.MapML.MediumMapML;
+import ModelLayer.Networking.Client;
 import ViewLayer.MapVL.EasyMapVL;
 import ViewLayer.MapVL.MediumMapVL;
 import ViewLayer.SoundEngine;
@@ -46,18 +48,33 @@ public class GameEngine implements ActionListener {
         InstantiateSelectedMap();
         CollisionManager cm = new CollisionManager(CurrentGameSession.get_CurrentPlayers(), CurrentGameSession.get_MapModel().GetMapObjects());
         CurrentGameSession.set_CollisionManager(cm);
+        SetUpServerSimulation();
 
         _UICore.NavigateToInGameScreen();
         _FrameRateTimer = new Timer(SharedResources.FRAMERATE, this); //Setting this instance to be the event handler as well
+        //Nothing moves until the start the server scheduled, so both players start at the same moment.
+        _FrameRateTimer.setInitialDelay((int) SharedResources.MainController.get_Client().get_MillisUntilStart() + SharedResources.FRAMERATE);
         CurrentGameSession.GetRemoteCar().StartSelfUpdating();
         _FrameRateTimer.start();
     }
 
 
+    /**
+     * If the server simulates the match, the local car only sends the pressed keys and displays the server's snapshots.
+     */
+    private void SetUpServerSimulation() {
+        Client client = SharedResources.MainController.get_Client();
+        boolean isServerSimulated = client.get_MapResponse() != null && client.get_MapResponse().is_IsServerSimulated();
+
+        Car localCar = CurrentGameSession.get_CurrentPlayers().get(CurrentGameSession.get_RealPlayerIndex()).get_Car();
+        localCar.set_IsServerSimulated(isServerSimulated);
+        client.NotifyMeOfLocalCarUpdates(isServerSimulated ? localCar : null);
+    }
+
     /**
      * Instantiates the appropriate map objects based on the selected map name retrieved from CurrentGameSession
      */
-    private void InstantiateSelectedMap() {
+    void InstantiateSelectedMap() {
         if (Objects.equals(CurrentGameSession.get_SelectedMapName(), SharedResources.MSP_Maps[0])) {
             CurrentGameSession.set_MapModel(new EasyMapML());
             CurrentGameSession.set_MapView(new EasyMapVL());
@@ -130,6 +147,7 @@ public class GameEngine implements ActionListener {
     public void CarCrashOccurred()
     {
         _FrameRateTimer.stop();
+        CurrentGameSession.GetRemoteCar().DisplayLatestUpdate(); //The opponent is displayed slightly in the past
         _UICore.get_InGameScreen().SetCarLabelImagesCrashed();
 
         if (SharedResources.DGO_Default_Sound_On)
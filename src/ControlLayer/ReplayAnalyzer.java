@@ -0,0 +1,451 @@
+package ControlLayer;
+
+import ModelLayer.CollisionManagement.CollisionManager;
+import ModelLayer.MapML.MapModel;
+import ModelLayer.Networking.ReplayReader;
+
+import java.awt.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Re-runs the collision checks of the CollisionManager over recorded matches (see ReplayReader), without any user
+ * interface and as fast as the files can be read: every recorded position is checked against the walls of the map
+ * and against the other car, and the first overlap of the cars is compared with the crash the match ended with.
+ * Meant for settling crash disputes and for analysing a whole archive of replays.
+ * <pre>
+ * java -Djava.awt.headless=true -cp Race.jar ControlLayer.ReplayAnalyzer [options] &lt;file or directory&gt;...
+ *
+ *   --threads &lt;n&gt;       Number of replays analysed at the same time. 0 means one per processor core (default).
+ *   --tolerance &lt;ms&gt;    How much later than the reported crash the recorded cars may first overlap for the crash
+ *                       to be confirmed. Default: SharedResources.CLN_REMOTE_RENDER_DELAY + FRAMERATE.
+ *   --show &lt;which&gt;      ALL, DISPUTED (every match that is not CLEAN or CONFIRMED) or NONE. Default: ALL.
+ * </pre>
+ * The directories are searched for .replay files, including their subdirectories.
+ * Each match gets one of the verdicts:
+ * CLEAN (no crash, no overlap), CONFIRMED (the recorded cars overlap by the crash), DISPUTED (a crash was reported
+ * but the recorded cars never overlapped by then), MISSED (the recorded cars overlapped but no crash was reported).
+ */
+public class ReplayAnalyzer {
+
+    /**
+     * The verdicts of a match.
+     */
+    private static final String CLEAN = "CLEAN";
+    private static final String CONFIRMED = "CONFIRMED";
+    private static final String DISPUTED = "DISPUTED";
+    private static final String MISSED = "MISSED";
+    private static final String ERROR = "ERROR";
+
+    /**
+     * The result of analysing one replay.
+     */
+    private static final class MatchReport {
+
+        /**
+         * The replay file.
+         */
+        private final Path _File;
+
+        /**
+         * One of the verdicts, ERROR if the file could not be analysed.
+         */
+        private String _Verdict = ERROR;
+
+        /**
+         * Why the file could not be analysed.
+         */
+        private String _Error;
+
+        /**
+         * The map of the match.
+         */
+        private String _MapName;
+
+        /**
+         * The number of records, and the number of the car positions checked.
+         */
+        private int _RecordCount;
+        private long _CheckedCount;
+
+        /**
+         * The time of the last record, in nanoseconds since the start.
+         */
+        private long _Duration;
+
+        /**
+         * The player whose client reported the crash (0: the server), or -1 if there was no crash, and its time.
+         */
+        private int _CrashPlayer = -1;
+        private long _CrashTime;
+
+        /**
+         * The time the recorded cars first overlapped, or Long.MIN_VALUE if they never did.
+         */
+        private long _FirstOverlapTime = Long.MIN_VALUE;
+
+        /**
+         * The shortest distance between the centres of the cars up to the crash, in pixels.
+         */
+        private double _ClosestDistance = Double.MAX_VALUE;
+
+        /**
+         * The number of positions of each player's car that are inside a wall or a tree (index 0: player 1).
+         */
+        private final int[] _WallHits = new int[2];
+
+        /**
+         * True if the recording was cut, so the end of the match is missing.
+         */
+        private boolean _IsTruncated;
+
+        /**
+         * The result of analysing one replay.
+         *
+         * @param file The replay file.
+         */
+        private MatchReport(Path file) {
+            _File = file;
+        }
+    }
+
+    /**
+     * The number of replays analysed at the same time.
+     */
+    private final int _ThreadCount;
+
+    /**
+     * How much later than the reported crash the cars may first overlap, in nanoseconds.
+     */
+    private final long _ToleranceNanos;
+
+    /**
+     * Which matches are printed: ALL, DISPUTED or NONE.
+     */
+    private final String _Show;
+
+    /**
+     * Entry point of the analyzer.
+     *
+     * @param args The options and the files, see the class description.
+     */
+    public static void main(String[] args) {
+        List<Path> files = new ArrayList<>();
+        ReplayAnalyzer analyzer;
+        try {
+            Properties settings = ReadSettings(args, files);
+            if (files.isEmpty())
+                throw new IllegalArgumentException("No replay file or directory given");
+            analyzer = new ReplayAnalyzer(settings);
+            files = FindReplays(files);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            PrintUsage();
+            System.exit(2);
+            return;
+        }
+
+        analyzer.Run(files);
+    }
+
+    /**
+     * Creates an analyzer with the settings of the command line.
+     *
+     * @param settings The options by name (without the dashes).
+     */
+    private ReplayAnalyzer(Properties settings) {
+        int threads = ReadInt(settings, "threads", 0);
+        _ThreadCount = threads == 0 ? Runtime.getRuntime().availableProcessors() : threads;
+        _ToleranceNanos = TimeUnit.MILLISECONDS.toNanos(ReadInt(settings, "tolerance", SharedResources.CLN_REMOTE_RENDER_DELAY + SharedResources.FRAMERATE));
+        _Show = settings.getProperty("show", "ALL").trim().toUpperCase();
+        if (!_Show.equals("ALL") && !_Show.equals(DISPUTED) && !_Show.equals("NONE"))
+            throw new IllegalArgumentException("Unknown value of show: " + _Show);
+    }
+
+    /**
+     * Analyses the replays on the worker threads, then prints a line for each (in the order of the files) and a summary.
+     *
+     * @param files The replay files.
+     */
+    private void Run(List<Path> files) {
+        long startedAt = System.nanoTime();
+        MatchReport[] reports = new MatchReport[files.size()];
+        AtomicInteger next = new AtomicInteger();
+
+        Thread[] workers = new Thread[Math.max(1, Math.min(_ThreadCount, files.size()))];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(() -> {
+                //The map models are built once per worker, a CollisionManager is not shared between threads.
+                Map<String, CollisionManager> collisionManagers = new HashMap<>();
+                int index;
+                while ((index = next.getAndIncrement()) < reports.length) {
+                    reports[index] = Analyze(files.get(index), collisionManagers);
+                }
+            }, "ReplayAnalyzer-" + i);
+            workers[i].start();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        long elapsed = System.nanoTime() - startedAt;
+
+        for (MatchReport report : reports) {
+            boolean isDisputed = !report._Verdict.equals(CLEAN) && !report._Verdict.equals(CONFIRMED);
+            if (_Show.equals("ALL") || (_Show.equals(DISPUTED) && isDisputed))
+                System.out.println(Describe(report));
+        }
+        PrintSummary(reports, elapsed);
+    }
+
+    /**
+     * Analyses one replay.
+     *
+     * @param file              The replay file.
+     * @param collisionManagers The collision managers of the worker thread by map name, filled in on demand.
+     * @return The result.
+     */
+    private MatchReport Analyze(Path file, Map<String, CollisionManager> collisionManagers) {
+        MatchReport report = new MatchReport(file);
+        ReplayReader reader;
+        try {
+            reader = new ReplayReader(file);
+        } catch (IOException e) {
+            report._Error = e.getMessage();
+            return report;
+        }
+
+        report._MapName = reader.get_MapName();
+        report._RecordCount = reader.get_RecordCount();
+        report._Duration = reader.get_Duration();
+        report._IsTruncated = reader.is_Truncated();
+
+        CollisionManager collisionManager = collisionManagers.get(report._MapName);
+        if (collisionManager == null) {
+            MapModel map = MapModel.CreateByName(report._MapName);
+            if (map == null) {
+                report._Error = "Unknown map: " + report._MapName;
+                return report;
+            }
+            collisionManager = new CollisionManager(new ArrayList<>(), map.GetMapObjects());
+            collisionManagers.put(report._MapName, collisionManager);
+        }
+
+        CheckCollisions(reader, collisionManager, report);
+        report._Verdict = Judge(report);
+        return report;
+    }
+
+    /**
+     * Walks through the records and checks every recorded position of a car against the walls and the other car.
+     * The keyframes repeat earlier positions, they are skipped.
+     *
+     * @param reader           The replay.
+     * @param collisionManager The collision manager of the map.
+     * @param report           Receives the findings.
+     */
+    private void CheckCollisions(ReplayReader reader, CollisionManager collisionManager, MatchReport report) {
+        Rectangle[] cars = {
+                new Rectangle(SharedResources.CAR_Image_Size_X, SharedResources.CAR_Image_Size_Y),
+                new Rectangle(SharedResources.CAR_Image_Size_X, SharedResources.CAR_Image_Size_Y)};
+        int[] angles = new int[2];
+        boolean[] isKnown = new boolean[2];
+
+        for (int record = 0; record < reader.get_RecordCount(); record++) {
+            if (reader.is_Crash(record)) {
+                if (report._CrashPlayer < 0) {
+                    report._CrashPlayer = reader.get_PlayerNumber(record);
+                    report._CrashTime = reader.get_Time(record);
+                }
+                continue;
+            }
+
+            int player = reader.get_PlayerNumber(record);
+            if (!reader.is_CarState(record) || reader.is_Keyframe(record) || (player != SharedResources.PLAYER_1 && player != SharedResources.PLAYER_2))
+                continue;
+
+            int i = player - 1;
+            cars[i].setLocation(reader.get_X(record), reader.get_Y(record));
+            angles[i] = reader.get_AngleIndex(record);
+            isKnown[i] = true;
+            report._CheckedCount++;
+
+            if (collisionManager.IsCollidingWithImpassable(cars[i], angles[i]))
+                report._WallHits[i]++;
+
+            if (!isKnown[0] || !isKnown[1])
+                continue;
+
+            long time = reader.get_Time(record);
+            if (report._CrashPlayer < 0 || time <= report._CrashTime + _ToleranceNanos) {
+                double distance = Point.distance(cars[0].getCenterX(), cars[0].getCenterY(), cars[1].getCenterX(), cars[1].getCenterY());
+                report._ClosestDistance = Math.min(report._ClosestDistance, distance);
+            }
+            if (report._FirstOverlapTime == Long.MIN_VALUE && collisionManager.IsCollidingWithCar(cars[0], angles[0], cars[1], angles[1]))
+                report._FirstOverlapTime = time;
+        }
+    }
+
+    /**
+     * Gives the verdict of a match from the crash and the first overlap of the cars.
+     *
+     * @param report The findings.
+     * @return One of the verdicts.
+     */
+    private String Judge(MatchReport report) {
+        boolean isOverlapping = report._FirstOverlapTime != Long.MIN_VALUE;
+        if (report._CrashPlayer < 0)
+            return isOverlapping ? MISSED : CLEAN;
+        return isOverlapping && report._FirstOverlapTime <= report._CrashTime + _ToleranceNanos ? CONFIRMED : DISPUTED;
+    }
+
+    /**
+     * Describes the findings of a match in one line.
+     *
+     * @param report The findings.
+     * @return The description.
+     */
+    private static String Describe(MatchReport report) {
+        if (report._Error != null)
+            return String.format("%-10s %s: %s", ERROR, report._File, report._Error);
+
+        StringBuilder line = new StringBuilder();
+        line.append(String.format("%-10s %s  %s  %s  %d records", report._Verdict, report._File, report._MapName,
+                FormatTime(report._Duration), report._RecordCount));
+        if (report._CrashPlayer >= 0)
+            line.append(String.format("  crash by %s at %s", report._CrashPlayer == 0 ? "server" : "P" + report._CrashPlayer, FormatTime(report._CrashTime)));
+        if (report._FirstOverlapTime != Long.MIN_VALUE) {
+            line.append(String.format("  overlap at %s", FormatTime(report._FirstOverlapTime)));
+            if (report._CrashPlayer >= 0)
+                line.append(String.format(" (%+d ms)", TimeUnit.NANOSECONDS.toMillis(report._FirstOverlapTime - report._CrashTime)));
+        }
+        if (report._ClosestDistance != Double.MAX_VALUE)
+            line.append(String.format("  closest %.0f px", report._ClosestDistance));
+        if (report._WallHits[0] + report._WallHits[1] > 0)
+            line.append(String.format("  in walls P1 %d P2 %d", report._WallHits[0], report._WallHits[1]));
+        if (report._IsTruncated)
+            line.append("  truncated");
+        return line.toString();
+    }
+
+    /**
+     * Prints the totals of the analysis.
+     *
+     * @param reports The results.
+     * @param elapsed The time the analysis took, in nanoseconds.
+     */
+    private static void PrintSummary(MatchReport[] reports, long elapsed) {
+        Map<String, Long> verdicts = Stream.of(reports).collect(Collectors.groupingBy(r -> r._Verdict, Collectors.counting()));
+        long records = Stream.of(reports).mapToLong(r -> r._RecordCount).sum();
+        long checked = Stream.of(reports).mapToLong(r -> r._CheckedCount).sum();
+        long matchTime = Stream.of(reports).mapToLong(r -> r._Duration).sum();
+        double seconds = Math.max(1, elapsed) / 1e9;
+
+        System.out.printf("%d replays, %d records, %s of matches analysed in %.2f s (%.0f positions checked per second)%n",
+                reports.length, records, FormatTime(matchTime), seconds, checked / seconds);
+        System.out.printf("%s %d, %s %d, %s %d, %s %d, %s %d%n",
+                CLEAN, verdicts.getOrDefault(CLEAN, 0L), CONFIRMED, verdicts.getOrDefault(CONFIRMED, 0L),
+                DISPUTED, verdicts.getOrDefault(DISPUTED, 0L), MISSED, verdicts.getOrDefault(MISSED, 0L),
+                ERROR, verdicts.getOrDefault(ERROR, 0L));
+    }
+
+    /**
+     * Separates the options from the files on the command line.
+     *
+     * @param args  The command line.
+     * @param files Receives the files and directories.
+     * @return The options by name (without the dashes).
+     */
+    private static Properties ReadSettings(String[] args, List<Path> files) {
+        Properties settings = new Properties();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                files.add(Paths.get(arg));
+                continue;
+            }
+            if (i + 1 >= args.length)
+                throw new IllegalArgumentException("Missing value for " + arg);
+            settings.setProperty(arg.substring(2), args[++i]);
+        }
+        return settings;
+    }
+
+    /**
+     * Lists the replay files: the files given, and the .replay files in the directories given.
+     *
+     * @param paths The files and directories.
+     * @return The replay files, sorted within each directory.
+     * @throws IOException If a directory cannot be read.
+     */
+    private static List<Path> FindReplays(List<Path> paths) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (Path path : paths) {
+            if (!Files.isDirectory(path)) {
+                files.add(path);
+                continue;
+            }
+            try (Stream<Path> found = Files.walk(path)) {
+                files.addAll(found.filter(p -> Files.isRegularFile(p) && p.toString().endsWith("." + SharedResources.RPL_FileExtension))
+                        .sorted().collect(Collectors.toList()));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Reads a whole number setting.
+     *
+     * @param settings     The settings.
+     * @param name         The name of the setting.
+     * @param defaultValue The value if the setting is missing.
+     * @return The value of the setting.
+     */
+    private static int ReadInt(Properties settings, String name, int defaultValue) {
+        String value = settings.getProperty(name);
+        if (value == null)
+            return defaultValue;
+
+        try {
+            int result = Integer.parseInt(value.trim());
+            if (result < 0)
+                throw new IllegalArgumentException("The value of " + name + " cannot be negative: " + value);
+            return result;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The value of " + name + " is not a number: " + value);
+        }
+    }
+
+    /**
+     * Formats a moment of a match as minutes, seconds and milliseconds.
+     *
+     * @param time Nanoseconds since the start of the match.
+     * @return The moment, e.g. "01:05.320".
+     */
+    private static String FormatTime(long time) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(Math.abs(time));
+        return String.format("%s%02d:%02d.%03d", time < 0 ? "-" : "", millis / 60000, millis / 1000 % 60, millis % 1000);
+    }
+
+    /**
+     * Prints the options to the standard error.
+     */
+    private static void PrintUsage() {
+        System.err.println("Usage: ReplayAnalyzer [--threads <n>] [--tolerance <ms>] [--show ALL|DISPUTED|NONE] <file or directory>...");
+    }
+}
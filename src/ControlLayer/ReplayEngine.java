@@ -0,0 +1,387 @@
+package ControlLayer;
+
+import ModelLayer.Car;
+import ModelLayer.MapML.MapModel;
+import ModelLayer.Networking.Messages.MessageCarStatusUpdate;
+import ModelLayer.Networking.Messages.MessageType;
+import ModelLayer.Networking.ReplayReader;
+import ModelLayer.Player;
+import ViewLayer.Screens.InGameScr.CarInGameDisplayLabel;
+import ViewLayer.Screens.InGameScr.InGameScreen;
+import ViewLayer.SoundEngine;
+import ViewLayer.SwingUICore;
+
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays a recorded match (see ReplayReader) on the InGameScreen, in place of a GameEngine.
+ * Both cars display the recorded statuses, nothing is simulated and nothing is sent to the server.
+ * The playback can be paused, sped up or slowed down, and moved to any moment: the state of the cars there is
+ * taken from the nearest keyframe of the file, not by playing the match from the start.
+ * The keys are listed by SharedResources.RPL_Status_Keys.
+ */
+public class ReplayEngine extends GameEngine implements KeyListener {
+
+    /**
+     * The top level Swing JFrame that loads the InGameScreen JPanel.
+     */
+    private final SwingUICore _UICore;
+
+    /**
+     * Plays the sound effects of the cars.
+     */
+    private final SoundEngine _SoundEngine;
+
+    /**
+     * The recorded match.
+     */
+    private final ReplayReader _Reader;
+
+    /**
+     * The number of the first crash record, or -1 if the cars did not crash.
+     */
+    private final int _CrashRecord;
+
+    /**
+     * The time of the first record, where the playback starts. Nanoseconds since the start of the match.
+     */
+    private final long _FirstTime;
+
+    /**
+     * The latest recorded status of each player's car (index 0: player 1), and if there is one yet.
+     */
+    private final MessageCarStatusUpdate[] _States = {
+            new MessageCarStatusUpdate(MessageType.INGAMEPOSITIONUPDATE),
+            new MessageCarStatusUpdate(MessageType.INGAMEPOSITIONUPDATE)};
+    private final boolean[] _HasState = new boolean[2];
+
+    /**
+     * The timer which triggers the periodical updates of the screen.
+     */
+    private Timer _FrameRateTimer;
+
+    /**
+     * The number of the next record to play.
+     */
+    private int _NextRecord = 0;
+
+    /**
+     * The moment of the match on the screen, in nanoseconds since the start of the match.
+     */
+    private long _PlaybackTime;
+
+    /**
+     * The time of the last frame (System.nanoTime).
+     */
+    private long _LastFrameAt;
+
+    /**
+     * The speed of the playback relative to real time.
+     */
+    private double _Speed = 1;
+
+    /**
+     * True while the playback is paused.
+     */
+    private boolean _IsPaused = false;
+
+    /**
+     * True while the crashed car images are displayed.
+     */
+    private boolean _IsCrashDisplayed = false;
+
+    /**
+     * Plays a recorded match.
+     *
+     * @param UICore  The top level JFRame where the InGameScreen JPanel will be loaded
+     * @param SEngine The SoundEngine that plays background music and sounds.
+     * @param reader  The recorded match.
+     */
+    public ReplayEngine(SwingUICore UICore, SoundEngine SEngine, ReplayReader reader) {
+        super(UICore, SEngine);
+        _UICore = UICore;
+        _SoundEngine = SEngine;
+        _Reader = reader;
+        _CrashRecord = reader.FindCrash();
+        _FirstTime = reader.get_RecordCount() == 0 ? 0 : Math.min(0, reader.get_Time(0));
+    }
+
+    /**
+     * Sets up the players and the map of the recorded match, loads the InGameScreen JPanel, and starts playing
+     * from the first record.
+     */
+    @Override
+    public void StartGame() {
+        CurrentGameSession.CreateReplayPlayers(_Reader.get_CarIndex(SharedResources.PLAYER_1), _Reader.get_CarIndex(SharedResources.PLAYER_2));
+        CurrentGameSession.set_SelectedMapName(_Reader.get_MapName());
+        InstantiateSelectedMap();
+
+        _UICore.NavigateToInGameScreen();
+        _UICore.get_InGameScreen().set_KeyHandler(this);
+        _FrameRateTimer = new Timer(SharedResources.FRAMERATE, this); //Setting this instance to be the event handler as well
+        SeekTo(_FirstTime);
+        _LastFrameAt = System.nanoTime();
+        _FrameRateTimer.start();
+    }
+
+    /**
+     * Called when the Timer ticks. Moves the playback on by the time passed (times the speed), displays the
+     * recorded statuses up to there, and asks the UI to update its elements.
+     *
+     * @param e The action Event
+     */
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        if (e.getSource() != _FrameRateTimer)
+            return;
+
+        long now = System.nanoTime();
+        if (!_IsPaused)
+            PlayUntil(_PlaybackTime + (long) ((now - _LastFrameAt) * _Speed));
+        _LastFrameAt = now;
+
+        _UICore.UpdateInGameScreen();
+        ShowStatus();
+    }
+
+    /**
+     * Displays the crash of the cars when the playback reaches it. The playback pauses there.
+     */
+    @Override
+    public void CarCrashOccurred() {
+        DisplayCrash(true);
+        if (SharedResources.DGO_Default_Sound_On && !_IsPaused)
+            _SoundEngine.PlayCarCrashSound();
+        Pause(true);
+    }
+
+    /**
+     * Stops the playback. Called when the user returns to the main menu.
+     */
+    @Override
+    public void ShutDown() {
+        if (_FrameRateTimer != null)
+            _FrameRateTimer.stop();
+        _SoundEngine.SetCarAccelerateSound(false);
+    }
+
+    /**
+     * Nothing to do, no key is held during a replay.
+     */
+    @Override
+    public void HandleWindowGettingDeactivated() {
+    }
+
+    /**
+     * Handles the replay controls.
+     *
+     * @param e The keyEvent
+     */
+    @Override
+    public void keyPressed(KeyEvent e) {
+        long step = TimeUnit.MILLISECONDS.toNanos(SharedResources.CLN_REPLAY_SEEK_STEP);
+        long frame = TimeUnit.MILLISECONDS.toNanos(SharedResources.FRAMERATE);
+
+        switch (e.getKeyCode()) {
+            case KeyEvent.VK_SPACE:
+                if (_IsPaused && _NextRecord >= _Reader.get_RecordCount())
+                    SeekTo(_FirstTime); //Play again from the start
+                Pause(!_IsPaused);
+                break;
+            case KeyEvent.VK_LEFT:
+                SeekTo(_PlaybackTime - step);
+                break;
+            case KeyEvent.VK_RIGHT:
+                SeekTo(_PlaybackTime + step);
+                break;
+            case KeyEvent.VK_COMMA:
+                Pause(true);
+                SeekTo(_PlaybackTime - frame);
+                break;
+            case KeyEvent.VK_PERIOD:
+                Pause(true);
+                SeekTo(_PlaybackTime + frame);
+                break;
+            case KeyEvent.VK_UP:
+                _Speed = Math.min(_Speed * 2, SharedResources.CLN_REPLAY_MAX_SPEED);
+                break;
+            case KeyEvent.VK_DOWN:
+                _Speed = Math.max(_Speed / 2, SharedResources.CLN_REPLAY_MIN_SPEED);
+                break;
+            case KeyEvent.VK_HOME:
+                SeekTo(_FirstTime);
+                break;
+            case KeyEvent.VK_END:
+                //Just before the crash, to watch how it happened.
+                long end = _CrashRecord >= 0 ? _Reader.get_Time(_CrashRecord) : _Reader.get_Duration();
+                SeekTo(end - step);
+                break;
+            default:
+                return;
+        }
+        ShowStatus();
+    }
+
+    /**
+     * Not used.
+     *
+     * @param e The keyEvent
+     */
+    @Override
+    public void keyReleased(KeyEvent e) {
+    }
+
+    /**
+     * Not used.
+     *
+     * @param e The keyEvent
+     */
+    @Override
+    public void keyTyped(KeyEvent e) {
+    }
+
+    /**
+     * Displays the recorded statuses from the next record up to a moment. Plays the sound effects on the way,
+     * and stops at the crash or at the end of the recording.
+     *
+     * @param time Nanoseconds since the start of the match.
+     */
+    private void PlayUntil(long time) {
+        boolean isImpact = false;
+        boolean isCrash = false;
+        int count = _Reader.get_RecordCount();
+        while (_NextRecord < count && _Reader.get_Time(_NextRecord) <= time) {
+            int record = _NextRecord++;
+            int player = _Reader.get_PlayerNumber(record);
+            if (_Reader.is_CarState(record) && (player == SharedResources.PLAYER_1 || player == SharedResources.PLAYER_2)) {
+                _Reader.ReadState(record, _States[player - 1]);
+                _HasState[player - 1] = true;
+                isImpact |= _States[player - 1].is_CarImpactSoundToPlay() && !_Reader.is_Keyframe(record);
+            }
+            if (record == _CrashRecord) {
+                isCrash = true;
+                time = _Reader.get_Time(record);
+                break;
+            }
+        }
+        _PlaybackTime = Math.min(time, Math.max(_Reader.get_Duration(), _FirstTime));
+
+        DisplayStates();
+        if (SharedResources.DGO_Default_Sound_On) {
+            if (isImpact)
+                _SoundEngine.PlayCarImpactSound();
+            _SoundEngine.SetCarAccelerateSound(IsAnyCarAccelerating());
+        }
+
+        if (isCrash)
+            CarCrashOccurred();
+        else if (_NextRecord >= count)
+            Pause(true);
+    }
+
+    /**
+     * Moves the playback to a moment: the state of the cars there is found from the nearest keyframe.
+     *
+     * @param time Nanoseconds since the start of the match. Kept within the recording.
+     */
+    private void SeekTo(long time) {
+        _PlaybackTime = Math.max(_FirstTime, Math.min(time, _Reader.get_Duration()));
+        _NextRecord = _Reader.Seek(_PlaybackTime, _States, _HasState);
+        DisplayStates();
+        DisplayCrash(_CrashRecord >= 0 && _CrashRecord < _NextRecord);
+        if (_CrashRecord >= 0 && _CrashRecord < _NextRecord)
+            Pause(true);
+        _SoundEngine.SetCarAccelerateSound(!_IsPaused && SharedResources.DGO_Default_Sound_On && IsAnyCarAccelerating());
+        _UICore.UpdateInGameScreen();
+    }
+
+    /**
+     * Displays the latest recorded status of both cars. A car without a status yet is displayed at its starting point.
+     */
+    private void DisplayStates() {
+        MapModel map = CurrentGameSession.get_MapModel();
+        for (int i = 0; i < _States.length; i++) {
+            Car car = CurrentGameSession.get_CurrentPlayers().get(i).get_Car();
+            if (_HasState[i]) {
+                car.DisplayStatus(_States[i]);
+            } else {
+                boolean isPlayer1 = i == SharedResources.PLAYER_1 - 1;
+                car.get_CarDisplay().setLocation(isPlayer1 ? map.getCAR_StartingPoint_X_Player1() : map.getCAR_StartingPoint_X_Player2(),
+                        isPlayer1 ? map.getCAR_StartingPoint_Y_Player1() : map.getCAR_StartingPoint_Y_Player2());
+                car.get_CarDisplay().SetStartImage(map.getCAR_Starting_Angle());
+            }
+        }
+    }
+
+    /**
+     * Displays the cars crashed or not. Needed when the playback is moved back from after the crash.
+     *
+     * @param isCrashed True to display the crashed car images.
+     */
+    private void DisplayCrash(boolean isCrashed) {
+        if (isCrashed == _IsCrashDisplayed)
+            return;
+        _IsCrashDisplayed = isCrashed;
+
+        InGameScreen screen = _UICore.get_InGameScreen();
+        if (isCrashed) {
+            screen.SetCarLabelImagesCrashed();
+            return;
+        }
+        for (Player player : CurrentGameSession.get_CurrentPlayers()) {
+            CarInGameDisplayLabel label = player.get_Car().get_CarDisplay();
+            label.SetImageToSpecificIndex(player.get_Car().GetCurrentAngleIndex());
+        }
+        screen.repaint();
+    }
+
+    /**
+     * Pauses or continues the playback.
+     *
+     * @param isPaused True to pause.
+     */
+    private void Pause(boolean isPaused) {
+        _IsPaused = isPaused;
+        _LastFrameAt = System.nanoTime();
+        if (isPaused)
+            _SoundEngine.SetCarAccelerateSound(false);
+    }
+
+    /**
+     * Tells if any of the cars is accelerating in its latest recorded status.
+     *
+     * @return True if a car is accelerating.
+     */
+    private boolean IsAnyCarAccelerating() {
+        for (int i = 0; i < _States.length; i++) {
+            if (_HasState[i] && _States[i].is_IsAccelerating())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Displays the moment, the length and the speed of the playback, and the controls.
+     */
+    private void ShowStatus() {
+        String state = _IsCrashDisplayed ? SharedResources.RPL_Status_Crashed : _IsPaused ? SharedResources.RPL_Status_Paused : "";
+        String status = String.format("%s / %s   x%s   %s", FormatTime(_PlaybackTime), FormatTime(_Reader.get_Duration()),
+                _Speed >= 1 ? Integer.toString((int) _Speed) : Double.toString(_Speed), state);
+        _UICore.get_InGameScreen().ShowReplayStatus("<html><center>" + status + "<br>" + SharedResources.RPL_Status_Keys + "</center></html>");
+    }
+
+    /**
+     * Formats a moment of the match as minutes, seconds and milliseconds.
+     *
+     * @param time Nanoseconds since the start of the match.
+     * @return The moment, e.g. "01:05.320".
+     */
+    private static String FormatTime(long time) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(Math.abs(time));
+        return String.format("%s%02d:%02d.%03d", time < 0 ? "-" : "", millis / 60000, millis / 1000 % 60, millis % 1000);
+    }
+}
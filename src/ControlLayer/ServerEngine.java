@@ -1,13 +1,14 @@
 package ControlLayer;
 
 import ModelLayer.Networking.Server;
+import ModelLayer.Networking.ServerStatusListener;
 import ViewLayer.SwingUICore;
 
 /**
  * Instantiates, starts and stops the Server based on user interaction.
  * Also commands tha SwingUICore to load up the server screen.
  */
-public class ServerEngine {
+public class ServerEngine implements ServerStatusListener {
 
     /**
      * The top level JFRame where the ServerScreen JPanel loaded
@@ -59,6 +60,7 @@ public class ServerEngine {
     public void ServerStartStopButtonPressed() {
 
         if (!_Server.IsRunning()) {
+            _Server.set_ExecutionMode(_UICore.get_ServerScreen().GetSelectedExecutionMode());
             _Server.StartServer(_UICore.get_ServerScreen().GetSelectedPortNumber());
         } else {
             _Server.StopServer();
@@ -92,6 +94,7 @@ public class ServerEngine {
      * Called ny the server to notify the controller that the server is launched successfully.
      * In return, the controller asks the UI to change the text of the start-stop button accordingly.
      */
+    @Override
     public void ServerIsUp() {
         _UICore.get_ServerScreen().SetStartButtonText(true);
     }
@@ -100,6 +103,7 @@ public class ServerEngine {
      * Called ny the server to notify the controller that the server is stopped.
      * In return, the controller asks the UI to change the text of the start-stop button accordingly.
      */
+    @Override
     public void ServerIsDown() {
         _UICore.get_ServerScreen().SetStartButtonText(false);
     }
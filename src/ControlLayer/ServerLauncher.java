@@ -0,0 +1,224 @@
+package ControlLayer;
+
+import ModelLayer.Enumerations.LogLevel;
+import ModelLayer.Enumerations.ServerExecutionMode;
+import ModelLayer.Networking.AsyncLogger;
+import ModelLayer.Networking.ConsoleLogSink;
+import ModelLayer.Networking.RollingFileLogSink;
+import ModelLayer.Networking.Server;
+import ModelLayer.Networking.ServerStatusListener;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Runs the server without any user interface: no Swing frame, no images or sounds, the log goes to the standard output.
+ * Meant for running many lean server instances, e.g. in containers.
+ * <pre>
+ * java -Djava.awt.headless=true -cp Race.jar ControlLayer.ServerLauncher [options]
+ *
+ *   --config &lt;file&gt;       Reads the settings from a properties file. Options on the command line override it.
+ *   --port &lt;number&gt;       The port to listen on (TCP, and UDP for the position updates). Default: the first valid port.
+ *   --mode &lt;mode&gt;         THREAD_PER_SESSION, VIRTUAL_THREAD or EVENT_LOOP. Default: SRV_DEFAULT_EXECUTION_MODE.
+ *   --event-loops &lt;n&gt;     Number of event loops in the EVENT_LOOP mode. 0 means one per processor core.
+ *   --max-sessions &lt;n&gt;    Most clients served at the same time. 0 means no limit.
+ *   --log-level &lt;level&gt;   DEBUG, INFO, WARN or ERROR. Default: SRV_LOG_LEVEL.
+ *   --log-file &lt;file&gt;     Also writes the log to a file, starting a new one every SRV_LOG_FILE_MAX_SIZE bytes.
+ * </pre>
+ * The properties file uses the same names without the dashes (e.g. "port=24816").
+ * The server stops when the process is terminated (e.g. Ctrl+C or SIGTERM), telling the clients first.
+ */
+public class ServerLauncher implements ServerStatusListener {
+
+    /**
+     * The longest time to wait for the log to be written out before the process ends, in milliseconds.
+     */
+    private static final long LOG_FLUSH_TIMEOUT = 2000;
+
+    /**
+     * Released when the server has stopped, which ends the main thread.
+     */
+    private final CountDownLatch _Stopped = new CountDownLatch(1);
+
+    /**
+     * Entry point of the headless server.
+     *
+     * @param args The options, see the class description.
+     */
+    public static void main(String[] args) {
+        Properties settings;
+        try {
+            settings = ReadSettings(args);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            PrintUsage();
+            System.exit(2);
+            return;
+        }
+
+        try {
+            new ServerLauncher().Run(settings);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            PrintUsage();
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Starts the server with the settings and waits until it stops.
+     *
+     * @param settings The settings read from the config file and the command line.
+     */
+    private void Run(Properties settings) {
+        int port = ReadInt(settings, "port", SharedResources.SCP_VALID_PORT_NUMBERS[0]);
+        ServerExecutionMode mode = ReadMode(settings);
+        int eventLoops = ReadInt(settings, "event-loops", SharedResources.SRV_EVENT_LOOP_COUNT);
+        int maxSessions = ReadInt(settings, "max-sessions", SharedResources.SRV_MAX_SESSIONS);
+        LogLevel logLevel = ReadLogLevel(settings);
+        String logFile = settings.getProperty("log-file");
+
+        Server server = new Server(new ConsoleLogSink(System.out), this);
+        server.set_ExecutionMode(mode);
+        server.set_EventLoopCount(eventLoops);
+        server.set_MaxSessions(maxSessions);
+        AsyncLogger log = server.get_Logger();
+        log.set_Level(logLevel);
+        if (logFile != null)
+            log.AddSink(new RollingFileLogSink(new File(logFile), SharedResources.SRV_LOG_FILE_MAX_SIZE, SharedResources.SRV_LOG_FILE_COUNT));
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (server.IsRunning())
+                server.StopServer();
+            log.Flush(LOG_FLUSH_TIMEOUT);
+        }, "ServerShutdown"));
+
+        server.StartServer(port);
+        if (!server.IsRunning()) {
+            log.Flush(LOG_FLUSH_TIMEOUT);
+            System.exit(1);
+        }
+
+        try {
+            _Stopped.await();
+        } catch (InterruptedException e) {
+            server.StopServer();
+        }
+        log.Flush(LOG_FLUSH_TIMEOUT);
+    }
+
+    /**
+     * Reads the settings from the config file (if given) and the command line.
+     *
+     * @param args The command line options.
+     * @return The settings by name (without the dashes).
+     * @throws IOException If the config file cannot be read.
+     */
+    private static Properties ReadSettings(String[] args) throws IOException {
+        Properties fromArgs = new Properties();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--"))
+                throw new IllegalArgumentException("Unknown argument: " + arg);
+            if (i + 1 >= args.length)
+                throw new IllegalArgumentException("Missing value for " + arg);
+            fromArgs.setProperty(arg.substring(2), args[++i]);
+        }
+
+        Properties settings = new Properties();
+        String configFile = fromArgs.getProperty("config");
+        if (configFile != null) {
+            try (InputStream in = new FileInputStream(configFile)) {
+                settings.load(in);
+            }
+        }
+        settings.putAll(fromArgs);
+        return settings;
+    }
+
+    /**
+     * Reads a whole number setting.
+     *
+     * @param settings     The settings.
+     * @param name         The name of the setting.
+     * @param defaultValue The value if the setting is missing.
+     * @return The value of the setting.
+     */
+    private static int ReadInt(Properties settings, String name, int defaultValue) {
+        String value = settings.getProperty(name);
+        if (value == null)
+            return defaultValue;
+
+        try {
+            int result = Integer.parseInt(value.trim());
+            if (result < 0)
+                throw new IllegalArgumentException("The value of " + name + " cannot be negative: " + value);
+            return result;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The value of " + name + " is not a number: " + value);
+        }
+    }
+
+    /**
+     * Reads the execution mode setting.
+     *
+     * @param settings The settings.
+     * @return The execution mode, or SharedResources.SRV_DEFAULT_EXECUTION_MODE if the setting is missing.
+     */
+    private static ServerExecutionMode ReadMode(Properties settings) {
+        String value = settings.getProperty("mode");
+        if (value == null)
+            return SharedResources.SRV_DEFAULT_EXECUTION_MODE;
+
+        try {
+            return ServerExecutionMode.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown mode: " + value);
+        }
+    }
+
+    /**
+     * Reads the log level setting.
+     *
+     * @param settings The settings.
+     * @return The log level, or SharedResources.SRV_LOG_LEVEL if the setting is missing.
+     */
+    private static LogLevel ReadLogLevel(Properties settings) {
+        String value = settings.getProperty("log-level");
+        if (value == null)
+            return SharedResources.SRV_LOG_LEVEL;
+
+        try {
+            return LogLevel.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown log level: " + value);
+        }
+    }
+
+    /**
+     * Prints the options to the standard error.
+     */
+    private static void PrintUsage() {
+        System.err.println("Usage: ServerLauncher [--config <file>] [--port <number>] [--mode THREAD_PER_SESSION|VIRTUAL_THREAD|EVENT_LOOP]"
+                + " [--event-loops <n>] [--max-sessions <n>] [--log-level DEBUG|INFO|WARN|ERROR] [--log-file <file>]");
+    }
+
+    /**
+     * Called when the server has started. The log says so already.
+     */
+    @Override
+    public void ServerIsUp() {
+    }
+
+    /**
+     * Called when the server has stopped. Ends the main thread.
+     */
+    @Override
+    public void ServerIsDown() {
+        _Stopped.countDown();
+    }
+}
@@ -1,6 +1,8 @@
 package ControlLayer;
 
 import ModelLayer.CollisionManagement.CarBounds;
+import ModelLayer.Enumerations.LogLevel;
+import ModelLayer.Enumerations.ServerExecutionMode;
 
 import java.awt.*;
 import java.awt.event.KeyEvent;
@@ -21,6 +23,7 @@ public class SharedResources {
     /*     Menu bar settings         */
     public  static  final String MB_GameMenuString = "Game";
     public  static  final String MB_StartNewGameMenuString = "Start new game";
+    public  static  final String MB_WatchReplayMenuString = "Watch a replay...";
     public  static  final String MB_SettingsMenuString = "Settings";
     public  static  final String MB_HelpMenuString = "Help";
     public  static  final String MB_HelpAboutMenuString = "About the game";
@@ -207,6 +210,8 @@ public class SharedResources {
     public static final float GCS_Car_NoAcceleration_Slowdown_Ratio = 0.9f; //Multiply current speed with 0.9
     public static final float GCS_CarNoAcceleration_Stop_Threshold = 0.05f; //Stop the car reaching this threshold if no acceleration
     public static final int GCS_Car_Virtual_Speed_Max = 100; //The actual speed converted into a virtual scale (e.g. mph)
+    public static final int GCS_Collision_Grid_Cell_Size = 64; //Pixels per side of the grid cells the map objects are bucketed into for the collision checks
+    public static final boolean GCS_Collision_Raster_Mask = false; //Checks the cars against the map with a rasterised mask of the map objects (conservative by about a pixel) instead of their exact geometry. Server and clients must agree.
     /* INGAME: Heads Up Display (HUD) */
     public static final int HUD_Panel_Width = 200;
     public static final int HUD_Panel_Height = 75;
@@ -241,10 +246,71 @@ public class SharedResources {
     public static final String GO_GameOverWithError_Message = "The game has to be ended due to an error :(.\nPlease return to the main menu to start a new game.\n\nThe error was: ";
     public static final String GO_GameOverWithDropOut_Message = "The game has ended as your opponent have left the game.\nConsider yourself a winner!\n\nClick 'Ok' to return to the main menu and start a new game.";
     public static final String GO_GameOverWithServerDown_Message = "The game has ended as the server went down.\nConsider yourself a winner!\n\nClick 'Ok' to return to the main menu and start a new game.";
+    /* Replay playback */
+    public static final String RPL_FileDescription = "Replay files (*.replay)";
+    public static final String RPL_FileExtension = "replay";
+    public static final String RPL_OpenError_Title = "Watch a replay";
+    public static final String RPL_OpenError_Message = "The replay cannot be played.\n\nThe error was: ";
+    public static final String RPL_Status_Paused = "PAUSED";
+    public static final String RPL_Status_Crashed = "CRASH";
+    public static final String RPL_Status_Keys = "Space: pause  Left/Right: seek  Up/Down: speed  ,/.: step  Home/End: start/crash";
+    public static final Font RPL_Status_Font = new Font("Consolas", Font.BOLD, 10);
+    public static final Color RPL_Status_Bg_Color = new Color(255,255,255,192);
+    public static final int RPL_Status_X = 205;
+    public static final int RPL_Status_Y = 0;
+    public static final int RPL_Status_Width = 440;
+    public static final int RPL_Status_Height = 36;
     /**
      * SERVER Related
      */
     public static final int SRV_MAX_SESSION_EXCEPTION_INAROW = 5; //Maximum number of exceptions in a row before server disconnects the client
+    public static final ServerExecutionMode SRV_DEFAULT_EXECUTION_MODE = ServerExecutionMode.THREAD_PER_SESSION; //Preselected on the server screen
+    public static final int SRV_EVENT_LOOP_COUNT = 0; //Number of event loops in the event loop mode. 0 means one per processor core.
+    public static final int SRV_MAX_SESSIONS = 0; //Most clients served at the same time, further connections are refused. 0 means no limit.
+    public static final boolean SRV_TCP_NO_DELAY = true; //Small status updates are sent straight away instead of being delayed by Nagle's algorithm
+    public static final boolean SRV_UDP_ENABLED = true; //Offers a UDP channel (on the server's port number) for the position updates to binary clients
+    public static final int SRV_LOBBY_MAX_WAIT = 300; //Seconds a player waits in the lobby for an opponent before the request expires
+    public static final int SRV_LOBBY_SWEEP_INTERVAL = 5; //Seconds between two checks for expired lobby requests
+    public static final boolean SRV_SERVER_SIMULATION = false; //The server runs the physics and the collisions of the matches, the clients only send their inputs
+    public static final int SRV_TICK_INTERVAL = FRAMERATE; //Milliseconds between two ticks of a match simulated on the server
+    public static final LogLevel SRV_LOG_LEVEL = LogLevel.INFO; //Less important lines are dropped before they are formatted
+    public static final int SRV_LOG_BUFFER_SIZE = 8192; //Log lines queued for the log thread before new ones are dropped
+    public static final int SRV_LOG_DRAIN_INTERVAL = 50; //Milliseconds the log thread sleeps when there is nothing to write
+    public static final int SRV_LOG_UI_MAX_LINES = 2000; //Lines kept on the server screen, older ones are removed
+    public static final long SRV_LOG_FILE_MAX_SIZE = 10L * 1024 * 1024; //Bytes a log file reaches before a new one is started
+    public static final int SRV_LOG_FILE_COUNT = 5; //Older log files kept next to the current one
+    public static final boolean SRV_JMX_ENABLED = true; //Exports the server metrics (traffic, latencies, sessions, matches) through JMX while the server runs
+    public static final String SRV_JMX_DOMAIN = "Race"; //Domain of the JMX name of the server metrics ("Race:type=ServerMetrics,port=...")
+    public static final int SRV_OUTBOX_CAPACITY = 64; //Position updates queued for a client before new ones are dropped (about 2.5 seconds of updates)
+    public static final int SRV_OUTBOX_DRAIN_TIMEOUT = 1000; //Milliseconds an ending session waits for its writer to send what is still queued (e.g. server down) before closing the socket
+    public static final int SRV_MATCH_START_LEAD = 500; //Milliseconds from sending the start messages to the start of a match, on top of the longer round trip of the two players
+    public static final boolean SRV_REPLAY_ENABLED = false; //Records every match into a replay file (start parameters, relayed position updates and crashes)
+    public static final String SRV_REPLAY_DIRECTORY = "replays"; //Directory of the replay files, relative to the working directory
+    public static final int SRV_REPLAY_MAX_SIZE = 8 * 1024 * 1024; //Bytes a replay file is mapped with. About 2.5 hours of a match at 25 updates per second per player.
+    public static final int SRV_REPLAY_KEYFRAME_INTERVAL = 1000; //Milliseconds between two keyframes of a replay (the state of both cars, indexed for seeking)
+    /**
+     * CLIENT networking
+     */
+    public static final int CLN_HELLO_ANSWER_TIMEOUT = 2000; //Milliseconds to wait for the server to choose a codec. Older servers do not answer.
+    public static final int CLN_STATUS_WRITER_PARK_TIMEOUT = 100; //Milliseconds the status writer waits for an update before checking again if the game still runs
+    public static final int CLN_PING_INTERVAL = 1000; //Milliseconds between two pings while waiting for an opponent or playing
+    public static final int CLN_CLOCK_SYNC_WINDOW = 8; //The clock offset is taken from the ping with the shortest round trip of this many
+    public static final int CLN_MAX_START_WAIT = 5000; //Milliseconds a client waits at most for the scheduled start of a match
+    public static final int CLN_REMOTE_RENDER_DELAY = 2 * FRAMERATE; //Milliseconds the opponent's car is displayed in the past, so it can move smoothly between the updates
+    public static final int CLN_STATUS_MIN_INTERVAL = FRAMERATE / 2; //Milliseconds the local car leaves at least between two status updates, even for a turn
+    public static final int CLN_STATUS_MAX_INTERVAL = 3 * FRAMERATE; //Milliseconds between two status updates of a moving car at most, on the most jittery link
+    public static final int CLN_STATUS_HEARTBEAT_INTERVAL = 1000; //Milliseconds between two status updates of a car standing still
+    public static final int CLN_REMOTE_UPDATE_INTERVAL = CLN_STATUS_MIN_INTERVAL; //Milliseconds the sender leaves at least between two updates of the opponent's car
+    public static final int CLN_REMOTE_MAX_EXTRAPOLATION = 200; //Milliseconds the opponent's car keeps moving with its last speed and angle if no update arrives
+    public static final int CLN_REMOTE_BUFFERED_UPDATES = 16; //Updates of the opponent's car kept for the smoothing
+    public static final int CLN_REPLAY_SEEK_STEP = 5000; //Milliseconds a replay jumps forward or back by with the arrow keys
+    public static final double CLN_REPLAY_MIN_SPEED = 0.125; //Slowest playback of a replay, relative to real time
+    public static final double CLN_REPLAY_MAX_SPEED = 16; //Fastest playback of a replay, relative to real time
+    /**
+     * NETWORKING (client and server)
+     */
+    public static final int NET_SNAPSHOT_KEYFRAME_INTERVAL = 10; //Binary position updates sent as deltas between two keyframes. Bounds the recovery after a lost keyframe.
+    public static final int NET_UDP_MAX_PACKET_SIZE = 512; //Largest datagram of the UDP channel. Position updates need less than 20 bytes.
     /* Server screen / control panel */
     public static final Font SRS_FontFaceMedium = new Font("Consolas", Font.BOLD, 12);
     public static final Font SRS_FontFaceLarge = new Font("Consolas", Font.BOLD, 20);
@@ -255,6 +321,7 @@ public class SharedResources {
     public static final String SRS_START_SERVER = "Start server!";
     public static final String SCP_SERVER_LAUNCHER = "Server Launcher";
     public static final String SCP_PORTS_TEXT = "Ports:";
+    public static final String SCP_EXECUTION_MODE_TEXT = "Mode:";
     public static final String SRV_SERVER_LOG_TEXT = "Server log";
     public static final String SRV_CONNECTION_STATUS_TEXT = "Connection status";
     public static final String LS_ClientPanel_IP_Default_TEXT = "127.0.0.1";
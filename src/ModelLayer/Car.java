@@ -5,6 +5,7 @@ import ControlLayer.SharedResources;
 import ModelLayer.FileLoaders.ImageFileLoader;
 import ModelLayer.Networking.Client;
 import ModelLayer.Networking.Messages.MessageCarStatusUpdate;
+import ModelLayer.Networking.Messages.MessageInGameInput;
 import ModelLayer.Networking.Messages.MessageType;
 import ViewLayer.Screens.InGameScr.CarInGameDisplayLabel;
 
@@ -19,6 +20,8 @@ import java.util.HashSet;
  * - Variable speed limits, based on surface (road vs grass) and direction (reverse of forward) <br>
  * - Real speed (pixel/frame rate) to Virtual speed (0-100 mph scale) conversion. <br>
  * - Handling collisions (using the CollisionManager class)<br>
+ * The movement model itself is the CarPhysics, which the server uses as well when it simulates the match.
+ * In that case the car only sends the pressed keys and displays the state the server sends back.
  */
 public class Car
 {
@@ -47,24 +50,14 @@ public class Car
      */
     boolean _IsAccellerating = false;
     /**
-     * The current speed represented as the number of pixel moves on screen between two frame changes.
-     * Example: 'speed = 3' means that the car needs to be moved 3 pixels
-     * horizontally or vertically from its current position if the car is rotated with 0, 90, 180, 270 angles.
-     * (if the car has a different angle, then trigonometric calculation applied to get the exact number)
+     * The movement model of the car: speed, direction and the surface it is on.
      */
-    private float _Speed;
+    private final CarPhysics _Physics = new CarPhysics();
     /**
-     * True if the car is in reverse mode. False if it is in forward or standing mode.
+     * True if the server simulates the match. The car then sends the pressed keys instead of its status,
+     * and its display follows the server's snapshots.
      */
-    private boolean _ReverseMode;
-    /**
-     * True if the car is currently on a grass surface (which impacts its speed limit).
-     */
-    private boolean _OnGrass;
-    /**
-     * True if the car hits the wall. This will result in the speed dropping to 0.
-     */
-    private boolean _LastMoveHitTheWall;
+    private boolean _IsServerSimulated = false;
     /**
      * True if the car crashes with other car.
      */
@@ -89,6 +82,10 @@ public class Car
      * Becomes true when two car crashes. This will sent to the remote client.
      */
     private boolean _IsCarCrashed = false;
+    /**
+     * Decides which status updates are worth sending to the remote client.
+     */
+    private final StatusSendPolicy _SendPolicy = new StatusSendPolicy();
 
 
     /**
@@ -122,6 +119,11 @@ public class Car
      * @param keyCode The keycode of the pressed key.
      */
     public void HandlePressedKey(int keyCode) {
+        if (_IsServerSimulated) {
+            HandlePressedKeyOnServer(keyCode);
+            return;
+        }
+
         //If accelerate (up) button pressed then register it with the pressed keys
         if(keyCode == SharedResources.GCS_ControlKeys_Player_1[0] || keyCode == SharedResources.GCS_ControlKeys_Player_2[0] ) {
             _CurrentlyPressedKeys.add(keyCode); //No duplicates, as this is a hash set
@@ -150,7 +152,57 @@ public class Car
      */
     public void HandleReleasedKey(int keyCode)
     {
-        _CurrentlyPressedKeys.remove(keyCode);
+        if (_CurrentlyPressedKeys.remove(keyCode) && _IsServerSimulated)
+            SendInputToTheServer(MessageInGameInput.TURN_NONE);
+    }
+
+    /**
+     * Handles a pressed control key when the server simulates the match: the server is told about the key,
+     * including a turn, and decides what happens.
+     * @param keyCode The keycode of the pressed key.
+     */
+    private void HandlePressedKeyOnServer(int keyCode) {
+        //Key repeat of a held key changes nothing.
+        if (!_CurrentlyPressedKeys.add(keyCode))
+            return;
+
+        int turn = MessageInGameInput.TURN_NONE;
+        if (keyCode == SharedResources.GCS_ControlKeys_Player_1[2] || keyCode == SharedResources.GCS_ControlKeys_Player_2[2])
+            turn = MessageInGameInput.TURN_LEFT;
+        if (keyCode == SharedResources.GCS_ControlKeys_Player_1[3] || keyCode == SharedResources.GCS_ControlKeys_Player_2[3])
+            turn = MessageInGameInput.TURN_RIGHT;
+        SendInputToTheServer(turn);
+    }
+
+    /**
+     * Sends the currently held keys to the server, which simulates the match.
+     * @param turn One of the MessageInGameInput.TURN_ values, if a turning key has just been pressed.
+     */
+    private void SendInputToTheServer(int turn) {
+        if (_Client == null)
+            _Client = SharedResources.MainController.get_Client();
+
+        MessageInGameInput input = new MessageInGameInput();
+        input.set_IsForwardPressed(IsForwardPressed());
+        input.set_IsBackwardPressed(IsBackwardPressed());
+        input.set_Turn(turn);
+        _Client.SendInputMessage(input);
+    }
+
+    /**
+     * Tells if an accelerate key is held.
+     * @return True if an accelerate key is held.
+     */
+    private boolean IsForwardPressed() {
+        return _CurrentlyPressedKeys.contains(SharedResources.GCS_ControlKeys_Player_1[0]) || _CurrentlyPressedKeys.contains(SharedResources.GCS_ControlKeys_Player_2[0]);
+    }
+
+    /**
+     * Tells if a reverse/break key is held.
+     * @return True if a reverse/break key is held.
+     */
+    private boolean IsBackwardPressed() {
+        return _CurrentlyPressedKeys.contains(SharedResources.GCS_ControlKeys_Player_1[1]) || _CurrentlyPressedKeys.contains(SharedResources.GCS_ControlKeys_Player_2[1]);
     }
 
     /**
@@ -174,6 +226,10 @@ public class Car
                 SharedResources.MainController.get_GameEngine().CarImpactOccurred();
                 _CarImpactSoundToPlay = true;
             }
+
+            //The opponent learns about the turn straight away, not with the next frame.
+            if (!_IsCarCrashed)
+                SendStatusUpdateToTheServer();
         }
     }
 
@@ -206,6 +262,10 @@ public class Car
      */
     public void CalculateNextFrame()
     {
+        //The server moves the car, the display follows its snapshots.
+        if (_IsServerSimulated)
+            return;
+
         UpdateSpeed();
         CalculateNewLocation();
 
@@ -214,12 +274,17 @@ public class Car
     }
 
     /**
-     * Sends status updates to the server using the client.
+     * Sends status updates to the server using the client, if the send policy finds the update worth sending.
      */
     private void SendStatusUpdateToTheServer() {
         if (_Client == null)
             _Client = SharedResources.MainController.get_Client();
 
+        _SendPolicy.AdaptToLink(_Client.get_JitterNanos());
+        if (!_SendPolicy.ShouldSend(_CarDisplay.getX(), _CarDisplay.getY(), _CurrentAngle, GetVirtualSpeed(),
+                _IsAccellerating, _CarImpactSoundToPlay, System.nanoTime()))
+            return;
+
         MessageCarStatusUpdate update = new MessageCarStatusUpdate(MessageType.INGAMEPOSITIONUPDATE);
         update.set_CurrentAngle(_CurrentAngle);
         update.set_Location_X(_CarDisplay.getX());
@@ -236,35 +301,7 @@ public class Car
      */
     private void CalculateNewLocation()
     {
-        Point loc = _CarDisplay.getLocation();
-
-        //Check if there is no diagonal movement required, to simplify calculation
-        switch (Math.round(_CurrentAngle)) {
-            //Car facing upwards. Moving up on Y axis. (opposite if reversed)
-            case 0:
-                loc.translate(0,ReverseModeCheck(0 - Math.round(_Speed) ));
-                break;
-
-            //Car facing downwards. Moving down on Y axis. (opposite if reversed)
-            case 180:
-                loc.translate(0, ReverseModeCheck(Math.round(_Speed)));
-                break;
-
-            //Car facing towards west. Moving up on X axis. (opposite if reversed)
-            case 90:
-                loc.translate(ReverseModeCheck(Math.round(_Speed)),0);
-                break;
-
-            //Car facing towards east. Moving down on Y axis. (opposite if reversed)
-            case 270:
-                loc.translate(ReverseModeCheck(0 - Math.round(_Speed)), 0);
-                break;
-            default:
-                //Use trigonometric functions to calculate the new location
-                loc = NewLocationByTrigonometric(loc);
-                break;
-        }
-
+        Point loc = _Physics.NextLocation(_CarDisplay.getLocation(), _CurrentAngle);
         CheckForCollisionAndMove(loc); //Send the new proposed location for collision checking.
     }
 
@@ -284,7 +321,7 @@ public class Car
         //Checking for collision with other car.
         _LastMoveHitOtherCar = CurrentGameSession.get_CollisionManager().isCollidingWithOtherCars(this, r, GetAngleIndexFromAngle(_CurrentAngle));
         if (_LastMoveHitOtherCar) {
-            _Speed = 0;
+            _Physics.HitOtherCar();
             _IsCarCrashed = true;
             _Client.SendCarCrashedMessage(); // Notify the remote client.
             SharedResources.MainController.get_GameEngine().CarCrashOccurred(); //Notify game engine.
@@ -292,20 +329,19 @@ public class Car
         }
 
         //Check if the car would hit a wall/rock and the speed needed to be zeroed
-        _LastMoveHitTheWall = CurrentGameSession.get_CollisionManager().IsCollidingWithImpassable(r, GetAngleIndexFromAngle(_CurrentAngle));
-        if (!_LastMoveHitTheWall) {
+        if (!CurrentGameSession.get_CollisionManager().IsCollidingWithImpassable(r, GetAngleIndexFromAngle(_CurrentAngle))) {
             _CarImpactSoundToPlay = false;
             _CarDisplay.setLocation(nLocation); //No collision. Set the JLabel about the new location.
         } else {
             //Hitting the edge of the racing track or a tree.
-            _Speed = 0;
+            _Physics.HitTheWall();
             SharedResources.MainController.get_GameEngine().CarImpactOccurred(); //Notify game engine.
             _CarImpactSoundToPlay = true;
             return;
         }
 
         //Check if the car hits a grass area and slowing down would be needed from the next frame
-        _OnGrass = CurrentGameSession.get_CollisionManager().IsCollidingWithGrass(r, GetAngleIndexFromAngle(_CurrentAngle));
+        _Physics.Moved(CurrentGameSession.get_CollisionManager().IsCollidingWithGrass(r, GetAngleIndexFromAngle(_CurrentAngle)));
     }
 
     /**
@@ -353,205 +389,19 @@ public class Car
     }
 
 
-    /**
-     * Inverts the newSpeed parameter's value to negative if the reverse mode is on.
-     * @param newSpeed The speed to check and change against reverse mode.
-     * @return Returns newSpeed if not in reverse mode. Returns (0-newSpeed) if reverse mode is true.
-     */
-    private int ReverseModeCheck(int newSpeed)
-    {
-        if (!_ReverseMode)
-        {
-            return newSpeed;
-        }
-        else
-        {
-            return (0 - newSpeed);
-        }
-    }
-
-    /**
-     * The Hypotenuse of the triangle (the speed) and the angle are known.
-     * Calculating the Opposite side of the triangle (X axis) by using Sine.
-     * Calculating the Adjacent side of the triangle (Y axis) by using Cosine
-     * @param currentLoc The location where the car would move from.
-     * @return Returns the new location based on the current speed and angle.
-     */
-    private Point NewLocationByTrigonometric(Point currentLoc)
-    {
-        //The angle in radians
-        double angleRad = Math.toRadians(_CurrentAngle);
-
-        //sin * speed = X axis
-        double sin = Math.sin(angleRad);
-        double dx = _Speed * sin;
-
-        //cos * speed = Y axis
-        double cos = Math.cos(angleRad);
-        double dy = 0- (_Speed * cos);
-
-        currentLoc.translate(ReverseModeCheck((int) Math.round(dx)), ReverseModeCheck((int) Math.round(dy)));
-        return currentLoc;
-    }
-
     /**
      * Changes the current speed based on the currently pressed buttons.
+     * Starts or stops the acceleration sound effect accordingly.
      */
     private void UpdateSpeed()
     {
-        boolean isForwardPressed = _CurrentlyPressedKeys.contains(SharedResources.GCS_ControlKeys_Player_1[0]) || _CurrentlyPressedKeys.contains(SharedResources.GCS_ControlKeys_Player_2[0]);
-        boolean isBackwardPressed = _CurrentlyPressedKeys.contains(SharedResources.GCS_ControlKeys_Player_1[1]) || _CurrentlyPressedKeys.contains(SharedResources.GCS_ControlKeys_Player_2[1]);
-        boolean isBackAndForwardPressed = isForwardPressed && isBackwardPressed;
-        boolean isNonOfBackOrForwardPressed = !(isForwardPressed || isBackwardPressed);
-        boolean isCarStopped = (_Speed == 0);
-
-        if(isBackAndForwardPressed || isNonOfBackOrForwardPressed)
-        {
-            SlowDown();
-            return;
-        }
-
-        if (isForwardPressed && !_ReverseMode)
-        {
-            Accelerate();
-            return;
-        }
-
-        if (isForwardPressed && _ReverseMode)
-        {
-            if (isCarStopped)
-            {
-                _ReverseMode = false;
-                Accelerate();
-                return;
-            }
-            else
-            {
-                SlowDown();
-                return;
-            }
-        }
-
-        if (isBackwardPressed && _ReverseMode)
-        {
-            Accelerate(true, _OnGrass);
-            return;
-        }
-
-        if (isBackwardPressed && !_ReverseMode)
-        {
-            if (isCarStopped)
-            {
-                _ReverseMode = true;
-                Accelerate(true, _OnGrass);
-            }
-            else
-            {
-                SlowDown();
-            }
-        }
-    }
-
-    /**
-     * Accelerate the car (changes speed) using variable rate acceleration.
-     * Checks for speed limit and slows down if overreached.
-     * Picks the slowest/lowest speed limit based the input parameters.
-     * @param useReverseSpeedLimit True to use a reverse (slower) speed limit. False to use standard speed limit.
-     * @param useGrassSpeedLimit True to use a off-road (slower) speed limit. False to use standard speed limit.
-     */
-    private void Accelerate(boolean useReverseSpeedLimit, boolean useGrassSpeedLimit)
-    {
-        //Select different limit for reversing and forwarding
-        float speedLimit;
-        if (!useReverseSpeedLimit)
-            speedLimit = SharedResources.GCS_Maximum_Car_Speed;
-        else
-            speedLimit = SharedResources.GCS_Maximum_Car_Reverse_Speed;
-
-        //Set different speed if the car is on grass. This overrides the reverse/forward speed (and it is the slowest)
-        if (useGrassSpeedLimit)
-            speedLimit = SharedResources.GCS_Maximum_Car_Grass_Speed;
-
-        //If the limit is reached, no reason to accelerate
-        if (_Speed == speedLimit)
-        {
-            SharedResources.MainController.get_GameEngine().CarAccelerationStopped();
-            _IsAccellerating = false;
-            return;
-        }
+        int acceleration = _Physics.UpdateSpeed(IsForwardPressed(), IsBackwardPressed());
+        _IsAccellerating = _Physics.is_Accelerating();
 
-        //Accelerates if speed limit is not hit
-        if(_Speed < speedLimit)
-        {
-            //If the car is just starting, give a fix boost
-            if (_Speed == 0) {
-                _Speed = SharedResources.GCS_Maximum_Car_Speed * SharedResources.GCS_Car_ColdStart_Acceleration_Percentage;
-                SharedResources.MainController.get_GameEngine().CarAccelerationOccurred();
-                _IsAccellerating = true;
-            }
-            //Radical acceleration on low speeds
-            else if (_Speed < (SharedResources.GCS_Maximum_Car_Speed * SharedResources.GCS_Car_RadicalAcceleration_SpeedLimit)) {
-                _Speed *= SharedResources.GCS_Car_RadicalAcceleration_Ratio;
-                SharedResources.MainController.get_GameEngine().CarAccelerationOccurred();
-                _IsAccellerating = true;
-            }
-            //Normal acceleration on medium speeds
-            else if (_Speed < (SharedResources.GCS_Maximum_Car_Speed * SharedResources.GCS_Car_NormalAcceleration_SpeedLimit)) {
-                _Speed *= SharedResources.GCS_Car_NormalAcceleration_Ratio;
-                SharedResources.MainController.get_GameEngine().CarAccelerationOccurred();
-                _IsAccellerating = true;
-            }
-            //Slow acceleration on high speeds
-            else {
-                _Speed *= SharedResources.GCS_Car_HighSpeedAcceleration_Ratio;
-                SharedResources.MainController.get_GameEngine().CarAccelerationOccurred();
-                _IsAccellerating = true;
-            }
-
-            //preventing over accelerating speed limit
-            if(_Speed > speedLimit)
-            {
-                _Speed = speedLimit;
-                SharedResources.MainController.get_GameEngine().CarAccelerationStopped();
-                _IsAccellerating = false;
-            }
-        }
-
-        //If currently the speed is higher then allowed, then slow down (e.g. from road to grass)
-        if(_Speed > speedLimit)
-        {
+        if (acceleration == CarPhysics.ACCELERATION_OCCURRED)
+            SharedResources.MainController.get_GameEngine().CarAccelerationOccurred();
+        if (acceleration == CarPhysics.ACCELERATION_STOPPED)
             SharedResources.MainController.get_GameEngine().CarAccelerationStopped();
-            _IsAccellerating = false;
-            SlowDown();
-        }
-    }
-
-
-    /**
-     * Accelerates a forwarding car using variable rate acceleration.
-     */
-    private void Accelerate()
-    {
-        Accelerate(false, _OnGrass);
-    }
-
-
-    /**
-     * Slows down the car by reducing the _Speed. If the _Speed drops below the threshold, the car gets stopped.
-     */
-    private void SlowDown()
-    {
-        _IsAccellerating = false;
-        //Lower the speed, based on current speed.
-        if(_Speed <= SharedResources.GCS_CarNoAcceleration_Stop_Threshold)
-        {
-            _Speed = 0;
-            _ReverseMode = false;
-        }
-        else
-        {
-            _Speed *= SharedResources.GCS_Car_NoAcceleration_Slowdown_Ratio;
-        }
     }
 
     /**
@@ -571,11 +421,9 @@ public class Car
      */
     public void set_CarDisplay(CarInGameDisplayLabel _CarDisplay) {
         this._CarDisplay = _CarDisplay;
-        _ReverseMode = false;
-        _OnGrass = false;
-        _LastMoveHitTheWall = false;
+        _Physics.Reset();
         _LastMoveHitOtherCar = false;
-        _Speed = 0;
+        _SendPolicy.Reset();
         _CurrentAngle = 0;
         _CurrentlyPressedKeys = new HashSet<>(20); //Leaving enough space for the possible keys
     }
@@ -587,29 +435,78 @@ public class Car
      */
     public int GetVirtualSpeed()
     {
-        /*
-      The ratio to be used when converting actual speed (pixel/coordinate change) to virtual speed (0-100mph).
+        //Sourced from the server's snapshots if the server simulates the match.
+        if (!_IsServerSimulated)
+            _CurrentVirtualSpeed = _Physics.GetVirtualSpeed();
+        return _CurrentVirtualSpeed;
+    }
+
+    /**
+     * Sets if the server simulates the match. Called when the game starts.
+     * @param isServerSimulated True if the car sends the pressed keys and displays the server's snapshots.
      */
-        float _VirtualSpeedRatio = SharedResources.GCS_Car_Virtual_Speed_Max / SharedResources.GCS_Maximum_Car_Speed;
-        int result = (int)(_Speed * _VirtualSpeedRatio);
+    public void set_IsServerSimulated(boolean isServerSimulated)
+    {
+        _IsServerSimulated = isServerSimulated;
+    }
 
-        //Allowing to reach virtual max speed (removes rounding inaccuracy)
-        if(_Speed >= SharedResources.GCS_Maximum_Car_Speed)
-            result = SharedResources.GCS_Car_Virtual_Speed_Max;
+    /**
+     * Displays a status of the car received from the server: location, angle and speed.
+     * Also starts or stops the sound effects of the car.
+     * @param msg The status of the car.
+     */
+    public void ApplyStatus(MessageCarStatusUpdate msg)
+    {
+        _CurrentVirtualSpeed = msg.get_VirtualSpeed();
+        DisplayAt(msg.get_Location_X(), msg.get_Location_Y(), msg.get_CurrentAngle());
+        PlayStatusSounds(msg);
+    }
 
-        //Show virtual zero speed when the car hit a wall
-        if (_LastMoveHitTheWall)
-            result = 0;
+    /**
+     * Displays a status of the car without the sound effects, e.g. a recorded one while watching a replay.
+     * @param msg The status of the car.
+     */
+    public void DisplayStatus(MessageCarStatusUpdate msg)
+    {
+        _CurrentVirtualSpeed = msg.get_VirtualSpeed();
+        _IsAccellerating = msg.is_IsAccelerating();
+        DisplayAt(msg.get_Location_X(), msg.get_Location_Y(), msg.get_CurrentAngle());
+    }
 
-        //When the speed is low number, the car will not be moved as the
-        //speed is not enough to move it by 1 pixel. However, the actual value of the
-        // _Speed variable is above 0.
-        // This inconsistency should be masked from the HUD, otherwise a still car will be shown with speed.
-        if (_Speed <= SharedResources.HUD_StillCar_Speed_VirtualValue_Masking_Threshold)
-            result = 0;
+    /**
+     * Moves the car's JLabel to a location and turns it to an angle.
+     * @param x The location on the X axis.
+     * @param y The location on the Y axis.
+     * @param angle The angle. Must match with an element of the SharedResources.CAR_Simulated_Angle_Values array.
+     */
+    void DisplayAt(int x, int y, float angle)
+    {
+        _CarDisplay.setLocation(x, y);
 
-        _CurrentVirtualSpeed = result;
-        return result;
+        //If car changed angle (turned) then turn here too
+        if (_CurrentAngle != angle) {
+            _CurrentAngle = angle;
+            int angleIndex = GetAngleIndexFromAngle(angle);
+            _CarDisplay.SetImageToSpecificIndex(angleIndex);
+        }
+    }
+
+    /**
+     * Starts or stops the sound effects of the car according to a status received from the server.
+     * @param msg The status of the car.
+     */
+    void PlayStatusSounds(MessageCarStatusUpdate msg)
+    {
+        //If start or stop the acceleration sound effect
+        _IsAccellerating = msg.is_IsAccelerating();
+        if (_IsAccellerating)
+            SharedResources.MainController.get_GameEngine().CarAccelerationOccurred();
+        else
+            SharedResources.MainController.get_GameEngine().CarAccelerationStopped();
+
+        //Play or stop playing car impact sound
+        if (msg.is_CarImpactSoundToPlay())
+            SharedResources.MainController.get_GameEngine().CarImpactOccurred();
     }
 
     /**
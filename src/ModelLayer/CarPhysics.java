@@ -0,0 +1,301 @@
+package ModelLayer;
+
+import ControlLayer.SharedResources;
+
+import java.awt.*;
+
+/**
+ * The movement model of a car without any display: variable rate acceleration, speed limits by surface and direction,
+ * and the location a car would move to with its speed and angle.
+ * Used by the Car on the client and by the server when it simulates a match (see MatchSimulation).
+ * Collision detection is left to the caller, which reports the outcome of every move back.
+ */
+public class CarPhysics
+{
+    /**
+     * Returned by UpdateSpeed: the car did not accelerate (it slowed down or stood still).
+     */
+    public static final int ACCELERATION_NONE = 0;
+    /**
+     * Returned by UpdateSpeed: the car accelerated.
+     */
+    public static final int ACCELERATION_OCCURRED = 1;
+    /**
+     * Returned by UpdateSpeed: the car wanted to accelerate but reached its speed limit.
+     */
+    public static final int ACCELERATION_STOPPED = 2;
+
+    /**
+     * The current speed represented as the number of pixel moves on screen between two frame changes.
+     */
+    private float _Speed;
+    /**
+     * True if the car is in reverse mode. False if it is in forward or standing mode.
+     */
+    private boolean _ReverseMode;
+    /**
+     * True if the car is currently on a grass surface (which impacts its speed limit).
+     */
+    private boolean _OnGrass;
+    /**
+     * True if the car hit the wall with its last move.
+     */
+    private boolean _LastMoveHitTheWall;
+    /**
+     * True when the car is accelerating.
+     */
+    private boolean _IsAccelerating;
+
+    /**
+     * Resets the car to standing still, facing forward, on the road.
+     */
+    public void Reset()
+    {
+        _Speed = 0;
+        _ReverseMode = false;
+        _OnGrass = false;
+        _LastMoveHitTheWall = false;
+        _IsAccelerating = false;
+    }
+
+    /**
+     * Changes the current speed based on the pressed buttons.
+     * @param isForwardPressed True if the accelerate button is pressed.
+     * @param isBackwardPressed True if the reverse/break button is pressed.
+     * @return One of ACCELERATION_NONE, ACCELERATION_OCCURRED and ACCELERATION_STOPPED, for the sound effects.
+     */
+    public int UpdateSpeed(boolean isForwardPressed, boolean isBackwardPressed)
+    {
+        boolean isBackAndForwardPressed = isForwardPressed && isBackwardPressed;
+        boolean isNonOfBackOrForwardPressed = !(isForwardPressed || isBackwardPressed);
+        boolean isCarStopped = (_Speed == 0);
+
+        if (isBackAndForwardPressed || isNonOfBackOrForwardPressed)
+        {
+            SlowDown();
+            return ACCELERATION_NONE;
+        }
+
+        if (isForwardPressed && !_ReverseMode)
+            return Accelerate(false);
+
+        if (isForwardPressed)
+        {
+            if (isCarStopped)
+            {
+                _ReverseMode = false;
+                return Accelerate(false);
+            }
+            SlowDown();
+            return ACCELERATION_NONE;
+        }
+
+        if (_ReverseMode)
+            return Accelerate(true);
+
+        if (isCarStopped)
+        {
+            _ReverseMode = true;
+            return Accelerate(true);
+        }
+        SlowDown();
+        return ACCELERATION_NONE;
+    }
+
+    /**
+     * Accelerate the car (changes speed) using variable rate acceleration.
+     * Checks for speed limit and slows down if overreached.
+     * Picks the slowest/lowest speed limit based on the direction and the surface.
+     * @param useReverseSpeedLimit True to use a reverse (slower) speed limit. False to use standard speed limit.
+     * @return ACCELERATION_OCCURRED, or ACCELERATION_STOPPED if the speed limit has been reached.
+     */
+    private int Accelerate(boolean useReverseSpeedLimit)
+    {
+        //Select different limit for reversing and forwarding
+        float speedLimit;
+        if (!useReverseSpeedLimit)
+            speedLimit = SharedResources.GCS_Maximum_Car_Speed;
+        else
+            speedLimit = SharedResources.GCS_Maximum_Car_Reverse_Speed;
+
+        //Set different speed if the car is on grass. This overrides the reverse/forward speed (and it is the slowest)
+        if (_OnGrass)
+            speedLimit = SharedResources.GCS_Maximum_Car_Grass_Speed;
+
+        //If the limit is reached, no reason to accelerate
+        if (_Speed == speedLimit)
+        {
+            _IsAccelerating = false;
+            return ACCELERATION_STOPPED;
+        }
+
+        int result = ACCELERATION_STOPPED;
+
+        //Accelerates if speed limit is not hit
+        if (_Speed < speedLimit)
+        {
+            //If the car is just starting, give a fix boost
+            if (_Speed == 0)
+                _Speed = SharedResources.GCS_Maximum_Car_Speed * SharedResources.GCS_Car_ColdStart_Acceleration_Percentage;
+            //Radical acceleration on low speeds
+            else if (_Speed < (SharedResources.GCS_Maximum_Car_Speed * SharedResources.GCS_Car_RadicalAcceleration_SpeedLimit))
+                _Speed *= SharedResources.GCS_Car_RadicalAcceleration_Ratio;
+            //Normal acceleration on medium speeds
+            else if (_Speed < (SharedResources.GCS_Maximum_Car_Speed * SharedResources.GCS_Car_NormalAcceleration_SpeedLimit))
+                _Speed *= SharedResources.GCS_Car_NormalAcceleration_Ratio;
+            //Slow acceleration on high speeds
+            else
+                _Speed *= SharedResources.GCS_Car_HighSpeedAcceleration_Ratio;
+
+            _IsAccelerating = true;
+            result = ACCELERATION_OCCURRED;
+
+            //preventing over accelerating speed limit
+            if (_Speed > speedLimit)
+            {
+                _Speed = speedLimit;
+                _IsAccelerating = false;
+                result = ACCELERATION_STOPPED;
+            }
+        }
+
+        //If currently the speed is higher then allowed, then slow down (e.g. from road to grass)
+        if (_Speed > speedLimit)
+            SlowDown();
+
+        return result;
+    }
+
+    /**
+     * Slows down the car by reducing the _Speed. If the _Speed drops below the threshold, the car gets stopped.
+     */
+    private void SlowDown()
+    {
+        _IsAccelerating = false;
+        //Lower the speed, based on current speed.
+        if (_Speed <= SharedResources.GCS_CarNoAcceleration_Stop_Threshold)
+        {
+            _Speed = 0;
+            _ReverseMode = false;
+        }
+        else
+        {
+            _Speed *= SharedResources.GCS_Car_NoAcceleration_Slowdown_Ratio;
+        }
+    }
+
+    /**
+     * Calculates the location the car would move to with its current speed and direction. Does not move the car.
+     * @param currentLoc The current location of the car. Changed by this call.
+     * @param angle The current angle of the car. Must match an element of the SharedResources.CAR_Simulated_Angle_Values array.
+     * @return The new location (the currentLoc parameter, translated).
+     */
+    public Point NextLocation(Point currentLoc, float angle)
+    {
+        //Check if there is no diagonal movement required, to simplify calculation
+        switch (Math.round(angle)) {
+            //Car facing upwards. Moving up on Y axis. (opposite if reversed)
+            case 0:
+                currentLoc.translate(0, ReverseModeCheck(0 - Math.round(_Speed)));
+                break;
+
+            //Car facing downwards. Moving down on Y axis. (opposite if reversed)
+            case 180:
+                currentLoc.translate(0, ReverseModeCheck(Math.round(_Speed)));
+                break;
+
+            //Car facing towards west. Moving up on X axis. (opposite if reversed)
+            case 90:
+                currentLoc.translate(ReverseModeCheck(Math.round(_Speed)), 0);
+                break;
+
+            //Car facing towards east. Moving down on Y axis. (opposite if reversed)
+            case 270:
+                currentLoc.translate(ReverseModeCheck(0 - Math.round(_Speed)), 0);
+                break;
+            default:
+                //The Hypotenuse of the triangle (the speed) and the angle are known.
+                //sin * speed = X axis, cos * speed = Y axis
+                double angleRad = Math.toRadians(angle);
+                double dx = _Speed * Math.sin(angleRad);
+                double dy = 0 - (_Speed * Math.cos(angleRad));
+                currentLoc.translate(ReverseModeCheck((int) Math.round(dx)), ReverseModeCheck((int) Math.round(dy)));
+                break;
+        }
+        return currentLoc;
+    }
+
+    /**
+     * Inverts the newSpeed parameter's value to negative if the reverse mode is on.
+     * @param newSpeed The speed to check and change against reverse mode.
+     * @return Returns newSpeed if not in reverse mode. Returns (0-newSpeed) if reverse mode is true.
+     */
+    private int ReverseModeCheck(int newSpeed)
+    {
+        return _ReverseMode ? 0 - newSpeed : newSpeed;
+    }
+
+    /**
+     * Called when the car moved to the location given by NextLocation.
+     * @param onGrass True if the car is on grass at the new location (slows it down from the next frame).
+     */
+    public void Moved(boolean onGrass)
+    {
+        _LastMoveHitTheWall = false;
+        _OnGrass = onGrass;
+    }
+
+    /**
+     * Called when the car could not move as it would have hit the edge of the map or a tree. Stops the car.
+     */
+    public void HitTheWall()
+    {
+        _LastMoveHitTheWall = true;
+        _Speed = 0;
+    }
+
+    /**
+     * Called when the car crashed into the other car. Stops the car.
+     */
+    public void HitOtherCar()
+    {
+        _Speed = 0;
+    }
+
+    /**
+     * Tells if the car is accelerating.
+     * @return True if the car accelerated in the last frame.
+     */
+    public boolean is_Accelerating()
+    {
+        return _IsAccelerating;
+    }
+
+    /**
+     * Returns the current speed of the car on a scale (0-100 mph), as the HUD displays it.
+     * @return The current virtual speed, which is larger or equal to 0.
+     */
+    public int GetVirtualSpeed()
+    {
+        //The ratio to be used when converting actual speed (pixel/coordinate change) to virtual speed (0-100mph).
+        float virtualSpeedRatio = SharedResources.GCS_Car_Virtual_Speed_Max / SharedResources.GCS_Maximum_Car_Speed;
+        int result = (int) (_Speed * virtualSpeedRatio);
+
+        //Allowing to reach virtual max speed (removes rounding inaccuracy)
+        if (_Speed >= SharedResources.GCS_Maximum_Car_Speed)
+            result = SharedResources.GCS_Car_Virtual_Speed_Max;
+
+        //Show virtual zero speed when the car hit a wall
+        if (_LastMoveHitTheWall)
+            result = 0;
+
+        //When the speed is low number, the car will not be moved as the
+        //speed is not enough to move it by 1 pixel. However, the actual value of the
+        // _Speed variable is above 0.
+        // This inconsistency should be masked from the HUD, otherwise a still car will be shown with speed.
+        if (_Speed <= SharedResources.HUD_StillCar_Speed_VirtualValue_Masking_Threshold)
+            result = 0;
+
+        return result;
+    }
+}
@@ -5,12 +5,31 @@ import ControlLayer.SharedResources;
 import ModelLayer.Networking.Messages.MessageCarStatusUpdate;
 import ViewLayer.Screens.InGameScr.CarInGameDisplayLabel;
 
+import java.awt.*;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Represents a car on a remote computer.
  * The data for its display is sourced from the server, rather than being controllable at the local computer.
+ * The updates are buffered and the car is displayed slightly in the past, moving smoothly between them (see JitterBuffer).
+ * Collisions are still checked against the newest update.
  */
 public class CarRemote extends Car {
 
+    /**
+     * The last updates received, the car is displayed from.
+     */
+    private final JitterBuffer _Updates = new JitterBuffer(SharedResources.CLN_REMOTE_BUFFERED_UPDATES);
+
+    /**
+     * The newest update received, null if none since the game started. Collisions are checked against it.
+     */
+    private volatile MessageCarStatusUpdate _LatestUpdate;
+
+    /**
+     * The location the car is displayed at in the current frame. Reused from frame to frame.
+     */
+    private final Point _DisplayedLocation = new Point();
 
     /**
      * Connects to the client and asks it to start to listen to status update messages from the server.
@@ -32,27 +51,11 @@ public class CarRemote extends Car {
      * @param msg The car update message sent by the server.
      */
     public void CarUpdateCallback(MessageCarStatusUpdate msg) {
+        //The location and the angle are displayed by the next frames, the speed and the sounds straight away.
+        _Updates.Add(msg.get_Location_X(), msg.get_Location_Y(), msg.get_CurrentAngle(), msg.get_VirtualSpeed(), System.nanoTime());
+        _LatestUpdate = msg;
         _CurrentVirtualSpeed = msg.get_VirtualSpeed();
-        _CarDisplay.setLocation(msg.get_Location_X(), msg.get_Location_Y());
-
-        //If car changed angle (turned) then turn here too
-        if (_CurrentAngle != msg.get_CurrentAngle()) {
-            _CurrentAngle = msg.get_CurrentAngle();
-            int angleIndex = super.GetAngleIndexFromAngle(msg.get_CurrentAngle());
-            _CarDisplay.SetImageToSpecificIndex(angleIndex);
-        }
-
-        //If start or stop the acceleration sound effect
-        _IsAccellerating = msg.is_IsAccelerating();
-        if (_IsAccellerating)
-            SharedResources.MainController.get_GameEngine().CarAccelerationOccurred();
-        else
-            SharedResources.MainController.get_GameEngine().CarAccelerationStopped();
-
-        //Play or stop playing car impact sound
-        if (msg.is_CarImpactSoundToPlay())
-            SharedResources.MainController.get_GameEngine().CarImpactOccurred();
-
+        PlayStatusSounds(msg);
     }
 
     /**
@@ -72,6 +75,55 @@ public class CarRemote extends Car {
     public void set_CarDisplay(CarInGameDisplayLabel _CarDisplay) {
         //Simplifying for a remote car by removing initialisations.
         this._CarDisplay = _CarDisplay;
+        _Updates.Clear();
+        _LatestUpdate = null;
+    }
+
+    /**
+     * Moves the car's JLabel to where the car was SharedResources.CLN_REMOTE_RENDER_DELAY milliseconds ago,
+     * between the updates received, or further on with its last speed and angle if no newer update has arrived.
+     * Called with every new frame.
+     */
+    @Override
+    public void CalculateNextFrame() {
+        long renderTime = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(SharedResources.CLN_REMOTE_RENDER_DELAY);
+        float angle = _Updates.Sample(renderTime, _DisplayedLocation);
+        if (!Float.isNaN(angle))
+            DisplayAt(_DisplayedLocation.x, _DisplayedLocation.y, angle);
+    }
+
+    /**
+     * Moves the car's JLabel to the newest update straight away, e.g. to show where the cars crashed.
+     */
+    public void DisplayLatestUpdate() {
+        MessageCarStatusUpdate latest = _LatestUpdate;
+        if (latest != null)
+            DisplayAt(latest.get_Location_X(), latest.get_Location_Y(), latest.get_CurrentAngle());
+    }
+
+    /**
+     * Retrieves the car's location in the newest update as a rectangle, or the displayed location if there is no update yet.
+     * The displayed location lags behind, colliding with it would be unfair to the opponent.
+     * @return Rectangle representing car's location. The size of the rectangle matches the image's size.
+     */
+    @Override
+    public Rectangle GetBoundsAsRectangle() {
+        MessageCarStatusUpdate latest = _LatestUpdate;
+        if (latest == null)
+            return super.GetBoundsAsRectangle();
+        return new Rectangle(latest.get_Location_X(), latest.get_Location_Y(), SharedResources.CAR_Image_Size_X, SharedResources.CAR_Image_Size_Y);
+    }
+
+    /**
+     * Returns the angle in the newest update, or the displayed angle if there is no update yet.
+     * @return The angle represented as an index of the SharedResources.CAR_Simulated_Angle_Values array.
+     */
+    @Override
+    public int GetCurrentAngleIndex() {
+        MessageCarStatusUpdate latest = _LatestUpdate;
+        if (latest == null)
+            return super.GetCurrentAngleIndex();
+        return GetAngleIndexFromAngle(latest.get_CurrentAngle());
     }
 
     /**
@@ -104,11 +156,5 @@ public class CarRemote extends Car {
         //Remote car does not react to local key releases. Do nothing.
     }
 
-    @Override
-    public void CalculateNextFrame() {
-        //Remote car's display change is not triggered by the timer.
-        //It is triggered by receiving new data from the server. Do nothing.
-    }
-
 
 }
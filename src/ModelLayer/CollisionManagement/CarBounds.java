@@ -2,6 +2,7 @@ package ModelLayer.CollisionManagement;
 
 import java.awt.*;
 import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
 
 /**
  * Represents a car's edges for a given angle.
@@ -12,6 +13,9 @@ import java.awt.geom.Line2D;
 public class CarBounds
 {
     private final Line2D[] _AllCarBoundLines; //Containes the borders of the car as 4 lines
+    private final double[] _Edges; //The same 4 lines as x1, y1, x2, y2 each, for the collision checks that allocate nothing
+    private double _MinX = Double.MAX_VALUE, _MinY = Double.MAX_VALUE; //The top left corner of the box around the edges
+    private double _MaxX = -Double.MAX_VALUE, _MaxY = -Double.MAX_VALUE; //The bottom right corner of the box around the edges
 
     /**
      * Represents a car's edges for a given angle.
@@ -52,6 +56,20 @@ public class CarBounds
         _AllCarBoundLines[1] = _L2;
         _AllCarBoundLines[2] = _L3;
         _AllCarBoundLines[3] = _L4;
+
+        _Edges = new double[4 * 4];
+        for (int i = 0; i < 4; i++) {
+            _Edges[4 * i] = _AllCarBoundLines[i].getX1();
+            _Edges[4 * i + 1] = _AllCarBoundLines[i].getY1();
+            _Edges[4 * i + 2] = _AllCarBoundLines[i].getX2();
+            _Edges[4 * i + 3] = _AllCarBoundLines[i].getY2();
+        }
+        for (int i = 0; i < _Edges.length; i += 2) {
+            _MinX = Math.min(_MinX, _Edges[i]);
+            _MaxX = Math.max(_MaxX, _Edges[i]);
+            _MinY = Math.min(_MinY, _Edges[i + 1]);
+            _MaxY = Math.max(_MaxY, _Edges[i + 1]);
+        }
     }
 
 
@@ -75,4 +93,191 @@ public class CarBounds
         }
         return result;
     }
+
+    /**
+     * Returns the 4 edges of the car relative to its position, as x1, y1, x2, y2 each. Must not be changed.
+     * @return The coordinates of the edges.
+     */
+    double[] get_Edges()
+    {
+        return _Edges;
+    }
+
+    /**
+     * Returns the left side of the box around the edges, relative to the car's position.
+     * @return The smallest X coordinate of the edges.
+     */
+    double get_MinX()
+    {
+        return _MinX;
+    }
+
+    /**
+     * Returns the top side of the box around the edges, relative to the car's position.
+     * @return The smallest Y coordinate of the edges.
+     */
+    double get_MinY()
+    {
+        return _MinY;
+    }
+
+    /**
+     * Returns the right side of the box around the edges, relative to the car's position.
+     * @return The largest X coordinate of the edges.
+     */
+    double get_MaxX()
+    {
+        return _MaxX;
+    }
+
+    /**
+     * Returns the bottom side of the box around the edges, relative to the car's position.
+     * @return The largest Y coordinate of the edges.
+     */
+    double get_MaxY()
+    {
+        return _MaxY;
+    }
+
+    /**
+     * Checks if the edges of the car, shifted by the car's position, intersect a line.
+     * Gives the same result as checking the lines of GetCarBounds, without creating them.
+     *
+     * @param shiftX The X coordinate of the car's position.
+     * @param shiftY The Y coordinate of the car's position.
+     * @param x1     The X coordinate of the line's start point.
+     * @param y1     The Y coordinate of the line's start point.
+     * @param x2     The X coordinate of the line's end point.
+     * @param y2     The Y coordinate of the line's end point.
+     * @return True if any edge of the car intersects the line.
+     */
+    public boolean IntersectsLine(double shiftX, double shiftY, double x1, double y1, double x2, double y2)
+    {
+        for (int i = 0; i < _Edges.length; i += 4) {
+            if (Line2D.linesIntersect(x1, y1, x2, y2, _Edges[i] + shiftX, _Edges[i + 1] + shiftY, _Edges[i + 2] + shiftX, _Edges[i + 3] + shiftY))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks if the edges of the car, shifted by the car's position, intersect a rectangle.
+     * Gives the same result as Rectangle.intersectsLine with the lines of GetCarBounds, without creating them.
+     *
+     * @param shiftX The X coordinate of the car's position.
+     * @param shiftY The Y coordinate of the car's position.
+     * @param x      The X coordinate of the rectangle's top left corner.
+     * @param y      The Y coordinate of the rectangle's top left corner.
+     * @param width  The width of the rectangle.
+     * @param height The height of the rectangle.
+     * @return True if any edge of the car intersects the rectangle (or lies within it).
+     */
+    public boolean IntersectsRectangle(double shiftX, double shiftY, double x, double y, double width, double height)
+    {
+        for (int i = 0; i < _Edges.length; i += 4) {
+            if (RectangleIntersectsLine(x, y, width, height, _Edges[i] + shiftX, _Edges[i + 1] + shiftY, _Edges[i + 2] + shiftX, _Edges[i + 3] + shiftY))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks if the edges of the car intersect the edges of another car, both shifted by their position.
+     * This is 16 line comparisons at most.
+     *
+     * @param shiftX      The X coordinate of the car's position.
+     * @param shiftY      The Y coordinate of the car's position.
+     * @param other       The bounds of the other car at its angle.
+     * @param otherShiftX The X coordinate of the other car's position.
+     * @param otherShiftY The Y coordinate of the other car's position.
+     * @return True if the two cars collide.
+     */
+    public boolean IntersectsCar(double shiftX, double shiftY, CarBounds other, double otherShiftX, double otherShiftY)
+    {
+        double[] otherEdges = other._Edges;
+        for (int i = 0; i < _Edges.length; i += 4) {
+            double x1 = _Edges[i] + shiftX;
+            double y1 = _Edges[i + 1] + shiftY;
+            double x2 = _Edges[i + 2] + shiftX;
+            double y2 = _Edges[i + 3] + shiftY;
+            for (int j = 0; j < otherEdges.length; j += 4) {
+                if (Line2D.linesIntersect(x1, y1, x2, y2, otherEdges[j] + otherShiftX, otherEdges[j + 1] + otherShiftY,
+                        otherEdges[j + 2] + otherShiftX, otherEdges[j + 3] + otherShiftY))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a line intersects a rectangle, the way java.awt.Rectangle.intersectsLine does:
+     * cuts the line at the rectangle's sides until an end point is inside, or both are on the same outer side.
+     *
+     * @param rx     The X coordinate of the rectangle's top left corner.
+     * @param ry     The Y coordinate of the rectangle's top left corner.
+     * @param width  The width of the rectangle.
+     * @param height The height of the rectangle.
+     * @param x1     The X coordinate of the line's start point.
+     * @param y1     The Y coordinate of the line's start point.
+     * @param x2     The X coordinate of the line's end point.
+     * @param y2     The Y coordinate of the line's end point.
+     * @return True if the line intersects the rectangle.
+     */
+    static boolean RectangleIntersectsLine(double rx, double ry, double width, double height, double x1, double y1, double x2, double y2)
+    {
+        int out1;
+        int out2 = Outcode(rx, ry, width, height, x2, y2);
+        if (out2 == 0)
+            return true;
+
+        while ((out1 = Outcode(rx, ry, width, height, x1, y1)) != 0) {
+            if ((out1 & out2) != 0)
+                return false;
+
+            if ((out1 & (Rectangle2D.OUT_LEFT | Rectangle2D.OUT_RIGHT)) != 0) {
+                double x = rx;
+                if ((out1 & Rectangle2D.OUT_RIGHT) != 0)
+                    x += width;
+                y1 = y1 + (x - x1) * (y2 - y1) / (x2 - x1);
+                x1 = x;
+            } else {
+                double y = ry;
+                if ((out1 & Rectangle2D.OUT_BOTTOM) != 0)
+                    y += height;
+                x1 = x1 + (y - y1) * (x2 - x1) / (y2 - y1);
+                y1 = y;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tells on which sides of a rectangle a point lies outside of it, like java.awt.Rectangle.outcode.
+     *
+     * @param rx     The X coordinate of the rectangle's top left corner.
+     * @param ry     The Y coordinate of the rectangle's top left corner.
+     * @param width  The width of the rectangle.
+     * @param height The height of the rectangle.
+     * @param x      The X coordinate of the point.
+     * @param y      The Y coordinate of the point.
+     * @return The Rectangle2D.OUT_* flags of the point, 0 if it is inside.
+     */
+    private static int Outcode(double rx, double ry, double width, double height, double x, double y)
+    {
+        int out = 0;
+        if (width <= 0)
+            out |= Rectangle2D.OUT_LEFT | Rectangle2D.OUT_RIGHT;
+        else if (x < rx)
+            out |= Rectangle2D.OUT_LEFT;
+        else if (x > rx + width)
+            out |= Rectangle2D.OUT_RIGHT;
+
+        if (height <= 0)
+            out |= Rectangle2D.OUT_TOP | Rectangle2D.OUT_BOTTOM;
+        else if (y < ry)
+            out |= Rectangle2D.OUT_TOP;
+        else if (y > ry + height)
+            out |= Rectangle2D.OUT_BOTTOM;
+        return out;
+    }
 }
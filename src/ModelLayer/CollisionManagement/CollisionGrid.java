@@ -0,0 +1,202 @@
+package ModelLayer.CollisionManagement;
+
+/**
+ * Buckets map objects (rectangles and lines) into a uniform grid, built once for a map.
+ * A car is only checked against the objects in the cells its bounding box overlaps, so the cost of a check
+ * depends on how crowded the map is around the car, not on how many objects the whole map has.
+ * A line is put into the cells it crosses, a rectangle into the cells its area overlaps.
+ * An object spanning several cells may be checked more than once; that is cheaper than keeping track of the
+ * checked ones, and keeps the grid free of state, so it can be shared between threads.
+ */
+final class CollisionGrid
+{
+    /**
+     * The grid is widened by this many pixels around the objects, and so is the bounding box of a car.
+     * Keeps a touch on a cell's border from being missed by the rounding of the coordinates.
+     */
+    private static final double MARGIN = 1;
+
+    private final double[] _Rectangles; //The rectangles: x, y, width, height of each
+    private final double[] _Lines; //The lines: x1, y1, x2, y2 of each
+    private final int _RectangleCount; //The number of rectangles. In the cells, an entry below it is a rectangle, otherwise a line.
+    private final double _CellSize; //The length of a cell's side in pixels
+    private final double _OriginX; //The X coordinate of the left side of the grid
+    private final double _OriginY; //The Y coordinate of the top side of the grid
+    private final int _Columns; //The number of cells in a row
+    private final int _Rows; //The number of cells in a column
+    private final int[] _CellStarts; //The entries of cell i (row * _Columns + column) are from _CellStarts[i] to _CellStarts[i + 1]
+    private final int[] _Entries; //The objects in the cells, one cell after the other
+
+    /**
+     * Buckets the objects into the cells of a grid that covers all of them.
+     *
+     * @param rectangles The rectangles: x, y, width, height of each.
+     * @param lines      The lines: x1, y1, x2, y2 of each.
+     * @param cellSize   The length of a cell's side in pixels.
+     */
+    CollisionGrid(double[] rectangles, double[] lines, double cellSize)
+    {
+        _Rectangles = rectangles;
+        _Lines = lines;
+        _RectangleCount = rectangles.length / 4;
+        _CellSize = cellSize;
+
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        int objectCount = _RectangleCount + lines.length / 4;
+        double[] box = new double[4];
+        for (int i = 0; i < objectCount; i++) {
+            GetBox(i, box);
+            minX = Math.min(minX, box[0]);
+            minY = Math.min(minY, box[1]);
+            maxX = Math.max(maxX, box[2]);
+            maxY = Math.max(maxY, box[3]);
+        }
+
+        if (objectCount == 0) {
+            _OriginX = 0;
+            _OriginY = 0;
+            _Columns = 0;
+            _Rows = 0;
+            _CellStarts = new int[1];
+            _Entries = new int[0];
+            return;
+        }
+
+        _OriginX = minX - MARGIN;
+        _OriginY = minY - MARGIN;
+        _Columns = (int) Math.floor((maxX + MARGIN - _OriginX) / cellSize) + 1;
+        _Rows = (int) Math.floor((maxY + MARGIN - _OriginY) / cellSize) + 1;
+
+        //Counts the objects of every cell first, then fills them in, so the cells are one array.
+        _CellStarts = new int[_Columns * _Rows + 1];
+        for (int i = 0; i < objectCount; i++) {
+            AddToCells(i, box, null);
+        }
+        for (int cell = 0; cell < _Columns * _Rows; cell++) {
+            _CellStarts[cell + 1] += _CellStarts[cell];
+        }
+        _Entries = new int[_CellStarts[_Columns * _Rows]];
+        int[] filled = new int[_Columns * _Rows];
+        for (int i = 0; i < objectCount; i++) {
+            AddToCells(i, box, filled);
+        }
+    }
+
+    /**
+     * Counts an object in the cells it touches, or puts it into them.
+     *
+     * @param index  The index of the object.
+     * @param box    Scratch space for the object's bounding box.
+     * @param filled Null to count the object in _CellStarts (shifted by one cell), otherwise the number of entries
+     *               filled in so far in each cell.
+     */
+    private void AddToCells(int index, double[] box, int[] filled)
+    {
+        GetBox(index, box);
+        int firstColumn = Column(box[0] - MARGIN), lastColumn = Column(box[2] + MARGIN);
+        int firstRow = Row(box[1] - MARGIN), lastRow = Row(box[3] + MARGIN);
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                //A line only goes into the cells it crosses, not into every cell of its bounding box.
+                if (index >= _RectangleCount) {
+                    int l = 4 * (index - _RectangleCount);
+                    if (!CarBounds.RectangleIntersectsLine(_OriginX + column * _CellSize - MARGIN, _OriginY + row * _CellSize - MARGIN,
+                            _CellSize + 2 * MARGIN, _CellSize + 2 * MARGIN, _Lines[l], _Lines[l + 1], _Lines[l + 2], _Lines[l + 3]))
+                        continue;
+                }
+
+                int cell = row * _Columns + column;
+                if (filled == null)
+                    _CellStarts[cell + 1]++;
+                else
+                    _Entries[_CellStarts[cell] + filled[cell]++] = index;
+            }
+        }
+    }
+
+    /**
+     * Returns the bounding box of an object.
+     *
+     * @param index The index of the object.
+     * @param box   Receives the left, top, right and bottom side of the box.
+     */
+    private void GetBox(int index, double[] box)
+    {
+        if (index < _RectangleCount) {
+            int r = 4 * index;
+            box[0] = _Rectangles[r];
+            box[1] = _Rectangles[r + 1];
+            box[2] = _Rectangles[r] + Math.max(0, _Rectangles[r + 2]);
+            box[3] = _Rectangles[r + 1] + Math.max(0, _Rectangles[r + 3]);
+        } else {
+            int l = 4 * (index - _RectangleCount);
+            box[0] = Math.min(_Lines[l], _Lines[l + 2]);
+            box[1] = Math.min(_Lines[l + 1], _Lines[l + 3]);
+            box[2] = Math.max(_Lines[l], _Lines[l + 2]);
+            box[3] = Math.max(_Lines[l + 1], _Lines[l + 3]);
+        }
+    }
+
+    /**
+     * Returns the column of an X coordinate, clamped to the grid.
+     *
+     * @param x The X coordinate.
+     * @return The index of the column.
+     */
+    private int Column(double x)
+    {
+        return Math.max(0, Math.min(_Columns - 1, (int) Math.floor((x - _OriginX) / _CellSize)));
+    }
+
+    /**
+     * Returns the row of a Y coordinate, clamped to the grid.
+     *
+     * @param y The Y coordinate.
+     * @return The index of the row.
+     */
+    private int Row(double y)
+    {
+        return Math.max(0, Math.min(_Rows - 1, (int) Math.floor((y - _OriginY) / _CellSize)));
+    }
+
+    /**
+     * Checks if a car intersects any of the objects. Only the objects in the cells around the car are checked.
+     *
+     * @param bounds The edges of the car at its angle.
+     * @param x      The X coordinate of the car's position.
+     * @param y      The Y coordinate of the car's position.
+     * @return True if any edge of the car intersects an object.
+     */
+    boolean Intersects(CarBounds bounds, double x, double y)
+    {
+        double left = x + bounds.get_MinX() - MARGIN, right = x + bounds.get_MaxX() + MARGIN;
+        double top = y + bounds.get_MinY() - MARGIN, bottom = y + bounds.get_MaxY() + MARGIN;
+        if (_Columns == 0 || right < _OriginX || bottom < _OriginY
+                || left > _OriginX + _Columns * _CellSize || top > _OriginY + _Rows * _CellSize)
+            return false;
+
+        int firstColumn = Column(left), lastColumn = Column(right);
+        int lastRow = Row(bottom);
+        for (int row = Row(top); row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int cell = row * _Columns + column;
+                for (int e = _CellStarts[cell]; e < _CellStarts[cell + 1]; e++) {
+                    int index = _Entries[e];
+                    if (index < _RectangleCount) {
+                        int r = 4 * index;
+                        if (bounds.IntersectsRectangle(x, y, _Rectangles[r], _Rectangles[r + 1], _Rectangles[r + 2], _Rectangles[r + 3]))
+                            return true;
+                    } else {
+                        int l = 4 * (index - _RectangleCount);
+                        if (bounds.IntersectsLine(x, y, _Lines[l], _Lines[l + 1], _Lines[l + 2], _Lines[l + 3]))
+                            return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+}
@@ -6,17 +6,23 @@ import ModelLayer.Enumerations.InGameObjectType;
 import ModelLayer.Player;
 
 import java.awt.*;
-import java.awt.geom.Line2D;
 import java.util.ArrayList;
-import java.util.stream.Stream;
 
 /**
  * Calculates collisions between map objects and cars.
+ * The map objects are packed into arrays of coordinates by type and bucketed into a grid when the manager is created
+ * (see CollisionGrid), so a car is only checked against the objects around it. The cars are checked with the
+ * precomputed edges of CarBounds, so a check allocates nothing.
+ * Optionally the map is checked with a rasterised mask of its objects instead (see CollisionMask): a lookup of the
+ * pixels under the car's outline, whose cost does not depend on the objects at all. Cars are always checked
+ * against each other with their edges.
  */
 public class CollisionManager
 {
     private final ArrayList<Player> _Players; //Reference to the list of Players
-    private final ArrayList<MapObject> _MapObjects; //The list of map objects the players' cars can collide with
+    private final CollisionGrid _Impassables; //The edges of the map and the trees, or null if the mask is used
+    private final CollisionGrid _Grasses; //The grass areas, or null if the mask is used
+    private final CollisionMask _Mask; //The rasterised map objects, or null if the map is checked with the grids
 
     /**
      * Calculates collisions between map objects and cars.
@@ -25,9 +31,25 @@ public class CollisionManager
      * @param MapObjects //The list of map objects the players' cars can collide with
      */
     public CollisionManager(ArrayList<Player> Players, ArrayList<MapObject> MapObjects)
+    {
+        this(Players, MapObjects, SharedResources.GCS_Collision_Raster_Mask);
+    }
+
+    /**
+     * Calculates collisions between map objects and cars, choosing how the map is checked.
+     *
+     * @param Players    The list of Players currently in game
+     * @param MapObjects The list of map objects the players' cars can collide with
+     * @param isMaskUsed True to check the map with a rasterised mask, false to check the geometry of the objects.
+     */
+    public CollisionManager(ArrayList<Player> Players, ArrayList<MapObject> MapObjects, boolean isMaskUsed)
     {
         this._Players = Players;
-        this._MapObjects = MapObjects;
+        this._Mask = isMaskUsed ? CollisionMask.Of(MapObjects) : null;
+        this._Impassables = isMaskUsed ? null : new CollisionGrid(PackRectangles(MapObjects, InGameObjectType.OUTOFMAP, InGameObjectType.TREE),
+                PackLines(MapObjects, InGameObjectType.OUTOFMAP, InGameObjectType.TREE), SharedResources.GCS_Collision_Grid_Cell_Size);
+        this._Grasses = isMaskUsed ? null : new CollisionGrid(PackRectangles(MapObjects, InGameObjectType.GRASS, InGameObjectType.GRASS),
+                PackLines(MapObjects, InGameObjectType.GRASS, InGameObjectType.GRASS), SharedResources.GCS_Collision_Grid_Cell_Size);
     }
 
 
@@ -39,10 +61,9 @@ public class CollisionManager
      */
     public boolean IsCollidingWithImpassable(Rectangle r, int angleIndex)
     {
-        boolean result;
-        Stream<MapObject> impassables =  _MapObjects.stream().filter(m -> (m.Type == InGameObjectType.OUTOFMAP || m.Type == InGameObjectType.TREE) );
-        result = impassables.anyMatch(i -> (isIntersecting(r, angleIndex, i.Rec) || isIntersecting(r, angleIndex, i.Line)));
-        return  result;
+        if (_Mask != null)
+            return r != null && _Mask.Touches(angleIndex, r.x, r.y, CollisionMask.BitOf(InGameObjectType.OUTOFMAP) | CollisionMask.BitOf(InGameObjectType.TREE));
+        return isIntersecting(r, angleIndex, _Impassables);
     }
 
     /**
@@ -53,10 +74,9 @@ public class CollisionManager
      */
     public boolean IsCollidingWithGrass(Rectangle r, int angleIndex)
     {
-        boolean result;
-        Stream<MapObject> grasses =  _MapObjects.stream().filter(m -> (m.Type == InGameObjectType.GRASS) );
-        result = grasses.anyMatch(i -> (isIntersecting(r, angleIndex, i.Rec) || isIntersecting(r, angleIndex, i.Line)));
-        return  result;
+        if (_Mask != null)
+            return r != null && _Mask.Touches(angleIndex, r.x, r.y, CollisionMask.BitOf(InGameObjectType.GRASS));
+        return isIntersecting(r, angleIndex, _Grasses);
     }
 
     /**
@@ -68,10 +88,25 @@ public class CollisionManager
      */
     public boolean isCollidingWithOtherCars(Car requester, Rectangle position, int angleIndex)
     {
-        boolean result;
-        Stream<Player> otherPlayers = _Players.stream().filter(p -> p.get_Car() != requester);
-        result = otherPlayers.anyMatch(p -> isIntersecting(position, angleIndex, p.get_Car().GetBoundsAsRectangle(), p.get_Car().GetCurrentAngleIndex()));
-        return result;
+        for (int i = 0; i < _Players.size(); i++) {
+            Car other = _Players.get(i).get_Car();
+            if (other != requester && isIntersecting(position, angleIndex, other.GetBoundsAsRectangle(), other.GetCurrentAngleIndex()))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Check collision between a car and a given other car. Used where there are no Player objects (e.g. on the server).
+     * @param position The car represented as a rectangle.
+     * @param angleIndex The current angle of the car.
+     * @param otherPosition The other car represented as a rectangle.
+     * @param otherAngleIndex The current angle of the other car.
+     * @return True if the two cars collide. False if not.
+     */
+    public boolean IsCollidingWithCar(Rectangle position, int angleIndex, Rectangle otherPosition, int otherAngleIndex)
+    {
+        return isIntersecting(position, angleIndex, otherPosition, otherAngleIndex);
     }
 
     /**
@@ -84,82 +119,76 @@ public class CollisionManager
      */
     private boolean isIntersecting(Rectangle car1, int angle1, Rectangle car2, int angle2)
     {
-        boolean result = false;
-        Line2D[] carLines1 = SharedResources.CAR_Simulated_Fine_Bounds[angle1].GetCarBounds(car1);
-        Line2D[] carLines2 = SharedResources.CAR_Simulated_Fine_Bounds[angle2].GetCarBounds(car2);
-
         //Compare 4 lines against the 4 other lines. This is 16 comparison (in case of 2 cars).
-        for (Line2D aCarLines1 : carLines1) {
-            for (Line2D aCarLines2 : carLines2) {
-                result = aCarLines1.intersectsLine(aCarLines2);
-                if (result)
-                    return result;
-            }
-        }
-        return result;
+        return SharedResources.CAR_Simulated_Fine_Bounds[angle1].IntersectsCar(car1.x, car1.y,
+                SharedResources.CAR_Simulated_Fine_Bounds[angle2], car2.x, car2.y);
     }
 
-
     /**
-     * Checks if a car with a given angle intersects with a rectangle.
+     * Checks if a car with a given angle intersects with any of the objects of a grid around it.
      * @param car The car (as a rectange) to check.
      * @param carAngleIndex The car's angle represented by the index value of the array of all possible angles.
-     * @param r2 The rectangle to check the car collision with.
-     * @return Return true if the car would collide with the rectangle. False if not.
+     * @param objects The map objects to check the car collision with.
+     * @return Returns true if the car would collide with any of the objects. False if not.
      */
-    private boolean isIntersecting(Rectangle car, int carAngleIndex, Rectangle r2) {
-        return !(r2 == null || car == null) && isIntersecting(car, carAngleIndex, r2, true, false);
+    private boolean isIntersecting(Rectangle car, int carAngleIndex, CollisionGrid objects)
+    {
+        return car != null && objects.Intersects(SharedResources.CAR_Simulated_Fine_Bounds[carAngleIndex], car.x, car.y);
     }
 
-
     /**
-     * Checks if a car with a given angle intersects with a line.
-     * @param car The car (as a rectange) to check.
-     * @param carAngleIndex The car's angle represented by the index value of the array of all possible angles.
-     * @param l The line to check the car collision with.
-     * @return Return true if the car would collide with the line. False if not.
+     * Collects the rectangles of the map objects of the given types.
+     * @param mapObjects The map objects.
+     * @param type1 A type of the objects to collect.
+     * @param type2 Another type of the objects to collect (the same as type1 for one type only).
+     * @return The rectangles as x, y, width, height of each.
      */
-    private boolean isIntersecting(Rectangle car, int carAngleIndex, Line2D l) {
-        return !(l == null || car == null) && isIntersecting(car, carAngleIndex, l, false, true);
+    private static double[] PackRectangles(ArrayList<MapObject> mapObjects, InGameObjectType type1, InGameObjectType type2)
+    {
+        int count = 0;
+        for (MapObject m : mapObjects) {
+            if ((m.Type == type1 || m.Type == type2) && m.Rec != null)
+                count++;
+        }
+
+        double[] result = new double[4 * count];
+        int i = 0;
+        for (MapObject m : mapObjects) {
+            if ((m.Type == type1 || m.Type == type2) && m.Rec != null) {
+                result[i++] = m.Rec.x;
+                result[i++] = m.Rec.y;
+                result[i++] = m.Rec.width;
+                result[i++] = m.Rec.height;
+            }
+        }
+        return result;
     }
 
     /**
-     * Checks if a car would collide with a rectangle or line object.
-     * @param car The car (as a rectange) to check.
-     * @param carAngleIndex The car's angle represented by the index value of the array of all possible angles.
-     * @param o The rectangle or Line2D object to check the collision with.
-     * @param isObjectRectangle True if the object is a rectangle. False if not. (Used for casting)
-     * @param isObjectLine Ture if the objvect is a Line2D. False if not. (Used for casting).
-     * @return Returns true if the car would collide with the object. False if not.
+     * Collects the lines of the map objects of the given types.
+     * @param mapObjects The map objects.
+     * @param type1 A type of the objects to collect.
+     * @param type2 Another type of the objects to collect (the same as type1 for one type only).
+     * @return The lines as x1, y1, x2, y2 of each.
      */
-    private boolean isIntersecting(Rectangle car, int carAngleIndex, Object o, Boolean isObjectRectangle, Boolean isObjectLine)
+    private static double[] PackLines(ArrayList<MapObject> mapObjects, InGameObjectType type1, InGameObjectType type2)
     {
-        Line2D tmpLine = null;
-        Rectangle tmpRec = null;
-        if (isObjectRectangle)
-            tmpRec = ((Rectangle) o);
-        if (isObjectLine)
-            tmpLine = ((Line2D) o);
-
-        boolean result = false;
-        Line2D[] carLines = SharedResources.CAR_Simulated_Fine_Bounds[carAngleIndex].GetCarBounds(car);
-
-        for (Line2D carLine : carLines) {
-            if (isObjectRectangle) {
-                result = tmpRec.intersectsLine(carLine);
-                if (result)
-                    return result;
-            }
+        int count = 0;
+        for (MapObject m : mapObjects) {
+            if ((m.Type == type1 || m.Type == type2) && m.Line != null)
+                count++;
+        }
 
-            if (isObjectLine) {
-                result = tmpLine.intersectsLine(carLine);
-                if (result)
-                    return result;
+        double[] result = new double[4 * count];
+        int i = 0;
+        for (MapObject m : mapObjects) {
+            if ((m.Type == type1 || m.Type == type2) && m.Line != null) {
+                result[i++] = m.Line.getX1();
+                result[i++] = m.Line.getY1();
+                result[i++] = m.Line.getX2();
+                result[i++] = m.Line.getY2();
             }
         }
         return result;
     }
-
-
-
 }
@@ -0,0 +1,331 @@
+package ModelLayer.CollisionManagement;
+
+import ControlLayer.SharedResources;
+import ModelLayer.Enumerations.InGameObjectType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The map objects rasterised into one byte per pixel: the bits of the InGameObjectType values present on the pixel
+ * (none for the road). A car is checked by looking up the pixels under its outline, so a check costs the same
+ * however many objects the map has.
+ * The mask is conservative: the lines are drawn about a pixel wide and the rectangles a half pixel larger, so every
+ * collision the exact geometry finds is found, and a car up to a pixel or so away from an object may count as touching it.
+ * A mask is built once per map geometry and shared by every CollisionManager of that map (the server creates
+ * one for every match). It is not changed after it has been built, so it can be shared between threads.
+ */
+final class CollisionMask
+{
+    /**
+     * The distance between two points sampled along a line, at most, in pixels along the longer axis.
+     * Small enough that a car outline crossing a line always has a sample on a pixel drawn for the line.
+     */
+    private static final double SAMPLE_STEP = 0.25;
+
+    /**
+     * The empty border kept around the objects, in pixels.
+     */
+    private static final int BORDER = 2;
+
+    /**
+     * The masks built so far, by the geometry of the map objects.
+     */
+    private static final Map<Geometry, CollisionMask> _Masks = new ConcurrentHashMap<>();
+
+    private final int _OriginX; //The X coordinate of the mask's left column
+    private final int _OriginY; //The Y coordinate of the mask's top row
+    private final int _Width; //The number of pixels in a row
+    private final int _Height; //The number of rows
+    private final byte[] _Pixels; //The object type bits of each pixel, row after row
+    private final int[][] _OutlinePixels; //For every car angle: the pixels under the car's outline as dx, dy pairs, relative to the car's position
+    private final int[][] _OutlineOffsets; //For every car angle: the same pixels as offsets in _Pixels, relative to the car's position
+    private final int[][] _OutlineBoxes; //For every car angle: the smallest dx, dy and the largest dx, dy of the outline pixels
+
+    /**
+     * Returns the mask of a map, building it the first time the map's objects are seen.
+     *
+     * @param mapObjects The objects of the map.
+     * @return The mask of the objects.
+     */
+    static CollisionMask Of(ArrayList<MapObject> mapObjects)
+    {
+        return _Masks.computeIfAbsent(new Geometry(mapObjects), CollisionMask::new);
+    }
+
+    /**
+     * Tells the bit of an object type in the mask.
+     *
+     * @param type The type of the objects.
+     * @return The bit of the type.
+     */
+    static int BitOf(InGameObjectType type)
+    {
+        return 1 << type.ordinal();
+    }
+
+    /**
+     * Rasterises the objects of a map.
+     *
+     * @param geometry The objects of the map.
+     */
+    private CollisionMask(Geometry geometry)
+    {
+        double minX = 0, minY = 0, maxX = 0, maxY = 0;
+        boolean isEmpty = true;
+        for (int i = 0; i < geometry._Rectangles.length; i += 4) {
+            minX = isEmpty ? geometry._Rectangles[i] : Math.min(minX, geometry._Rectangles[i]);
+            minY = isEmpty ? geometry._Rectangles[i + 1] : Math.min(minY, geometry._Rectangles[i + 1]);
+            maxX = isEmpty ? geometry._Rectangles[i] + geometry._Rectangles[i + 2] : Math.max(maxX, geometry._Rectangles[i] + geometry._Rectangles[i + 2]);
+            maxY = isEmpty ? geometry._Rectangles[i + 1] + geometry._Rectangles[i + 3] : Math.max(maxY, geometry._Rectangles[i + 1] + geometry._Rectangles[i + 3]);
+            isEmpty = false;
+        }
+        for (int i = 0; i < geometry._Lines.length; i += 4) {
+            minX = Math.min(isEmpty ? geometry._Lines[i] : minX, Math.min(geometry._Lines[i], geometry._Lines[i + 2]));
+            minY = Math.min(isEmpty ? geometry._Lines[i + 1] : minY, Math.min(geometry._Lines[i + 1], geometry._Lines[i + 3]));
+            maxX = Math.max(isEmpty ? geometry._Lines[i] : maxX, Math.max(geometry._Lines[i], geometry._Lines[i + 2]));
+            maxY = Math.max(isEmpty ? geometry._Lines[i + 1] : maxY, Math.max(geometry._Lines[i + 1], geometry._Lines[i + 3]));
+            isEmpty = false;
+        }
+
+        _OriginX = (int) Math.floor(minX) - BORDER;
+        _OriginY = (int) Math.floor(minY) - BORDER;
+        _Width = (int) Math.floor(maxX) + BORDER - _OriginX + 1;
+        _Height = (int) Math.floor(maxY) + BORDER - _OriginY + 1;
+        _Pixels = new byte[_Width * _Height];
+
+        for (int i = 0; i < geometry._Rectangles.length; i += 4) {
+            DrawRectangle(geometry._Rectangles[i], geometry._Rectangles[i + 1], geometry._Rectangles[i + 2], geometry._Rectangles[i + 3],
+                    geometry._RectangleTypes[i / 4]);
+        }
+        for (int i = 0; i < geometry._Lines.length; i += 4) {
+            DrawLine(geometry._Lines[i], geometry._Lines[i + 1], geometry._Lines[i + 2], geometry._Lines[i + 3], geometry._LineTypes[i / 4]);
+        }
+
+        int angleCount = SharedResources.CAR_Simulated_Fine_Bounds.length;
+        _OutlinePixels = new int[angleCount][];
+        _OutlineOffsets = new int[angleCount][];
+        _OutlineBoxes = new int[angleCount][];
+        for (int angle = 0; angle < angleCount; angle++) {
+            int[] outline = Outline(SharedResources.CAR_Simulated_Fine_Bounds[angle]);
+            int[] offsets = new int[outline.length / 2];
+            int[] box = {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
+            for (int i = 0; i < outline.length; i += 2) {
+                offsets[i / 2] = outline[i + 1] * _Width + outline[i];
+                box[0] = Math.min(box[0], outline[i]);
+                box[1] = Math.min(box[1], outline[i + 1]);
+                box[2] = Math.max(box[2], outline[i]);
+                box[3] = Math.max(box[3], outline[i + 1]);
+            }
+            _OutlinePixels[angle] = outline;
+            _OutlineOffsets[angle] = offsets;
+            _OutlineBoxes[angle] = box;
+        }
+    }
+
+    /**
+     * Marks the pixels of a rectangle, widened by half a pixel on every side.
+     * A rectangle without a width or height is never hit by the geometric check either, it is left out.
+     *
+     * @param x      The X coordinate of the top left corner.
+     * @param y      The Y coordinate of the top left corner.
+     * @param width  The width.
+     * @param height The height.
+     * @param bits   The type bits to set.
+     */
+    private void DrawRectangle(double x, double y, double width, double height, int bits)
+    {
+        if (width <= 0 || height <= 0)
+            return;
+
+        int left = (int) Math.floor(x - 0.5), right = (int) Math.floor(x + width + 0.5);
+        int top = (int) Math.floor(y - 0.5), bottom = (int) Math.floor(y + height + 0.5);
+        for (int py = top; py <= bottom; py++) {
+            for (int px = left; px <= right; px++) {
+                Mark(px, py, bits);
+            }
+        }
+    }
+
+    /**
+     * Marks the pixels of a line: every pixel within half a pixel of a point sampled along it.
+     *
+     * @param x1   The X coordinate of the start point.
+     * @param y1   The Y coordinate of the start point.
+     * @param x2   The X coordinate of the end point.
+     * @param y2   The Y coordinate of the end point.
+     * @param bits The type bits to set.
+     */
+    private void DrawLine(double x1, double y1, double x2, double y2, int bits)
+    {
+        int steps = SampleCount(x1, y1, x2, y2);
+        for (int i = 0; i <= steps; i++) {
+            double x = x1 + (x2 - x1) * i / steps;
+            double y = y1 + (y2 - y1) * i / steps;
+            for (int py = (int) Math.floor(y - 0.5); py <= (int) Math.floor(y + 0.5); py++) {
+                for (int px = (int) Math.floor(x - 0.5); px <= (int) Math.floor(x + 0.5); px++) {
+                    Mark(px, py, bits);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets type bits on a pixel.
+     *
+     * @param x    The X coordinate of the pixel.
+     * @param y    The Y coordinate of the pixel.
+     * @param bits The type bits to set.
+     */
+    private void Mark(int x, int y, int bits)
+    {
+        int column = x - _OriginX, row = y - _OriginY;
+        if (column >= 0 && column < _Width && row >= 0 && row < _Height)
+            _Pixels[row * _Width + column] |= bits;
+    }
+
+    /**
+     * Collects the pixels under the outline of a car, relative to its position.
+     * The car's position is always whole pixels, so the same pixels apply wherever the car is.
+     *
+     * @param bounds The edges of the car at an angle.
+     * @return The pixels as dx, dy pairs, each one once.
+     */
+    private static int[] Outline(CarBounds bounds)
+    {
+        double[] edges = bounds.get_Edges();
+        Set<Long> pixels = new LinkedHashSet<>();
+        for (int e = 0; e < edges.length; e += 4) {
+            int steps = SampleCount(edges[e], edges[e + 1], edges[e + 2], edges[e + 3]);
+            for (int i = 0; i <= steps; i++) {
+                int x = (int) Math.floor(edges[e] + (edges[e + 2] - edges[e]) * i / steps);
+                int y = (int) Math.floor(edges[e + 1] + (edges[e + 3] - edges[e + 1]) * i / steps);
+                pixels.add(((long) x << 32) | (y & 0xFFFFFFFFL));
+            }
+        }
+
+        int[] result = new int[2 * pixels.size()];
+        int i = 0;
+        for (long pixel : pixels) {
+            result[i++] = (int) (pixel >> 32);
+            result[i++] = (int) pixel;
+        }
+        return result;
+    }
+
+    /**
+     * Tells how many steps a line is sampled in.
+     *
+     * @param x1 The X coordinate of the start point.
+     * @param y1 The Y coordinate of the start point.
+     * @param x2 The X coordinate of the end point.
+     * @param y2 The Y coordinate of the end point.
+     * @return The number of steps, at least 1.
+     */
+    private static int SampleCount(double x1, double y1, double x2, double y2)
+    {
+        return Math.max(1, (int) Math.ceil(Math.max(Math.abs(x2 - x1), Math.abs(y2 - y1)) / SAMPLE_STEP));
+    }
+
+    /**
+     * Checks if the outline of a car touches a pixel of the given object types.
+     *
+     * @param angleIndex The angle of the car, as an index of SharedResources.CAR_Simulated_Fine_Bounds.
+     * @param x          The X coordinate of the car's position.
+     * @param y          The Y coordinate of the car's position.
+     * @param bits       The type bits to look for.
+     * @return True if any pixel under the car's outline has one of the bits.
+     */
+    boolean Touches(int angleIndex, int x, int y, int bits)
+    {
+        int column = x - _OriginX, row = y - _OriginY;
+        int[] box = _OutlineBoxes[angleIndex];
+        if (column + box[0] >= 0 && column + box[2] < _Width && row + box[1] >= 0 && row + box[3] < _Height) {
+            //The whole outline is on the mask, no pixel needs its own bounds check.
+            int base = row * _Width + column;
+            for (int offset : _OutlineOffsets[angleIndex]) {
+                if ((_Pixels[base + offset] & bits) != 0)
+                    return true;
+            }
+            return false;
+        }
+
+        int[] outline = _OutlinePixels[angleIndex];
+        for (int i = 0; i < outline.length; i += 2) {
+            int c = column + outline[i], r = row + outline[i + 1];
+            if (c >= 0 && c < _Width && r >= 0 && r < _Height && (_Pixels[r * _Width + c] & bits) != 0)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * The geometry of the objects of a map, comparable by value, to find the mask of a map already built.
+     */
+    private static final class Geometry
+    {
+        private final double[] _Rectangles; //x, y, width, height of each
+        private final int[] _RectangleTypes; //The type bit of each rectangle
+        private final double[] _Lines; //x1, y1, x2, y2 of each
+        private final int[] _LineTypes; //The type bit of each line
+
+        /**
+         * Collects the geometry of the objects of a map.
+         *
+         * @param mapObjects The objects of the map.
+         */
+        private Geometry(ArrayList<MapObject> mapObjects)
+        {
+            int rectangleCount = 0, lineCount = 0;
+            for (MapObject m : mapObjects) {
+                if (m.Rec != null)
+                    rectangleCount++;
+                if (m.Line != null)
+                    lineCount++;
+            }
+
+            _Rectangles = new double[4 * rectangleCount];
+            _RectangleTypes = new int[rectangleCount];
+            _Lines = new double[4 * lineCount];
+            _LineTypes = new int[lineCount];
+            int r = 0, l = 0;
+            for (MapObject m : mapObjects) {
+                if (m.Rec != null) {
+                    _RectangleTypes[r / 4] = BitOf(m.Type);
+                    _Rectangles[r++] = m.Rec.x;
+                    _Rectangles[r++] = m.Rec.y;
+                    _Rectangles[r++] = m.Rec.width;
+                    _Rectangles[r++] = m.Rec.height;
+                }
+                if (m.Line != null) {
+                    _LineTypes[l / 4] = BitOf(m.Type);
+                    _Lines[l++] = m.Line.getX1();
+                    _Lines[l++] = m.Line.getY1();
+                    _Lines[l++] = m.Line.getX2();
+                    _Lines[l++] = m.Line.getY2();
+                }
+            }
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Geometry))
+                return false;
+            Geometry other = (Geometry) o;
+            return Arrays.equals(_Rectangles, other._Rectangles) && Arrays.equals(_RectangleTypes, other._RectangleTypes)
+                    && Arrays.equals(_Lines, other._Lines) && Arrays.equals(_LineTypes, other._LineTypes);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * (31 * (31 * Arrays.hashCode(_Rectangles) + Arrays.hashCode(_RectangleTypes)) + Arrays.hashCode(_Lines))
+                    + Arrays.hashCode(_LineTypes);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package ModelLayer.Enumerations;
+
+/**
+ * The importance of a log line. Lines below the level of the logger are dropped before they are formatted.
+ */
+public enum LogLevel
+{
+    /**
+     * Every message exchanged and every step of a session. Too much for a busy server.
+     */
+    DEBUG,
+
+    /**
+     * Connections, matches and the start and stop of the server.
+     */
+    INFO,
+
+    /**
+     * Something went wrong, but the server or the session carries on.
+     */
+    WARN,
+
+    /**
+     * Something went wrong and a session or the server stops because of it.
+     */
+    ERROR;
+
+    /**
+     * Tells if a line of this level gets logged by a logger of the given level.
+     * @param loggerLevel The level of the logger.
+     * @return True if this level is the same or more important.
+     */
+    public boolean IsAtLeast(LogLevel loggerLevel)
+    {
+        return compareTo(loggerLevel) >= 0;
+    }
+}
@@ -0,0 +1,44 @@
+package ModelLayer.Enumerations;
+
+/**
+ * Describes how the server runs the client sessions.
+ * Selected on the server screen before the server is started.
+ */
+public enum ServerExecutionMode
+{
+    /**
+     * Every session runs a blocking read loop on its own thread from a thread pool.
+     */
+    THREAD_PER_SESSION("Threads"),
+
+    /**
+     * Like THREAD_PER_SESSION, but the sessions and the short tasks they start run on virtual threads.
+     * Needs a Java runtime with virtual threads (21 or newer), otherwise platform threads are used.
+     */
+    VIRTUAL_THREAD("Virtual threads"),
+
+    /**
+     * A few non-blocking event loops (one per core by default) serve all the sessions using selectors.
+     */
+    EVENT_LOOP("Event loop");
+
+    /**
+     * The name displayed to the user.
+     */
+    private final String _DisplayName;
+
+    ServerExecutionMode(String displayName)
+    {
+        _DisplayName = displayName;
+    }
+
+    /**
+     * Returns the name displayed to the user (e.g. in a combobox).
+     * @return The name of the mode.
+     */
+    @Override
+    public String toString()
+    {
+        return _DisplayName;
+    }
+}
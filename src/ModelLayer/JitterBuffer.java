@@ -0,0 +1,167 @@
+package ModelLayer;
+
+import ControlLayer.SharedResources;
+
+import java.awt.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the last status updates of the remote car with the time they belong to, so the car can be displayed a little
+ * in the past (SharedResources.CLN_REMOTE_RENDER_DELAY) and move smoothly between them even if the updates arrive in
+ * bunches or late. If no newer update has arrived, the car keeps going with its last speed and angle for a while
+ * (dead reckoning).
+ * The updates carry no send time. The sender leaves at least SharedResources.CLN_REMOTE_UPDATE_INTERVAL between two
+ * (see StatusSendPolicy), so an update arriving sooner than that after the previous one is taken as sent that much
+ * later: a bunch of late updates is spread out again.
+ * The updates arrive on the client's listener thread and are read by the frame timer, the methods are synchronized.
+ */
+final class JitterBuffer {
+
+    /**
+     * The time of each update (System.nanoTime), in the order they arrived.
+     */
+    private final long[] _Times;
+
+    /**
+     * The location of the car in each update.
+     */
+    private final int[] _X;
+    private final int[] _Y;
+
+    /**
+     * The angle of the car in each update.
+     */
+    private final float[] _Angles;
+
+    /**
+     * The virtual speed of the car in each update (as the HUD displays it).
+     */
+    private final int[] _VirtualSpeeds;
+
+    /**
+     * The number of updates added since the last Clear. The newest one is at (_Count - 1) % capacity.
+     */
+    private long _Count = 0;
+
+    /**
+     * Keeps the last updates of a car.
+     *
+     * @param capacity The number of updates kept.
+     */
+    JitterBuffer(int capacity) {
+        _Times = new long[Math.max(2, capacity)];
+        _X = new int[_Times.length];
+        _Y = new int[_Times.length];
+        _Angles = new float[_Times.length];
+        _VirtualSpeeds = new int[_Times.length];
+    }
+
+    /**
+     * Adds a status update of the car.
+     *
+     * @param x            The location of the car on the X axis.
+     * @param y            The location of the car on the Y axis.
+     * @param angle        The angle of the car.
+     * @param virtualSpeed The virtual speed of the car.
+     * @param arrivedAt    The time the update arrived (System.nanoTime).
+     */
+    synchronized void Add(int x, int y, float angle, int virtualSpeed, long arrivedAt) {
+        long time = arrivedAt;
+        if (_Count > 0) {
+            //Spread out the updates of a bunch, but do not fall behind more than the render delay if the sender is faster.
+            long spaced = _Times[Slot(_Count - 1)] + TimeUnit.MILLISECONDS.toNanos(SharedResources.CLN_REMOTE_UPDATE_INTERVAL);
+            time = Math.min(Math.max(arrivedAt, spaced), arrivedAt + TimeUnit.MILLISECONDS.toNanos(SharedResources.CLN_REMOTE_RENDER_DELAY));
+        }
+
+        int slot = Slot(_Count);
+        _Times[slot] = time;
+        _X[slot] = x;
+        _Y[slot] = y;
+        _Angles[slot] = angle;
+        _VirtualSpeeds[slot] = virtualSpeed;
+        _Count++;
+    }
+
+    /**
+     * Forgets every update, e.g. when a new game starts.
+     */
+    synchronized void Clear() {
+        _Count = 0;
+    }
+
+    /**
+     * Tells where the car has to be displayed at a moment.
+     * Between two updates the location is interpolated and the angle of the earlier one is kept.
+     * After the newest update the car is moved on with its speed and angle, for SharedResources.CLN_REMOTE_MAX_EXTRAPOLATION
+     * milliseconds at most. Before the oldest update kept the car stays at the oldest one.
+     *
+     * @param time     The moment (System.nanoTime), usually the current time minus SharedResources.CLN_REMOTE_RENDER_DELAY.
+     * @param location Set to the location of the car at the moment.
+     * @return The angle of the car at the moment, or Float.NaN if there is no update yet (the location is left unchanged).
+     */
+    synchronized float Sample(long time, Point location) {
+        if (_Count == 0)
+            return Float.NaN;
+
+        int newest = Slot(_Count - 1);
+        if (time >= _Times[newest]) {
+            Extrapolate(newest, time - _Times[newest], location);
+            return _Angles[newest];
+        }
+
+        //Walk back from the newest update to the one before the moment.
+        int filled = (int) Math.min(_Count, _Times.length);
+        int later = newest;
+        for (int i = 1; i < filled; i++) {
+            int earlier = Slot(_Count - 1 - i);
+            if (_Times[earlier] <= time) {
+                double ratio = (double) (time - _Times[earlier]) / (_Times[later] - _Times[earlier]);
+                location.setLocation((int) Math.round(_X[earlier] + (_X[later] - _X[earlier]) * ratio),
+                        (int) Math.round(_Y[earlier] + (_Y[later] - _Y[earlier]) * ratio));
+                return _Angles[earlier];
+            }
+            later = earlier;
+        }
+
+        location.setLocation(_X[later], _Y[later]);
+        return _Angles[later];
+    }
+
+    /**
+     * Moves the car on from an update with the speed and the angle of the update.
+     * The speed only tells how fast the car goes, the direction (forward or reverse) is taken from the last move.
+     *
+     * @param slot     The update to start from.
+     * @param elapsed  The time passed since the update, in nanoseconds.
+     * @param location Set to the location the car would have reached.
+     */
+    private void Extrapolate(int slot, long elapsed, Point location) {
+        location.setLocation(_X[slot], _Y[slot]);
+        if (_VirtualSpeeds[slot] == 0)
+            return;
+
+        elapsed = Math.min(elapsed, TimeUnit.MILLISECONDS.toNanos(SharedResources.CLN_REMOTE_MAX_EXTRAPOLATION));
+        double frames = (double) elapsed / TimeUnit.MILLISECONDS.toNanos(SharedResources.FRAMERATE);
+        double distance = frames * _VirtualSpeeds[slot] * SharedResources.GCS_Maximum_Car_Speed / SharedResources.GCS_Car_Virtual_Speed_Max;
+        double angleRad = Math.toRadians(_Angles[slot]);
+        double dx = Math.sin(angleRad);
+        double dy = 0 - Math.cos(angleRad);
+
+        if (_Count > 1) {
+            int previous = Slot(_Count - 2);
+            if ((_X[slot] - _X[previous]) * dx + (_Y[slot] - _Y[previous]) * dy < 0)
+                distance = 0 - distance; //Reversing
+        }
+        location.translate((int) Math.round(dx * distance), (int) Math.round(dy * distance));
+    }
+
+    /**
+     * Finds the place of an update in the ring.
+     *
+     * @param index The number of the update since the last Clear.
+     * @return The index in the arrays.
+     */
+    private int Slot(long index) {
+        return (int) (index % _Times.length);
+    }
+}
@@ -1,10 +1,12 @@
 package ModelLayer.MapML;
 
+import ControlLayer.SharedResources;
 import ModelLayer.CollisionManagement.MapObject;
 import ModelLayer.FileLoaders.ImageFileLoader;
 
 import java.awt.*;
 import java.util.ArrayList;
+import java.util.Objects;
 
 /**
  * Super class for all the maps' model representation.
@@ -15,8 +17,9 @@ public class MapModel
     /**
      * Contains the MapObjects which are used for collision detection.
      * MapObjects are objects of a map a car can collide with (edge of the racing track, grass, etc)
+     * Every instance has its own, so the server can simulate matches on different maps at the same time.
      */
-    static ArrayList<MapObject> _MapObjects;
+    ArrayList<MapObject> _MapObjects;
 
     /**
      * Represents the cars starting angle, whereby 0 is a car facing north.
@@ -44,6 +47,20 @@ public class MapModel
      */
     String MAP_TextureFile = "";
 
+    /**
+     * Creates the model of a map by its name.
+     *
+     * @param mapName The name of the map, one of SharedResources.MSP_Maps (Easy, Medium).
+     * @return The model of the map, or null if there is no map with that name.
+     */
+    public static MapModel CreateByName(String mapName) {
+        if (Objects.equals(mapName, SharedResources.MSP_Maps[0]))
+            return new EasyMapML();
+        if (Objects.equals(mapName, SharedResources.MSP_Maps[1]))
+            return new MediumMapML();
+        return null;
+    }
+
     /**
      * Getter for the cars starting angle.
      *
@@ -1,14 +1,21 @@
 package ModelLayer.MapML;
 
-import ControlLayer.CurrentGameSession;
 import ModelLayer.CollisionManagement.MapObject;
 import ModelLayer.Enumerations.InGameObjectType;
-import ViewLayer.MapVL.MediumMapVL;
 
+import java.awt.*;
 import java.awt.geom.Line2D;
 import java.util.ArrayList;
 
+/**
+ * Describes the elements and properties of the Medium map.
+ * The racing track is bounded by an outer and an inner edge (lines), which are also drawn by the MediumMapVL.
+ */
 public class MediumMapML extends MapModel {
+    /**
+     * Describes the elements and properties of the Medium map.
+     * Cars are facing towards east (Angle = 90).
+     */
     public MediumMapML() {
         CAR_Starting_Angle = 90;
         CAR_StartingPoint_X_Player1 = 375;
@@ -18,16 +25,40 @@ public class MediumMapML extends MapModel {
         MAP_TextureFile = "/imgs/maptextures/MediumMapTexture.png";
     }
 
+    /**
+     * Creates the lines of an edge of the racing track.
+     * Does not depend on the view, so the server can use it without a map on the screen.
+     *
+     * @param outerEdge True for the outer edge of the racing track, false for the inner edge.
+     * @return The lines of the edge, connected in order.
+     */
+    public static ArrayList<Line2D> CreateRacingTrackEdges(boolean outerEdge) {
+        Point[] points;
+        if (outerEdge) {
+            //Outer racing track points
+            points = new Point[]{new Point(50, 100), new Point(50, 600), new Point(800, 600),
+                    new Point(800, 300), new Point(375, 300), new Point(375, 100)};
+        } else {
+            //Inner racing track points
+            points = new Point[]{new Point(150, 200), new Point(150, 500), new Point(700, 500),
+                    new Point(700, 400), new Point(275, 400), new Point(275, 200)};
+        }
+
+        //Connecting the racing track points to be lines
+        ArrayList<Line2D> edges = new ArrayList<>();
+        for (int i = 0; i < points.length; i++) {
+            Point from = points[i];
+            Point to = points[(i + 1) % points.length];
+            edges.add(new Line2D.Double(from.x, from.y, to.x, to.y));
+        }
+        return edges;
+    }
+
     @Override
     protected void CreateMapObjects() {
         _MapObjects = new ArrayList<>();
-        MediumMapVL mapVL = (MediumMapVL) CurrentGameSession.get_MapView();
-        ArrayList<Line2D> lnTmp;
-
-        lnTmp = mapVL.GetRacingTrackEdgesAsLines(true);
-        CreateOutOfMapMapObjects(lnTmp);
-        lnTmp = mapVL.GetRacingTrackEdgesAsLines(false);
-        CreateOutOfMapMapObjects(lnTmp);
+        CreateOutOfMapMapObjects(CreateRacingTrackEdges(true));
+        CreateOutOfMapMapObjects(CreateRacingTrackEdges(false));
     }
 
     private void CreateOutOfMapMapObjects(ArrayList<Line2D> lnTmp) {
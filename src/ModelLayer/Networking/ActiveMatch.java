@@ -1,13 +1,26 @@
 package ModelLayer.Networking;
 
 import ControlLayer.SharedResources;
+import ModelLayer.Enumerations.LogLevel;
+import ModelLayer.MapML.MapModel;
 import ModelLayer.Networking.Messages.Message;
+import ModelLayer.Networking.Messages.MessageCarStatusUpdate;
+import ModelLayer.Networking.Messages.MessageInGameInput;
 import ModelLayer.Networking.Messages.MessageMapResponse;
+import ModelLayer.Networking.Messages.MessageMatchSnapshot;
+import ModelLayer.Networking.Messages.MessagePing;
 import ModelLayer.Networking.Messages.MessageType;
-import ViewLayer.Screens.ServerScr.LogTerminal;
+import ModelLayer.Networking.Messages.MessageUdpChannel;
 
-import java.net.Socket;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -22,17 +35,13 @@ class ActiveMatch {
      */
     private final int _MatchID;
     /**
-     * Terminal to display logs.
+     * The log of the server.
      */
-    private final LogTerminal _Terminal;
+    private final AsyncLogger _Log;
     /**
-     * Socket towards player 1
+     * The counters of the server. Records how long the messages take to be passed on to the other player.
      */
-    private final Socket _SocketPlayer1;
-    /**
-     * Socket towards player 2
-     */
-    private final Socket _SocketPlayer2;
+    private final ServerMetrics _Metrics;
     /**
      * The only instance of the server object. This match belongs to the server.
      * Server gets called back when the match has ended.
@@ -49,7 +58,7 @@ class ActiveMatch {
     private boolean _ReadyToStartPlayer1 = false;
     private boolean _ReadyToStartPlayer2 = false;
     /**
-     * Represents the session assigned to Socket Player 1.
+     * Represents the session of Player 1.
      */
     private Session _SessionPlayer1;
     /**
@@ -61,7 +70,7 @@ class ActiveMatch {
      */
     private boolean _IsLeftTheGamePlayer1 = false;
     /**
-     * Represents the session assigned to Socket Player 2.
+     * Represents the session of Player 2.
      */
     private Session _SessionPlayer2;
     /**
@@ -84,6 +93,39 @@ class ActiveMatch {
      */
     private volatile boolean _IsGameStartMsgSentOutToBothPlayers = false;
 
+    /**
+     * The UDP channel registrations of the players. Null if the player has no UDP channel
+     * (the server has no UDP relay, or the client does not use the binary codec).
+     */
+    private volatile UdpRelay.Endpoint _UdpPlayer1;
+    private volatile UdpRelay.Endpoint _UdpPlayer2;
+
+    /**
+     * Encodes the position updates of the UDP channel that have to go over TCP (serialised, see RelayDatagram).
+     * Only used by the UDP relay's thread.
+     */
+    private final FrameCodec _DatagramFallbackFrames = new FrameCodec();
+
+    /**
+     * Runs both cars on the server if the match is simulated (see SharedResources.SRV_SERVER_SIMULATION).
+     * Null if the clients run their own cars and relay their positions to each other.
+     */
+    private volatile MatchSimulation _Simulation;
+
+    /**
+     * When both players start driving (System.nanoTime of the server). Told to both clients in the start messages.
+     */
+    private long _StartAt;
+
+    /**
+     * The scheduled ticks of the simulation. Null if the match is not simulated or the ticks have stopped.
+     */
+    private ScheduledFuture<?> _Ticker;
+
+    /**
+     * Records the match into a replay file (see SharedResources.SRV_REPLAY_ENABLED). Null if the match is not recorded.
+     */
+    private volatile MatchRecorder _Recorder;
 
     /**
      * Sends message to both of the participant clients as both of the Sessions became ready.
@@ -102,72 +144,86 @@ class ActiveMatch {
         msgToP1.set_CarImageFileIndex(_SelectedCarIndexPlayer2);
         msgToP2.set_CarImageFileIndex(_SelectedCarIndexPlayer1);
 
+        MapModel map = CreateSimulatedMapOrNull();
+        if (map != null) {
+            _Simulation = new MatchSimulation(map);
+            msgToP1.set_IsServerSimulated(true);
+            msgToP2.set_IsServerSimulated(true);
+        }
+
+        //Both players start at the same moment, late enough for the start message to reach the slower one.
+        _StartAt = ScheduleStart();
+        msgToP1.set_IsStartScheduled(true);
+        msgToP1.set_StartAt(_StartAt);
+        msgToP2.set_IsStartScheduled(true);
+        msgToP2.set_StartAt(_StartAt);
+        StartRecording(map != null);
+
         _SessionPlayer1.SendMessage(msgToP1);
         _SessionPlayer2.SendMessage(msgToP2);
         _IsGameStartMsgSentOutToBothPlayers = true;
+
+        if (_Simulation != null) {
+            StartTicks();
+        } else {
+            //The position updates may be sent over UDP from now on. Control messages stay on TCP.
+            OfferUdpChannels();
+        }
     };
 
 
 
+    /**
+     * Returns the model of the map if the server is to simulate the match.
+     * Maps the server has no model of are played the usual way, and so are matches with a client of the
+     * original protocol, which cannot send its inputs.
+     *
+     * @return The model of the map, or null if the clients simulate the match.
+     */
+    private MapModel CreateSimulatedMapOrNull() {
+        if (!SharedResources.SRV_SERVER_SIMULATION || _SessionPlayer1.IsLegacyClient() || _SessionPlayer2.IsLegacyClient())
+            return null;
+        return MapModel.CreateByName(_MapName);
+    }
+
     /**
      * Constructor.
      * Represents an ongoing match between to players (sessions).
      * The two players (sessions) are passing the messages to each other using this object.
      * This object also watches out for the end of the game and notifies the server when it has ended.
      *
-     * @param _SocketPlayer1 The socket that is used by Player 1
-     * @param _SocketPlayer2 The socket that is used by Player 2
-     * @param _MapName       The name of the map (e.g.: "Easy")
-     * @param matchID        The name of this match (as an incremental integer). Only serves logging purposes.
-     * @param serverInstance The only instance of the server object that hosts all the matches. This will be called back when the match has ended.
-     */
-    public ActiveMatch(Socket _SocketPlayer1, Socket _SocketPlayer2, String _MapName, int matchID, Server serverInstance) {
-        this._SocketPlayer1 = _SocketPlayer1;
-        this._SocketPlayer2 = _SocketPlayer2;
+     * @param _SessionPlayer1 The session of Player 1
+     * @param _SessionPlayer2 The session of Player 2
+     * @param _MapName        The name of the map (e.g.: "Easy")
+     * @param matchID         The name of this match (as an incremental integer). Only serves logging purposes.
+     * @param serverInstance  The only instance of the server object that hosts all the matches. This will be called back when the match has ended.
+     */
+    public ActiveMatch(Session _SessionPlayer1, Session _SessionPlayer2, String _MapName, int matchID, Server serverInstance) {
+        this._SessionPlayer1 = _SessionPlayer1;
+        this._SessionPlayer2 = _SessionPlayer2;
         this._MapName = _MapName;
         _MatchID = matchID;
         _ServerInstance = serverInstance;
-        _Terminal = serverInstance.getTerminal();
+        _Log = serverInstance.get_Logger();
+        _Metrics = serverInstance.get_Metrics();
     }
 
     /**
-     * Tells if the player (socket) in parameter is in this match
+     * Returns the session of player 1.
      *
-     * @param player The player (socket)
-     * @return Returns true if the player in parameter is one of the two players.
+     * @return The session of player 1.
      */
-    public boolean HasThisPlayer(Socket player) {
-        return (_SocketPlayer1.equals(player) || _SocketPlayer2.equals(player));
+    Session get_SessionPlayer1() {
+        return _SessionPlayer1;
     }
 
     /**
-     * Checks if the socket in the parameter is assigned to any of the players.
+     * Returns the session of player 2.
      *
-     * @param socket The socket to check against the players.
-     * @return Returns 1 if the socket is assigned to player 1. Returns 2 if assigned to player 2. Returns -1 if unknown socket.
+     * @return The session of player 2.
      */
-    public int WhichPlayerNumberIsThisSocket(Socket socket) {
-        if (socket.equals(_SocketPlayer1))
-            return SharedResources.PLAYER_1;
-
-        if (socket.equals(_SocketPlayer2))
-            return SharedResources.PLAYER_2;
-
-        return -1;
-    }
-
-    /**
-     * Assigns a socket to the belonging session.
-     *
-     * @param playerNumer The player number to make the assignment to. Either 1 or 2.
-     * @param session     The related socket
-     */
-    public void AssignSessionToSocket(int playerNumer, Session session) {
-        if (playerNumer == SharedResources.PLAYER_1)
-            _SessionPlayer1 = session;
-
-        if (playerNumer == SharedResources.PLAYER_2)
-            _SessionPlayer2 = session;
+    Session get_SessionPlayer2() {
+        return _SessionPlayer2;
     }
 
     /**
@@ -191,13 +247,12 @@ class ActiveMatch {
         //Both players are ready to start. Send start mesages on a separate thread.
         if (_ReadyToStartPlayer1 && _ReadyToStartPlayer2) {
             MatchLog("Game is starting. Messaging both players.");
-            Thread messageSender = new Thread(SendStartGameMessages);
-            messageSender.start();
+            _SessionPlayer1.RunDetached(SendStartGameMessages);
         }
     }
 
     /**
-     * Sends a message received from one player to the another using a new thread.
+     * Sends a message received from one player to the another without blocking the sender's session.
      * Counts Game Crash messages prevents status update or crash message sending after the first
      * crash message has been sent.
      * Only sends messages once both players are informed about the game is being started.
@@ -206,19 +261,34 @@ class ActiveMatch {
      * @param msg                  The received message
      */
     public void TransmitMessage(int assignedPlayerNumber, Message msg) {
+        TransmitMessage(assignedPlayerNumber, msg, _Recorder);
+    }
+
+    /**
+     * Sends a message received from one player to the another, as TransmitMessage does, and records it.
+     *
+     * @param assignedPlayerNumber The sender player session
+     * @param msg                  The received message
+     * @param recorder             Records the relayed message. Null if the match is not recorded, or the message has been recorded already.
+     */
+    private void TransmitMessage(int assignedPlayerNumber, Message msg, MatchRecorder recorder) {
+        //The positions and the crash of a simulated match are decided by the server only.
+        if (_Simulation != null)
+            return;
+
         if (_IsGameStartMsgSentOutToBothPlayers) {
             if (_CarCrashMessageCounter < 1) {
-                MyDispatcher dispatcher = null;
+                long startedAt = System.nanoTime();
                 if (assignedPlayerNumber == SharedResources.PLAYER_1) {
-                    dispatcher = new MyDispatcher(msg, _SessionPlayer2);
+                    Dispatch(assignedPlayerNumber, msg, _SessionPlayer2);
                 }
 
                 if (assignedPlayerNumber == SharedResources.PLAYER_2) {
-                    dispatcher = new MyDispatcher(msg, _SessionPlayer1);
+                    Dispatch(assignedPlayerNumber, msg, _SessionPlayer1);
                 }
-
-                if (dispatcher != null)
-                    dispatcher.start();
+                if (recorder != null)
+                    Record(recorder, assignedPlayerNumber, msg);
+                _Metrics.MessageRelayed(System.nanoTime() - startedAt);
             }
 
             if (msg.getType() == MessageType.INGAMECRASH) {
@@ -228,6 +298,255 @@ class ActiveMatch {
         }
     }
 
+    /**
+     * Relays a binary position update to the other player as it is, without decoding and encoding it again.
+     * The same rules apply as in TransmitMessage. Only possible if the other player receives binary frames.
+     *
+     * @param assignedPlayerNumber The sender player session
+     * @param payload              The payload of the received frame. Only valid during this call.
+     * @return False if the other player cannot receive the frame unchanged. The message must be decoded and
+     * given to TransmitMessage then. True if the frame has been relayed or dropped by the rules.
+     */
+    public boolean RelayFrame(int assignedPlayerNumber, ByteBuffer payload) {
+        if (_Simulation != null)
+            return true;
+
+        Session carrier = null;
+        if (assignedPlayerNumber == SharedResources.PLAYER_1)
+            carrier = _SessionPlayer2;
+        if (assignedPlayerNumber == SharedResources.PLAYER_2)
+            carrier = _SessionPlayer1;
+
+        if (carrier == null || !carrier.IsReceivingBinaryFrames())
+            return false;
+
+        if (_IsGameStartMsgSentOutToBothPlayers && _CarCrashMessageCounter < 1) {
+            long startedAt = System.nanoTime();
+            //The reader reuses the payload's buffer, so the frame is copied into an array of the other player's outbox,
+            //which gets it back once the frame has been written out.
+            int length = payload.remaining();
+            byte[] frame = carrier.TakeFrameBuffer(FrameCodec.HEADER_SIZE + length);
+            frame[0] = (byte) (length >>> 8);
+            frame[1] = (byte) length;
+            System.arraycopy(payload.array(), payload.arrayOffset() + payload.position(), frame, FrameCodec.HEADER_SIZE, length);
+
+            carrier.SendCarStatus(assignedPlayerNumber, frame);
+            MatchRecorder recorder = _Recorder;
+            if (recorder != null)
+                recorder.RecordFrame(assignedPlayerNumber, payload);
+            _Metrics.MessageRelayed(System.nanoTime() - startedAt);
+        }
+        return true;
+    }
+
+    /**
+     * Applies the input of a player to the simulated match. Ignored if the match is not simulated.
+     *
+     * @param assignedPlayerNumber The sender player
+     * @param input                The keys the player holds and the turn the player made.
+     */
+    public void ApplyInput(int assignedPlayerNumber, MessageInGameInput input) {
+        MatchSimulation simulation = _Simulation;
+        if (simulation != null)
+            simulation.ApplyInput(assignedPlayerNumber, input);
+    }
+
+    /**
+     * Chooses when the match starts: SharedResources.SRV_MATCH_START_LEAD milliseconds from now, plus the longer
+     * round trip of the two players, so the start message reaches both clients before the start.
+     * Logs the round trips and the clock offsets the clients have measured.
+     *
+     * @return The start time (System.nanoTime of the server).
+     */
+    private long ScheduleStart() {
+        long roundTrip1 = _SessionPlayer1.get_RoundTripNanos();
+        long roundTrip2 = _SessionPlayer2.get_RoundTripNanos();
+        long lead = TimeUnit.MILLISECONDS.toNanos(SharedResources.SRV_MATCH_START_LEAD) + Math.max(0, Math.max(roundTrip1, roundTrip2));
+
+        MatchLog("Game starts in " + Long.toString(TimeUnit.NANOSECONDS.toMillis(lead)) + " ms. "
+                + DescribeLatency(SharedResources.PLAYER_1, _SessionPlayer1) + " "
+                + DescribeLatency(SharedResources.PLAYER_2, _SessionPlayer2));
+        return System.nanoTime() + lead;
+    }
+
+    /**
+     * Describes the round trip and the clock offset a player's client has measured, for the log.
+     *
+     * @param playerNumber The player number.
+     * @param session      The session of the player.
+     * @return e.g. "Player 1: round trip 12.40 ms, clock offset 3.10 ms." or "Player 1: round trip unknown."
+     */
+    private static String DescribeLatency(int playerNumber, Session session) {
+        long roundTrip = session.get_RoundTripNanos();
+        if (roundTrip == MessagePing.UNKNOWN)
+            return "Player " + Integer.toString(playerNumber) + ": round trip unknown.";
+        return String.format("Player %d: round trip %.2f ms, clock offset %.2f ms.", playerNumber,
+                roundTrip / 1_000_000.0, session.get_ClockOffsetNanos() / 1_000_000.0);
+    }
+
+    /**
+     * Starts the ticks of the simulated match on the server's tick thread.
+     */
+    private synchronized void StartTicks() {
+        //Both players may have left while the start messages were sent.
+        if (_IsLeftTheGamePlayer1 && _IsLeftTheGamePlayer2)
+            return;
+
+        _Ticker = _ServerInstance.ScheduleMatchTick(this::Tick, _StartAt);
+        if (_Ticker == null)
+            MatchLog(LogLevel.WARN, "Could not start the simulation, the server is stopping.");
+    }
+
+    /**
+     * Stops the ticks of the simulated match.
+     */
+    private synchronized void StopTicks() {
+        if (_Ticker != null) {
+            _Ticker.cancel(false);
+            _Ticker = null;
+        }
+    }
+
+    /**
+     * Runs one tick of the simulated match and sends the snapshot of both cars to both players.
+     * Once the cars have crashed, the last snapshot tells both players at the same time and the ticks stop.
+     * Called on the server's tick thread.
+     */
+    private void Tick() {
+        try {
+            MessageMatchSnapshot snapshot = _Simulation.Tick();
+            MatchRecorder recorder = _Recorder;
+            if (recorder != null) {
+                recorder.RecordUpdate(SharedResources.PLAYER_1, snapshot.get_Player1());
+                recorder.RecordUpdate(SharedResources.PLAYER_2, snapshot.get_Player2());
+                if (snapshot.is_IsCrashed())
+                    recorder.RecordCrash(0);
+            }
+
+            if (!snapshot.is_IsCrashed()) {
+                //A slow client only gets the newest snapshot.
+                _SessionPlayer1.SendCarStatus(0, snapshot);
+                _SessionPlayer2.SendCarStatus(0, snapshot);
+                return;
+            }
+
+            //The crash is a control message, it must not be overwritten.
+            _SessionPlayer1.SendMessage(snapshot);
+            _SessionPlayer2.SendMessage(snapshot);
+            _CarCrashMessageCounter++;
+            MatchLog("The cars have crashed at tick " + Integer.toString(snapshot.get_Tick()) + ".");
+            StopTicks();
+        } catch (RuntimeException e) {
+            //An exception would silently stop the ticks.
+            MatchLog(LogLevel.ERROR, "Simulation error: " + e.toString());
+        }
+    }
+
+    /**
+     * Offers the UDP channel to both players if the server has one.
+     */
+    private void OfferUdpChannels() {
+        UdpRelay relay = _ServerInstance.get_UdpRelay();
+        if (relay != null) {
+            _UdpPlayer1 = OfferUdpChannel(relay, SharedResources.PLAYER_1, _SessionPlayer1);
+            _UdpPlayer2 = OfferUdpChannel(relay, SharedResources.PLAYER_2, _SessionPlayer2);
+        }
+    }
+
+    /**
+     * Registers a player on the UDP relay and offers the channel to the player's client.
+     * Only clients using the binary codec get the offer, as the datagrams carry binary payloads.
+     *
+     * @param relay        The UDP relay of the server.
+     * @param playerNumber The player number.
+     * @param session      The session of the player.
+     * @return The registration of the player, or null if the client does not get a UDP channel.
+     */
+    private UdpRelay.Endpoint OfferUdpChannel(UdpRelay relay, int playerNumber, Session session) {
+        if (session == null || !session.IsReceivingBinaryFrames())
+            return null;
+
+        UdpRelay.Endpoint endpoint = relay.Register(this, playerNumber);
+        MessageUdpChannel offer = new MessageUdpChannel();
+        offer.set_Token(endpoint.get_Token());
+        offer.set_Port(relay.get_Port());
+        if (!session.SendMessage(offer)) {
+            relay.Unregister(endpoint);
+            return null;
+        }
+        return endpoint;
+    }
+
+    /**
+     * Relays a position update received on the UDP channel to the other player. The same rules apply as in TransmitMessage.
+     * The update is forwarded as a datagram if the other player's UDP channel works, otherwise it is decoded and
+     * sent over the other player's TCP connection as a serialised frame. Called on the UDP relay's thread.
+     *
+     * @param sender   The registration of the sender.
+     * @param datagram The received datagram. Only valid during this call.
+     * @throws IOException If the datagram could not be forwarded.
+     */
+    void RelayDatagram(UdpRelay.Endpoint sender, ByteBuffer datagram) throws IOException {
+        if (!_IsGameStartMsgSentOutToBothPlayers || _CarCrashMessageCounter >= 1)
+            return;
+
+        int assignedPlayerNumber = sender.get_PlayerNumber();
+        //Recorded from the datagram either way, so the recorder's decoder sees every update of the channel.
+        MatchRecorder recorder = _Recorder;
+        if (recorder != null)
+            recorder.RecordDatagram(assignedPlayerNumber, datagram);
+
+        UdpRelay.Endpoint receiver = assignedPlayerNumber == SharedResources.PLAYER_1 ? _UdpPlayer2 : _UdpPlayer1;
+        UdpRelay relay = _ServerInstance.get_UdpRelay();
+        if (receiver != null && relay != null && receiver.CanForward(datagram)) {
+            relay.Forward(receiver, datagram);
+            return;
+        }
+
+        Session carrier = assignedPlayerNumber == SharedResources.PLAYER_1 ? _SessionPlayer2 : _SessionPlayer1;
+        Message msg = sender.Decode(datagram);
+        if (carrier == null || msg == null || msg.getType() != MessageType.INGAMEPOSITIONUPDATE)
+            return;
+
+        //Re-encoding with the other player's binary codec would mix two snapshot encoders on one connection, and
+        //the sender's frames relayed unchanged would be decoded against the wrong keyframes. A serialised frame
+        //keeps no snapshot state.
+        long startedAt = System.nanoTime();
+        ByteBuffer frame = _DatagramFallbackFrames.Encode(msg);
+        carrier.SendCarStatus(assignedPlayerNumber, Arrays.copyOf(frame.array(), frame.limit()));
+        _Metrics.MessageRelayed(System.nanoTime() - startedAt);
+    }
+
+    /**
+     * Removes the UDP channel registration of a player who has left.
+     *
+     * @param endpoint The registration of the player. Ignored if null.
+     */
+    private void CloseUdpChannel(UdpRelay.Endpoint endpoint) {
+        UdpRelay relay = _ServerInstance.get_UdpRelay();
+        if (relay != null)
+            relay.Unregister(endpoint);
+    }
+
+    /**
+     * Delivers a message to a session without blocking the caller.
+     * The message is queued in the session's outbox and written out by the session's writer in order.
+     * Car status updates replace the sender's previous update if that has not been written out yet.
+     *
+     * @param assignedPlayerNumber The sender player
+     * @param msg                  The message to deliver.
+     * @param carrier              The session to deliver the message to.
+     */
+    private void Dispatch(int assignedPlayerNumber, Message msg, Session carrier) {
+        if (carrier == null)
+            return;
+
+        if (msg.getType() == MessageType.INGAMEPOSITIONUPDATE)
+            carrier.SendCarStatus(assignedPlayerNumber, msg);
+        else
+            carrier.SendMessage(msg);
+    }
+
 
     /**
      * If one of the players has left, then it tries to notify the other opponent.
@@ -236,18 +555,20 @@ class ActiveMatch {
      * @param assignedPlayerNumber The player number of the player who left.
      */
     public synchronized void PlayerHasLeft(int assignedPlayerNumber) {
+        //The other player is told that the game is over, the simulation has nothing to do any more.
+        StopTicks();
 
         //If player 1 dropped
         if (assignedPlayerNumber == SharedResources.PLAYER_1) {
             _IsLeftTheGamePlayer1 = true;
+            CloseUdpChannel(_UdpPlayer1);
             //Notify player 2, if he is not out yet
             if (!_IsLeftTheGamePlayer2) {
                 //Notify about leaving only if car crash notification did not happen (it is unnecessary then)
                 if (_CarCrashMessageCounter < 1) {
                     MatchLog("Player 1 has left the game. Notifying player 2.");
                     Message msg = new Message(MessageType.PLAYERDROPPED);
-                    Thread droppedThread = new Thread(new MyDispatcher(msg, _SessionPlayer2));
-                    droppedThread.start();
+                    Dispatch(assignedPlayerNumber, msg, _SessionPlayer2);
                 }
             }
         }
@@ -255,6 +576,7 @@ class ActiveMatch {
         //If player 2 dropped
         if (assignedPlayerNumber == SharedResources.PLAYER_2) {
             _IsLeftTheGamePlayer2 = true;
+            CloseUdpChannel(_UdpPlayer2);
 
             //Notify player 1, if he is not out yet
             if (!_IsLeftTheGamePlayer1) {
@@ -262,8 +584,7 @@ class ActiveMatch {
                 if (_CarCrashMessageCounter < 1) {
                     MatchLog("Player 2 has left the game. Notifying player 1.");
                     Message msg = new Message(MessageType.PLAYERDROPPED);
-                    Thread droppedThread = new Thread(new MyDispatcher(msg, _SessionPlayer1));
-                    droppedThread.start();
+                    Dispatch(assignedPlayerNumber, msg, _SessionPlayer1);
                 }
             }
         }
@@ -271,47 +592,87 @@ class ActiveMatch {
 
         //If both players left the match, then call back the server to destroy this instance.
         if (_IsLeftTheGamePlayer1 && _IsLeftTheGamePlayer2) {
-            MatchLog("Both players have left the game.");
+            MatchLog("Both players have left the game. " + DescribeLatency(SharedResources.PLAYER_1, _SessionPlayer1) + " "
+                    + DescribeLatency(SharedResources.PLAYER_2, _SessionPlayer2));
+            StopRecording();
             _ServerInstance.AMatchHasAnded(this, _MatchID);
         }
     }
 
     /**
-     * Displays a text in a terminal. Also places the timestamp and the session as the sender.
+     * Creates the replay file of the match if the matches are recorded (see SharedResources.SRV_REPLAY_ENABLED)
+     * and sets it as the recorder of the match.
      *
-     * @param text The text to display in the terminal.
+     * @param isServerSimulated True if the server simulates the match.
      */
-    private void MatchLog(String text) {
-        final LocalDateTime now = LocalDateTime.now();
-        String time = now.toLocalTime().toString();
-
-        final String sender = "MATCH " + _MatchID + ": ";
-
-        String msg = time + ", " + sender + text;
-        _Terminal.Log(msg);
+    private synchronized void StartRecording(boolean isServerSimulated) {
+        //Both players may have left while the start messages were prepared. Nobody would close the file then.
+        if (!SharedResources.SRV_REPLAY_ENABLED || (_IsLeftTheGamePlayer1 && _IsLeftTheGamePlayer2))
+            return;
+
+        String time = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        Path file = Paths.get(SharedResources.SRV_REPLAY_DIRECTORY, "match-" + time + "-" + Integer.toString(_MatchID) + ".replay");
+        try {
+            MatchRecorder recorder = new MatchRecorder(file, _MapName, _SelectedCarIndexPlayer1, _SelectedCarIndexPlayer2,
+                    isServerSimulated, _StartAt, _SessionPlayer1.get_RoundTripNanos(), _SessionPlayer2.get_RoundTripNanos());
+            MatchLog("Recording the match to " + file.toString());
+            _Recorder = recorder;
+        } catch (IOException e) {
+            MatchLog(LogLevel.WARN, "Could not record the match to " + file.toString() + ": " + e.toString());
+        }
     }
 
     /**
-     * A small inner class used to send one message on a separate thread.
+     * Records a relayed message if it belongs to the replay (a position update or a crash).
+     *
+     * @param recorder             The recorder of the match.
+     * @param assignedPlayerNumber The sender player
+     * @param msg                  The relayed message
      */
-    private class MyDispatcher extends Thread {
-        final Message _ToDeliver;
-        final Session _Carrier;
+    private static void Record(MatchRecorder recorder, int assignedPlayerNumber, Message msg) {
+        if (msg.getType() == MessageType.INGAMEPOSITIONUPDATE && msg instanceof MessageCarStatusUpdate)
+            recorder.RecordUpdate(assignedPlayerNumber, (MessageCarStatusUpdate) msg);
+        if (msg.getType() == MessageType.INGAMECRASH)
+            recorder.RecordCrash(assignedPlayerNumber);
+    }
 
-        /**
-         * A small inner class used to send one message on a separate thread.
-         *
-         * @param msg     The message to be send
-         * @param Carrier The session (socket) to deliver the message to.
-         */
-        public MyDispatcher(Message msg, Session Carrier) {
-            _ToDeliver = msg;
-            _Carrier = Carrier;
+    /**
+     * Closes the replay file of the match, if it is recorded.
+     */
+    private void StopRecording() {
+        MatchRecorder recorder = _Recorder;
+        if (recorder == null)
+            return;
+        _Recorder = null;
+
+        try {
+            recorder.Close();
+            MatchLog("Replay saved to " + recorder.get_Path().toString() + ": " + Long.toString(recorder.get_RecordCount())
+                    + " records, " + Integer.toString(recorder.get_Size() / 1024) + " KB"
+                    + (recorder.is_Truncated() ? ". The file filled up, the end of the match is missing." : "."));
+        } catch (IOException e) {
+            MatchLog(LogLevel.WARN, "Could not save the replay " + recorder.get_Path().toString() + ": " + e.toString());
         }
+    }
 
-        public void run() {
-            _Carrier.SendMessage(_ToDeliver);
-        }
+    /**
+     * Displays a text in a terminal. Also places the timestamp and the session as the sender.
+     *
+     * @param text The text to display in the terminal.
+     */
+    private void MatchLog(String text) {
+        MatchLog(LogLevel.INFO, text);
+    }
+
+    /**
+     * Displays a text in a terminal if its level is logged. Also places the timestamp and the match as the sender.
+     *
+     * @param level The level of the text.
+     * @param text  The text to display in the terminal.
+     */
+    private void MatchLog(LogLevel level, String text) {
+        if (_Log.IsEnabled(level))
+            _Log.Log(level, "MATCH " + _MatchID + ": ", text);
     }
 
 }
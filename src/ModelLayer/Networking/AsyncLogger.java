@@ -0,0 +1,320 @@
+package ModelLayer.Networking;
+
+import ControlLayer.SharedResources;
+import ModelLayer.Enumerations.LogLevel;
+
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The log of the server, its sessions and matches.
+ * The network threads only put the parts of a line (time, level, sender, text) into a bounded ring buffer, without
+ * locks and without formatting. One background thread takes them out in batches, formats them and writes them to the
+ * sinks (e.g. the server screen, the console, a rolling file), so a slow sink never holds up a network thread.
+ * Lines below the level of the logger are dropped straight away; callers with expensive texts check IsEnabled first.
+ * If the buffer is full, new lines are dropped and counted, and the count is logged once there is room again.
+ * <p>
+ * The buffer is a ring of slots with sequence numbers: a writer claims a slot by moving the tail with a CAS, fills it
+ * and publishes it by setting its sequence number. The drain thread reads the published slots in order and hands them
+ * back by moving their sequence number one lap ahead.
+ */
+public class AsyncLogger {
+
+    /**
+     * Formats the time of a line.
+     */
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+
+    /**
+     * The slots of the ring buffer. The length is a power of two.
+     */
+    private final Slot[] _Ring;
+
+    /**
+     * Selects the slot of a position (the length of the ring - 1).
+     */
+    private final int _Mask;
+
+    /**
+     * The position the next line is written to. Moved by the writers.
+     */
+    private final AtomicLong _Tail = new AtomicLong();
+
+    /**
+     * The position of the next line to drain. Only moved by the drain thread.
+     */
+    private volatile long _Head = 0;
+
+    /**
+     * Where the lines are written to.
+     */
+    private final CopyOnWriteArrayList<LogSink> _Sinks = new CopyOnWriteArrayList<>();
+
+    /**
+     * The least important level that is logged.
+     */
+    private volatile LogLevel _Level;
+
+    /**
+     * The number of lines dropped because the buffer was full.
+     */
+    private final LongAdder _DroppedCount = new LongAdder();
+
+    /**
+     * The number of dropped lines already reported in the log. Only used by the drain thread.
+     */
+    private long _ReportedDroppedCount = 0;
+
+    /**
+     * Takes the lines out of the buffer.
+     */
+    private final Thread _DrainThread;
+
+    /**
+     * True while the drain thread sleeps because the buffer was empty.
+     */
+    private volatile boolean _IsDrainSleeping = false;
+
+    /**
+     * The log of the server. Starts the drain thread.
+     *
+     * @param capacity The number of lines the buffer takes. Rounded up to a power of two.
+     * @param level    The least important level that is logged.
+     * @param sink     The first sink to write to. Can be null.
+     */
+    public AsyncLogger(int capacity, LogLevel level, LogSink sink) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        _Ring = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            _Ring[i] = new Slot(i);
+        }
+        _Mask = size - 1;
+        _Level = level;
+        if (sink != null)
+            _Sinks.add(sink);
+
+        _DrainThread = new Thread(this::Drain, "LogDrain");
+        _DrainThread.setDaemon(true);
+        _DrainThread.start();
+    }
+
+    /**
+     * Tells if lines of a level are logged. Check it before building an expensive text.
+     *
+     * @param level The level of the line.
+     * @return True if the line would be logged.
+     */
+    public boolean IsEnabled(LogLevel level) {
+        return level.IsAtLeast(_Level);
+    }
+
+    /**
+     * Logs a line without blocking. Formatted later on the drain thread as "time, sender text".
+     *
+     * @param level  The level of the line.
+     * @param sender Who logs the line (e.g. "SERVER: ").
+     * @param text   The text of the line.
+     * @return False if the line is below the level of the logger or the buffer is full.
+     */
+    public boolean Log(LogLevel level, String sender, String text) {
+        if (!IsEnabled(level))
+            return false;
+
+        long time = System.currentTimeMillis();
+        long position = _Tail.get();
+        Slot slot;
+        while (true) {
+            slot = _Ring[(int) position & _Mask];
+            long difference = slot._Sequence - position;
+            if (difference == 0) {
+                if (_Tail.compareAndSet(position, position + 1))
+                    break;
+                position = _Tail.get();
+            } else if (difference < 0) {
+                //The slot still holds a line of the previous lap: the buffer is full.
+                _DroppedCount.increment();
+                return false;
+            } else {
+                //Another writer has taken the slot.
+                position = _Tail.get();
+            }
+        }
+
+        slot._Time = time;
+        slot._Level = level;
+        slot._Sender = sender;
+        slot._Text = text;
+        slot._Sequence = position + 1;
+
+        //Under a burst the drain thread must not sleep until the buffer overflows.
+        if (_IsDrainSleeping && position - _Head >= _Ring.length / 2) {
+            _IsDrainSleeping = false;
+            LockSupport.unpark(_DrainThread);
+        }
+        return true;
+    }
+
+    /**
+     * Adds a sink. Lines logged afterwards are written to it too.
+     *
+     * @param sink The sink to add.
+     */
+    public void AddSink(LogSink sink) {
+        _Sinks.add(sink);
+    }
+
+    /**
+     * Sets the least important level that is logged.
+     *
+     * @param level The level.
+     */
+    public void set_Level(LogLevel level) {
+        _Level = level;
+    }
+
+    /**
+     * Returns the least important level that is logged.
+     *
+     * @return The level.
+     */
+    public LogLevel get_Level() {
+        return _Level;
+    }
+
+    /**
+     * Returns the number of lines dropped because the buffer was full.
+     *
+     * @return The number of dropped lines.
+     */
+    public long get_DroppedCount() {
+        return _DroppedCount.sum();
+    }
+
+    /**
+     * Waits until the lines logged so far have been written to the sinks, e.g. before the process ends.
+     *
+     * @param timeoutMillis The longest time to wait, in milliseconds.
+     * @return False if the lines have not been written within the time.
+     */
+    public boolean Flush(long timeoutMillis) {
+        long target = _Tail.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (_Head < target) {
+            if (System.nanoTime() - deadline > 0)
+                return false;
+            LockSupport.unpark(_DrainThread);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        return true;
+    }
+
+    /**
+     * Takes the lines out of the buffer and writes them to the sinks, for ever. Runs on the drain thread.
+     * Sleeps for a while when the buffer is empty, so the writers only wake it up if the buffer fills up by half.
+     */
+    private void Drain() {
+        StringBuilder line = new StringBuilder(256);
+        while (true) {
+            int written = 0;
+            long head = _Head;
+            Slot slot;
+            while ((slot = _Ring[(int) head & _Mask])._Sequence == head + 1) {
+                line.setLength(0);
+                Format(line, slot._Time, slot._Level, slot._Sender, slot._Text);
+                slot._Sender = null;
+                slot._Text = null;
+                //Hands the slot back to the writers for the next lap.
+                slot._Sequence = head + _Ring.length;
+                head++;
+                Write(line.toString());
+                written++;
+            }
+
+            long dropped = _DroppedCount.sum();
+            if (dropped != _ReportedDroppedCount) {
+                line.setLength(0);
+                Format(line, System.currentTimeMillis(), LogLevel.WARN, "LOG: ",
+                        Long.toString(dropped - _ReportedDroppedCount) + " lines dropped, the log buffer was full.");
+                _ReportedDroppedCount = dropped;
+                Write(line.toString());
+                written++;
+            }
+
+            if (written > 0) {
+                for (LogSink sink : _Sinks) {
+                    sink.Flush();
+                }
+            }
+            _Head = head;
+
+            if (written == 0) {
+                _IsDrainSleeping = true;
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(SharedResources.SRV_LOG_DRAIN_INTERVAL));
+                _IsDrainSleeping = false;
+            }
+        }
+    }
+
+    /**
+     * Writes a line to every sink. A failing sink does not stop the others.
+     *
+     * @param line The formatted line.
+     */
+    private void Write(String line) {
+        for (LogSink sink : _Sinks) {
+            try {
+                sink.Log(line);
+            } catch (RuntimeException e) {
+                System.err.println("Log sink error: " + e);
+            }
+        }
+    }
+
+    /**
+     * Formats a line the way the server has always logged: "time, sender text". Levels other than INFO are shown.
+     *
+     * @param line   Collects the line.
+     * @param time   The time of the line (System.currentTimeMillis).
+     * @param level  The level of the line.
+     * @param sender Who logged the line.
+     * @param text   The text of the line.
+     */
+    private static void Format(StringBuilder line, long time, LogLevel level, String sender, String text) {
+        TIME_FORMAT.formatTo(LocalTime.from(Instant.ofEpochMilli(time).atZone(ZoneId.systemDefault())), line);
+        line.append(", ");
+        if (level != LogLevel.INFO)
+            line.append(level.name()).append(' ');
+        line.append(sender).append(text);
+    }
+
+    /**
+     * One slot of the ring buffer.
+     */
+    private static final class Slot {
+
+        /**
+         * position + 1 once the line of that position has been written into the slot,
+         * position + ring length once it has been drained and the slot can take the line of the next lap.
+         */
+        private volatile long _Sequence;
+
+        /**
+         * The parts of the line. Published by the write of _Sequence.
+         */
+        private long _Time;
+        private LogLevel _Level;
+        private String _Sender;
+        private String _Text;
+
+        private Slot(long sequence) {
+            _Sequence = sequence;
+        }
+    }
+}
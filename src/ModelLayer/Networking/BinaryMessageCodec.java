@@ -0,0 +1,268 @@
+package ModelLayer.Networking;
+
+import ModelLayer.Networking.Messages.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A compact codec with a fixed layout for every message type. Encoding writes no objects, decoding
+ * creates only the message itself. All the numbers are big-endian. Every payload starts with the message type (1 byte).
+ * <pre>
+ * HELLO                   type [codec mask, 1 byte, only in MessageHello]
+ * LOOKINGFOROPPONENT      type, car image index (1), map name length (1), map name (UTF-8)
+ * OPPONENTFOUNDSTARTGAME  type, car image index (1), map name length (1), map name (UTF-8), player number (1),
+ *                         flags (1, bit 0: server simulated, bit 1: start scheduled; missing from older servers),
+ *                         start time (8, server clock, only if the start is scheduled)
+ * INGAMEPOSITIONUPDATE    type, snapshot (keyframe or delta, see CarSnapshotCodec)
+ * UDPCHANNEL              type, token (4), port (2)
+ * INGAMEINPUT             type, keys (1, bit 0: forward, bit 1: backward), turn (1)
+ * INGAMESNAPSHOT          type, tick (4), flags (1, bit 0: crashed), car of player 1 (6), car of player 2 (6)
+ *                         (a car as the body of a keyframe, see CarSnapshotCodec.EncodeState)
+ * PING                    type, originate time (8), round trip (8), clock offset (8)
+ * PONG                    type, originate time (8), receive time (8), transmit time (8)
+ * Others                  type
+ * </pre>
+ * A position update is 3 to 8 bytes, compared to about 300 bytes as a serialised object.
+ * The snapshots keep state, so every connection has its own instance (see FrameCodec).
+ */
+final class BinaryMessageCodec implements MessageCodec {
+
+    /**
+     * The longest map name that fits the one byte length.
+     */
+    private static final int MAX_NAME_LENGTH = 0xFF;
+
+    /**
+     * Bits of the flags and keys fields.
+     */
+    private static final int FLAG_SERVER_SIMULATED = 0x01;
+    private static final int FLAG_START_SCHEDULED = 0x02;
+    private static final int FLAG_CRASHED = 0x01;
+    private static final int KEY_FORWARD = 0x01;
+    private static final int KEY_BACKWARD = 0x02;
+
+    /**
+     * Encodes and decodes the position updates of this connection.
+     */
+    private final CarSnapshotCodec _Snapshots = new CarSnapshotCodec();
+
+    @Override
+    public int get_Id() {
+        return MessageCodecs.BINARY_ID;
+    }
+
+    @Override
+    public void Encode(Message msg, ByteBuffer out) throws IOException {
+        int type = msg.getType();
+        out.put((byte) type);
+
+        switch (type) {
+            case MessageType.HELLO:
+                if (msg instanceof MessageHello)
+                    out.put((byte) ((MessageHello) msg).get_CodecMask());
+                break;
+            case MessageType.LOOKINGFOROPPONENT:
+                EncodeMapRequest(As(msg, MessageMapRequest.class), out);
+                break;
+            case MessageType.OPPONENTFOUNDSTARTGAME:
+                MessageMapResponse response = As(msg, MessageMapResponse.class);
+                EncodeMapRequest(response, out);
+                out.put(ToUnsignedByte(response.get_GivenPlayerNumber(), "player number"));
+                out.put((byte) ((response.is_IsServerSimulated() ? FLAG_SERVER_SIMULATED : 0)
+                        | (response.is_IsStartScheduled() ? FLAG_START_SCHEDULED : 0)));
+                if (response.is_IsStartScheduled())
+                    out.putLong(response.get_StartAt());
+                break;
+            case MessageType.INGAMEPOSITIONUPDATE:
+                _Snapshots.Encode(As(msg, MessageCarStatusUpdate.class), out);
+                break;
+            case MessageType.UDPCHANNEL:
+                MessageUdpChannel channel = As(msg, MessageUdpChannel.class);
+                out.putInt(channel.get_Token());
+                out.putShort((short) channel.get_Port());
+                break;
+            case MessageType.INGAMEINPUT:
+                MessageInGameInput input = As(msg, MessageInGameInput.class);
+                out.put((byte) ((input.is_IsForwardPressed() ? KEY_FORWARD : 0) | (input.is_IsBackwardPressed() ? KEY_BACKWARD : 0)));
+                out.put(ToUnsignedByte(input.get_Turn(), "turn"));
+                break;
+            case MessageType.INGAMESNAPSHOT:
+                MessageMatchSnapshot snapshot = As(msg, MessageMatchSnapshot.class);
+                out.putInt(snapshot.get_Tick());
+                out.put((byte) (snapshot.is_IsCrashed() ? FLAG_CRASHED : 0));
+                CarSnapshotCodec.EncodeState(snapshot.get_Player1(), out);
+                CarSnapshotCodec.EncodeState(snapshot.get_Player2(), out);
+                break;
+            case MessageType.PING:
+                MessagePing ping = As(msg, MessagePing.class);
+                out.putLong(ping.get_OriginateTime());
+                out.putLong(ping.get_RoundTrip());
+                out.putLong(ping.get_ClockOffset());
+                break;
+            case MessageType.PONG:
+                MessagePing pong = As(msg, MessagePing.class);
+                out.putLong(pong.get_OriginateTime());
+                out.putLong(pong.get_ReceiveTime());
+                out.putLong(pong.get_TransmitTime());
+                break;
+            default:
+                //The type tells everything.
+                break;
+        }
+    }
+
+    @Override
+    public Message Decode(ByteBuffer payload) throws IOException {
+        int type = payload.get() & 0xFF;
+
+        switch (type) {
+            case MessageType.HELLO:
+                if (!payload.hasRemaining())
+                    return new Message(type);
+                MessageHello hello = new MessageHello();
+                hello.set_CodecMask(payload.get() & 0xFF);
+                return hello;
+            case MessageType.LOOKINGFOROPPONENT:
+                MessageMapRequest request = new MessageMapRequest(type);
+                DecodeMapRequest(payload, request);
+                return request;
+            case MessageType.OPPONENTFOUNDSTARTGAME:
+                MessageMapResponse response = new MessageMapResponse(type);
+                DecodeMapRequest(payload, response);
+                response.set_GivenPlayerNumber(payload.get() & 0xFF);
+                if (payload.hasRemaining()) {
+                    int flags = payload.get() & 0xFF;
+                    response.set_IsServerSimulated((flags & FLAG_SERVER_SIMULATED) != 0);
+                    if ((flags & FLAG_START_SCHEDULED) != 0) {
+                        response.set_IsStartScheduled(true);
+                        response.set_StartAt(payload.getLong());
+                    }
+                }
+                return response;
+            case MessageType.INGAMEPOSITIONUPDATE:
+                MessageCarStatusUpdate update = new MessageCarStatusUpdate(type);
+                //A delta against a keyframe that never arrived (e.g. dropped by the server) is skipped.
+                return _Snapshots.Decode(payload, update) ? update : null;
+            case MessageType.UDPCHANNEL:
+                MessageUdpChannel channel = new MessageUdpChannel();
+                channel.set_Token(payload.getInt());
+                channel.set_Port(payload.getShort() & 0xFFFF);
+                return channel;
+            case MessageType.INGAMEINPUT:
+                MessageInGameInput input = new MessageInGameInput();
+                int keys = payload.get() & 0xFF;
+                input.set_IsForwardPressed((keys & KEY_FORWARD) != 0);
+                input.set_IsBackwardPressed((keys & KEY_BACKWARD) != 0);
+                input.set_Turn(payload.get() & 0xFF);
+                return input;
+            case MessageType.INGAMESNAPSHOT:
+                MessageMatchSnapshot snapshot = new MessageMatchSnapshot();
+                snapshot.set_Tick(payload.getInt());
+                snapshot.set_IsCrashed((payload.get() & FLAG_CRASHED) != 0);
+                snapshot.set_Player1(DecodeCarState(payload));
+                snapshot.set_Player2(DecodeCarState(payload));
+                return snapshot;
+            case MessageType.PING:
+                MessagePing ping = new MessagePing(type);
+                ping.set_OriginateTime(payload.getLong());
+                ping.set_RoundTrip(payload.getLong());
+                ping.set_ClockOffset(payload.getLong());
+                return ping;
+            case MessageType.PONG:
+                MessagePing pong = new MessagePing(type);
+                pong.set_OriginateTime(payload.getLong());
+                pong.set_ReceiveTime(payload.getLong());
+                pong.set_TransmitTime(payload.getLong());
+                return pong;
+            case MessageType.GOODBYE:
+            case MessageType.CANCELLOOKINGFOROPPONENT:
+            case MessageType.INGAMECRASH:
+            case MessageType.PLAYERDROPPED:
+            case MessageType.MATCHHASENDED:
+            case MessageType.SERVERDOWN:
+                return new Message(type);
+            default:
+                throw new IOException("Unknown message type received: " + Integer.toString(type));
+        }
+    }
+
+    /**
+     * Reads the state of one car of a match snapshot.
+     *
+     * @param payload The payload of the frame, positioned at the car's state.
+     * @return The state of the car.
+     */
+    private static MessageCarStatusUpdate DecodeCarState(ByteBuffer payload) {
+        MessageCarStatusUpdate state = new MessageCarStatusUpdate(MessageType.INGAMEPOSITIONUPDATE);
+        CarSnapshotCodec.DecodeState(payload, state);
+        return state;
+    }
+
+    /**
+     * Writes the car image index and the map name of a map request or response (after the type byte).
+     *
+     * @param request The message to encode.
+     * @param out     The buffer to write to.
+     * @throws IOException If a value does not fit its field.
+     */
+    private static void EncodeMapRequest(MessageMapRequest request, ByteBuffer out) throws IOException {
+        out.put(ToUnsignedByte(request.get_CarImageFileIndex(), "car image index"));
+
+        //A missing map name (e.g. in the server's response) is sent as an empty one and decoded as null.
+        String name = request.get_MapName();
+        if (name == null || name.isEmpty()) {
+            out.put((byte) 0);
+            return;
+        }
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length > MAX_NAME_LENGTH)
+            throw new IOException("Map name is too long: " + name);
+        out.put((byte) nameBytes.length);
+        out.put(nameBytes);
+    }
+
+    /**
+     * Reads the car image index and the map name of a map request or response into the message.
+     *
+     * @param payload The payload of the frame, positioned after the type byte.
+     * @param request The message to fill in.
+     */
+    private static void DecodeMapRequest(ByteBuffer payload, MessageMapRequest request) {
+        request.set_CarImageFileIndex(payload.get() & 0xFF);
+        int nameLength = payload.get() & 0xFF;
+        if (nameLength > 0) {
+            request.set_MapName(new String(payload.array(), payload.arrayOffset() + payload.position(), nameLength, StandardCharsets.UTF_8));
+            payload.position(payload.position() + nameLength);
+        }
+    }
+
+    /**
+     * Checks that the message is of the class its type requires.
+     *
+     * @param msg      The message to check.
+     * @param expected The class the message type requires.
+     * @return The message cast to the expected class.
+     * @throws IOException If the message is of a different class.
+     */
+    private static <T extends Message> T As(Message msg, Class<T> expected) throws IOException {
+        if (!expected.isInstance(msg))
+            throw new IOException("Message type " + Integer.toString(msg.getType()) + " must be a " + expected.getSimpleName());
+        return expected.cast(msg);
+    }
+
+    /**
+     * Converts a value to an unsigned 1 byte field.
+     *
+     * @param value The value to convert.
+     * @param name  The name of the field, for the error message.
+     * @return The value as a byte.
+     * @throws IOException If the value does not fit.
+     */
+    private static byte ToUnsignedByte(int value, String name) throws IOException {
+        if (value < 0 || value > 0xFF)
+            throw new IOException("Value of " + name + " does not fit the binary layout: " + Integer.toString(value));
+        return (byte) value;
+    }
+}
@@ -0,0 +1,317 @@
+package ModelLayer.Networking;
+
+import ControlLayer.SharedResources;
+import ModelLayer.Networking.Messages.MessageCarStatusUpdate;
+import ModelLayer.Networking.Messages.MessageType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes car status updates of the binary codec as quantised snapshots: periodic keyframes carrying the full state,
+ * and small deltas in between that only carry what changed against the latest keyframe.
+ * Deltas are relative to a keyframe (not to the previous delta), so a lost or coalesced delta does not matter.
+ * <pre>
+ * header (1)     bit 7: keyframe, bits 0-6: id of the keyframe (the baseline of a delta)
+ * keyframe       angle index (high 4 bits) and flags (bit 1: accelerating, bit 0: impact sound) (1), x (2), y (2), speed (1)
+ * delta          change mask (1), then the changed fields: angle index (1), x - keyframe x (1), y - keyframe y (1), speed (1)
+ *                The change mask also carries the two flags, as they change often and fit in.
+ * </pre>
+ * A parked car costs 3 bytes per update (with the type byte), a moving one 5, a keyframe 8.
+ * The body of a keyframe is also used on its own for the cars of a match snapshot (see EncodeState).
+ * The encoder and the decoder keep state, so every connection has its own instance.
+ * The encoder runs on the sending thread and the decoder on the receiving one; they do not share state.
+ */
+final class CarSnapshotCodec {
+
+    /**
+     * Keyframe bit of the header.
+     */
+    private static final int KEYFRAME_BIT = 0x80;
+
+    /**
+     * Mask of the keyframe id in the header.
+     */
+    private static final int KEYFRAME_ID_MASK = 0x7F;
+
+    /**
+     * The number of keyframes the decoder remembers.
+     */
+    private static final int BASELINE_COUNT = 8;
+
+    /**
+     * Bits of the keyframe's first byte and the delta's change mask.
+     */
+    private static final int FLAG_IMPACT_SOUND = 0x01;
+    private static final int FLAG_ACCELERATING = 0x02;
+
+    /**
+     * Bits of the delta's change mask telling which fields follow.
+     */
+    private static final int CHANGED_ANGLE = 0x10;
+    private static final int CHANGED_X = 0x20;
+    private static final int CHANGED_Y = 0x40;
+    private static final int CHANGED_SPEED = 0x80;
+
+    /**
+     * The largest speed that fits the quantised field.
+     */
+    private static final int MAX_SPEED = 0x7F;
+
+    /**
+     * The id of the last keyframe sent. -1 before the first one.
+     */
+    private int _SentKeyframeId = -1;
+
+    /**
+     * The state sent in the last keyframe: angle index, x, y, speed.
+     */
+    private final int[] _SentKeyframe = new int[4];
+
+    /**
+     * The number of deltas sent since the last keyframe.
+     */
+    private int _DeltasSinceKeyframe = 0;
+
+    /**
+     * The ids of the remembered keyframes (-1 if the place is empty). A keyframe is kept at the place id % BASELINE_COUNT.
+     */
+    private final int[] _BaselineIds = new int[BASELINE_COUNT];
+
+    /**
+     * The state of the remembered keyframes: angle index, x, y, speed.
+     */
+    private final int[][] _Baselines = new int[BASELINE_COUNT][4];
+
+    /**
+     * Encodes car status updates as quantised snapshots. Holds the state of one connection.
+     */
+    CarSnapshotCodec() {
+        for (int i = 0; i < BASELINE_COUNT; i++) {
+            _BaselineIds[i] = -1;
+        }
+    }
+
+    /**
+     * Tells if an encoded frame of a status update is a keyframe. Keyframes must not be overwritten by deltas.
+     *
+     * @param frame A complete frame (length prefix and payload).
+     * @return True if the frame is a binary keyframe. False for a serialised one, which no delta refers to.
+     */
+    static boolean IsKeyframe(byte[] frame) {
+        int headerIndex = FrameCodec.HEADER_SIZE + 1;
+        return frame.length > headerIndex && frame[FrameCodec.HEADER_SIZE] == MessageType.INGAMEPOSITIONUPDATE
+                && (frame[headerIndex] & KEYFRAME_BIT) != 0;
+    }
+
+    /**
+     * Tells if a binary payload of a status update is a keyframe. Does not move the buffer's position.
+     *
+     * @param buffer The buffer holding the payload.
+     * @param offset The index of the payload's type byte.
+     * @return True if the payload is a binary keyframe.
+     */
+    static boolean IsKeyframe(ByteBuffer buffer, int offset) {
+        return buffer.limit() > offset + 1 && buffer.get(offset) == MessageType.INGAMEPOSITIONUPDATE
+                && (buffer.get(offset + 1) & KEYFRAME_BIT) != 0;
+    }
+
+    /**
+     * Writes a snapshot of the update (after the type byte). Writes a keyframe every SharedResources.NET_SNAPSHOT_KEYFRAME_INTERVAL
+     * updates, or when a delta cannot express the change.
+     *
+     * @param update The update to encode.
+     * @param out    The buffer to write to.
+     * @throws IOException If the position does not fit the 16 bit fields.
+     */
+    void Encode(MessageCarStatusUpdate update, ByteBuffer out) throws IOException {
+        int angle = AngleToIndex(update.get_CurrentAngle());
+        int x = update.get_Location_X();
+        int y = update.get_Location_Y();
+        int speed = Math.max(0, Math.min(MAX_SPEED, update.get_VirtualSpeed()));
+        int flags = (update.is_IsAccelerating() ? FLAG_ACCELERATING : 0) | (update.is_CarImpactSoundToPlay() ? FLAG_IMPACT_SOUND : 0);
+
+        int dx = x - _SentKeyframe[1];
+        int dy = y - _SentKeyframe[2];
+        boolean isKeyframeDue = _SentKeyframeId < 0
+                || _DeltasSinceKeyframe >= SharedResources.NET_SNAPSHOT_KEYFRAME_INTERVAL
+                || dx < Byte.MIN_VALUE || dx > Byte.MAX_VALUE
+                || dy < Byte.MIN_VALUE || dy > Byte.MAX_VALUE;
+
+        if (isKeyframeDue) {
+            CheckPosition(x, y);
+
+            //The state changes only once the snapshot has been written, so an encoding retried with a larger buffer gives the same frame.
+            int id = (_SentKeyframeId + 1) & KEYFRAME_ID_MASK;
+            out.put((byte) (KEYFRAME_BIT | id));
+            PutState(out, angle, flags, x, y, speed);
+
+            _SentKeyframeId = id;
+            _SentKeyframe[0] = angle;
+            _SentKeyframe[1] = x;
+            _SentKeyframe[2] = y;
+            _SentKeyframe[3] = speed;
+            _DeltasSinceKeyframe = 0;
+            return;
+        }
+
+        int mask = flags;
+        if (angle != _SentKeyframe[0])
+            mask |= CHANGED_ANGLE;
+        if (dx != 0)
+            mask |= CHANGED_X;
+        if (dy != 0)
+            mask |= CHANGED_Y;
+        if (speed != _SentKeyframe[3])
+            mask |= CHANGED_SPEED;
+
+        out.put((byte) _SentKeyframeId);
+        out.put((byte) mask);
+        if ((mask & CHANGED_ANGLE) != 0)
+            out.put((byte) angle);
+        if ((mask & CHANGED_X) != 0)
+            out.put((byte) dx);
+        if ((mask & CHANGED_Y) != 0)
+            out.put((byte) dy);
+        if ((mask & CHANGED_SPEED) != 0)
+            out.put((byte) speed);
+        _DeltasSinceKeyframe++;
+    }
+
+    /**
+     * Writes the full state of a car in the layout of a keyframe's body, without a header. Keeps no state.
+     *
+     * @param update The state of the car.
+     * @param out    The buffer to write to.
+     * @throws IOException If the position does not fit the 16 bit fields.
+     */
+    static void EncodeState(MessageCarStatusUpdate update, ByteBuffer out) throws IOException {
+        int x = update.get_Location_X();
+        int y = update.get_Location_Y();
+        CheckPosition(x, y);
+        int flags = (update.is_IsAccelerating() ? FLAG_ACCELERATING : 0) | (update.is_CarImpactSoundToPlay() ? FLAG_IMPACT_SOUND : 0);
+        PutState(out, AngleToIndex(update.get_CurrentAngle()), flags, x, y, Math.max(0, Math.min(MAX_SPEED, update.get_VirtualSpeed())));
+    }
+
+    /**
+     * Reads the full state of a car written by EncodeState.
+     *
+     * @param payload The payload, positioned at the state.
+     * @param update  The message to fill in.
+     */
+    static void DecodeState(ByteBuffer payload, MessageCarStatusUpdate update) {
+        int first = payload.get() & 0xFF;
+        int x = payload.getShort();
+        int y = payload.getShort();
+        int speed = payload.get() & 0xFF;
+        SetState(update, first >>> 4, x, y, speed);
+        update.set_IsAccelerating((first & FLAG_ACCELERATING) != 0);
+        update.set_CarImpactSoundToPlay((first & FLAG_IMPACT_SOUND) != 0);
+    }
+
+    /**
+     * Checks that a position fits the 16 bit fields of a keyframe.
+     *
+     * @param x The x coordinate.
+     * @param y The y coordinate.
+     * @throws IOException If it does not fit.
+     */
+    private static void CheckPosition(int x, int y) throws IOException {
+        if (x < Short.MIN_VALUE || x > Short.MAX_VALUE || y < Short.MIN_VALUE || y > Short.MAX_VALUE)
+            throw new IOException("Car position does not fit the snapshot: " + Integer.toString(x) + "," + Integer.toString(y));
+    }
+
+    /**
+     * Writes the body of a keyframe: angle index and flags, x, y, speed.
+     *
+     * @param out   The buffer to write to.
+     * @param angle The index of the angle in SharedResources.CAR_Simulated_Angle_Values.
+     * @param flags The FLAG_ bits.
+     * @param x     The x coordinate, checked by CheckPosition.
+     * @param y     The y coordinate, checked by CheckPosition.
+     * @param speed The virtual speed, clamped to MAX_SPEED.
+     */
+    private static void PutState(ByteBuffer out, int angle, int flags, int x, int y, int speed) {
+        out.put((byte) ((angle << 4) | flags));
+        out.putShort((short) x);
+        out.putShort((short) y);
+        out.put((byte) speed);
+    }
+
+    /**
+     * Reads a snapshot (after the type byte) into the update.
+     *
+     * @param payload The payload of the frame, positioned after the type byte.
+     * @param update  The message to fill in.
+     * @return False if the snapshot is a delta against a keyframe this decoder has not received. The update is unusable then.
+     */
+    boolean Decode(ByteBuffer payload, MessageCarStatusUpdate update) {
+        int header = payload.get() & 0xFF;
+        int id = header & KEYFRAME_ID_MASK;
+        int place = id % BASELINE_COUNT;
+        int[] baseline = _Baselines[place];
+
+        int flags;
+        if ((header & KEYFRAME_BIT) != 0) {
+            int first = payload.get() & 0xFF;
+            flags = first;
+            baseline[0] = first >>> 4;
+            baseline[1] = payload.getShort();
+            baseline[2] = payload.getShort();
+            baseline[3] = payload.get() & 0xFF;
+            _BaselineIds[place] = id;
+            SetState(update, baseline[0], baseline[1], baseline[2], baseline[3]);
+        } else {
+            if (_BaselineIds[place] != id)
+                return false;
+
+            int mask = payload.get() & 0xFF;
+            flags = mask;
+            int angle = (mask & CHANGED_ANGLE) != 0 ? payload.get() & 0x0F : baseline[0];
+            int x = baseline[1] + ((mask & CHANGED_X) != 0 ? payload.get() : 0);
+            int y = baseline[2] + ((mask & CHANGED_Y) != 0 ? payload.get() : 0);
+            int speed = (mask & CHANGED_SPEED) != 0 ? payload.get() & 0xFF : baseline[3];
+            SetState(update, angle, x, y, speed);
+        }
+
+        update.set_IsAccelerating((flags & FLAG_ACCELERATING) != 0);
+        update.set_CarImpactSoundToPlay((flags & FLAG_IMPACT_SOUND) != 0);
+        return true;
+    }
+
+    /**
+     * Sets the decoded state on the update.
+     *
+     * @param update The message to fill in.
+     * @param angle  The angle index.
+     * @param x      The x coordinate.
+     * @param y      The y coordinate.
+     * @param speed  The virtual speed.
+     */
+    private static void SetState(MessageCarStatusUpdate update, int angle, int x, int y, int speed) {
+        update.set_CurrentAngle(SharedResources.CAR_Simulated_Angle_Values[angle]);
+        update.set_Location_X(x);
+        update.set_Location_Y(y);
+        update.set_VirtualSpeed(speed);
+    }
+
+    /**
+     * Finds the index of an angle within SharedResources.CAR_Simulated_Angle_Values (the closest one if not exact).
+     *
+     * @param angle The angle of the car.
+     * @return The index of the angle (0-15).
+     */
+    private static int AngleToIndex(float angle) {
+        int[] values = SharedResources.CAR_Simulated_Angle_Values;
+        int best = 0;
+        float bestDistance = Float.MAX_VALUE;
+        for (int i = 0; i < values.length; i++) {
+            float distance = Math.abs(values[i] - angle);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = i;
+            }
+        }
+        return best;
+    }
+}
@@ -1,23 +1,28 @@
 package ModelLayer.Networking;
 
 import ControlLayer.SharedResources;
+import ModelLayer.Car;
 import ModelLayer.CarRemote;
 import ModelLayer.Networking.Messages.*;
 import ViewLayer.Screens.ServerScr.LogTerminal;
 
 import javax.swing.*;
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.*;
 import java.net.ConnectException;
 import java.net.Socket;
 import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.nio.channels.ClosedChannelException;
 import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 
 /**
- * Sends and receives data from the server using TCP socket and serialised objects.
+ * Sends and receives data from the server using TCP socket and messages packed into frames (see FrameCodec).
+ * The wire codec (serialised objects or the compact binary layout) is agreed with the server in the hello exchange.
  * Uses separate threads, therefore it is not blocking the caller.
  */
 public class Client {
@@ -32,16 +37,21 @@ public class Client {
     private volatile Socket _Connection;
 
     /**
-     * The OutputStream that is provided by the socket.
+     * The OutputStream that is provided by the socket. Messages are written to it as frames.
      */
-    private volatile ObjectOutputStream _OutStream;
+    private volatile DataOutputStream _OutStream;
 
     /**
-     * The InputStream that is provided by the socket.
+     * The InputStream that is provided by the socket. Messages are read from it as frames.
      */
-    private volatile ObjectInputStream _In;
+    private volatile DataInputStream _In;
 
 
+    /**
+     * Frames the messages towards the server. Sends with the codec agreed in the hello exchange.
+     */
+    private volatile FrameCodec _Frames = new FrameCodec();
+
     /**
      * True after the server sends a "server down" message. Sets false after each new successful connection.
      */
@@ -78,6 +88,14 @@ public class Client {
      * Contains the most recont error message that occurred during transferring a message to the server.
      */
     private volatile String _LastSendingErrorMessage = "";
+    /**
+     * Estimates the round trip towards the server and the offset of the server's clock from the answered pings.
+     */
+    private final ClockSync _ClockSync = new ClockSync(SharedResources.CLN_CLOCK_SYNC_WINDOW);
+    /**
+     * True if the server answered the hello, so it understands pings. Older servers would drop the connection.
+     */
+    private volatile boolean _IsPingSupported = false;
     /**
      * Waits for the server to respond to the MessageType.LOOKINGFOROPPONENT message on a separate thread.
      */
@@ -87,14 +105,19 @@ public class Client {
         try {
             _IsThreadWaitingForMapResponse = true;
             _MapResponse = null;
-            srvResponse = (Message) _In.readObject();
+            srvResponse = _Frames.Read(_In);
+            while (srvResponse.getType() == MessageType.PONG) {
+                HandlePong((MessagePing) srvResponse, System.nanoTime());
+                srvResponse = _Frames.Read(_In);
+            }
 
             if (srvResponse.getType() == MessageType.OPPONENTFOUNDSTARTGAME) {
                 _CurrentlyRequestedMapName = "";
                 _MapResponse = (MessageMapResponse) srvResponse;
                 _IsThreadWaitingForMapResponse = false;
 
-                ClientLog("Success. Server found an opponent. Player number: " + Integer.toString(_MapResponse.get_GivenPlayerNumber()));
+                ClientLog("Success. Server found an opponent. Player number: " + Integer.toString(_MapResponse.get_GivenPlayerNumber())
+                        + (_ClockSync.is_Synchronized() ? ". Round trip: " + Long.toString(TimeUnit.NANOSECONDS.toMicros(_ClockSync.get_RoundTripNanos())) + " us" : ""));
                 //Now call back the controller on the EDT thread
                 SwingUtilities.invokeLater(() ->
                         SharedResources.MainController.OpponentFoundCallback());
@@ -108,6 +131,9 @@ public class Client {
                     ClientLog("Whops. The server went down. Try to restart the server and connect again.");
                     _Connection.close();
                     _Connection = null;
+                } else if (srvResponse.getType() == MessageType.MATCHHASENDED) {
+                    _CurrentlyRequestedMapName = "";
+                    ClientLog("No opponent has been found in time. Please request an opponent again.");
                 } else {
                     ClientLog("ERROR. Please try to connect again. Unexpected message type from the server: " + Integer.toString(srvResponse.getType()));
                 }
@@ -122,13 +148,39 @@ public class Client {
         }
     };
     /**
-     * The last status message that has been sent to the server.
+     * The latest status update waiting to be sent, with the time it was handed over. Only the latest one is kept:
+     * the game loop overwrites an unsent update instead of queueing it, the status writer takes it out.
+     */
+    private final AtomicReference<PendingStatusUpdate> _PendingStatusUpdate = new AtomicReference<>();
+    /**
+     * The thread that sends the status updates of the local car while the game runs.
+     */
+    private volatile Thread _StatusWriterThread;
+    /**
+     * The number of status updates sent in the current game. Only changed by the status writer.
+     */
+    private volatile long _SentStatusCount = 0;
+    /**
+     * The number of status updates overwritten by a newer one before they could be sent. Only changed by the game loop.
      */
-    private volatile MessageCarStatusUpdate _LastUpdateSent;
+    private volatile long _SkippedStatusCount = 0;
+    /**
+     * The sum of the send latencies (from handing over an update until it is flushed) in the current game, in nanoseconds.
+     */
+    private volatile long _StatusLatencyTotalNanos = 0;
+    /**
+     * The highest send latency in the current game, in nanoseconds.
+     */
+    private volatile long _StatusLatencyMaxNanos = 0;
     /**
      * The remote car object on the local machine, which will consume the car status updates received from the server.
      */
     private CarRemote _CarRemoteToHandleIncomingUpdates;
+    /**
+     * The car of the local player, which displays its own status from the server's snapshots if the server simulates the match.
+     * Null if the local car runs its own physics.
+     */
+    private Car _LocalCarToHandleIncomingUpdates;
     /**
      * True while the client is listening to incoming car status updates.
      */
@@ -146,7 +198,7 @@ public class Client {
         while (_ListenToIncomingStatusUpdates && !_ServerDownMessageReceived) {
             Message msg = null;
             try {
-                msg = (Message) _In.readObject();
+                msg = _Frames.Read(_In);
 
             } catch (Exception e) {
                 msg = null;
@@ -161,12 +213,22 @@ public class Client {
 
 
             if (msg != null) {
+                //Answer to a ping
+                if (msg.getType() == MessageType.PONG) {
+                    HandlePong((MessagePing) msg, System.nanoTime());
+                }
+
                 //If opponent's car update message received (this is the most common).
                 if (msg.getType() == MessageType.INGAMEPOSITIONUPDATE) {
                     MessageCarStatusUpdate updateMsg = (MessageCarStatusUpdate) msg;
                     _CarRemoteToHandleIncomingUpdates.CarUpdateCallback(updateMsg);
                 }
 
+                //If the server simulates the match, one snapshot updates both cars.
+                if (msg.getType() == MessageType.INGAMESNAPSHOT) {
+                    HandleSnapshot((MessageMatchSnapshot) msg);
+                }
+
                 //If car crash message received then stop listening to new messages and notify the Gameengine
                 if (msg.getType() == MessageType.INGAMECRASH) {
                     _ListenToIncomingStatusUpdates = false;
@@ -179,6 +241,11 @@ public class Client {
                     SwingUtilities.invokeLater(() -> SharedResources.MainController.get_GameEngine().OpponentLeftTheGameCallback());
                 }
 
+                //If the server offers a UDP channel for the position updates
+                if (msg.getType() == MessageType.UDPCHANNEL) {
+                    OpenUdpChannel((MessageUdpChannel) msg);
+                }
+
                 //If server down message received then stop listening and notify GameEngine
                 if (msg.getType() == MessageType.SERVERDOWN) {
                     _ServerDownMessageReceived = true;
@@ -187,25 +254,81 @@ public class Client {
                 }
             }
         }
+        CloseUdpChannel();
     };
     /**
-     * Sends the local cars' update information to the server.
-     * Only sends it if the server did not send Shutdown message and listing on this side is also allowed.
+     * The UDP channel of the current game, if the server offered one (see MessageUdpChannel). Null otherwise.
+     * Position updates are sent on it once the server confirmed it, control messages always go over TCP.
+     */
+    private volatile UdpChannel _Udp;
+    /**
+     * Pings the server every SharedResources.CLN_PING_INTERVAL milliseconds while a thread reads the answers
+     * (waiting for an opponent or playing). Ends once the connection it was started for is closed.
+     */
+    private final Runnable PingServer = () ->
+    {
+        Socket connection = _Connection;
+        while (connection != null && connection == _Connection && !connection.isClosed() && !_ServerDownMessageReceived) {
+            //A ping nobody reads the answer of straight away would only give a wrong sample.
+            if (_IsThreadWaitingForMapResponse || _ListenToIncomingStatusUpdates)
+                SendPing();
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(SharedResources.CLN_PING_INTERVAL));
+        }
+    };
+
+    /**
+     * Receives the opponent's position updates from the UDP channel.
+     */
+    private final Runnable MyUdpListener = () ->
+    {
+        UdpChannel udp = _Udp;
+        while (udp != null && _ListenToIncomingStatusUpdates && !_ServerDownMessageReceived) {
+            try {
+                Message msg = udp.Receive();
+                if (msg != null && msg.getType() == MessageType.INGAMEPOSITIONUPDATE)
+                    _CarRemoteToHandleIncomingUpdates.CarUpdateCallback((MessageCarStatusUpdate) msg);
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                //E.g. the server's port is unreachable. The updates keep going over TCP until the channel is confirmed.
+            }
+        }
+    };
+    /**
+     * Sends the local cars' update information to the server. Runs on its own thread while the game runs.
+     * Takes the latest update whenever the previous one has been sent, so a slow connection skips updates instead of
+     * falling behind. Only sends if the server did not send Shutdown message and listing on this side is also allowed.
      */
     private final Runnable SendStatus = () ->
     {
-        if (!_ServerDownMessageReceived) {
-            if (_ListenToIncomingStatusUpdates) {
-                if (_LastUpdateSent != null) {
-                    //Sending out the message and checking for error
-                    if (!SendOut(_LastUpdateSent)) {
-                        //If error occurred
-                        _ListenToIncomingStatusUpdates = false;
-                        SwingUtilities.invokeLater(() -> SharedResources.MainController.get_GameEngine().HandleErrorWhenSendingStatusUpdateToSrv(_LastSendingErrorMessage));
-                    }
-                }
+        while (_ListenToIncomingStatusUpdates && !_ServerDownMessageReceived) {
+            PendingStatusUpdate pending = _PendingStatusUpdate.getAndSet(null);
+            if (pending == null) {
+                //Woken up by the next update, or checks again if the game still runs.
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(SharedResources.CLN_STATUS_WRITER_PARK_TIMEOUT));
+                continue;
+            }
+
+            //Sending out the message and checking for error
+            if (!SendStatusOut(pending._Update)) {
+                //If error occurred
+                _ListenToIncomingStatusUpdates = false;
+                SwingUtilities.invokeLater(() -> SharedResources.MainController.get_GameEngine().HandleErrorWhenSendingStatusUpdateToSrv(_LastSendingErrorMessage));
+                break;
             }
+
+            long latency = System.nanoTime() - pending._HandedOverAt;
+            _SentStatusCount++;
+            _StatusLatencyTotalNanos += latency;
+            if (latency > _StatusLatencyMaxNanos)
+                _StatusLatencyMaxNanos = latency;
         }
+
+        _PendingStatusUpdate.set(null);
+        ClientLog("Status updates sent: " + Long.toString(_SentStatusCount)
+                + ", skipped: " + Long.toString(_SkippedStatusCount)
+                + ", average send latency: " + FormatMillis(_SentStatusCount == 0 ? 0 : _StatusLatencyTotalNanos / _SentStatusCount)
+                + ", max: " + FormatMillis(_StatusLatencyMaxNanos) + ".");
     };
     /**
      * Constructor.
@@ -227,7 +350,8 @@ public class Client {
     {
         boolean result = false;
         try {
-            _OutStream.writeObject(msg);
+            _Frames.Write(_OutStream, msg);
+            _OutStream.flush();
             result = true;
         } catch (Exception e) {
             _LastSendingErrorMessage = e.getMessage().toString();
@@ -236,6 +360,65 @@ public class Client {
         return result;
     }
 
+    /**
+     * Sends a status update on the UDP channel if it has been confirmed, otherwise over TCP.
+     * Falls back to TCP for good if the UDP channel fails.
+     *
+     * @param update The status update to send.
+     * @return Returns true if no issues happened during sending. Returns false if there was an error.
+     */
+    private boolean SendStatusOut(MessageCarStatusUpdate update) {
+        UdpChannel udp = _Udp;
+        if (udp == null)
+            return SendOut(update);
+
+        try {
+            if (udp.is_Confirmed()) {
+                udp.Send(update);
+                return true;
+            }
+            //Registers the address until the server echoes it, meanwhile the update goes over TCP.
+            udp.SendRegistration();
+        } catch (IOException e) {
+            ClientLog("UDP channel failed, position updates are sent over TCP: " + e.getMessage());
+            CloseUdpChannel();
+        }
+        return SendOut(update);
+    }
+
+    /**
+     * Opens the UDP channel offered by the server and starts listening to it.
+     * If it cannot be opened, the position updates stay on TCP.
+     *
+     * @param offer The offer of the server.
+     */
+    private void OpenUdpChannel(MessageUdpChannel offer) {
+        CloseUdpChannel();
+        try {
+            UdpChannel udp = UdpChannel.Open(_Connection.getInetAddress(), offer.get_Port(), offer.get_Token());
+            udp.SendRegistration();
+            _Udp = udp;
+            Thread listener = new Thread(MyUdpListener, "Client-UdpListener");
+            listener.setDaemon(true);
+            listener.start();
+            ClientLog("UDP channel offered by the server on port " + Integer.toString(offer.get_Port()) + ".");
+        } catch (IOException e) {
+            ClientLog("Could not open the UDP channel, position updates are sent over TCP: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Closes the UDP channel if there is one. Its listener ends.
+     */
+    private void CloseUdpChannel() {
+        UdpChannel udp = _Udp;
+        _Udp = null;
+        if (udp != null) {
+            udp.Close();
+            ClientLog("UDP channel closed. Stale updates dropped: " + Long.toString(udp.get_StaleCount()) + ".");
+        }
+    }
+
     /**
      * Tries to close the output stream.
      * @return An empty string if no error occurred or the the error message if it happened.
@@ -258,7 +441,7 @@ public class Client {
      */
     private synchronized String OpenOut() {
         try {
-            _OutStream = new ObjectOutputStream(_Connection.getOutputStream());
+            _OutStream = new DataOutputStream(new BufferedOutputStream(_Connection.getOutputStream()));
         } catch (Exception e) {
             return e.getMessage();
         }
@@ -282,16 +465,26 @@ public class Client {
                 _Connection.setSoTimeout(0);
                 ClientLog("Connected to the server successfully.");
 
+                //A new connection starts with serialised frames until the codec is agreed.
+                _Frames = new FrameCodec();
+                _IsPingSupported = false;
+                _ClockSync.Reset();
+
                 //Getting input and output streams
                 String isOpenOutOk = OpenOut();
                 if (isOpenOutOk.equals("")) {
-                    _In = new ObjectInputStream(_Connection.getInputStream());
+                    _In = new DataInputStream(new BufferedInputStream(_Connection.getInputStream()));
 
-                    //Sending a hello message
-                    if (SendOut(new Message(MessageType.HELLO))) {
+                    //Sending a hello message, offering the codecs this client can use
+                    MessageHello hello = new MessageHello();
+                    hello.set_CodecMask(MessageCodecs.SUPPORTED_MASK);
+                    if (SendOut(hello)) {
                         ClientLog("Hello sent to server.");
                         _ServerDownMessageReceived = false;
                         _IsConnectionClosedOnPurpose = false;
+                        AwaitCodecAnswer();
+                        if (_IsPingSupported)
+                            StartPinger();
                     } else {
                         result = false;
                         ClientLog("Error when tried to send Hello message: " + _LastSendingErrorMessage);
@@ -325,6 +518,34 @@ public class Client {
         return result;
     }
 
+    /**
+     * Waits a short while for the server to answer the hello with the chosen codec and switches to it.
+     * Servers that do not negotiate do not answer, in which case the client stays on serialised frames.
+     */
+    private void AwaitCodecAnswer() {
+        try {
+            _Connection.setSoTimeout(SharedResources.CLN_HELLO_ANSWER_TIMEOUT);
+            Message answer = _Frames.Read(_In);
+            if (answer instanceof MessageHello) {
+                _Frames.set_SendCodec(MessageCodecs.Choose(((MessageHello) answer).get_CodecMask()));
+                _IsPingSupported = true;
+                ClientLog("Codec agreed with the server: " + (_Frames.is_SendingBinary() ? "binary" : "serialised") + ".");
+            } else if (answer != null) {
+                ClientLog("Unexpected answer to the hello message: " + Integer.toString(answer.getType()));
+            }
+        } catch (SocketTimeoutException e) {
+            ClientLog("The server did not choose a codec. Using serialised messages.");
+        } catch (IOException e) {
+            ClientLog("Could not read the answer to the hello message: " + e.getMessage());
+        } finally {
+            try {
+                _Connection.setSoTimeout(0);
+            } catch (SocketException e) {
+                ClientLog("Could not reset the socket timeout: " + e.getMessage());
+            }
+        }
+    }
+
     /**
      * Asks the server to provide an opponent to play with on the selected map.
      *
@@ -356,6 +577,10 @@ public class Client {
         mapMsg.set_CarImageFileIndex(selectedCarTypeIndex);
         _CurrentlyRequestedMapName = mapName;
 
+        //The answer arrives before the server's answer to the request, so the start of the match can be scheduled.
+        if (_IsPingSupported)
+            SendPing();
+
         if (!SendOut(mapMsg)) {
             ClientLog("Error when sending out opponent request: " + _LastSendingErrorMessage);
         } else {
@@ -393,6 +618,7 @@ public class Client {
                 }
 
 
+                CloseUdpChannel();
                 String isClosingOk = CloseOut();
                 if (!isClosingOk.equals(""))
                     ClientLog("Could not close the object output stream.");
@@ -462,16 +688,191 @@ public class Client {
         return _MapResponse;
     }
 
+    /**
+     * Starts pinging the server on a daemon thread, for the current connection.
+     */
+    private void StartPinger() {
+        Thread pinger = new Thread(PingServer, "Client-Pinger");
+        pinger.setDaemon(true);
+        pinger.start();
+    }
+
+    /**
+     * Sends a ping to the server, with the round trip and the clock offset measured so far.
+     * The server answers straight away with a PONG.
+     */
+    private void SendPing() {
+        MessagePing ping = new MessagePing(MessageType.PING);
+        ping.set_RoundTrip(_ClockSync.get_RoundTripNanos());
+        ping.set_ClockOffset(_ClockSync.get_ClockOffsetNanos());
+        ping.set_OriginateTime(System.nanoTime());
+        if (!SendOut(ping))
+            ClientLog("Could not send a ping to the server.");
+    }
+
+    /**
+     * Takes the sample of an answered ping. Called on the thread that read the answer.
+     *
+     * @param pong      The answer of the server.
+     * @param arrivedAt The time the answer was read (System.nanoTime).
+     */
+    private void HandlePong(MessagePing pong, long arrivedAt) {
+        _ClockSync.AddSample(pong.get_OriginateTime(), pong.get_ReceiveTime(), pong.get_TransmitTime(), arrivedAt);
+    }
+
+    /**
+     * Returns the round trip towards the server, smoothed over the answered pings.
+     *
+     * @return The round trip in nanoseconds, or MessagePing.UNKNOWN if no ping has been answered yet.
+     */
+    public long get_RoundTripNanos() {
+        return _ClockSync.get_RoundTripNanos();
+    }
+
+    /**
+     * Returns how much the round trip towards the server varies.
+     *
+     * @return The mean deviation of the round trip in nanoseconds.
+     */
+    public long get_JitterNanos() {
+        return _ClockSync.get_JitterNanos();
+    }
+
+    /**
+     * Returns the offset of the server's clock.
+     *
+     * @return The server's clock minus the local clock (System.nanoTime), in nanoseconds. 0 if no ping has been answered yet.
+     */
+    public long get_ClockOffsetNanos() {
+        return _ClockSync.get_ClockOffsetNanos();
+    }
+
+    /**
+     * Tells how long the game has to wait for the start the server scheduled, so both players start at the same moment.
+     *
+     * @return The time until the start in milliseconds, at most SharedResources.CLN_MAX_START_WAIT.
+     * 0 if the server did not schedule the start or the clocks are not synchronised.
+     */
+    public long get_MillisUntilStart() {
+        MessageMapResponse response = _MapResponse;
+        if (response == null || !response.is_IsStartScheduled() || !_ClockSync.is_Synchronized())
+            return 0;
+
+        long wait = TimeUnit.NANOSECONDS.toMillis(_ClockSync.ToLocalTime(response.get_StartAt()) - System.nanoTime());
+        return Math.max(0, Math.min(wait, SharedResources.CLN_MAX_START_WAIT));
+    }
+
+    /**
+     * Displays a snapshot of a match simulated on the server: the status of both cars, and the crash if the
+     * server decided that the cars have crashed. Called on the listener thread.
+     *
+     * @param snapshot The snapshot of the match.
+     */
+    private void HandleSnapshot(MessageMatchSnapshot snapshot) {
+        boolean isPlayer1 = _MapResponse == null || _MapResponse.get_GivenPlayerNumber() == SharedResources.PLAYER_1;
+        MessageCarStatusUpdate own = isPlayer1 ? snapshot.get_Player1() : snapshot.get_Player2();
+        MessageCarStatusUpdate opponent = isPlayer1 ? snapshot.get_Player2() : snapshot.get_Player1();
+
+        Car localCar = _LocalCarToHandleIncomingUpdates;
+        if (localCar != null)
+            localCar.ApplyStatus(own);
+        _CarRemoteToHandleIncomingUpdates.CarUpdateCallback(opponent);
+
+        if (snapshot.is_IsCrashed()) {
+            _ListenToIncomingStatusUpdates = false;
+            SwingUtilities.invokeLater(() -> _CarRemoteToHandleIncomingUpdates.CarCrashCallback());
+        }
+    }
+
+    /**
+     * Sends the keys the local player holds to the server, which simulates the match.
+     * Inputs are rare and must not be lost or reordered, so they go over TCP straight away.
+     *
+     * @param msg The held keys and the turn made.
+     */
+    public void SendInputMessage(MessageInGameInput msg) {
+        if (!SendOut(msg))
+            ClientLog("Error. Could not send out the input of the player.");
+    }
+
     /**
      * Sends a status message to the server to allow the remote client to update itself.
-     * Message is sent on a separate thread.
+     * Message is sent by the status writer thread, the caller is not blocked. If the previous message has not been
+     * sent yet, it is replaced by this one.
      *
      * @param msg The message describing the cars' current status.
      */
     public void SendStatusUpdateMessage(MessageCarStatusUpdate msg) {
-        _LastUpdateSent = msg;
-        Thread messenger = new Thread(SendStatus);
-        messenger.start();
+        PendingStatusUpdate skipped = _PendingStatusUpdate.getAndSet(new PendingStatusUpdate(msg, System.nanoTime()));
+        if (skipped != null)
+            _SkippedStatusCount++;
+
+        Thread writer = _StatusWriterThread;
+        if (writer != null)
+            LockSupport.unpark(writer);
+    }
+
+    /**
+     * Starts the thread that sends the status updates of the local car. Clears the statistics of the previous game.
+     */
+    private void StartStatusWriter() {
+        _PendingStatusUpdate.set(null);
+        _SentStatusCount = 0;
+        _SkippedStatusCount = 0;
+        _StatusLatencyTotalNanos = 0;
+        _StatusLatencyMaxNanos = 0;
+
+        Thread writer = new Thread(SendStatus, "Client-StatusWriter");
+        writer.setDaemon(true);
+        _StatusWriterThread = writer;
+        writer.start();
+    }
+
+    /**
+     * Wakes up the status writer, so it notices that the game has ended. It ends by itself after that.
+     */
+    private void StopStatusWriter() {
+        Thread writer = _StatusWriterThread;
+        _StatusWriterThread = null;
+        if (writer != null)
+            LockSupport.unpark(writer);
+    }
+
+    /**
+     * Returns the number of status updates sent in the current (or last) game.
+     *
+     * @return The number of sent status updates.
+     */
+    public long get_SentStatusCount() {
+        return _SentStatusCount;
+    }
+
+    /**
+     * Returns the number of status updates that were replaced by a newer one before they could be sent.
+     *
+     * @return The number of skipped status updates.
+     */
+    public long get_SkippedStatusCount() {
+        return _SkippedStatusCount;
+    }
+
+    /**
+     * Returns the highest time it took to send a status update after it was handed over, in the current (or last) game.
+     *
+     * @return The highest send latency in nanoseconds.
+     */
+    public long get_StatusLatencyMaxNanos() {
+        return _StatusLatencyMaxNanos;
+    }
+
+    /**
+     * Formats a duration in nanoseconds as milliseconds for the log.
+     *
+     * @param nanos The duration in nanoseconds.
+     * @return The duration in milliseconds with two decimals.
+     */
+    private static String FormatMillis(long nanos) {
+        return String.format("%.2f ms", nanos / 1_000_000.0);
     }
 
     /**
@@ -484,11 +885,22 @@ public class Client {
         _CarRemoteToHandleIncomingUpdates = carRemote;
     }
 
+    /**
+     * Assigns the local car to display the server's snapshots, if the server simulates the match.
+     *
+     * @param localCar The car of the local player, or null if the local car runs its own physics.
+     */
+    public void NotifyMeOfLocalCarUpdates(Car localCar) {
+        _LocalCarToHandleIncomingUpdates = localCar;
+    }
+
     /**
      * Stops listening for in game updates.
      */
     public void StopListeningForIngameUpdates() {
         _ListenToIncomingStatusUpdates = false;
+        StopStatusWriter();
+        CloseUdpChannel();
         if (_MainStatusListenerThread != null) {
             if (_MainStatusListenerThread.isAlive()) {
                 _MainStatusListenerThread.interrupt();
@@ -505,6 +917,7 @@ public class Client {
             _ListenToIncomingStatusUpdates = true;
             _MainStatusListenerThread = new Thread(MyUpdateListener);
             _MainStatusListenerThread.start();
+            StartStatusWriter();
         }
     }
 
@@ -514,6 +927,8 @@ public class Client {
     public void SendCarCrashedMessage() {
         Message msg = new Message(MessageType.INGAMECRASH);
         _ListenToIncomingStatusUpdates = false;
+        StopStatusWriter();
+        CloseUdpChannel();
 
         if (!SendOut(msg))
             ClientLog("Error. Could not send out the car crashed message.");
@@ -536,4 +951,17 @@ public class Client {
     public void NotifyUserThatAlreadyWaitingForOpponent() {
         ClientLog("I am already waiting for the server to find an opponent. Please be patient.");
     }
+
+    /**
+     * A status update handed over by the game loop, waiting for the status writer.
+     */
+    private static final class PendingStatusUpdate {
+        final MessageCarStatusUpdate _Update;
+        final long _HandedOverAt;
+
+        PendingStatusUpdate(MessageCarStatusUpdate update, long handedOverAt) {
+            _Update = update;
+            _HandedOverAt = handedOverAt;
+        }
+    }
 }
@@ -0,0 +1,167 @@
+package ModelLayer.Networking;
+
+import ModelLayer.Networking.Messages.MessagePing;
+
+/**
+ * Estimates the round trip towards the server and the offset between the server's clock and the local clock
+ * from the answered pings (see MessagePing), the way NTP does.
+ * A ping held up on the way (e.g. behind a burst of position updates, or not read straight away) shows a long round
+ * trip and a skewed offset, so the offset is taken from the ping with the shortest round trip of the last few.
+ * The round trip is smoothed like TCP does (RFC 6298), the jitter is its mean deviation.
+ * Unlike TCP, the jitter starts from 0 instead of half the first round trip: it is not a safety margin for
+ * retransmissions here, and a long but steady round trip must not make the link look jittery until it settles.
+ * Pongs arrive on the listener threads, the estimate is read by the game; the methods are synchronized.
+ */
+final class ClockSync {
+
+    /**
+     * The weights of a new sample in the smoothed round trip and the jitter.
+     */
+    private static final double ROUND_TRIP_GAIN = 1.0 / 8;
+    private static final double JITTER_GAIN = 1.0 / 4;
+
+    /**
+     * The round trips of the last samples, in nanoseconds. Filled in a ring.
+     */
+    private final long[] _RoundTrips;
+
+    /**
+     * The clock offsets of the last samples (server clock - local clock), in nanoseconds.
+     */
+    private final long[] _Offsets;
+
+    /**
+     * The number of samples taken so far.
+     */
+    private long _SampleCount = 0;
+
+    /**
+     * The smoothed round trip, in nanoseconds.
+     */
+    private double _SmoothedRoundTrip;
+
+    /**
+     * The mean deviation of the round trip, in nanoseconds.
+     */
+    private double _Jitter;
+
+    /**
+     * The offset of the best sample of the window (server clock - local clock), in nanoseconds.
+     */
+    private long _ClockOffset;
+
+    /**
+     * Estimates the round trip and the clock offset from the last pings.
+     *
+     * @param windowSize The number of the last samples the offset is chosen from.
+     */
+    ClockSync(int windowSize) {
+        _RoundTrips = new long[Math.max(1, windowSize)];
+        _Offsets = new long[_RoundTrips.length];
+    }
+
+    /**
+     * Adds the sample of an answered ping.
+     *
+     * @param originate The time the ping was sent (local clock).
+     * @param receive   The time the server received the ping (server clock).
+     * @param transmit  The time the server sent the answer (server clock).
+     * @param arrival   The time the answer arrived (local clock).
+     * @return False if the times are inconsistent (e.g. an answer to a ping of an earlier connection) and have been ignored.
+     */
+    synchronized boolean AddSample(long originate, long receive, long transmit, long arrival) {
+        long roundTrip = (arrival - originate) - (transmit - receive);
+        if (arrival - originate < 0 || transmit - receive < 0 || roundTrip < 0)
+            return false;
+
+        //Halfway between the two ways: ((receive - originate) + (transmit - arrival)) / 2, without overflowing.
+        long offset = (receive - originate) / 2 + (transmit - arrival) / 2;
+
+        int slot = (int) (_SampleCount % _RoundTrips.length);
+        _RoundTrips[slot] = roundTrip;
+        _Offsets[slot] = offset;
+
+        if (_SampleCount == 0) {
+            _SmoothedRoundTrip = roundTrip;
+            _Jitter = 0;
+        } else {
+            _Jitter += JITTER_GAIN * (Math.abs(roundTrip - _SmoothedRoundTrip) - _Jitter);
+            _SmoothedRoundTrip += ROUND_TRIP_GAIN * (roundTrip - _SmoothedRoundTrip);
+        }
+        _SampleCount++;
+
+        int best = 0;
+        int filled = (int) Math.min(_SampleCount, _RoundTrips.length);
+        for (int i = 1; i < filled; i++) {
+            if (_RoundTrips[i] < _RoundTrips[best])
+                best = i;
+        }
+        _ClockOffset = _Offsets[best];
+        return true;
+    }
+
+    /**
+     * Forgets every sample, e.g. when connecting to a server again.
+     */
+    synchronized void Reset() {
+        _SampleCount = 0;
+        _SmoothedRoundTrip = 0;
+        _Jitter = 0;
+        _ClockOffset = 0;
+    }
+
+    /**
+     * Tells if there is an estimate yet.
+     *
+     * @return True once a ping has been answered.
+     */
+    synchronized boolean is_Synchronized() {
+        return _SampleCount > 0;
+    }
+
+    /**
+     * Returns the smoothed round trip.
+     *
+     * @return The round trip in nanoseconds, or MessagePing.UNKNOWN if no ping has been answered yet.
+     */
+    synchronized long get_RoundTripNanos() {
+        return _SampleCount == 0 ? MessagePing.UNKNOWN : (long) _SmoothedRoundTrip;
+    }
+
+    /**
+     * Returns the mean deviation of the round trip.
+     *
+     * @return The jitter in nanoseconds.
+     */
+    synchronized long get_JitterNanos() {
+        return (long) _Jitter;
+    }
+
+    /**
+     * Returns the offset between the clocks.
+     *
+     * @return The server's clock minus the local clock, in nanoseconds. 0 if no ping has been answered yet.
+     */
+    synchronized long get_ClockOffsetNanos() {
+        return _ClockOffset;
+    }
+
+    /**
+     * Converts a time of the server's clock to the local clock.
+     *
+     * @param serverTime A System.nanoTime value of the server.
+     * @return The same moment as a local System.nanoTime value.
+     */
+    synchronized long ToLocalTime(long serverTime) {
+        return serverTime - _ClockOffset;
+    }
+
+    /**
+     * Returns the number of answered pings.
+     *
+     * @return The number of samples taken so far.
+     */
+    synchronized long get_SampleCount() {
+        return _SampleCount;
+    }
+}
@@ -0,0 +1,33 @@
+package ModelLayer.Networking;
+
+import java.io.PrintStream;
+
+/**
+ * Writes the log lines to a stream (e.g. the standard output), for servers running without a screen.
+ */
+public class ConsoleLogSink implements LogSink {
+
+    /**
+     * The stream the lines are written to.
+     */
+    private final PrintStream _Out;
+
+    /**
+     * Writes the log lines to a stream.
+     *
+     * @param out The stream to write to.
+     */
+    public ConsoleLogSink(PrintStream out) {
+        _Out = out;
+    }
+
+    /**
+     * Writes a line to the stream. PrintStream is synchronized, so lines of different threads are not mixed.
+     *
+     * @param msg The line to write.
+     */
+    @Override
+    public void Log(String msg) {
+        _Out.println(msg);
+    }
+}
@@ -0,0 +1,292 @@
+package ModelLayer.Networking;
+
+import ControlLayer.SharedResources;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A single threaded, non-blocking loop that serves many sessions using one Selector.
+ * Reads the incoming frames, writes the queued outgoing frames and runs tasks handed over by other threads.
+ * The loop that is given the server socket channel also accepts the new connections for the whole group.
+ */
+class EventLoop implements Runnable {
+
+    /**
+     * The group this loop belongs to. New connections are spread among the loops of the group.
+     */
+    private final EventLoopGroup _Group;
+
+    /**
+     * The server. Called back when a new connection is accepted.
+     */
+    private final Server _Server;
+
+    /**
+     * Tells which channels are ready to be read or written.
+     */
+    private final Selector _Selector;
+
+    /**
+     * Tasks handed over by other threads to run on this loop's thread.
+     */
+    private final ConcurrentLinkedQueue<Runnable> _Tasks = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Sessions that have new outgoing frames queued by other threads.
+     */
+    private final ConcurrentLinkedQueue<NioSession> _SessionsToFlush = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Scratch buffer for reading. Shared by all the sessions of this loop, as only one is read at a time.
+     * Large enough to hold an incomplete frame plus a full read.
+     */
+    private final ByteBuffer _ReadBuffer = ByteBuffer.allocate(2 * (FrameCodec.HEADER_SIZE + FrameCodec.MAX_PAYLOAD_SIZE));
+
+    /**
+     * Batch buffer for writing. Shared by all the sessions of this loop, as only one is written at a time.
+     * Large enough to hold the largest frame.
+     */
+    private final ByteBuffer _WriteBuffer = ByteBuffer.allocate(FrameCodec.HEADER_SIZE + FrameCodec.MAX_PAYLOAD_SIZE);
+
+    /**
+     * The thread that runs this loop.
+     */
+    private final Thread _Thread;
+
+    /**
+     * True while the loop should keep running.
+     */
+    private volatile boolean _IsRunning = true;
+
+    /**
+     * A single threaded, non-blocking loop that serves many sessions using one Selector.
+     *
+     * @param group  The group this loop belongs to.
+     * @param server The server to call back when a new connection is accepted.
+     * @param name   The name of the loop's thread.
+     * @throws IOException If the selector could not be opened.
+     */
+    EventLoop(EventLoopGroup group, Server server, String name) throws IOException {
+        _Group = group;
+        _Server = server;
+        _Selector = Selector.open();
+        _Thread = new Thread(this, name);
+    }
+
+    /**
+     * Starts the loop's thread.
+     */
+    void Start() {
+        _Thread.start();
+    }
+
+    /**
+     * Tells if the caller runs on this loop's thread.
+     *
+     * @return True if the current thread is the loop's thread.
+     */
+    boolean IsInLoopThread() {
+        return Thread.currentThread() == _Thread;
+    }
+
+    /**
+     * Runs a task on this loop's thread. If called on the loop's thread, the task runs straight away.
+     *
+     * @param task The task to run.
+     */
+    void Execute(Runnable task) {
+        if (IsInLoopThread()) {
+            task.run();
+            return;
+        }
+
+        _Tasks.offer(task);
+        _Selector.wakeup();
+    }
+
+    /**
+     * Runs a task on this loop's thread after the loop's next select, even if called on the loop's thread.
+     * By then the selector has dropped the keys cancelled before the call.
+     *
+     * @param task The task to run.
+     */
+    void ExecuteAfterSelect(Runnable task) {
+        _Tasks.offer(task);
+        _Selector.wakeup();
+    }
+
+    /**
+     * Returns the batch buffer the sessions of this loop encode their outgoing frames into. Only used on the loop's thread.
+     *
+     * @return The shared write buffer.
+     */
+    ByteBuffer get_WriteBuffer() {
+        return _WriteBuffer;
+    }
+
+    /**
+     * Asks the loop to write out the queued frames of a session.
+     *
+     * @param session The session with new outgoing frames.
+     */
+    void ScheduleFlush(NioSession session) {
+        _SessionsToFlush.offer(session);
+        _Selector.wakeup();
+    }
+
+    /**
+     * Starts accepting connections on the server channel. The new connections are spread among the loops of the group.
+     *
+     * @param serverChannel The bound server socket channel.
+     */
+    void RegisterAcceptor(ServerSocketChannel serverChannel) {
+        Execute(() -> {
+            try {
+                serverChannel.configureBlocking(false);
+                serverChannel.register(_Selector, SelectionKey.OP_ACCEPT);
+            } catch (IOException e) {
+                _Server.EventLoopError("Could not register the server channel: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Registers a session's channel with this loop. From then on the loop reads and writes the channel.
+     *
+     * @param channel The non-blocking channel of the session.
+     * @param session The session to serve.
+     */
+    void RegisterSession(SocketChannel channel, NioSession session) {
+        Execute(() -> {
+            try {
+                SelectionKey key = channel.register(_Selector, SelectionKey.OP_READ, session);
+                session.Registered(key);
+                session.Flush();
+            } catch (IOException e) {
+                session.ConnectionLost("Could not register the channel: " + e.getMessage());
+                session.Close();
+            }
+        });
+    }
+
+    /**
+     * Stops the loop. The loop tries to write out the pending frames and then closes all of its channels.
+     */
+    void Shutdown() {
+        _IsRunning = false;
+        _Selector.wakeup();
+    }
+
+    /**
+     * The loop itself. Waits for ready channels, runs the handed over tasks and serves the ready channels.
+     */
+    @Override
+    public void run() {
+        while (_IsRunning) {
+            try {
+                _Selector.select();
+                RunTasks();
+                FlushScheduledSessions();
+                ServeReadyChannels();
+            } catch (Exception e) {
+                if (_IsRunning)
+                    _Server.EventLoopError("Event loop error: " + e.getMessage());
+            }
+        }
+
+        CloseAll();
+    }
+
+    /**
+     * Runs the tasks handed over by other threads.
+     */
+    private void RunTasks() {
+        Runnable task;
+        while ((task = _Tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    /**
+     * Writes out the frames queued by other threads.
+     */
+    private void FlushScheduledSessions() {
+        NioSession session;
+        while ((session = _SessionsToFlush.poll()) != null) {
+            session.Flush();
+        }
+    }
+
+    /**
+     * Accepts, reads or writes the channels the selector found ready.
+     */
+    private void ServeReadyChannels() {
+        Iterator<SelectionKey> keys = _Selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+
+            if (!key.isValid())
+                continue;
+
+            if (key.isAcceptable()) {
+                Accept((ServerSocketChannel) key.channel());
+                continue;
+            }
+
+            NioSession session = (NioSession) key.attachment();
+            if (key.isWritable())
+                session.Flush();
+            if (key.isValid() && key.isReadable())
+                session.Read(_ReadBuffer);
+        }
+    }
+
+    /**
+     * Accepts all the pending connections and hands each one over to the next loop of the group.
+     *
+     * @param serverChannel The server socket channel with pending connections.
+     */
+    private void Accept(ServerSocketChannel serverChannel) {
+        SocketChannel channel;
+        try {
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(SharedResources.SRV_TCP_NO_DELAY);
+
+                EventLoop target = _Group.NextLoop();
+                NioSession session = _Server.AcceptChannel(channel, target);
+                if (session != null)
+                    target.RegisterSession(channel, session);
+            }
+        } catch (IOException e) {
+            if (_IsRunning)
+                _Server.EventLoopError("ERROR during accepting a client connection: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes out what can be written without blocking, then closes all the channels and the selector.
+     */
+    private void CloseAll() {
+        RunTasks();
+        FlushScheduledSessions();
+        for (SelectionKey key : _Selector.keys()) {
+            if (key.attachment() instanceof NioSession) {
+                NioSession session = (NioSession) key.attachment();
+                session.Flush();
+                session.Close();
+            }
+        }
+
+        try {
+            _Selector.close();
+        } catch (IOException e) {
+            _Server.EventLoopError("Could not close the selector: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package ModelLayer.Networking;
+
+import java.io.IOException;
+import java.nio.channels.ServerSocketChannel;
+
+/**
+ * A fixed number of event loops that serve all the sessions of the non-blocking server.
+ * The first loop accepts the connections, then every new session is given to the loops in turn.
+ */
+class EventLoopGroup {
+
+    /**
+     * The loops of the group.
+     */
+    private final EventLoop[] _Loops;
+
+    /**
+     * The index of the loop that receives the next session. Only used by the accepting loop's thread.
+     */
+    private int _NextLoopIndex = 0;
+
+    /**
+     * A fixed number of event loops that serve all the sessions of the non-blocking server.
+     *
+     * @param loopCount The number of loops. Zero or less means one loop per available processor core.
+     * @param server    The server to call back when a new connection is accepted.
+     * @throws IOException If the selectors could not be opened.
+     */
+    EventLoopGroup(int loopCount, Server server) throws IOException {
+        if (loopCount <= 0)
+            loopCount = Runtime.getRuntime().availableProcessors();
+
+        _Loops = new EventLoop[loopCount];
+        for (int i = 0; i < loopCount; i++) {
+            _Loops[i] = new EventLoop(this, server, "EventLoop-" + Integer.toString(i));
+        }
+    }
+
+    /**
+     * Starts the loops and starts accepting connections on the server channel.
+     *
+     * @param serverChannel The bound server socket channel.
+     */
+    void Start(ServerSocketChannel serverChannel) {
+        for (EventLoop loop : _Loops) {
+            loop.Start();
+        }
+        _Loops[0].RegisterAcceptor(serverChannel);
+    }
+
+    /**
+     * Returns the loop that should serve the next new session (round robin).
+     *
+     * @return One of the loops of the group.
+     */
+    EventLoop NextLoop() {
+        EventLoop loop = _Loops[_NextLoopIndex];
+        _NextLoopIndex = (_NextLoopIndex + 1) % _Loops.length;
+        return loop;
+    }
+
+    /**
+     * Returns the number of loops within the group.
+     *
+     * @return The number of loops.
+     */
+    int GetLoopCount() {
+        return _Loops.length;
+    }
+
+    /**
+     * Stops all the loops. Each loop writes out its pending frames and closes its channels.
+     */
+    void Shutdown() {
+        for (EventLoop loop : _Loops) {
+            loop.Shutdown();
+        }
+    }
+}
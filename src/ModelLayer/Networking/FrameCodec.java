@@ -0,0 +1,198 @@
+package ModelLayer.Networking;
+
+import ModelLayer.Networking.Messages.Message;
+
+import java.io.*;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Converts Message objects to and from length-prefixed frames for one connection.
+ * A frame is a 2 byte unsigned length followed by that many bytes of payload. The payload is one message,
+ * encoded by a MessageCodec. Frames are sent with the codec negotiated for the connection (serialised until then),
+ * and received frames of any codec are recognised by their first byte (see MessageCodecs).
+ * The binary codec keeps the state of the car snapshots, so a connection keeps its FrameCodec for its whole life.
+ * The length prefix lets the non-blocking (event loop) server find message boundaries without blocking
+ * on a half received message, and is used by the blocking sessions and the client as well.
+ * Encoding and reading reuse the buffers of this object, so it must not be used by two threads at the same time
+ * for encoding, nor by two threads for reading. One thread encoding while another one reads is fine.
+ */
+public final class FrameCodec {
+
+    /**
+     * The size of the length prefix in front of every frame.
+     */
+    public static final int HEADER_SIZE = 2;
+
+    /**
+     * The largest payload a frame can carry (the length prefix is an unsigned 16 bit number).
+     */
+    public static final int MAX_PAYLOAD_SIZE = 0xFFFF;
+
+    /**
+     * The starting size of the reusable buffers. Grown on demand, e.g. for serialised messages.
+     */
+    private static final int INITIAL_BUFFER_SIZE = 128;
+
+    /**
+     * The binary codec of this connection. It keeps the state of the car snapshots in both directions.
+     */
+    private final MessageCodec _Binary = new BinaryMessageCodec();
+
+    /**
+     * The codec outgoing frames are encoded with.
+     */
+    private volatile MessageCodec _SendCodec = MessageCodecs.SERIALIZED;
+
+    /**
+     * Reusable buffer that holds the last encoded frame.
+     */
+    private ByteBuffer _EncodeBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+    /**
+     * Reusable buffer for the payload of the last read frame.
+     */
+    private ByteBuffer _ReadBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+    /**
+     * Returns the codec outgoing frames are encoded with.
+     *
+     * @return The codec used for sending.
+     */
+    public MessageCodec get_SendCodec() {
+        return _SendCodec;
+    }
+
+    /**
+     * Sets the codec outgoing frames are encoded with. Called once the codec has been negotiated.
+     *
+     * @param codecId The id of the codec to use for sending (see MessageCodecs).
+     */
+    public void set_SendCodec(int codecId) {
+        _SendCodec = codecId == MessageCodecs.BINARY_ID ? _Binary : MessageCodecs.SERIALIZED;
+    }
+
+    /**
+     * Tells if outgoing frames are encoded with the binary codec.
+     *
+     * @return True if the binary codec is used for sending.
+     */
+    public boolean is_SendingBinary() {
+        return _SendCodec.get_Id() == MessageCodecs.BINARY_ID;
+    }
+
+    /**
+     * Encodes a message into a complete frame (length prefix and payload) using the send codec.
+     * The returned buffer is reused by the next call, so it has to be written out (or copied) before that.
+     *
+     * @param msg The message to encode.
+     * @return A buffer that is ready to be read (flipped) and contains exactly one frame.
+     * @throws IOException If the message could not be encoded or it is too large for a frame.
+     */
+    public ByteBuffer Encode(Message msg) throws IOException {
+        MessageCodec codec = _SendCodec;
+        while (true) {
+            _EncodeBuffer.clear();
+            _EncodeBuffer.position(HEADER_SIZE);
+            try {
+                codec.Encode(msg, _EncodeBuffer);
+                break;
+            } catch (BufferOverflowException e) {
+                if (_EncodeBuffer.capacity() >= HEADER_SIZE + MAX_PAYLOAD_SIZE)
+                    throw new IOException("Message is too large for a frame.");
+                _EncodeBuffer = ByteBuffer.allocate(Math.min(_EncodeBuffer.capacity() * 2, HEADER_SIZE + MAX_PAYLOAD_SIZE));
+            }
+        }
+
+        int payloadLength = _EncodeBuffer.position() - HEADER_SIZE;
+        _EncodeBuffer.putShort(0, (short) payloadLength);
+        _EncodeBuffer.flip();
+        return _EncodeBuffer;
+    }
+
+    /**
+     * Writes a message as one frame to a stream. Does not flush the stream.
+     *
+     * @param out The stream to write to.
+     * @param msg The message to write.
+     * @throws IOException If the message could not be encoded or written.
+     */
+    public void Write(DataOutputStream out, Message msg) throws IOException {
+        ByteBuffer frame = Encode(msg);
+        out.write(frame.array(), frame.arrayOffset(), frame.limit());
+    }
+
+    /**
+     * Reads exactly one frame from a stream and decodes its message. Blocks until the whole frame has arrived.
+     *
+     * @param in The stream to read from.
+     * @return The decoded message, or null if the frame has to be skipped (see Decode).
+     * @throws IOException If the stream is closed or the payload is corrupt.
+     */
+    public Message Read(DataInputStream in) throws IOException {
+        return Decode(ReadPayload(in));
+    }
+
+    /**
+     * Decodes a payload of any codec. The codec is recognised by the first byte.
+     * Binary car status updates are decoded against the keyframes received earlier on this connection.
+     *
+     * @param payload The payload of exactly one frame, as the remaining part of the buffer.
+     * @return The decoded message, or null if it is a status update whose keyframe has not been received.
+     * @throws IOException If the payload is empty or corrupt.
+     */
+    public Message Decode(ByteBuffer payload) throws IOException {
+        if (!payload.hasRemaining())
+            throw new IOException("Empty frame received.");
+
+        try {
+            if ((payload.get(payload.position()) & 0xFF) == SerializedMessageCodec.FIRST_BYTE)
+                return MessageCodecs.SERIALIZED.Decode(payload);
+            return _Binary.Decode(payload);
+        } catch (RuntimeException e) {
+            //E.g. a frame shorter than its layout
+            throw new IOException("Corrupt frame received: " + e.toString());
+        }
+    }
+
+    /**
+     * Returns the size of a complete frame from its length prefix. The array holding it may be longer than the frame
+     * (see SessionOutbox.TakeFrameBuffer).
+     *
+     * @param frame An array starting with a complete frame.
+     * @return The size of the frame (length prefix and payload).
+     */
+    static int FrameLength(byte[] frame) {
+        return HEADER_SIZE + (((frame[0] & 0xFF) << 8) | (frame[1] & 0xFF));
+    }
+
+    /**
+     * Tells if an encoded frame of a car status update is a binary keyframe. Status updates that follow it are
+     * deltas against it, so it must not be overwritten by them while it waits to be sent.
+     *
+     * @param frame A complete frame (length prefix and payload) of a status update.
+     * @return True if the frame is a binary keyframe.
+     */
+    public static boolean IsKeyframe(byte[] frame) {
+        return CarSnapshotCodec.IsKeyframe(frame);
+    }
+
+    /**
+     * Reads exactly one frame from a stream without decoding it. Blocks until the whole frame has arrived.
+     * The returned buffer is reused by the next read.
+     *
+     * @param in The stream to read from.
+     * @return The payload of the frame, as the remaining part of the buffer.
+     * @throws IOException If the stream is closed.
+     */
+    public ByteBuffer ReadPayload(DataInputStream in) throws IOException {
+        int length = in.readUnsignedShort();
+        if (_ReadBuffer.capacity() < length)
+            _ReadBuffer = ByteBuffer.allocate(Math.max(length, _ReadBuffer.capacity() * 2));
+
+        _ReadBuffer.clear();
+        in.readFully(_ReadBuffer.array(), _ReadBuffer.arrayOffset(), length);
+        _ReadBuffer.limit(length);
+        return _ReadBuffer;
+    }
+}
@@ -0,0 +1,207 @@
+package ModelLayer.Networking;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts durations in buckets of powers of two nanoseconds: bucket n holds the durations from 2^n to 2^(n+1) - 1 ns.
+ * Recording a duration only increments striped counters, so any number of threads can record at the same time
+ * without locks and without allocating. The percentiles are approximate: they tell the upper end of the bucket the
+ * percentile falls into, which is at most twice the real value.
+ */
+public final class LatencyHistogram {
+
+    /**
+     * One bucket for every bit of a long.
+     */
+    private static final int BUCKET_COUNT = 64;
+
+    /**
+     * The number of durations recorded in each bucket.
+     */
+    private final LongAdder[] _Buckets = new LongAdder[BUCKET_COUNT];
+
+    /**
+     * The number of durations recorded.
+     */
+    private final LongAdder _Count = new LongAdder();
+
+    /**
+     * The sum of the durations recorded, in nanoseconds.
+     */
+    private final LongAdder _TotalNanos = new LongAdder();
+
+    /**
+     * The longest duration recorded, in nanoseconds.
+     */
+    private final AtomicLong _MaxNanos = new AtomicLong();
+
+    /**
+     * An empty histogram.
+     */
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            _Buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records a duration. Can be called from any thread.
+     *
+     * @param nanos The duration in nanoseconds. Negative durations (e.g. a clock adjustment) are counted as 0.
+     */
+    public void Record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        _Buckets[BucketOf(nanos)].increment();
+        _Count.increment();
+        _TotalNanos.add(nanos);
+
+        long max = _MaxNanos.get();
+        while (nanos > max && !_MaxNanos.compareAndSet(max, nanos)) {
+            max = _MaxNanos.get();
+        }
+    }
+
+    /**
+     * Returns the number of durations recorded.
+     *
+     * @return The number of durations.
+     */
+    public long get_Count() {
+        return _Count.sum();
+    }
+
+    /**
+     * Takes a copy of the histogram. The counters keep running while it is taken, so the copy may be off by the
+     * durations recorded in the meantime.
+     *
+     * @return The summary of the durations recorded so far.
+     */
+    public Snapshot TakeSnapshot() {
+        long[] buckets = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = _Buckets[i].sum();
+            count += buckets[i];
+        }
+        return new Snapshot(buckets, count, _TotalNanos.sum(), _MaxNanos.get());
+    }
+
+    /**
+     * Finds the bucket of a duration.
+     *
+     * @param nanos The duration in nanoseconds, not negative.
+     * @return The index of the highest set bit, 0 for 0 and 1 ns.
+     */
+    private static int BucketOf(long nanos) {
+        return nanos == 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos);
+    }
+
+    /**
+     * A copy of a histogram taken at one moment.
+     */
+    public static final class Snapshot {
+
+        /**
+         * The number of durations in each bucket.
+         */
+        private final long[] _Buckets;
+
+        /**
+         * The number of durations (the sum of the buckets).
+         */
+        private final long _Count;
+
+        /**
+         * The sum of the durations, in nanoseconds.
+         */
+        private final long _TotalNanos;
+
+        /**
+         * The longest duration, in nanoseconds.
+         */
+        private final long _MaxNanos;
+
+        private Snapshot(long[] buckets, long count, long totalNanos, long maxNanos) {
+            _Buckets = buckets;
+            _Count = count;
+            _TotalNanos = totalNanos;
+            _MaxNanos = maxNanos;
+        }
+
+        /**
+         * Returns the number of durations.
+         *
+         * @return The number of durations.
+         */
+        public long get_Count() {
+            return _Count;
+        }
+
+        /**
+         * Returns the average duration.
+         *
+         * @return The average in nanoseconds, or 0 if nothing has been recorded.
+         */
+        public long get_MeanNanos() {
+            return _Count == 0 ? 0 : _TotalNanos / _Count;
+        }
+
+        /**
+         * Returns the longest duration.
+         *
+         * @return The longest duration in nanoseconds.
+         */
+        public long get_MaxNanos() {
+            return _MaxNanos;
+        }
+
+        /**
+         * Returns the duration that a share of the durations did not exceed, rounded up to the end of its bucket.
+         *
+         * @param percentile The share in percent (e.g. 99).
+         * @return The upper end of the bucket in nanoseconds (never more than the longest duration), or 0 if nothing has been recorded.
+         */
+        public long PercentileNanos(double percentile) {
+            if (_Count == 0)
+                return 0;
+
+            long rank = (long) Math.ceil(_Count * Math.min(100.0, Math.max(0.0, percentile)) / 100.0);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += _Buckets[i];
+                if (seen >= Math.max(1, rank)) {
+                    long upper = i >= 62 ? Long.MAX_VALUE : (2L << i) - 1;
+                    return Math.min(upper, _MaxNanos);
+                }
+            }
+            return _MaxNanos;
+        }
+
+        /**
+         * Returns the number of durations in each bucket. Bucket n holds the durations from 2^n to 2^(n+1) - 1 ns.
+         *
+         * @return A copy of the bucket counts.
+         */
+        public long[] get_Buckets() {
+            return _Buckets.clone();
+        }
+
+        /**
+         * Describes the durations for the log.
+         *
+         * @param unit The unit to show the durations in, MICROSECONDS or MILLISECONDS.
+         * @return e.g. "count 120, mean 35 us, p50 63 us, p99 255 us, max 410 us".
+         */
+        public String Describe(TimeUnit unit) {
+            String suffix = unit == TimeUnit.MILLISECONDS ? " ms" : " us";
+            return "count " + Long.toString(_Count)
+                    + ", mean " + Long.toString(unit.convert(get_MeanNanos(), TimeUnit.NANOSECONDS)) + suffix
+                    + ", p50 " + Long.toString(unit.convert(PercentileNanos(50), TimeUnit.NANOSECONDS)) + suffix
+                    + ", p99 " + Long.toString(unit.convert(PercentileNanos(99), TimeUnit.NANOSECONDS)) + suffix
+                    + ", max " + Long.toString(unit.convert(_MaxNanos, TimeUnit.NANOSECONDS)) + suffix;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package ModelLayer.Networking;
+
+/**
+ * Takes the log lines of the server, its sessions and matches.
+ * Lines are written from many threads (sessions, event loops, the UDP relay, the tick thread), so an
+ * implementation must accept them from any thread.
+ */
+public interface LogSink {
+
+    /**
+     * Writes a line to the log.
+     *
+     * @param msg The line to write, with its timestamp and sender already in front of it.
+     */
+    void Log(String msg);
+
+    /**
+     * Called after a batch of lines has been written, e.g. to flush a file. Does nothing by default.
+     */
+    default void Flush() {
+    }
+}
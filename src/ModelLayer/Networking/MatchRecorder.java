@@ -0,0 +1,469 @@
+package ModelLayer.Networking;
+
+import ControlLayer.SharedResources;
+import ModelLayer.Networking.Messages.MessageCarStatusUpdate;
+import ModelLayer.Networking.Messages.MessageType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records a match into an append-only replay file: the start parameters, and every relayed position update and crash
+ * with the time it passed the server. The file is mapped into memory at its largest size
+ * (SharedResources.SRV_REPLAY_MAX_SIZE), so recording an update only copies a few bytes into the page cache:
+ * no system call and no allocation on the relay path. The file is cut to its used size when the match ends.
+ * All the numbers are big-endian.
+ * <pre>
+ * header          magic "RPLY" (4), version (2), flags (1, bit 0: server simulated, bit 1: truncated), reserved (1),
+ *                 end of the data (8), record count (8), wall clock at the start (8, ms since the epoch),
+ *                 start time (8, server clock, the records are relative to it), car index of player 1 (1),
+ *                 car index of player 2 (1), reserved (2), keyframe interval (4, ms), round trip of player 1 (8),
+ *                 round trip of player 2 (8), index entry count (4), reserved (4), map name length (1), map name (255)
+ * keyframe index  INDEX_CAPACITY entries of: time (8, ns since the start), offset of the keyframe (8)
+ * records         time (8, ns since the start, negative before the start), type (1), player number (1),
+ *                 car state (6, the body of a keyframe, see CarSnapshotCodec.EncodeState; zeros for a crash)
+ * </pre>
+ * The record type is INGAMEPOSITIONUPDATE, INGAMECRASH (player 0 if the server decided), or RECORD_KEYFRAME.
+ * Every SharedResources.SRV_REPLAY_KEYFRAME_INTERVAL milliseconds the latest state of both cars is written as
+ * keyframe records and indexed, so a player can seek without reading the file from the start. If the index fills
+ * up, every other entry is dropped and the interval doubles. The end of the data in the header is updated after
+ * every record, so a file left behind by a crashed server is readable up to its last record.
+ * The relays of the two players (and the UDP relay) record at the same time, the methods are synchronized.
+ */
+final class MatchRecorder {
+
+    /**
+     * Identifies a replay file.
+     */
+    static final int MAGIC = 0x52504C59; //"RPLY"
+    static final short VERSION = 1;
+
+    /**
+     * Places of the header fields.
+     */
+    static final int OFFSET_FLAGS = 6;
+    static final int OFFSET_DATA_END = 8;
+    static final int OFFSET_RECORD_COUNT = 16;
+    static final int OFFSET_WALL_CLOCK = 24;
+    static final int OFFSET_START_TIME = 32;
+    static final int OFFSET_CAR_INDEXES = 40;
+    static final int OFFSET_KEYFRAME_INTERVAL = 44;
+    static final int OFFSET_ROUND_TRIPS = 48;
+    static final int OFFSET_INDEX_COUNT = 64;
+    static final int OFFSET_MAP_NAME = 72;
+    static final int OFFSET_INDEX = OFFSET_MAP_NAME + 1 + 255;
+
+    /**
+     * Bits of the flags field.
+     */
+    static final int FLAG_SERVER_SIMULATED = 0x01;
+    static final int FLAG_TRUNCATED = 0x02;
+
+    /**
+     * The number of entries of the keyframe index, and the size of one.
+     */
+    static final int INDEX_CAPACITY = 1024;
+    static final int INDEX_ENTRY_SIZE = 16;
+
+    /**
+     * Where the records start.
+     */
+    static final int DATA_START = OFFSET_INDEX + INDEX_CAPACITY * INDEX_ENTRY_SIZE;
+
+    /**
+     * The size of a record.
+     */
+    static final int RECORD_SIZE = 16;
+
+    /**
+     * The type of a keyframe record. Not a message type.
+     */
+    static final int RECORD_KEYFRAME = 0x80;
+
+    /**
+     * The state of a record without a car.
+     */
+    private static final byte[] ZERO_STATE = new byte[RECORD_SIZE - 10];
+
+    /**
+     * The file being written.
+     */
+    private final FileChannel _Channel;
+
+    /**
+     * The file mapped into memory.
+     */
+    private final MappedByteBuffer _Buffer;
+
+    /**
+     * The file's path.
+     */
+    private final Path _Path;
+
+    /**
+     * The start time of the match (System.nanoTime of the server). The records are relative to it.
+     */
+    private final long _StartTime;
+
+    /**
+     * Where the next record goes.
+     */
+    private int _End = DATA_START;
+
+    /**
+     * The number of records written.
+     */
+    private long _RecordCount = 0;
+
+    /**
+     * The number of entries in the keyframe index.
+     */
+    private int _IndexCount = 0;
+
+    /**
+     * The current interval between two keyframes, in nanoseconds. Doubles when the index fills up.
+     */
+    private long _KeyframeIntervalNanos = TimeUnit.MILLISECONDS.toNanos(SharedResources.SRV_REPLAY_KEYFRAME_INTERVAL);
+
+    /**
+     * The time of the last keyframe, relative to the start. Long.MIN_VALUE before the first one.
+     */
+    private long _LastKeyframeTime = Long.MIN_VALUE;
+
+    /**
+     * The latest state of each player's car (index 0: player 1), for the keyframes.
+     */
+    private final MessageCarStatusUpdate[] _LatestStates = {
+            new MessageCarStatusUpdate(MessageType.INGAMEPOSITIONUPDATE),
+            new MessageCarStatusUpdate(MessageType.INGAMEPOSITIONUPDATE)};
+    private final boolean[] _HasLatestState = new boolean[2];
+
+    /**
+     * Decode the binary updates of each player, as the relay passes them on without decoding.
+     * Frames and datagrams come from different encoders of the client, so they have their own decoders.
+     */
+    private final CarSnapshotCodec[] _FrameDecoders = {new CarSnapshotCodec(), new CarSnapshotCodec()};
+    private final CarSnapshotCodec[] _DatagramDecoders = {new CarSnapshotCodec(), new CarSnapshotCodec()};
+
+    /**
+     * Receives a decoded binary update.
+     */
+    private final MessageCarStatusUpdate _Decoded = new MessageCarStatusUpdate(MessageType.INGAMEPOSITIONUPDATE);
+
+    /**
+     * True once the file is full. Nothing is recorded after that.
+     */
+    private boolean _IsTruncated = false;
+
+    /**
+     * True once the recording has been closed.
+     */
+    private boolean _IsClosed = false;
+
+    /**
+     * Creates a replay file and writes the start parameters of the match.
+     *
+     * @param file              The file to create. Must not exist.
+     * @param mapName           The name of the map.
+     * @param carIndexPlayer1   The car image index of player 1.
+     * @param carIndexPlayer2   The car image index of player 2.
+     * @param isServerSimulated True if the server simulates the match.
+     * @param startTime         The start time of the match (System.nanoTime of the server).
+     * @param roundTripPlayer1  The round trip of player 1 in nanoseconds, or MessagePing.UNKNOWN.
+     * @param roundTripPlayer2  The round trip of player 2 in nanoseconds, or MessagePing.UNKNOWN.
+     * @throws IOException If the file could not be created or mapped.
+     */
+    MatchRecorder(Path file, String mapName, int carIndexPlayer1, int carIndexPlayer2, boolean isServerSimulated,
+                  long startTime, long roundTripPlayer1, long roundTripPlayer2) throws IOException {
+        _Path = file;
+        _StartTime = startTime;
+
+        Path directory = file.toAbsolutePath().getParent();
+        if (directory != null)
+            Files.createDirectories(directory);
+        _Channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            _Buffer = _Channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(DATA_START + RECORD_SIZE, SharedResources.SRV_REPLAY_MAX_SIZE));
+        } catch (IOException e) {
+            _Channel.close();
+            throw e;
+        }
+
+        byte[] name = mapName == null ? new byte[0] : mapName.getBytes(StandardCharsets.UTF_8);
+        int nameLength = Math.min(name.length, 255);
+
+        _Buffer.putInt(0, MAGIC);
+        _Buffer.putShort(4, VERSION);
+        _Buffer.put(OFFSET_FLAGS, (byte) (isServerSimulated ? FLAG_SERVER_SIMULATED : 0));
+        _Buffer.putLong(OFFSET_DATA_END, _End);
+        _Buffer.putLong(OFFSET_RECORD_COUNT, 0);
+        _Buffer.putLong(OFFSET_WALL_CLOCK, System.currentTimeMillis() + TimeUnit.NANOSECONDS.toMillis(startTime - System.nanoTime()));
+        _Buffer.putLong(OFFSET_START_TIME, startTime);
+        _Buffer.put(OFFSET_CAR_INDEXES, (byte) carIndexPlayer1);
+        _Buffer.put(OFFSET_CAR_INDEXES + 1, (byte) carIndexPlayer2);
+        _Buffer.putInt(OFFSET_KEYFRAME_INTERVAL, (int) TimeUnit.NANOSECONDS.toMillis(_KeyframeIntervalNanos));
+        _Buffer.putLong(OFFSET_ROUND_TRIPS, roundTripPlayer1);
+        _Buffer.putLong(OFFSET_ROUND_TRIPS + 8, roundTripPlayer2);
+        _Buffer.putInt(OFFSET_INDEX_COUNT, 0);
+        _Buffer.put(OFFSET_MAP_NAME, (byte) nameLength);
+        for (int i = 0; i < nameLength; i++) {
+            _Buffer.put(OFFSET_MAP_NAME + 1 + i, name[i]);
+        }
+    }
+
+    /**
+     * Records a decoded position update of a player, or a car of a snapshot of a simulated match.
+     *
+     * @param playerNumber The player the update belongs to.
+     * @param update       The update.
+     */
+    synchronized void RecordUpdate(int playerNumber, MessageCarStatusUpdate update) {
+        if (_IsClosed || _IsTruncated)
+            return;
+        Append(System.nanoTime() - _StartTime, MessageType.INGAMEPOSITIONUPDATE, playerNumber, update);
+    }
+
+    /**
+     * Records a binary position update that is relayed as it is.
+     *
+     * @param playerNumber The player the update belongs to.
+     * @param payload      The payload of the frame, positioned at the message type. Its position is left unchanged.
+     */
+    synchronized void RecordFrame(int playerNumber, ByteBuffer payload) {
+        if (_IsClosed || _IsTruncated || !IsPlayer(playerNumber))
+            return;
+        RecordBinary(playerNumber, payload, payload.position(), _FrameDecoders[playerNumber - 1]);
+    }
+
+    /**
+     * Records a binary position update received and relayed on the UDP channel.
+     *
+     * @param playerNumber The player the update belongs to.
+     * @param datagram     The datagram (token, sequence number, payload). Its position is left unchanged.
+     */
+    synchronized void RecordDatagram(int playerNumber, ByteBuffer datagram) {
+        if (_IsClosed || _IsTruncated || !IsPlayer(playerNumber))
+            return;
+        RecordBinary(playerNumber, datagram, UdpRelay.HEADER_SIZE, _DatagramDecoders[playerNumber - 1]);
+    }
+
+    /**
+     * Records the crash of the cars.
+     *
+     * @param playerNumber The player whose client reported the crash, or 0 if the server decided.
+     */
+    synchronized void RecordCrash(int playerNumber) {
+        if (_IsClosed || _IsTruncated)
+            return;
+        Append(System.nanoTime() - _StartTime, MessageType.INGAMECRASH, playerNumber, null);
+    }
+
+    /**
+     * Ends the recording: writes the header's counters, flushes the file and cuts it to its used size.
+     *
+     * @throws IOException If the file could not be written or closed.
+     */
+    synchronized void Close() throws IOException {
+        if (_IsClosed)
+            return;
+        _IsClosed = true;
+
+        try {
+            _Buffer.put(OFFSET_FLAGS, (byte) (_Buffer.get(OFFSET_FLAGS) | (_IsTruncated ? FLAG_TRUNCATED : 0)));
+            _Buffer.force();
+            try {
+                _Channel.truncate(_End);
+            } catch (IOException e) {
+                //Some systems cannot cut a mapped file. The header still tells where the data ends.
+            }
+        } finally {
+            _Channel.close();
+        }
+    }
+
+    /**
+     * Returns the replay file.
+     *
+     * @return The path of the file.
+     */
+    Path get_Path() {
+        return _Path;
+    }
+
+    /**
+     * Returns the number of records written.
+     *
+     * @return The number of records, keyframes included.
+     */
+    synchronized long get_RecordCount() {
+        return _RecordCount;
+    }
+
+    /**
+     * Returns the used size of the file.
+     *
+     * @return The size in bytes.
+     */
+    synchronized int get_Size() {
+        return _End;
+    }
+
+    /**
+     * Tells if the file filled up and the end of the match is missing.
+     *
+     * @return True if records have been dropped.
+     */
+    synchronized boolean is_Truncated() {
+        return _IsTruncated;
+    }
+
+    /**
+     * Decodes a binary position update with the sender's decoder and records it.
+     * A delta whose keyframe the decoder has not seen is dropped, as the opponent's client would drop it.
+     *
+     * @param playerNumber The player the update belongs to.
+     * @param buffer       The buffer holding the payload.
+     * @param offset       Where the payload (the message type) starts.
+     * @param decoder      The decoder of the sender's updates.
+     */
+    private void RecordBinary(int playerNumber, ByteBuffer buffer, int offset, CarSnapshotCodec decoder) {
+        if (buffer.limit() <= offset + 1 || (buffer.get(offset) & 0xFF) != MessageType.INGAMEPOSITIONUPDATE)
+            return;
+
+        int position = buffer.position();
+        try {
+            buffer.position(offset + 1);
+            if (decoder.Decode(buffer, _Decoded))
+                Append(System.nanoTime() - _StartTime, MessageType.INGAMEPOSITIONUPDATE, playerNumber, _Decoded);
+        } catch (RuntimeException e) {
+            //A corrupt update is not recorded. The relay has passed it on already.
+        } finally {
+            buffer.position(position);
+        }
+    }
+
+    /**
+     * Writes a record, and the keyframes before it if they are due.
+     *
+     * @param time         The time of the record, relative to the start.
+     * @param type         The record type.
+     * @param playerNumber The player number.
+     * @param state        The state of the car, or null for a crash.
+     */
+    private void Append(long time, int type, int playerNumber, MessageCarStatusUpdate state) {
+        if (state != null && IsPlayer(playerNumber)) {
+            CopyState(state, _LatestStates[playerNumber - 1]);
+            _HasLatestState[playerNumber - 1] = true;
+        }
+
+        if (_LastKeyframeTime == Long.MIN_VALUE || time - _LastKeyframeTime >= _KeyframeIntervalNanos)
+            WriteKeyframes(time);
+
+        WriteRecord(time, type, playerNumber, state);
+    }
+
+    /**
+     * Writes the latest state of both cars as keyframe records and adds them to the index.
+     *
+     * @param time The time of the keyframe, relative to the start.
+     */
+    private void WriteKeyframes(long time) {
+        int offset = _End;
+        for (int i = 0; i < _LatestStates.length; i++) {
+            if (_HasLatestState[i])
+                WriteRecord(time, RECORD_KEYFRAME, i + 1, _LatestStates[i]);
+        }
+        if (_IsTruncated || offset == _End)
+            return;
+
+        if (_IndexCount == INDEX_CAPACITY) {
+            //Keeps every other keyframe in the index, the next ones are further apart.
+            for (int i = 0; i < INDEX_CAPACITY / 2; i++) {
+                int from = OFFSET_INDEX + 2 * i * INDEX_ENTRY_SIZE;
+                int to = OFFSET_INDEX + i * INDEX_ENTRY_SIZE;
+                _Buffer.putLong(to, _Buffer.getLong(from));
+                _Buffer.putLong(to + 8, _Buffer.getLong(from + 8));
+            }
+            _IndexCount = INDEX_CAPACITY / 2;
+            _KeyframeIntervalNanos *= 2;
+            _Buffer.putInt(OFFSET_KEYFRAME_INTERVAL, (int) TimeUnit.NANOSECONDS.toMillis(_KeyframeIntervalNanos));
+        }
+
+        int entry = OFFSET_INDEX + _IndexCount * INDEX_ENTRY_SIZE;
+        _Buffer.putLong(entry, time);
+        _Buffer.putLong(entry + 8, offset);
+        _IndexCount++;
+        _Buffer.putInt(OFFSET_INDEX_COUNT, _IndexCount);
+        _LastKeyframeTime = time;
+    }
+
+    /**
+     * Writes one record at the end of the data and moves the end in the header past it.
+     * Marks the recording truncated if the file is full.
+     *
+     * @param time         The time of the record, relative to the start.
+     * @param type         The record type.
+     * @param playerNumber The player number.
+     * @param state        The state of the car, or null for a crash.
+     */
+    private void WriteRecord(long time, int type, int playerNumber, MessageCarStatusUpdate state) {
+        if (_IsTruncated)
+            return;
+        if (_End + RECORD_SIZE > _Buffer.capacity()) {
+            _IsTruncated = true;
+            return;
+        }
+
+        _Buffer.putLong(_End, time);
+        _Buffer.put(_End + 8, (byte) type);
+        _Buffer.put(_End + 9, (byte) playerNumber);
+        _Buffer.position(_End + 10);
+        try {
+            if (state != null)
+                CarSnapshotCodec.EncodeState(state, _Buffer);
+            else
+                _Buffer.put(ZERO_STATE);
+        } catch (IOException e) {
+            //The position does not fit the record. Written as zeros, like a crash.
+            _Buffer.position(_End + 10);
+            _Buffer.put(ZERO_STATE);
+        }
+
+        _End += RECORD_SIZE;
+        _RecordCount++;
+        _Buffer.putLong(OFFSET_RECORD_COUNT, _RecordCount);
+        _Buffer.putLong(OFFSET_DATA_END, _End);
+    }
+
+    /**
+     * Copies the state of a car from one message to another.
+     *
+     * @param from The message to copy from.
+     * @param to   The message to copy to.
+     */
+    private static void CopyState(MessageCarStatusUpdate from, MessageCarStatusUpdate to) {
+        to.set_Location_X(from.get_Location_X());
+        to.set_Location_Y(from.get_Location_Y());
+        to.set_CurrentAngle(from.get_CurrentAngle());
+        to.set_VirtualSpeed(from.get_VirtualSpeed());
+        to.set_IsAccelerating(from.is_IsAccelerating());
+        to.set_CarImpactSoundToPlay(from.is_CarImpactSoundToPlay());
+    }
+
+    /**
+     * Tells if a number is a valid player number.
+     *
+     * @param playerNumber The number to check.
+     * @return True for player 1 and player 2.
+     */
+    private static boolean IsPlayer(int playerNumber) {
+        return playerNumber == SharedResources.PLAYER_1 || playerNumber == SharedResources.PLAYER_2;
+    }
+}
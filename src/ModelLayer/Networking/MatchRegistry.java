@@ -0,0 +1,65 @@
+package ModelLayer.Networking;
+
+import ControlLayer.SharedResources;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The active matches of the server.
+ * A new match is announced to its two sessions only, which keep it as their current match, so creating or ending
+ * a match costs the same however many clients are connected. Any thread can register or remove matches at the same time.
+ */
+class MatchRegistry {
+
+    /**
+     * The active matches.
+     */
+    private final ConcurrentHashMap.KeySetView<ActiveMatch, Boolean> _Matches = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Registers a new match and tells its two sessions that they are in it.
+     * Called on the thread that paired the players.
+     *
+     * @param match    The new match.
+     * @param player1  The session of player 1.
+     * @param player2  The session of player 2.
+     */
+    void Register(ActiveMatch match, Session player1, Session player2) {
+        _Matches.add(match);
+
+        player1.JoinedMatch(match, SharedResources.PLAYER_1);
+        player2.JoinedMatch(match, SharedResources.PLAYER_2);
+    }
+
+    /**
+     * Removes a match that has ended and tells its sessions.
+     * Called by the match once both players have left.
+     *
+     * @param match The match that has ended.
+     * @return False if the match was not registered (e.g. removed already).
+     */
+    boolean Remove(ActiveMatch match) {
+        if (!_Matches.remove(match))
+            return false;
+
+        match.get_SessionPlayer1().MatchEnded(match);
+        match.get_SessionPlayer2().MatchEnded(match);
+        return true;
+    }
+
+    /**
+     * Returns the number of active matches.
+     *
+     * @return The number of matches.
+     */
+    int get_MatchCount() {
+        return _Matches.size();
+    }
+
+    /**
+     * Forgets every match without telling the sessions. Called when the server stops.
+     */
+    void Clear() {
+        _Matches.clear();
+    }
+}
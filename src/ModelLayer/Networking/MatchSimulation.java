@@ -0,0 +1,230 @@
+package ModelLayer.Networking;
+
+import ControlLayer.SharedResources;
+import ModelLayer.CarPhysics;
+import ModelLayer.CollisionManagement.CollisionManager;
+import ModelLayer.MapML.MapModel;
+import ModelLayer.Networking.Messages.MessageCarStatusUpdate;
+import ModelLayer.Networking.Messages.MessageInGameInput;
+import ModelLayer.Networking.Messages.MessageMatchSnapshot;
+import ModelLayer.Networking.Messages.MessageType;
+
+import java.awt.*;
+import java.util.ArrayList;
+
+/**
+ * Runs both cars of a match on the server, with the same movement model (CarPhysics) and collision detection
+ * (CollisionManager with the map's MapObjects) as the clients do locally.
+ * The clients send their inputs, every tick moves both cars and returns one snapshot of both of them.
+ * As only the server decides, both players see the same crash at the same tick.
+ * Inputs arrive on the session threads, ticks run on the server's tick thread; the two are synchronized.
+ */
+final class MatchSimulation {
+
+    /**
+     * Detects the collisions with the map. Has no players, the cars are checked against each other directly.
+     */
+    private final CollisionManager _Collisions;
+
+    /**
+     * The car of player 1.
+     */
+    private final SimulatedCar _Car1;
+
+    /**
+     * The car of player 2.
+     */
+    private final SimulatedCar _Car2;
+
+    /**
+     * The number of ticks run so far.
+     */
+    private int _Tick = 0;
+
+    /**
+     * True once the cars have crashed into each other. Nothing moves afterwards.
+     */
+    private boolean _IsCrashed = false;
+
+    /**
+     * Runs both cars of a match on a map. The cars start where the clients place them.
+     *
+     * @param map The model of the map of the match.
+     */
+    MatchSimulation(MapModel map) {
+        _Collisions = new CollisionManager(new ArrayList<>(), map.GetMapObjects());
+        int startAngleIndex = AngleIndexOf(map.getCAR_Starting_Angle());
+        _Car1 = new SimulatedCar(map.getCAR_StartingPoint_X_Player1(), map.getCAR_StartingPoint_Y_Player1(), startAngleIndex);
+        _Car2 = new SimulatedCar(map.getCAR_StartingPoint_X_Player2(), map.getCAR_StartingPoint_Y_Player2(), startAngleIndex);
+    }
+
+    /**
+     * Applies the input of a player: the held keys take effect from the next tick, a turn happens straight away
+     * (unless it would cause a collision), just like a key press on the client.
+     *
+     * @param playerNumber The player number of the sender (1 or 2).
+     * @param input        The input of the player.
+     */
+    synchronized void ApplyInput(int playerNumber, MessageInGameInput input) {
+        if (_IsCrashed)
+            return;
+
+        SimulatedCar car = playerNumber == SharedResources.PLAYER_1 ? _Car1 : _Car2;
+        SimulatedCar other = car == _Car1 ? _Car2 : _Car1;
+        car._IsForwardPressed = input.is_IsForwardPressed();
+        car._IsBackwardPressed = input.is_IsBackwardPressed();
+
+        if (input.get_Turn() == MessageInGameInput.TURN_NONE)
+            return;
+
+        int angleCount = SharedResources.CAR_Simulated_Angle_Values.length;
+        int step = input.get_Turn() == MessageInGameInput.TURN_LEFT ? -1 : 1;
+        int newAngleIndex = (car._AngleIndex + step + angleCount) % angleCount;
+
+        Rectangle bounds = car.GetBounds(car._Location);
+        boolean isBlocked = _Collisions.IsCollidingWithCar(bounds, newAngleIndex, other.GetBounds(other._Location), other._AngleIndex)
+                || _Collisions.IsCollidingWithImpassable(bounds, newAngleIndex);
+        if (isBlocked)
+            car._ImpactSoundToPlay = true;
+        else
+            car._AngleIndex = newAngleIndex;
+    }
+
+    /**
+     * Moves both cars by one frame and checks the collisions.
+     *
+     * @return The state of both cars after the tick.
+     */
+    synchronized MessageMatchSnapshot Tick() {
+        if (!_IsCrashed) {
+            _Tick++;
+            Move(_Car1, _Car2);
+            if (!_IsCrashed)
+                Move(_Car2, _Car1);
+        }
+
+        MessageMatchSnapshot snapshot = new MessageMatchSnapshot();
+        snapshot.set_Tick(_Tick);
+        snapshot.set_IsCrashed(_IsCrashed);
+        snapshot.set_Player1(_Car1.ToStatus());
+        snapshot.set_Player2(_Car2.ToStatus());
+        //An impact is sent once, whether a blocked turn or a wall caused it since the last snapshot.
+        _Car1._ImpactSoundToPlay = false;
+        _Car2._ImpactSoundToPlay = false;
+        return snapshot;
+    }
+
+    /**
+     * Moves a car by one frame, like the Car does on the client.
+     *
+     * @param car   The car to move.
+     * @param other The other car of the match.
+     */
+    private void Move(SimulatedCar car, SimulatedCar other) {
+        car._Physics.UpdateSpeed(car._IsForwardPressed, car._IsBackwardPressed);
+        float angle = SharedResources.CAR_Simulated_Angle_Values[car._AngleIndex];
+        Point newLocation = car._Physics.NextLocation(new Point(car._Location), angle);
+        Rectangle bounds = car.GetBounds(newLocation);
+
+        if (_Collisions.IsCollidingWithCar(bounds, car._AngleIndex, other.GetBounds(other._Location), other._AngleIndex)) {
+            car._Physics.HitOtherCar();
+            _IsCrashed = true;
+            return;
+        }
+
+        if (_Collisions.IsCollidingWithImpassable(bounds, car._AngleIndex)) {
+            car._Physics.HitTheWall();
+            car._ImpactSoundToPlay = true;
+            return;
+        }
+
+        car._Location.setLocation(newLocation);
+        car._Physics.Moved(_Collisions.IsCollidingWithGrass(bounds, car._AngleIndex));
+    }
+
+    /**
+     * Tells if the cars have crashed into each other.
+     *
+     * @return True if the game is over.
+     */
+    synchronized boolean is_Crashed() {
+        return _IsCrashed;
+    }
+
+    /**
+     * Finds the index of an angle in SharedResources.CAR_Simulated_Angle_Values.
+     *
+     * @param angle The angle in degrees.
+     * @return The index of the angle, or 0 if it is not one of the simulated angles.
+     */
+    private static int AngleIndexOf(int angle) {
+        for (int i = 0; i < SharedResources.CAR_Simulated_Angle_Values.length; i++) {
+            if (SharedResources.CAR_Simulated_Angle_Values[i] == angle)
+                return i;
+        }
+        return 0;
+    }
+
+    /**
+     * One car of the simulated match.
+     */
+    private static final class SimulatedCar {
+
+        /**
+         * The movement model of the car.
+         */
+        private final CarPhysics _Physics = new CarPhysics();
+
+        /**
+         * The top left corner of the car's image.
+         */
+        private final Point _Location;
+
+        /**
+         * The angle of the car, as an index of SharedResources.CAR_Simulated_Angle_Values.
+         */
+        private int _AngleIndex;
+
+        /**
+         * The keys the player holds.
+         */
+        private boolean _IsForwardPressed = false;
+        private boolean _IsBackwardPressed = false;
+
+        /**
+         * True if the car has bumped into the edge of the map or a tree (or a turn was blocked) since the last snapshot.
+         */
+        private boolean _ImpactSoundToPlay = false;
+
+        private SimulatedCar(int x, int y, int angleIndex) {
+            _Location = new Point(x, y);
+            _AngleIndex = angleIndex;
+        }
+
+        /**
+         * Returns the car's image as a rectangle at a location.
+         *
+         * @param location The top left corner.
+         * @return The rectangle of the car's image.
+         */
+        private Rectangle GetBounds(Point location) {
+            return new Rectangle(location.x, location.y, SharedResources.CAR_Image_Size_X, SharedResources.CAR_Image_Size_Y);
+        }
+
+        /**
+         * Describes the state of the car for the snapshot.
+         *
+         * @return The state of the car.
+         */
+        private MessageCarStatusUpdate ToStatus() {
+            MessageCarStatusUpdate status = new MessageCarStatusUpdate(MessageType.INGAMEPOSITIONUPDATE);
+            status.set_CurrentAngle(SharedResources.CAR_Simulated_Angle_Values[_AngleIndex]);
+            status.set_Location_X(_Location.x);
+            status.set_Location_Y(_Location.y);
+            status.set_VirtualSpeed(_Physics.GetVirtualSpeed());
+            status.set_IsAccelerating(_Physics.is_Accelerating());
+            status.set_CarImpactSoundToPlay(_ImpactSoundToPlay);
+            return status;
+        }
+    }
+}
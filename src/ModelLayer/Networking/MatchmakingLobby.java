@@ -0,0 +1,317 @@
+package ModelLayer.Networking;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The lobby of the players waiting for an opponent. Every map has its own queue, so pairing a new player takes
+ * the longest waiting player of the same map without looking at anyone else.
+ * Any session thread can join, cancel or be paired at the same time: every queue has its own lock, and the state of a
+ * ticket only changes once (waiting to matched, cancelled or expired), so a cancelled player is never paired.
+ * Cancelled tickets are left in the queue and skipped when they reach its head.
+ */
+class MatchmakingLobby {
+
+    /**
+     * Called when two players have been paired.
+     */
+    interface PairingListener {
+        /**
+         * Called on the thread of the player who joined last, outside of the lobby's locks.
+         *
+         * @param first  The player who waited in the queue. Becomes player 1.
+         * @param second The player who joined last. Becomes player 2.
+         */
+        void PlayersPaired(Ticket first, Ticket second);
+    }
+
+    /**
+     * The queues of the players waiting, by map name.
+     */
+    private final ConcurrentHashMap<String, MapQueue> _Queues = new ConcurrentHashMap<>();
+
+    /**
+     * Called when two players have been paired.
+     */
+    private final PairingListener _Listener;
+
+    /**
+     * The lobby of the players waiting for an opponent.
+     *
+     * @param listener Called when two players have been paired.
+     */
+    MatchmakingLobby(PairingListener listener) {
+        _Listener = listener;
+    }
+
+    /**
+     * Puts a player into the queue of a map, or pairs it with the player waiting the longest there.
+     *
+     * @param session The session of the player.
+     * @param mapName The name of the map (e.g. "Easy").
+     * @return The ticket of the player. It is already matched if an opponent has been found.
+     */
+    Ticket Join(Session session, String mapName) {
+        Ticket ticket = new Ticket(session, mapName);
+        MapQueue queue = _Queues.computeIfAbsent(mapName, MapQueue::new);
+
+        Ticket opponent = queue.PairOrAdd(ticket);
+        if (opponent != null)
+            _Listener.PlayersPaired(opponent, ticket);
+        return ticket;
+    }
+
+    /**
+     * Takes a player out of the lobby (e.g. the request was cancelled or the client left).
+     *
+     * @param ticket The ticket of the player. Ignored if null.
+     * @return True if the player was waiting. False if it has been paired, cancelled or expired already.
+     */
+    boolean Cancel(Ticket ticket) {
+        if (ticket == null || !ticket._State.compareAndSet(Ticket.WAITING, Ticket.CANCELLED))
+            return false;
+
+        MapQueue queue = _Queues.get(ticket._MapName);
+        if (queue != null)
+            queue.Cancelled();
+        return true;
+    }
+
+    /**
+     * Takes the players out of the lobby who have been waiting for too long.
+     * Only looks at the oldest tickets of every queue, so it costs as much as the number of tickets removed.
+     *
+     * @param maxWaitNanos The longest time a player can wait, in nanoseconds.
+     * @return The tickets of the players taken out.
+     */
+    List<Ticket> EvictExpired(long maxWaitNanos) {
+        List<Ticket> expired = new ArrayList<>();
+        long oldestAllowed = System.nanoTime() - maxWaitNanos;
+        for (MapQueue queue : _Queues.values()) {
+            queue.EvictExpired(oldestAllowed, expired);
+        }
+        return expired;
+    }
+
+    /**
+     * Removes every player from the lobby and forgets the statistics. Called when the server stops.
+     */
+    void Clear() {
+        for (MapQueue queue : _Queues.values()) {
+            queue.CancelAll();
+        }
+        _Queues.clear();
+    }
+
+    /**
+     * Describes the queues for the log: waiting players, pairs made, average and longest wait, cancelled and expired requests.
+     *
+     * @return One line per map, or an empty string if nobody has joined the lobby.
+     */
+    String Describe() {
+        StringBuilder text = new StringBuilder();
+        for (MapQueue queue : _Queues.values()) {
+            if (text.length() > 0)
+                text.append(System.lineSeparator());
+            text.append(queue.Describe());
+        }
+        return text.toString();
+    }
+
+    /**
+     * Returns the number of players waiting for a map.
+     *
+     * @param mapName The name of the map.
+     * @return The number of waiting players.
+     */
+    int get_WaitingCount(String mapName) {
+        MapQueue queue = _Queues.get(mapName);
+        return queue == null ? 0 : queue._WaitingCount.get();
+    }
+
+    /**
+     * Returns the number of players waiting for any map.
+     *
+     * @return The number of waiting players.
+     */
+    int get_WaitingCount() {
+        int count = 0;
+        for (MapQueue queue : _Queues.values()) {
+            count += queue._WaitingCount.get();
+        }
+        return count;
+    }
+
+    /**
+     * The request of one player waiting for an opponent.
+     */
+    static final class Ticket {
+        static final int WAITING = 0;
+        static final int MATCHED = 1;
+        static final int CANCELLED = 2;
+        static final int EXPIRED = 3;
+
+        /**
+         * The session of the player.
+         */
+        final Session _Session;
+
+        /**
+         * The name of the map the player wants to play on.
+         */
+        final String _MapName;
+
+        /**
+         * When the player joined the lobby (System.nanoTime).
+         */
+        final long _JoinedAt = System.nanoTime();
+
+        /**
+         * One of WAITING, MATCHED, CANCELLED and EXPIRED. Only changes from WAITING.
+         */
+        private final AtomicInteger _State = new AtomicInteger(WAITING);
+
+        private Ticket(Session session, String mapName) {
+            _Session = session;
+            _MapName = mapName;
+        }
+
+        /**
+         * Tells if the player is still waiting for an opponent.
+         *
+         * @return True if the ticket is neither matched, cancelled nor expired.
+         */
+        boolean IsWaiting() {
+            return _State.get() == WAITING;
+        }
+    }
+
+    /**
+     * The players waiting for one map, in the order they joined, and the statistics of the map.
+     */
+    private static final class MapQueue {
+
+        /**
+         * The name of the map.
+         */
+        private final String _MapName;
+
+        /**
+         * The tickets in the order they joined. May contain cancelled tickets, which are skipped. Guarded by this.
+         */
+        private final ArrayDeque<Ticket> _Tickets = new ArrayDeque<>();
+
+        /**
+         * The number of players waiting (the tickets in the queue that are not cancelled).
+         */
+        private final AtomicInteger _WaitingCount = new AtomicInteger();
+
+        /**
+         * The statistics of the map.
+         */
+        private final LongAdder _PairedCount = new LongAdder();
+        private final LongAdder _CancelledCount = new LongAdder();
+        private final LongAdder _ExpiredCount = new LongAdder();
+        private final LongAdder _TotalWaitNanos = new LongAdder();
+        private final AtomicLong _MaxWaitNanos = new AtomicLong();
+
+        private MapQueue(String mapName) {
+            _MapName = mapName;
+        }
+
+        /**
+         * Pairs the ticket with the player waiting the longest, or adds it to the end of the queue.
+         *
+         * @param ticket The ticket of the player who joined.
+         * @return The ticket of the opponent, or null if the ticket has been queued.
+         */
+        private Ticket PairOrAdd(Ticket ticket) {
+            Ticket opponent = null;
+            synchronized (this) {
+                Ticket head;
+                while ((head = _Tickets.pollFirst()) != null) {
+                    //A cancelled or expired ticket is dropped here. A waiting one cannot be cancelled any more once this succeeds.
+                    if (head._State.compareAndSet(Ticket.WAITING, Ticket.MATCHED)) {
+                        opponent = head;
+                        break;
+                    }
+                }
+
+                if (opponent == null) {
+                    _Tickets.addLast(ticket);
+                    _WaitingCount.incrementAndGet();
+                    return null;
+                }
+            }
+
+            ticket._State.set(Ticket.MATCHED);
+            _WaitingCount.decrementAndGet();
+            _PairedCount.increment();
+            long waited = System.nanoTime() - opponent._JoinedAt;
+            _TotalWaitNanos.add(waited);
+            _MaxWaitNanos.accumulateAndGet(waited, Math::max);
+            return opponent;
+        }
+
+        /**
+         * Counts a cancelled ticket. The ticket stays in the queue until it reaches the head.
+         */
+        private void Cancelled() {
+            _WaitingCount.decrementAndGet();
+            _CancelledCount.increment();
+        }
+
+        /**
+         * Removes the expired and the cancelled tickets from the head of the queue.
+         *
+         * @param oldestAllowed The time (System.nanoTime) before which a waiting ticket has expired.
+         * @param expired       Collects the expired tickets.
+         */
+        private synchronized void EvictExpired(long oldestAllowed, List<Ticket> expired) {
+            Ticket head;
+            while ((head = _Tickets.peekFirst()) != null) {
+                if (head.IsWaiting() && head._JoinedAt - oldestAllowed > 0)
+                    break;
+
+                _Tickets.pollFirst();
+                if (head._State.compareAndSet(Ticket.WAITING, Ticket.EXPIRED)) {
+                    _WaitingCount.decrementAndGet();
+                    _ExpiredCount.increment();
+                    expired.add(head);
+                }
+            }
+        }
+
+        /**
+         * Cancels every waiting ticket and empties the queue.
+         */
+        private synchronized void CancelAll() {
+            for (Ticket ticket : _Tickets) {
+                ticket._State.compareAndSet(Ticket.WAITING, Ticket.CANCELLED);
+            }
+            _Tickets.clear();
+            _WaitingCount.set(0);
+        }
+
+        /**
+         * Describes the queue for the log.
+         *
+         * @return The statistics of the map in one line.
+         */
+        private String Describe() {
+            long paired = _PairedCount.sum();
+            long averageWaitMillis = paired == 0 ? 0 : _TotalWaitNanos.sum() / paired / 1_000_000;
+            return "\"" + _MapName + "\": waiting " + Integer.toString(_WaitingCount.get())
+                    + ", paired " + Long.toString(paired)
+                    + ", average wait " + Long.toString(averageWaitMillis) + " ms"
+                    + ", longest wait " + Long.toString(_MaxWaitNanos.get() / 1_000_000) + " ms"
+                    + ", cancelled " + Long.toString(_CancelledCount.sum())
+                    + ", expired " + Long.toString(_ExpiredCount.sum());
+        }
+    }
+}
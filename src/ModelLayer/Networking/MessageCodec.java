@@ -0,0 +1,39 @@
+package ModelLayer.Networking;
+
+import ModelLayer.Networking.Messages.Message;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Converts a Message to and from the payload of a frame.
+ * Stateless implementations can be shared between connections and threads. Ones that keep state between messages
+ * (the binary codec) belong to one connection; they are used by one sending and one receiving thread.
+ */
+public interface MessageCodec {
+
+    /**
+     * Returns the identifier of the codec. It is a single bit, so codecs can be offered as a mask.
+     *
+     * @return The bit flag of the codec.
+     */
+    int get_Id();
+
+    /**
+     * Writes the payload of a message at the buffer's position.
+     *
+     * @param msg The message to encode.
+     * @param out The buffer to write to. Throws BufferOverflowException if it is too small.
+     * @throws IOException If the message cannot be encoded by this codec.
+     */
+    void Encode(Message msg, ByteBuffer out) throws IOException;
+
+    /**
+     * Reads a message from a payload. The payload is the remaining part of the buffer.
+     *
+     * @param payload The payload of exactly one frame.
+     * @return The decoded message, or null if the payload is valid but cannot be used (it should be skipped).
+     * @throws IOException If the payload is corrupt.
+     */
+    Message Decode(ByteBuffer payload) throws IOException;
+}
@@ -0,0 +1,64 @@
+package ModelLayer.Networking;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The available wire codecs and their negotiation.
+ * The receiving side never needs to know the codec in advance: a serialised payload starts with 0xAC,
+ * a binary one with the message type. The binary codec keeps state, so its instances belong to a FrameCodec.
+ */
+public final class MessageCodecs {
+
+    /**
+     * Bit flag of the serialised codec.
+     */
+    public static final int SERIALIZED_ID = 1;
+
+    /**
+     * Bit flag of the binary codec.
+     */
+    public static final int BINARY_ID = 2;
+
+    /**
+     * Java serialised objects. Understood by every client.
+     */
+    public static final MessageCodec SERIALIZED = new SerializedMessageCodec();
+
+    /**
+     * All the codecs this side can use, as a mask.
+     */
+    public static final int SUPPORTED_MASK = SERIALIZED_ID | BINARY_ID;
+
+    /**
+     * Static helper, not meant to be instantiated.
+     */
+    private MessageCodecs() {
+    }
+
+    /**
+     * Chooses the best codec from the ones offered by the other side.
+     *
+     * @param offeredMask The codecs offered, as bit flags.
+     * @return The id of the binary codec if offered, otherwise the id of the serialised one.
+     */
+    public static int Choose(int offeredMask) {
+        if ((offeredMask & BINARY_ID) != 0)
+            return BINARY_ID;
+        return SERIALIZED_ID;
+    }
+
+    /**
+     * Tells the message type of a binary payload without decoding it.
+     *
+     * @param payload The payload of exactly one frame, as the remaining part of the buffer.
+     * @return The message type, or -1 if the payload is empty or not binary.
+     */
+    public static int PeekBinaryType(ByteBuffer payload) {
+        if (!payload.hasRemaining())
+            return -1;
+        int first = payload.get(payload.position()) & 0xFF;
+        if (first == SerializedMessageCodec.FIRST_BYTE)
+            return -1;
+        return first;
+    }
+}
@@ -8,6 +8,12 @@ import java.io.Serializable;
  */
 public class MessageCarStatusUpdate extends Message implements Serializable {
 
+    /**
+     * Used by Serializable to identify the object's version.
+     * Pinned to the version the original clients were built with, so they can still read and send this message.
+     */
+    private static final long serialVersionUID = 2076360415210340322L;
+
     /**
      * Represents the current angle of the car.
      */
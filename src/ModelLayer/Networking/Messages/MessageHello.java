@@ -0,0 +1,36 @@
+package ModelLayer.Networking.Messages;
+
+import java.io.Serializable;
+
+/**
+ * A hello message that also negotiates the wire codec.
+ * The client offers the codecs it can use, the server answers with the one it has chosen.
+ * Clients that send a plain hello Message are answered with nothing and stay on serialised frames.
+ */
+public class MessageHello extends Message implements Serializable {
+
+    /**
+     * Used by Serializable to identify the object's version
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The codecs (as bit flags, see MessageCodecs) offered by the client, or the codec chosen by the server.
+     */
+    private int _CodecMask;
+
+    /**
+     * A hello message that also negotiates the wire codec.
+     */
+    public MessageHello() {
+        super(MessageType.HELLO);
+    }
+
+    public int get_CodecMask() {
+        return _CodecMask;
+    }
+
+    public void set_CodecMask(int _CodecMask) {
+        this._CodecMask = _CodecMask;
+    }
+}
@@ -0,0 +1,68 @@
+package ModelLayer.Networking.Messages;
+
+import java.io.Serializable;
+
+/**
+ * The keys a player holds during a game simulated by the server. Sent whenever a control key is pressed or released.
+ * A turn is sent once, when the turning key is pressed; the server turns the car straight away if it can.
+ */
+public class MessageInGameInput extends Message implements Serializable {
+
+    /**
+     * Used by Serializable to identify the object's version
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Values of _Turn.
+     */
+    public static final int TURN_NONE = 0;
+    public static final int TURN_LEFT = 1;
+    public static final int TURN_RIGHT = 2;
+
+    /**
+     * True while the accelerate key is held.
+     */
+    private boolean _IsForwardPressed;
+
+    /**
+     * True while the reverse/break key is held.
+     */
+    private boolean _IsBackwardPressed;
+
+    /**
+     * The turn requested with this input: TURN_NONE, TURN_LEFT or TURN_RIGHT.
+     */
+    private int _Turn = TURN_NONE;
+
+    /**
+     * The keys a player holds during a game simulated by the server.
+     */
+    public MessageInGameInput() {
+        super(MessageType.INGAMEINPUT);
+    }
+
+    public boolean is_IsForwardPressed() {
+        return _IsForwardPressed;
+    }
+
+    public void set_IsForwardPressed(boolean _IsForwardPressed) {
+        this._IsForwardPressed = _IsForwardPressed;
+    }
+
+    public boolean is_IsBackwardPressed() {
+        return _IsBackwardPressed;
+    }
+
+    public void set_IsBackwardPressed(boolean _IsBackwardPressed) {
+        this._IsBackwardPressed = _IsBackwardPressed;
+    }
+
+    public int get_Turn() {
+        return _Turn;
+    }
+
+    public void set_Turn(int _Turn) {
+        this._Turn = _Turn;
+    }
+}
@@ -8,6 +8,12 @@ import java.io.Serializable;
  */
 public class MessageMapRequest extends Message implements Serializable {
 
+    /**
+     * Used by Serializable to identify the object's version.
+     * Pinned to the version the original clients were built with, so they can still read and send this message.
+     */
+    private static final long serialVersionUID = -6524420368718642773L;
+
     /**
      * The name of the map where the client wants to play on.
      * An another client for the same map needs to be found by the server.
@@ -9,11 +9,35 @@ import java.io.Serializable;
  */
 public class MessageMapResponse extends MessageMapRequest implements Serializable {
 
+    /**
+     * Used by Serializable to identify the object's version.
+     * Pinned to the version the original clients were built with, so they can still read and send this message.
+     */
+    private static final long serialVersionUID = 3805447903780630790L;
+
     /**
      * Player number selected by the server. Either 1 or 2.
      */
     private int _GivenPlayerNumber;
 
+    /**
+     * True if the server simulates the match. The client then sends its inputs (INGAMEINPUT) instead of its
+     * car's status, and displays both cars from the server's snapshots (INGAMESNAPSHOT).
+     */
+    private boolean _IsServerSimulated;
+
+    /**
+     * When both players start driving, in the server's clock (System.nanoTime of the server).
+     * The client converts it to its own clock with the offset it measured (see MessagePing).
+     * Only valid if _IsStartScheduled is true; otherwise the game starts as soon as this message arrives.
+     */
+    private long _StartAt;
+
+    /**
+     * True if the server has scheduled the start (_StartAt). Older servers do not schedule it.
+     */
+    private boolean _IsStartScheduled;
+
     /**
      * A message (information) sent between a client and a server.
      *
@@ -31,4 +55,28 @@ public class MessageMapResponse extends MessageMapRequest implements Serializabl
     public void set_GivenPlayerNumber(int _GivenPlayerNumber) {
         this._GivenPlayerNumber = _GivenPlayerNumber;
     }
+
+    public boolean is_IsServerSimulated() {
+        return _IsServerSimulated;
+    }
+
+    public void set_IsServerSimulated(boolean _IsServerSimulated) {
+        this._IsServerSimulated = _IsServerSimulated;
+    }
+
+    public long get_StartAt() {
+        return _StartAt;
+    }
+
+    public void set_StartAt(long _StartAt) {
+        this._StartAt = _StartAt;
+    }
+
+    public boolean is_IsStartScheduled() {
+        return _IsStartScheduled;
+    }
+
+    public void set_IsStartScheduled(boolean _IsStartScheduled) {
+        this._IsStartScheduled = _IsStartScheduled;
+    }
 }
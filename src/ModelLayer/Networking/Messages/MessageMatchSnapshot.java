@@ -0,0 +1,74 @@
+package ModelLayer.Networking.Messages;
+
+import java.io.Serializable;
+
+/**
+ * The state of both cars after a tick of a game simulated by the server. Sent to both players once per tick,
+ * so one message carries what two relayed status updates would. The crash verdict is the server's.
+ */
+public class MessageMatchSnapshot extends Message implements Serializable {
+
+    /**
+     * Used by Serializable to identify the object's version
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The number of the tick, counted from the start of the game.
+     */
+    private int _Tick;
+
+    /**
+     * True if the cars have crashed into each other in this tick. This ends the game.
+     */
+    private boolean _IsCrashed;
+
+    /**
+     * The state of player 1's car.
+     */
+    private MessageCarStatusUpdate _Player1;
+
+    /**
+     * The state of player 2's car.
+     */
+    private MessageCarStatusUpdate _Player2;
+
+    /**
+     * The state of both cars after a tick of a game simulated by the server.
+     */
+    public MessageMatchSnapshot() {
+        super(MessageType.INGAMESNAPSHOT);
+    }
+
+    public int get_Tick() {
+        return _Tick;
+    }
+
+    public void set_Tick(int _Tick) {
+        this._Tick = _Tick;
+    }
+
+    public boolean is_IsCrashed() {
+        return _IsCrashed;
+    }
+
+    public void set_IsCrashed(boolean _IsCrashed) {
+        this._IsCrashed = _IsCrashed;
+    }
+
+    public MessageCarStatusUpdate get_Player1() {
+        return _Player1;
+    }
+
+    public void set_Player1(MessageCarStatusUpdate _Player1) {
+        this._Player1 = _Player1;
+    }
+
+    public MessageCarStatusUpdate get_Player2() {
+        return _Player2;
+    }
+
+    public void set_Player2(MessageCarStatusUpdate _Player2) {
+        this._Player2 = _Player2;
+    }
+}
@@ -0,0 +1,99 @@
+package ModelLayer.Networking.Messages;
+
+import java.io.Serializable;
+
+/**
+ * Measures the round trip and the clock offset between a client and the server, the way NTP does.
+ * The client sends a PING with the time it was sent (its own clock). The server answers with a PONG that echoes
+ * that time and adds the times it received the PING and sent the PONG (the server's clock). With the time the PONG
+ * arrived, the client knows the round trip without the time the server held the message, and the offset between the
+ * two clocks (exact if the way there takes as long as the way back).
+ * Every PING also carries the client's latest estimate, so the server knows the round trip of every session.
+ * The times are System.nanoTime values of the side that took them.
+ */
+public class MessagePing extends Message implements Serializable {
+
+    /**
+     * Used by Serializable to identify the object's version
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Value of _RoundTrip while the client has no estimate yet.
+     */
+    public static final long UNKNOWN = -1;
+
+    /**
+     * When the client sent the PING (client clock). Echoed in the PONG.
+     */
+    private long _OriginateTime;
+
+    /**
+     * When the server received the PING (server clock). Only in a PONG.
+     */
+    private long _ReceiveTime;
+
+    /**
+     * When the server sent the PONG (server clock). Only in a PONG.
+     */
+    private long _TransmitTime;
+
+    /**
+     * The client's latest estimate of the round trip, in nanoseconds, or UNKNOWN. Only in a PING.
+     */
+    private long _RoundTrip = UNKNOWN;
+
+    /**
+     * The client's latest estimate of the server's clock minus its own clock, in nanoseconds. Only in a PING.
+     */
+    private long _ClockOffset;
+
+    /**
+     * A clock synchronisation message.
+     *
+     * @param type MessageType.PING or MessageType.PONG.
+     */
+    public MessagePing(int type) {
+        super(type);
+    }
+
+    public long get_OriginateTime() {
+        return _OriginateTime;
+    }
+
+    public void set_OriginateTime(long _OriginateTime) {
+        this._OriginateTime = _OriginateTime;
+    }
+
+    public long get_ReceiveTime() {
+        return _ReceiveTime;
+    }
+
+    public void set_ReceiveTime(long _ReceiveTime) {
+        this._ReceiveTime = _ReceiveTime;
+    }
+
+    public long get_TransmitTime() {
+        return _TransmitTime;
+    }
+
+    public void set_TransmitTime(long _TransmitTime) {
+        this._TransmitTime = _TransmitTime;
+    }
+
+    public long get_RoundTrip() {
+        return _RoundTrip;
+    }
+
+    public void set_RoundTrip(long _RoundTrip) {
+        this._RoundTrip = _RoundTrip;
+    }
+
+    public long get_ClockOffset() {
+        return _ClockOffset;
+    }
+
+    public void set_ClockOffset(long _ClockOffset) {
+        this._ClockOffset = _ClockOffset;
+    }
+}
@@ -48,4 +48,26 @@ public class MessageType {
      * When server shuts down, tries to send this message to the clients.
      */
     public static final int SERVERDOWN = 10;
+    /**
+     * Server offers a UDP channel for the position updates after the game has started (see MessageUdpChannel).
+     * Only sent to clients that use the binary codec.
+     */
+    public static final int UDPCHANNEL = 11;
+    /**
+     * Sent during a game simulated by the server (see MessageMapResponse). The player's held keys and turns (see MessageInGameInput).
+     */
+    public static final int INGAMEINPUT = 12;
+    /**
+     * Sent during a game simulated by the server, once per server tick. The state of both cars (see MessageMatchSnapshot).
+     */
+    public static final int INGAMESNAPSHOT = 13;
+    /**
+     * Sent by the client while it waits for an opponent or plays, to measure the round trip and the clock offset
+     * towards the server. Also tells the server the client's latest estimate (see MessagePing).
+     */
+    public static final int PING = 14;
+    /**
+     * The server's answer to a PING, with the times the PING was received and the answer was sent (see MessagePing).
+     */
+    public static final int PONG = 15;
 }
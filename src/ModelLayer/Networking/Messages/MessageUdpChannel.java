@@ -0,0 +1,49 @@
+package ModelLayer.Networking.Messages;
+
+import java.io.Serializable;
+
+/**
+ * Offers the UDP channel of the match to a client, sent by the server after OPPONENTFOUNDSTARTGAME.
+ * The client sends its position updates as datagrams to the server's port, starting each with the token,
+ * and receives the opponent's updates on the same channel. Control messages stay on the TCP connection.
+ */
+public class MessageUdpChannel extends Message implements Serializable {
+
+    /**
+     * Used by Serializable to identify the object's version
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Identifies the client's datagrams. Random and never 0.
+     */
+    private int _Token;
+
+    /**
+     * The UDP port of the server.
+     */
+    private int _Port;
+
+    /**
+     * Offers the UDP channel of the match to a client.
+     */
+    public MessageUdpChannel() {
+        super(MessageType.UDPCHANNEL);
+    }
+
+    public int get_Token() {
+        return _Token;
+    }
+
+    public void set_Token(int _Token) {
+        this._Token = _Token;
+    }
+
+    public int get_Port() {
+        return _Port;
+    }
+
+    public void set_Port(int _Port) {
+        this._Port = _Port;
+    }
+}
@@ -0,0 +1,361 @@
+package ModelLayer.Networking;
+
+import ModelLayer.Enumerations.LogLevel;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A session between the server and a client that is served by an EventLoop instead of its own thread.
+ * The event loop reads the frames from the non-blocking channel and hands the decoded messages over to
+ * the message handling inherited from the Session. The loop is also the writer of the session's outbox: it encodes
+ * the queued messages into its batch buffer and writes them to the channel with as few writes as possible.
+ * A client of the original protocol (one object stream without frames) cannot be read without blocking, so its
+ * session is handed over to a thread of its own once its first bytes have been recognised.
+ */
+class NioSession extends Session {
+
+    /**
+     * The non-blocking channel towards the client.
+     */
+    private final SocketChannel _Channel;
+
+    /**
+     * The event loop that owns this session. All reads and writes of the channel happen on its thread.
+     */
+    private final EventLoop _EventLoop;
+
+    /**
+     * The registration of the channel within the event loop's selector. Null until registered.
+     */
+    private SelectionKey _SelectionKey;
+
+    /**
+     * Holds the beginning of a frame that has not fully arrived yet. Null when there is no partial frame,
+     * so idle sessions do not keep a read buffer.
+     */
+    private ByteBuffer _PartialInbound;
+
+    /**
+     * The part of the last batch the channel could not take. Null when everything has been written,
+     * so idle sessions do not keep a write buffer.
+     */
+    private ByteBuffer _PendingOutbound;
+
+    /**
+     * True once the session has been closed by the event loop.
+     */
+    private boolean _IsClosed = false;
+
+    /**
+     * True once the first bytes of the client have been checked for the original protocol.
+     */
+    private boolean _IsProtocolKnown = false;
+
+    /**
+     * True once the session has been handed over to a thread of its own, as the client speaks the original protocol.
+     * From then on the event loop neither reads nor writes the channel.
+     */
+    private volatile boolean _IsHandedOver = false;
+
+    /**
+     * A session between the server and a client that is served by an EventLoop instead of its own thread.
+     *
+     * @param channel   The non-blocking channel towards the client.
+     * @param eventLoop The event loop that serves this session.
+     * @param log       The log of the server.
+     * @param metrics       The counters of the server.
+     * @param _Lobby        Lobby for clients waiting for opponent to play on a specific map.
+     * @param threadFactory Creates the threads of the session if it has to be handed over (original protocol).
+     */
+    public NioSession(SocketChannel channel, EventLoop eventLoop, AsyncLogger log, ServerMetrics metrics, MatchmakingLobby _Lobby,
+                      ThreadFactory threadFactory) {
+        super(channel.socket(), log, metrics, _Lobby, threadFactory);
+        _Channel = channel;
+        _EventLoop = eventLoop;
+    }
+
+    /**
+     * The channel is ready to use as it is, there are no streams to open.
+     *
+     * @return Always true.
+     */
+    @Override
+    public boolean OpenStreams() {
+        return true;
+    }
+
+    /**
+     * Event loop sessions have no listening thread of their own. Do nothing.
+     */
+    @Override
+    public void run() {
+        //The event loop calls the session when data arrives.
+    }
+
+    /**
+     * Runs the task on the event loop that owns this session.
+     *
+     * @param task The task to run.
+     */
+    @Override
+    void RunDetached(Runnable task) {
+        _EventLoop.Execute(task);
+    }
+
+    /**
+     * New items are in the outbox. Asks the event loop to write them out.
+     * If called on the loop's thread, writes straight away.
+     */
+    @Override
+    void WakeUpWriter() {
+        if (_IsHandedOver)
+            super.WakeUpWriter();
+        else if (_EventLoop.IsInLoopThread())
+            Flush();
+        else
+            _EventLoop.ScheduleFlush(this);
+    }
+
+    /**
+     * Called by the event loop once the channel is registered with the loop's selector.
+     *
+     * @param key The selection key of the channel.
+     */
+    void Registered(SelectionKey key) {
+        _SelectionKey = key;
+        SessionLog(LogLevel.DEBUG, "Session has started on an event loop. Waiting for messages.");
+    }
+
+    /**
+     * Writes as much of the outbox to the channel as it accepts without blocking.
+     * The queued items are encoded one after the other into the loop's batch buffer, which is written with one call.
+     * If the channel cannot take everything, the rest is kept and the loop is asked to call again once the channel
+     * becomes writable. Runs on the event loop's thread.
+     */
+    void Flush() {
+        //A handed over session is written by its own writer thread.
+        if (_IsHandedOver)
+            return;
+        _Outbox.ClearWakeUp();
+        if (_SelectionKey == null || !_SelectionKey.isValid())
+            return;
+
+        try {
+            if (_PendingOutbound != null) {
+                _Channel.write(_PendingOutbound);
+                if (_PendingOutbound.hasRemaining()) {
+                    WaitUntilWritable();
+                    return;
+                }
+                _PendingOutbound = null;
+            }
+
+            ByteBuffer batch = _EventLoop.get_WriteBuffer();
+            ByteBuffer next = null;
+            Object nextItem = null;
+            while (true) {
+                batch.clear();
+                while (true) {
+                    if (next == null) {
+                        nextItem = _Outbox.Poll();
+                        if (nextItem == null)
+                            break;
+                        next = EncodeItemOrNull(nextItem);
+                        if (next == null)
+                            continue;
+                    }
+                    if (next.remaining() > batch.remaining())
+                        break;
+                    batch.put(next);
+                    _Outbox.Recycle(nextItem);
+                    next = null;
+                }
+
+                if (batch.position() == 0)
+                    break;
+
+                batch.flip();
+                _Channel.write(batch);
+                if (batch.hasRemaining()) {
+                    //The socket buffer is full. Keep the rest and continue when the channel becomes writable again.
+                    KeepPending(batch, next);
+                    if (next != null)
+                        _Outbox.Recycle(nextItem);
+                    WaitUntilWritable();
+                    return;
+                }
+            }
+            _SelectionKey.interestOps(_SelectionKey.interestOps() & ~SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            _PendingOutbound = null;
+            ConnectionLost("Could not write to the channel: " + e.getMessage());
+            Close();
+        }
+    }
+
+    /**
+     * Encodes an item of the outbox. Counts and logs the failure if it cannot be encoded.
+     *
+     * @param item A Message or an already encoded frame (byte array).
+     * @return The encoded frame, or null if it could not be encoded.
+     */
+    private ByteBuffer EncodeItemOrNull(Object item) {
+        try {
+            return EncodeQueuedItem(item);
+        } catch (IOException e) {
+            SendingFailed(e, DescribeQueuedItem(item));
+            return null;
+        }
+    }
+
+    /**
+     * Copies the unwritten part of the batch (and the frame that did not fit into it) into the session's own buffer,
+     * as the batch buffer is shared by the sessions of the loop.
+     *
+     * @param batch The batch buffer with unwritten bytes remaining.
+     * @param next  An encoded frame that did not fit into the batch, or null.
+     */
+    private void KeepPending(ByteBuffer batch, ByteBuffer next) {
+        int size = batch.remaining() + (next == null ? 0 : next.remaining());
+        _PendingOutbound = ByteBuffer.allocate(size);
+        _PendingOutbound.put(batch);
+        if (next != null)
+            _PendingOutbound.put(next);
+        _PendingOutbound.flip();
+    }
+
+    /**
+     * Asks the event loop to call Flush again once the channel can take more bytes.
+     */
+    private void WaitUntilWritable() {
+        _SelectionKey.interestOps(_SelectionKey.interestOps() | SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * Reads the available bytes from the channel and handles every complete frame.
+     * A frame that has not fully arrived yet is kept until the next read. Runs on the event loop's thread.
+     *
+     * @param readBuffer A scratch buffer of the event loop, shared between the sessions of the loop.
+     */
+    void Read(ByteBuffer readBuffer) {
+        readBuffer.clear();
+        if (_PartialInbound != null) {
+            readBuffer.put(_PartialInbound);
+            _PartialInbound = null;
+        }
+
+        int count;
+        try {
+            count = _Channel.read(readBuffer);
+        } catch (IOException e) {
+            ConnectionLost(e.getMessage());
+            Close();
+            return;
+        }
+
+        readBuffer.flip();
+        if (!_IsProtocolKnown && readBuffer.remaining() >= FrameCodec.HEADER_SIZE) {
+            _IsProtocolKnown = true;
+            if ((readBuffer.getShort(readBuffer.position()) & 0xFFFF) == LEGACY_STREAM_MAGIC) {
+                HandOver(readBuffer);
+                return;
+            }
+        }
+        HandleFrames(readBuffer);
+
+        if (count < 0) {
+            ConnectionLost("The client has closed the connection.");
+            Close();
+            return;
+        }
+
+        if (!IsListening())
+            Close();
+    }
+
+    /**
+     * Hands the session of a client of the original protocol over to a thread of its own, which reads and writes
+     * the channel in blocking mode. Runs on the event loop's thread.
+     *
+     * @param received The bytes received so far, ready to be read. They are read again by the new thread.
+     */
+    private void HandOver(ByteBuffer received) {
+        _IsHandedOver = true;
+        byte[] head = new byte[received.remaining()];
+        received.get(head);
+        _SelectionKey.cancel();
+
+        //The channel can only be switched to blocking mode once the selector has dropped the cancelled key,
+        //which happens on its next select.
+        _EventLoop.ExecuteAfterSelect(() -> {
+            try {
+                _Channel.configureBlocking(true);
+                InputStream in = new SequenceInputStream(new ByteArrayInputStream(head),
+                        new BufferedInputStream(_ClientSocket.getInputStream()));
+                _Out = new DataOutputStream(new BufferedOutputStream(_ClientSocket.getOutputStream()));
+                NewThread(() -> ServeLegacyStream(in)).start();
+            } catch (IOException e) {
+                ConnectionLost("Could not hand over the session of a client of the original protocol: " + e.getMessage());
+                EndSession();
+            }
+        });
+    }
+
+    /**
+     * Decodes and handles the complete frames within the buffer. Keeps a copy of an incomplete frame at the end.
+     *
+     * @param buffer The received bytes, ready to be read.
+     */
+    private void HandleFrames(ByteBuffer buffer) {
+        while (buffer.remaining() >= FrameCodec.HEADER_SIZE && IsListening()) {
+            int length = buffer.getShort(buffer.position()) & 0xFFFF;
+            if (buffer.remaining() < FrameCodec.HEADER_SIZE + length)
+                break;
+
+            int payloadStart = buffer.position() + FrameCodec.HEADER_SIZE;
+            int frameEnd = payloadStart + length;
+            int limit = buffer.limit();
+            try {
+                //Decode straight from the read buffer, limited to this frame's payload.
+                buffer.limit(frameEnd);
+                buffer.position(payloadStart);
+                HandleIncomingFrame(buffer);
+            } catch (Exception e) {
+                HandleListeningException(e);
+            } finally {
+                buffer.limit(limit);
+                buffer.position(frameEnd);
+            }
+        }
+
+        if (buffer.hasRemaining() && IsListening()) {
+            _PartialInbound = ByteBuffer.allocate(buffer.remaining());
+            _PartialInbound.put(buffer);
+            _PartialInbound.flip();
+        }
+    }
+
+    /**
+     * Removes the channel from the event loop and closes the session. Runs on the event loop's thread.
+     * What is still queued is written out first, as far as the channel takes it without blocking.
+     */
+    void Close() {
+        if (_IsClosed || _IsHandedOver)
+            return;
+        _IsClosed = true;
+
+        //Set closed first: a failing flush closes the session again.
+        Flush();
+
+        if (_SelectionKey != null)
+            _SelectionKey.cancel();
+        _PartialInbound = null;
+        _PendingOutbound = null;
+        EndSession();
+    }
+}
@@ -0,0 +1,365 @@
+package ModelLayer.Networking;
+
+import ControlLayer.SharedResources;
+import ModelLayer.Networking.Messages.MessageCarStatusUpdate;
+import ModelLayer.Networking.Messages.MessageType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a replay file written by MatchRecorder. The file is mapped into memory, the records are read in place by
+ * their number (they have a fixed size and are in time order), so walking through a match allocates nothing.
+ * Seek finds the state of both cars at any moment from the nearest keyframe before it, without reading the file
+ * from the start. A file left behind by a crashed server is readable up to its last record.
+ * A reader keeps a read position, it is meant to be used by one thread at a time.
+ */
+public final class ReplayReader {
+
+    /**
+     * The file mapped into memory.
+     */
+    private final ByteBuffer _Buffer;
+
+    /**
+     * The file's path.
+     */
+    private final Path _Path;
+
+    /**
+     * The number of complete records in the file.
+     */
+    private final int _RecordCount;
+
+    /**
+     * The number of entries in the keyframe index.
+     */
+    private final int _IndexCount;
+
+    /**
+     * The name of the map the match was played on.
+     */
+    private final String _MapName;
+
+    /**
+     * Opens a replay file and reads its header.
+     *
+     * @param file The replay file.
+     * @throws IOException If the file cannot be read or is not a replay file of a known version.
+     */
+    public ReplayReader(Path file) throws IOException {
+        _Path = file;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < MatchRecorder.DATA_START)
+                throw new IOException("Not a replay file: " + file);
+            //The mapping stays valid after the channel is closed.
+            _Buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, Integer.MAX_VALUE));
+        }
+
+        if (_Buffer.getInt(0) != MatchRecorder.MAGIC)
+            throw new IOException("Not a replay file: " + file);
+        if (_Buffer.getShort(4) != MatchRecorder.VERSION)
+            throw new IOException("Unknown replay version " + _Buffer.getShort(4) + ": " + file);
+
+        long dataEnd = Math.min(_Buffer.getLong(MatchRecorder.OFFSET_DATA_END), _Buffer.capacity());
+        _RecordCount = (int) Math.max(0, (dataEnd - MatchRecorder.DATA_START) / MatchRecorder.RECORD_SIZE);
+        _IndexCount = Math.max(0, Math.min(_Buffer.getInt(MatchRecorder.OFFSET_INDEX_COUNT), MatchRecorder.INDEX_CAPACITY));
+
+        byte[] name = new byte[_Buffer.get(MatchRecorder.OFFSET_MAP_NAME) & 0xFF];
+        for (int i = 0; i < name.length; i++) {
+            name[i] = _Buffer.get(MatchRecorder.OFFSET_MAP_NAME + 1 + i);
+        }
+        _MapName = new String(name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the replay file.
+     *
+     * @return The path of the file.
+     */
+    public Path get_Path() {
+        return _Path;
+    }
+
+    /**
+     * Returns the name of the map the match was played on.
+     *
+     * @return One of SharedResources.MSP_Maps.
+     */
+    public String get_MapName() {
+        return _MapName;
+    }
+
+    /**
+     * Returns the car design a player raced with.
+     *
+     * @param playerNumber SharedResources.PLAYER_1 or SharedResources.PLAYER_2.
+     * @return The car image index.
+     */
+    public int get_CarIndex(int playerNumber) {
+        return _Buffer.get(MatchRecorder.OFFSET_CAR_INDEXES + playerNumber - 1);
+    }
+
+    /**
+     * Returns the round trip a player's client measured before the match.
+     *
+     * @param playerNumber SharedResources.PLAYER_1 or SharedResources.PLAYER_2.
+     * @return The round trip in nanoseconds, or MessagePing.UNKNOWN.
+     */
+    public long get_RoundTrip(int playerNumber) {
+        return _Buffer.getLong(MatchRecorder.OFFSET_ROUND_TRIPS + 8 * (playerNumber - 1));
+    }
+
+    /**
+     * Returns the moment the match started.
+     *
+     * @return Milliseconds since the epoch.
+     */
+    public long get_WallClock() {
+        return _Buffer.getLong(MatchRecorder.OFFSET_WALL_CLOCK);
+    }
+
+    /**
+     * Tells if the server simulated the match. The records are the server's snapshots then.
+     *
+     * @return True if the server simulated the match.
+     */
+    public boolean is_ServerSimulated() {
+        return (_Buffer.get(MatchRecorder.OFFSET_FLAGS) & MatchRecorder.FLAG_SERVER_SIMULATED) != 0;
+    }
+
+    /**
+     * Tells if the file filled up and the end of the match is missing.
+     *
+     * @return True if the recording was cut.
+     */
+    public boolean is_Truncated() {
+        return (_Buffer.get(MatchRecorder.OFFSET_FLAGS) & MatchRecorder.FLAG_TRUNCATED) != 0;
+    }
+
+    /**
+     * Returns the number of records.
+     *
+     * @return The number of records, keyframes included.
+     */
+    public int get_RecordCount() {
+        return _RecordCount;
+    }
+
+    /**
+     * Returns the time of the last record.
+     *
+     * @return Nanoseconds since the start of the match, 0 for an empty recording.
+     */
+    public long get_Duration() {
+        return _RecordCount == 0 ? 0 : Math.max(0, get_Time(_RecordCount - 1));
+    }
+
+    /**
+     * Returns the time of a record.
+     *
+     * @param record The number of the record, from 0.
+     * @return Nanoseconds since the start of the match, negative before the start.
+     */
+    public long get_Time(int record) {
+        return _Buffer.getLong(Offset(record));
+    }
+
+    /**
+     * Returns the type of a record.
+     *
+     * @param record The number of the record, from 0.
+     * @return MessageType.INGAMEPOSITIONUPDATE, MessageType.INGAMECRASH or MatchRecorder.RECORD_KEYFRAME.
+     */
+    public int get_Type(int record) {
+        return _Buffer.get(Offset(record) + 8) & 0xFF;
+    }
+
+    /**
+     * Tells if a record is a position update or a keyframe, which both carry the state of a car.
+     *
+     * @param record The number of the record, from 0.
+     * @return True if the record has a car state.
+     */
+    public boolean is_CarState(int record) {
+        int type = get_Type(record);
+        return type == MessageType.INGAMEPOSITIONUPDATE || type == MatchRecorder.RECORD_KEYFRAME;
+    }
+
+    /**
+     * Tells if a record is a keyframe: a repeated state, written for seeking.
+     *
+     * @param record The number of the record, from 0.
+     * @return True if the record is a keyframe.
+     */
+    public boolean is_Keyframe(int record) {
+        return get_Type(record) == MatchRecorder.RECORD_KEYFRAME;
+    }
+
+    /**
+     * Tells if a record is the crash of the cars.
+     *
+     * @param record The number of the record, from 0.
+     * @return True if the record is a crash.
+     */
+    public boolean is_Crash(int record) {
+        return get_Type(record) == MessageType.INGAMECRASH;
+    }
+
+    /**
+     * Returns the player a record belongs to.
+     *
+     * @param record The number of the record, from 0.
+     * @return The player number. 0 for a crash the server decided.
+     */
+    public int get_PlayerNumber(int record) {
+        return _Buffer.get(Offset(record) + 9);
+    }
+
+    /**
+     * Returns the angle of the car in a record with a car state.
+     *
+     * @param record The number of the record, from 0.
+     * @return The index of the angle within SharedResources.CAR_Simulated_Angle_Values.
+     */
+    public int get_AngleIndex(int record) {
+        return (_Buffer.get(Offset(record) + 10) & 0xFF) >>> 4;
+    }
+
+    /**
+     * Returns the location of the car in a record with a car state.
+     *
+     * @param record The number of the record, from 0.
+     * @return The location on the X axis.
+     */
+    public int get_X(int record) {
+        return _Buffer.getShort(Offset(record) + 11);
+    }
+
+    /**
+     * Returns the location of the car in a record with a car state.
+     *
+     * @param record The number of the record, from 0.
+     * @return The location on the Y axis.
+     */
+    public int get_Y(int record) {
+        return _Buffer.getShort(Offset(record) + 13);
+    }
+
+    /**
+     * Returns the speed of the car in a record with a car state.
+     *
+     * @param record The number of the record, from 0.
+     * @return The virtual speed (as the HUD displays it).
+     */
+    public int get_VirtualSpeed(int record) {
+        return _Buffer.get(Offset(record) + 15) & 0xFF;
+    }
+
+    /**
+     * Reads the car state of a record into a message.
+     *
+     * @param record The number of the record, from 0.
+     * @param update The message to fill in.
+     */
+    public void ReadState(int record, MessageCarStatusUpdate update) {
+        _Buffer.position(Offset(record) + 10);
+        CarSnapshotCodec.DecodeState(_Buffer, update);
+    }
+
+    /**
+     * Finds the first record after a moment, by a binary search over the records.
+     *
+     * @param time Nanoseconds since the start of the match.
+     * @return The number of the first record later than the time, or get_RecordCount() if there is none.
+     */
+    public int FindRecordAfter(long time) {
+        int low = 0;
+        int high = _RecordCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (get_Time(middle) <= time)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Finds the first crash of the match.
+     *
+     * @return The number of the crash record, or -1 if the cars did not crash.
+     */
+    public int FindCrash() {
+        for (int i = 0; i < _RecordCount; i++) {
+            if (is_Crash(i))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the state of both cars at a moment: starts from the last indexed keyframe before it, and applies the
+     * position updates up to the moment.
+     *
+     * @param time     Nanoseconds since the start of the match.
+     * @param states   Set to the state of each player's car (index 0: player 1).
+     * @param hasState Set to true for a car that had a state by then.
+     * @return The number of the first record after the moment, to continue playing from.
+     */
+    public int Seek(long time, MessageCarStatusUpdate[] states, boolean[] hasState) {
+        for (int i = 0; i < hasState.length; i++) {
+            hasState[i] = false;
+        }
+
+        int end = FindRecordAfter(time);
+        for (int record = FindKeyframeBefore(time); record < end; record++) {
+            int player = get_PlayerNumber(record);
+            if (is_CarState(record) && (player == SharedResources.PLAYER_1 || player == SharedResources.PLAYER_2)) {
+                ReadState(record, states[player - 1]);
+                hasState[player - 1] = true;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Finds the last indexed keyframe at or before a moment, by a binary search over the keyframe index.
+     *
+     * @param time Nanoseconds since the start of the match.
+     * @return The number of the first record of the keyframe, or 0 if there is none before the moment.
+     */
+    private int FindKeyframeBefore(long time) {
+        int low = 0;
+        int high = _IndexCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (_Buffer.getLong(MatchRecorder.OFFSET_INDEX + middle * MatchRecorder.INDEX_ENTRY_SIZE) <= time)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        if (low == 0)
+            return 0;
+
+        long offset = _Buffer.getLong(MatchRecorder.OFFSET_INDEX + (low - 1) * MatchRecorder.INDEX_ENTRY_SIZE + 8);
+        int record = (int) ((offset - MatchRecorder.DATA_START) / MatchRecorder.RECORD_SIZE);
+        return Math.max(0, Math.min(record, _RecordCount));
+    }
+
+    /**
+     * Finds where a record starts in the file.
+     *
+     * @param record The number of the record, from 0.
+     * @return The offset of the record.
+     */
+    private static int Offset(int record) {
+        return MatchRecorder.DATA_START + record * MatchRecorder.RECORD_SIZE;
+    }
+}
@@ -0,0 +1,169 @@
+package ModelLayer.Networking;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the log lines to a file. Once the file reaches its size limit it is renamed to "name.1" (the older files
+ * move on to "name.2" and so on, the oldest is deleted) and a new file is started, so the log never takes more than
+ * (file count + 1) * size limit on disk.
+ * Only written by the drain thread of the AsyncLogger. If the file cannot be written, the error is printed once
+ * and the lines are dropped until writing works again.
+ */
+public class RollingFileLogSink implements LogSink {
+
+    /**
+     * The file being written.
+     */
+    private final File _File;
+
+    /**
+     * The size a file may reach before a new one is started, in bytes.
+     */
+    private final long _MaxSize;
+
+    /**
+     * The number of older files kept.
+     */
+    private final int _FileCount;
+
+    /**
+     * Writes the current file. Null if it could not be opened.
+     */
+    private Writer _Writer;
+
+    /**
+     * The size of the current file, in bytes (counted as UTF-8, line separators included).
+     */
+    private long _Size;
+
+    /**
+     * True once an error has been printed, until writing works again.
+     */
+    private boolean _IsErrorReported = false;
+
+    /**
+     * Writes the log lines to a file, appending to it if it exists.
+     *
+     * @param file      The file to write.
+     * @param maxSize   The size a file may reach before a new one is started, in bytes.
+     * @param fileCount The number of older files kept.
+     */
+    public RollingFileLogSink(File file, long maxSize, int fileCount) {
+        _File = file;
+        _MaxSize = maxSize;
+        _FileCount = fileCount;
+        Open();
+    }
+
+    /**
+     * Writes a line to the file. Starts a new file first if the line would not fit.
+     *
+     * @param msg The line to write.
+     */
+    @Override
+    public void Log(String msg) {
+        long length = msg.getBytes(StandardCharsets.UTF_8).length + System.lineSeparator().length();
+        if (_Size > 0 && _Size + length > _MaxSize)
+            Roll();
+        if (_Writer == null && !Open())
+            return;
+
+        try {
+            _Writer.write(msg);
+            _Writer.write(System.lineSeparator());
+            _Size += length;
+        } catch (IOException e) {
+            Failed(e);
+        }
+    }
+
+    /**
+     * Flushes the written lines to the file.
+     */
+    @Override
+    public void Flush() {
+        if (_Writer == null)
+            return;
+        try {
+            _Writer.flush();
+        } catch (IOException e) {
+            Failed(e);
+        }
+    }
+
+    /**
+     * Closes the file.
+     */
+    public void Close() {
+        if (_Writer == null)
+            return;
+        try {
+            _Writer.close();
+        } catch (IOException e) {
+            Failed(e);
+        }
+        _Writer = null;
+    }
+
+    /**
+     * Opens the file for appending.
+     *
+     * @return False if it could not be opened.
+     */
+    private boolean Open() {
+        try {
+            File parent = _File.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs())
+                throw new IOException("Could not create the directory " + parent);
+            _Writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(_File, true), StandardCharsets.UTF_8));
+            _Size = _File.length();
+            _IsErrorReported = false;
+            return true;
+        } catch (IOException e) {
+            _Writer = null;
+            Failed(e);
+            return false;
+        }
+    }
+
+    /**
+     * Closes the current file, shifts the older files by one and opens a new file.
+     */
+    private void Roll() {
+        Close();
+        String path = _File.getPath();
+        File oldest = new File(path + "." + Integer.toString(_FileCount));
+        if (oldest.exists() && !oldest.delete())
+            Failed(new IOException("Could not delete " + oldest));
+        for (int i = _FileCount - 1; i >= 1; i--) {
+            File older = new File(path + "." + Integer.toString(i));
+            if (older.exists() && !older.renameTo(new File(path + "." + Integer.toString(i + 1))))
+                Failed(new IOException("Could not rename " + older));
+        }
+        if (_FileCount > 0) {
+            if (!_File.renameTo(new File(path + ".1")))
+                Failed(new IOException("Could not rename " + _File));
+        } else if (!_File.delete()) {
+            Failed(new IOException("Could not delete " + _File));
+        }
+        Open();
+    }
+
+    /**
+     * Prints an error of the file once, as it cannot be logged into the file itself.
+     *
+     * @param e The error.
+     */
+    private void Failed(IOException e) {
+        if (_IsErrorReported)
+            return;
+        _IsErrorReported = true;
+        System.err.println("Could not write the log file " + _File + ": " + e.getMessage());
+    }
+}
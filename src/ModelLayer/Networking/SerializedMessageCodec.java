@@ -0,0 +1,67 @@
+package ModelLayer.Networking;
+
+import ModelLayer.Networking.Messages.Message;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * The original codec: every payload is a standalone Java serialised Message object.
+ * Every client understands it, so it is used until a better codec has been negotiated.
+ */
+final class SerializedMessageCodec implements MessageCodec {
+
+    /**
+     * The first byte of every serialised payload (the high byte of the serialisation stream's magic number).
+     * Binary payloads start with the message type instead, which is never this value.
+     */
+    static final int FIRST_BYTE = 0xAC;
+
+    @Override
+    public int get_Id() {
+        return MessageCodecs.SERIALIZED_ID;
+    }
+
+    @Override
+    public void Encode(Message msg, ByteBuffer out) throws IOException {
+        ObjectOutputStream objectOut = new ObjectOutputStream(new ByteBufferOutputStream(out));
+        objectOut.writeObject(msg);
+        objectOut.flush();
+    }
+
+    @Override
+    public Message Decode(ByteBuffer payload) throws IOException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(payload.array(),
+                payload.arrayOffset() + payload.position(), payload.remaining()));
+        Object o;
+        try {
+            o = in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unknown class received: " + e.getMessage());
+        }
+        if (!(o instanceof Message))
+            throw new IOException("Unexpected object received: " + o.getClass().getName());
+        return (Message) o;
+    }
+
+    /**
+     * Lets the ObjectOutputStream write straight into the frame buffer.
+     */
+    private static class ByteBufferOutputStream extends OutputStream {
+        final ByteBuffer _Buffer;
+
+        ByteBufferOutputStream(ByteBuffer buffer) {
+            _Buffer = buffer;
+        }
+
+        @Override
+        public void write(int b) {
+            _Buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            _Buffer.put(b, off, len);
+        }
+    }
+}
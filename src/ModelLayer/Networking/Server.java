@@ -1,70 +1,89 @@
 package ModelLayer.Networking;
 
-import ControlLayer.ServerEngine;
+import ControlLayer.SharedResources;
+import ModelLayer.Enumerations.LogLevel;
+import ModelLayer.Enumerations.ServerExecutionMode;
 import ModelLayer.Networking.Messages.Message;
 import ModelLayer.Networking.Messages.MessageType;
-import ViewLayer.Screens.ServerScr.LogTerminal;
-import javafx.collections.FXCollections;
-import javafx.collections.MapChangeListener;
-import javafx.collections.ObservableList;
-import javafx.collections.ObservableMap;
 
-import javax.swing.*;
+import javax.management.JMException;
 import java.io.IOException;
 import java.net.*;
-import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Uses a server socket to receive incoming TCP connections.
- * Spawns a session for each incoming connection on a separate thread.
+ * Spawns a session for each incoming connection on a separate (platform or virtual) thread,
+ * or serves all the sessions with a few non-blocking event loops (see ServerExecutionMode).
  * Places players (sockets) into a lobby and matches them if they want to play on the same map.
  * A match is represented by an ActiveMatch object.
  * The clients and server are communicating by sending serialised Message objects to each other.
  */
 public class Server {
     /**
-     * Reference to the server controller.
+     * Told when the server has started or stopped (e.g. the server screen). Null if nobody needs to know.
      */
-    private final ServerEngine _ServerEngine;
+    private final ServerStatusListener _StatusListener;
     /**
      * List of open sockets. One socket for each client.
      */
-    private final ArrayList<Socket> _ClientSocket = new ArrayList<>();
+    private final ConcurrentLinkedQueue<Socket> _ClientSocket = new ConcurrentLinkedQueue<>();
     /**
-     * Contains clients (as sockets) who are waiting to find an opponent to play with on a specific map.
-     * The map is specified as string (the map's name: e.g. "Easy")
+     * Contains clients (sessions) who are waiting to find an opponent to play with on a specific map.
+     * Pairs them as they join, see PlayersPaired.
      */
-    private final Map<Socket, String> _PreGameLobby = new HashMap<>();
+    private final MatchmakingLobby _Lobby = new MatchmakingLobby(this::PlayersPaired);
     /**
-     * Adds observability to the _PreGameLobby Map. This allows separate threads writing this data collection
-     * and notify the main thread about changes (e.g. new player is waiting in the lobby).
+     * Takes the players out of the lobby who have waited for too long. Runs while the server runs.
      */
-    private final ObservableMap<Socket, String> _ObservablePreGameLobby = FXCollections.observableMap(_PreGameLobby);
+    private ScheduledExecutorService _LobbySweeper;
     /**
-     * Contains all sessions. Each session represents a client (socket) server connection.
+     * Runs the ticks of the matches simulated on the server (see SharedResources.SRV_SERVER_SIMULATION). Runs while the server runs.
      */
-    private final ArrayList<Session> _ClientSessions = new ArrayList<>();
+    private volatile ScheduledExecutorService _MatchTicker;
     /**
-     * Represents a match (game) between two players (socket) on a selected map.
+     * Contains all sessions. Each session represents a client (socket) server connection.
      */
-    private final ArrayList<ActiveMatch> _Matches = new ArrayList<>();
+    private final ConcurrentLinkedQueue<Session> _ClientSessions = new ConcurrentLinkedQueue<>();
     /**
-     * Adds observability to the _Matches array list. Represents a match (game) between two players (socket) on a selected map.
+     * The ongoing matches (games) between two players on a selected map. Only the two sessions of a match are told about it.
      */
-    private final ObservableList<ActiveMatch> _ObservableMatches = FXCollections.observableArrayList(_Matches);
+    private final MatchRegistry _Matches = new MatchRegistry();
     /**
      * Is the server alive and waiting for connection/data
      */
     private volatile boolean _IsRunning = false;
     /**
-     * UI Output for messages and general logs.
+     * The log of the server, its sessions and matches. Written to the terminal of the server screen, or e.g. the console when headless.
+     */
+    private AsyncLogger _Log;
+    /**
+     * The number of sessions that have not ended yet.
+     */
+    private final AtomicInteger _OpenSessionCount = new AtomicInteger();
+    /**
+     * The counters of the server (traffic, latencies, sessions, matches). Exported through JMX while the server runs.
+     */
+    private final ServerMetrics _Metrics = new ServerMetrics(_OpenSessionCount::get, _Matches::get_MatchCount, _Lobby::get_WaitingCount);
+    /**
+     * The most sessions served at the same time. Further connections are refused. 0 means no limit.
+     */
+    private volatile int _MaxSessions = SharedResources.SRV_MAX_SESSIONS;
+    /**
+     * The number of event loops in the event loop mode. 0 means one per processor core. Applied when the server starts.
      */
-    private LogTerminal _MessagesTerminal;
+    private int _EventLoopCount = SharedResources.SRV_EVENT_LOOP_COUNT;
     /**
      * The one and only server socket reference. Clients are connecting to this socket.
      */
@@ -73,10 +92,26 @@ public class Server {
      * Thread pool. One thread for each client.
      */
     private ExecutorService _ClientThreads;
+    /**
+     * Creates the session threads and the threads of the short tasks the sessions start (platform or virtual threads).
+     */
+    private ThreadFactory _SessionThreadFactory;
     /**
      * This thread runs the ServerSocket.Accept() loop.
      */
     private Thread _MainConnectionAcceptor;
+    /**
+     * Tells how the sessions are run. Applied when the server starts.
+     */
+    private ServerExecutionMode _ExecutionMode = SharedResources.SRV_DEFAULT_EXECUTION_MODE;
+    /**
+     * The event loops serving the sessions. Only used in the event loop execution mode.
+     */
+    private EventLoopGroup _EventLoops;
+    /**
+     * Relays the position updates sent over UDP. Null if the UDP channel is disabled or could not be opened.
+     */
+    private volatile UdpRelay _UdpRelay;
     /**
      * The connection acceptor thread looks at this variable to decide if incoming connections can be accepted.
      */
@@ -91,36 +126,41 @@ public class Server {
         while (_IsIncomingConnectionsEnabled && _IsRunning) {
             try {
                 Socket aClient = _ServerSocket.accept();
-                GMLog("Client connection accepted: " + aClient.getInetAddress().toString());
+                if (!TryReserveSession()) {
+                    RefuseConnection(aClient);
+                    continue;
+                }
+                GMLog(LogLevel.DEBUG, "Client connection accepted: " + aClient.getInetAddress().toString());
                 _ClientSocket.add(aClient);
 
                 //Create a new Session. Check if the session can open the in/out streams for the socket.
                 //If yes, then launch the Session's run on a separate thread.
-                Session session = new Session(aClient, _MessagesTerminal, _ObservablePreGameLobby, _ObservableMatches);
+                Session session = new Session(aClient, _Log, _Metrics, _Lobby, _SessionThreadFactory);
                 if (session.OpenStreams()) {
-                    _ClientSessions.add(session);
+                    AddSession(session, aClient);
                     _ClientThreads.submit(session);
                 } else {
                     //Could not open the in/out streams for the socket. Close the socket and remove from the list.
-                    GMLog("Could not get the in or out stream for the connection. Connection is closed");
+                    GMLog(LogLevel.WARN, "Could not get the in or out stream for the connection. Connection is closed");
                     aClient.close();
                     _ClientSocket.remove(aClient);
+                    _OpenSessionCount.decrementAndGet();
                 }
 
             } catch (SocketException se) {
                 //Check if the thread still supposed to accept connections. If true, then raise error.
                 //If false, then the socket is probably closed already by the main thread (nothing to do).
                 if (_IsIncomingConnectionsEnabled && _IsRunning) {
-                    GMLogSync("ERROR: " + se.getMessage());
+                    GMLog(LogLevel.ERROR, "ERROR: " + se.getMessage());
                 }
             } catch (Exception e) {
                 if (_IsIncomingConnectionsEnabled && _IsRunning) {
-                    GMLogSync("ERROR during accepting a client connection: " + e.getMessage());
+                    GMLog(LogLevel.ERROR, "ERROR during accepting a client connection: " + e.getMessage());
                 }
             }
 
             if ((!_IsIncomingConnectionsEnabled) || (!_IsRunning)) {
-                GMLogSync("Main Listening thread with server socket ends now.");
+                GMLog(LogLevel.DEBUG, "Main Listening thread with server socket ends now.");
             }
         }
 
@@ -138,78 +178,168 @@ public class Server {
      * A match is represented by an ActiveMatch object.
      * The clients and server are communicating by sending serialised Message objects to each other.
      *
-     * @param _MessagesTerminal Terminal where the log output can be placed. This will be used by the Sessions and Matches too.
-     * @param _ServerEngine     The controller layer which this server belongs to. Controller will be called back up on major server events.
+     * @param logSink        Where the log output is placed. This will be used by the Sessions and Matches too.
+     * @param statusListener Called back when the server has started or stopped. Can be null.
      */
-    public Server(LogTerminal _MessagesTerminal, ServerEngine _ServerEngine) {
-        this._MessagesTerminal = _MessagesTerminal;
-        this._ServerEngine = _ServerEngine;
-
-        //Add listener and event handler for the Observable Lobby changes
-        _ObservablePreGameLobby.addListener(this::HandleLobbyChange);
+    public Server(LogSink logSink, ServerStatusListener statusListener) {
+        _Log = new AsyncLogger(SharedResources.SRV_LOG_BUFFER_SIZE, SharedResources.SRV_LOG_LEVEL, logSink);
+        _StatusListener = statusListener;
     }
 
     /**
-     * Callend when a change occurs in the waiting lobby (e.g. socket (player) gets added or removed)
-     * @param change The change event that occurred
+     * Counts a new session if the limit allows it.
+     *
+     * @return False if the server serves the most sessions it may already.
      */
-    private void HandleLobbyChange(MapChangeListener.Change<? extends Socket, ? extends String> change) {
-        if (change.wasAdded()) {
-            GMLog("A new player has added to the lobby, waiting for \"" + change.getValueAdded() + "\" map.");
+    private boolean TryReserveSession() {
+        int max = _MaxSessions;
+        if (_OpenSessionCount.incrementAndGet() <= max || max <= 0)
+            return true;
 
-            //Check if there is a matching player.
-            CheckLobbyForMatching(change.getValueAdded(), change.getKey());
-        }
+        _OpenSessionCount.decrementAndGet();
+        return false;
+    }
 
-        if (change.wasRemoved()) {
-            GMLog("A player has removed from the lobby: " + change.getKey().getInetAddress().toString());
+    /**
+     * Closes a connection that is refused as the server serves the most sessions it may.
+     *
+     * @param aClient The socket of the refused connection.
+     */
+    private void RefuseConnection(Socket aClient) {
+        _Metrics.SessionRefused();
+        GMLog(LogLevel.WARN, "Client connection refused, the server serves " + Integer.toString(_MaxSessions) + " sessions already: "
+                + aClient.getInetAddress().toString());
+        try {
+            aClient.close();
+        } catch (IOException e) {
+            GMLog(LogLevel.WARN, "Could not close a refused connection: " + e.getMessage());
         }
-
     }
 
     /**
-     * Checks if there is a pair of players in the lobby waiting for the same type of map to game on.
-     * If yes, a Match will be created for them and they get removed from the lobby.
+     * Adds a session to the open sessions. The session is forgotten once it ends.
      *
-     * @param val The value (map name) to look for.
-     * @param key This player already has a matching value as val. An another player needs to be found.
-     */
-    private void CheckLobbyForMatching(String val, Socket key) {
-        boolean deleteFromLobby = false;
-        Socket keyToDelete = null;
-
-        //Check if there is more than 1 player in the lobby.
-        if (_ObservablePreGameLobby.size() > 1) {
-            //Start searching for a value that is the same as in the parameter but with different key
-            for (Map.Entry<Socket, String> i : _ObservablePreGameLobby.entrySet()) {
-                if (i.getValue().equals(val) && !i.getKey().equals(key)) {
-                    //Match found between lobby players.
-                    GMLog("Matching players found. Match \"" + Integer.toString(_MatchIDCounter) + "\" created.");
-
-                    //Instantiating a new match and adding to the list.
-                    // Note: the first requesting player becomes player 1
-                    ActiveMatch match = new ActiveMatch(i.getKey(), key, val, _MatchIDCounter, this);
-                    _ObservableMatches.add(match);
-                    _MatchIDCounter++;
-
-                    //Mark to read the matched keys
-                    deleteFromLobby = true;
-                    keyToDelete = i.getKey();
-
-                    break;
-                }
+     * @param session The new session.
+     * @param aClient The socket of the session.
+     */
+    private void AddSession(Session session, Socket aClient) {
+        _Metrics.SessionAccepted();
+        _ClientSessions.add(session);
+        session.set_EndedListener(() -> {
+            if (_ClientSessions.remove(session)) {
+                _ClientSocket.remove(aClient);
+                _OpenSessionCount.decrementAndGet();
             }
+        });
+    }
+
+    /**
+     * Creates a match for two players paired in the lobby.
+     * Called on the session thread of the player who joined last.
+     *
+     * @param first  The player who waited in the lobby. Becomes player 1.
+     * @param second The player who joined last. Becomes player 2.
+     */
+    private synchronized void PlayersPaired(MatchmakingLobby.Ticket first, MatchmakingLobby.Ticket second) {
+        GMLog("Matching players found for \"" + first._MapName + "\" map. Match \"" + Integer.toString(_MatchIDCounter) + "\" created.");
+        _Metrics.PlayerPaired(System.nanoTime() - first._JoinedAt);
+        _Metrics.MatchCreated();
+
+        //Instantiating a new match and telling its two players.
+        // Note: the first requesting player becomes player 1
+        ActiveMatch match = new ActiveMatch(first._Session, second._Session, first._MapName, _MatchIDCounter, this);
+        _MatchIDCounter++;
+        _Matches.Register(match, first._Session, second._Session);
+    }
+
+    /**
+     * Exports the metrics of the server through JMX, unless SharedResources.SRV_JMX_ENABLED is off.
+     * The server runs without it if the metrics cannot be registered.
+     *
+     * @param port The port of the server, which names the metrics.
+     */
+    private void RegisterMetrics(int port) {
+        if (!SharedResources.SRV_JMX_ENABLED)
+            return;
+        try {
+            _Metrics.Register(port);
+            GMLog(LogLevel.DEBUG, "Server metrics are exported through JMX.");
+        } catch (JMException | RuntimeException e) {
+            GMLog(LogLevel.WARN, "Could not export the server metrics through JMX: " + e.getMessage());
+        }
+    }
 
-            //As match found, delete the players from the waiting lobby.
-            if (deleteFromLobby) {
-                //Removing matched players from the lobby.
-                _ObservablePreGameLobby.remove(key);
-                _ObservablePreGameLobby.remove(keyToDelete);
+    /**
+     * Stops exporting the metrics of the server through JMX.
+     */
+    private void UnregisterMetrics() {
+        try {
+            _Metrics.Unregister();
+        } catch (JMException | RuntimeException e) {
+            GMLog(LogLevel.WARN, "Could not remove the server metrics from JMX: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Starts taking the players out of the lobby who have waited longer than SharedResources.SRV_LOBBY_MAX_WAIT.
+     * Their clients are told that the match has ended, so they stop waiting.
+     */
+    private void StartLobbySweeper() {
+        _LobbySweeper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "LobbySweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = SharedResources.SRV_LOBBY_SWEEP_INTERVAL;
+        _LobbySweeper.scheduleWithFixedDelay(() -> {
+            List<MatchmakingLobby.Ticket> expired = _Lobby.EvictExpired(TimeUnit.SECONDS.toNanos(SharedResources.SRV_LOBBY_MAX_WAIT));
+            for (MatchmakingLobby.Ticket ticket : expired) {
+                ticket._Session.LobbyRequestExpired();
             }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Starts the thread that runs the ticks of the simulated matches.
+     * One thread serves every match: a tick only moves two cars, so it takes a fraction of the tick interval.
+     */
+    private void StartMatchTicker() {
+        _MatchTicker = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "MatchTicker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
 
+    /**
+     * Runs the tick of a simulated match every SharedResources.SRV_TICK_INTERVAL milliseconds, until it is cancelled.
+     *
+     * @param tick    The tick of the match. Must not throw, otherwise the ticks stop.
+     * @param startAt When the match starts (System.nanoTime). The first tick runs one interval later.
+     * @return The scheduled ticks, or null if the server is not running.
+     */
+    ScheduledFuture<?> ScheduleMatchTick(Runnable tick, long startAt) {
+        ScheduledExecutorService ticker = _MatchTicker;
+        if (ticker == null)
+            return null;
+
+        long interval = TimeUnit.MILLISECONDS.toNanos(SharedResources.SRV_TICK_INTERVAL);
+        long firstTickDelay = Math.max(0, startAt - System.nanoTime()) + interval;
+        try {
+            return ticker.scheduleAtFixedRate(tick, firstTickDelay, interval, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            //The server has just stopped.
+            return null;
         }
     }
 
+    /**
+     * Tells the status listener that the server has started.
+     */
+    private void NotifyServerIsUp() {
+        if (_StatusListener != null)
+            _StatusListener.ServerIsUp();
+    }
 
     /**
      * Is the server alive and waiting for connection/data
@@ -229,24 +359,43 @@ public class Server {
             GMLog("Launching server...");
 
             //Open the new socket.
-            if (CreateServerSocket(portNumber)) {
+            if (_ExecutionMode == ServerExecutionMode.EVENT_LOOP) {
+                //Clients of the original protocol are still served on threads of their own.
+                _SessionThreadFactory = SessionThreads.CreateFactory(_ExecutionMode);
+                if (StartEventLoops(portNumber)) {
+                    _IsRunning = true;
+                    StartUdpRelay(portNumber);
+                    StartLobbySweeper();
+                    StartMatchTicker();
+                    RegisterMetrics(portNumber);
+                    NotifyServerIsUp();
+                } else {
+                    _IsRunning = false;
+                    GMLog(LogLevel.ERROR, "ERROR. Could not open the Server Socket. Could not start the server.");
+                }
+            } else if (CreateServerSocket(portNumber)) {
                 GMLog("Server socket created on port " + Integer.toString(portNumber) + ".");
                 CreateNewClientThreadPool();
                 _IsIncomingConnectionsEnabled = true;
 
+                //Must be set before the acceptor starts, otherwise its loop may end straight away.
+                _IsRunning = true;
+                StartUdpRelay(portNumber);
+                StartLobbySweeper();
+                StartMatchTicker();
+                RegisterMetrics(portNumber);
                 _MainConnectionAcceptor = new Thread(AcceptClientConnections);
                 _MainConnectionAcceptor.start();
 
-                _IsRunning = true;
-                _ServerEngine.ServerIsUp();
+                NotifyServerIsUp();
             } else {
                 _IsRunning = false;
-                GMLog("ERROR. Could not open the Server Socket. Could not start the server.");
+                GMLog(LogLevel.ERROR, "ERROR. Could not open the Server Socket. Could not start the server.");
             }
 
         } else {
             _IsRunning = false;
-            GMLog("ERROR. Cannot launch server. Server is already running.");
+            GMLog(LogLevel.ERROR, "ERROR. Cannot launch server. Server is already running.");
         }
     }
 
@@ -265,15 +414,51 @@ public class Server {
             if (TryCloseServerSocket()) {
                 GMLog("Server socket is closed now.");
             } else {
-                GMLog("Could not close the server socket.");
+                GMLog(LogLevel.WARN, "Could not close the server socket.");
             }
 
-            _Matches.clear();
+            //Running sessions finish on their own. No new threads are needed from the pool.
+            if (_ClientThreads != null) {
+                _ClientThreads.shutdown();
+                _ClientThreads = null;
+            }
+
+            if (_UdpRelay != null) {
+                GMLog("UDP channel closed. Datagrams relayed: " + Long.toString(_UdpRelay.get_RelayedCount())
+                        + ", stale: " + Long.toString(_UdpRelay.get_StaleCount())
+                        + ", unknown sender: " + Long.toString(_UdpRelay.get_UnknownCount()) + ".");
+                _UdpRelay.Stop();
+                _UdpRelay = null;
+            }
+
+            //The event loops write out the server down messages before closing the channels.
+            if (_EventLoops != null) {
+                _EventLoops.Shutdown();
+                _EventLoops = null;
+            }
+
+            if (_LobbySweeper != null) {
+                _LobbySweeper.shutdownNow();
+                _LobbySweeper = null;
+            }
+            if (_MatchTicker != null) {
+                _MatchTicker.shutdownNow();
+                _MatchTicker = null;
+            }
+            String lobbyStatistics = _Lobby.Describe();
+            if (!lobbyStatistics.isEmpty())
+                GMLog("Lobby statistics:" + System.lineSeparator() + lobbyStatistics);
+            GMLog("Server metrics:" + System.lineSeparator() + _Metrics.Describe());
+            UnregisterMetrics();
+
+            _Matches.Clear();
             _ClientSessions.clear();
             _ClientSocket.clear();
-            _PreGameLobby.clear();
+            _OpenSessionCount.set(0);
+            _Lobby.Clear();
             _IsRunning = false;
-            _ServerEngine.ServerIsDown();
+            if (_StatusListener != null)
+                _StatusListener.ServerIsDown();
             GMLog("Server has stopped.");
 
         } else {
@@ -290,9 +475,9 @@ public class Server {
             for (Session _ClientSession : _ClientSessions) {
 
                 if (_ClientSession.SendMessage(msg)) {
-                    GMLog("The server down notification sent to client. ");
+                    GMLog(LogLevel.DEBUG, "The server down notification sent to client. ");
                 } else {
-                    GMLog("Could not send server down notification to a client.");
+                    GMLog(LogLevel.WARN, "Could not send server down notification to a client.");
                 }
                 _ClientSession.ServerShutDownNotification();
             }
@@ -302,9 +487,112 @@ public class Server {
     /**
      * Instantiates a new client thread pool. This manages the Sessions.
      * Each Session instance runs on a seperate thread within the thread pool.
+     * In the virtual thread mode the pool creates virtual threads (if the Java version supports them).
      */
     private void CreateNewClientThreadPool() {
-        _ClientThreads = Executors.newCachedThreadPool();
+        if (_ExecutionMode == ServerExecutionMode.VIRTUAL_THREAD) {
+            if (SessionThreads.IsVirtualThreadSupported())
+                GMLog("Sessions are run on virtual threads.");
+            else
+                GMLog("Virtual threads are not supported by this Java version. Sessions are run on platform threads.");
+        }
+
+        _SessionThreadFactory = SessionThreads.CreateFactory(_ExecutionMode);
+        _ClientThreads = Executors.newCachedThreadPool(_SessionThreadFactory);
+    }
+
+    /**
+     * Opens a non-blocking server socket channel on the specified port and starts the event loops serving it.
+     *
+     * @param port The port to listen to.
+     * @return Returns true if the operation was successful. Returns false if it failed.
+     */
+    private boolean StartEventLoops(int port) {
+        try {
+            ServerSocketChannel serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port));
+            _ServerSocket = serverChannel.socket();
+
+            _EventLoops = new EventLoopGroup(_EventLoopCount, this);
+            _IsIncomingConnectionsEnabled = true;
+            _EventLoops.Start(serverChannel);
+            GMLog("Server socket created on port " + Integer.toString(port) + ". Served by " +
+                    Integer.toString(_EventLoops.GetLoopCount()) + " event loops.");
+        } catch (IOException e) {
+            TryCloseServerSocket();
+            _EventLoops = null;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Opens the UDP channel for the position updates on the same port number as the server socket.
+     * The server runs without it if it is disabled or the port is taken; the updates are then sent over TCP.
+     *
+     * @param port The port number of the server.
+     */
+    private void StartUdpRelay(int port) {
+        if (!SharedResources.SRV_UDP_ENABLED)
+            return;
+
+        try {
+            _UdpRelay = UdpRelay.Start(port, this);
+            GMLog("UDP channel opened on port " + Integer.toString(port) + ".");
+        } catch (IOException e) {
+            _UdpRelay = null;
+            GMLog(LogLevel.WARN, "Could not open the UDP channel, position updates are sent over TCP: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the relay of the position updates sent over UDP.
+     *
+     * @return The UDP relay, or null if there is no UDP channel.
+     */
+    UdpRelay get_UdpRelay() {
+        return _UdpRelay;
+    }
+
+    /**
+     * Creates a session for a connection accepted by an event loop.
+     * Called on the accepting event loop's thread.
+     *
+     * @param channel   The accepted non-blocking channel.
+     * @param eventLoop The event loop that will serve the session.
+     * @return The new session, or null if the connection is not accepted.
+     */
+    NioSession AcceptChannel(SocketChannel channel, EventLoop eventLoop) {
+        Socket aClient = channel.socket();
+        if (!_IsIncomingConnectionsEnabled || !_IsRunning) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                GMLog(LogLevel.WARN, "Could not close a refused connection: " + e.getMessage());
+            }
+            return null;
+        }
+
+        if (!TryReserveSession()) {
+            RefuseConnection(aClient);
+            return null;
+        }
+
+        GMLog(LogLevel.DEBUG, "Client connection accepted: " + aClient.getInetAddress().toString());
+        _ClientSocket.add(aClient);
+
+        NioSession session = new NioSession(channel, eventLoop, _Log, _Metrics, _Lobby, _SessionThreadFactory);
+        AddSession(session, aClient);
+        return session;
+    }
+
+    /**
+     * Logs an error that happened on an event loop's or the UDP relay's thread.
+     *
+     * @param text The description of the error.
+     */
+    void EventLoopError(String text) {
+        GMLog(LogLevel.WARN, text);
     }
 
 
@@ -347,36 +635,24 @@ public class Server {
 
 
     /**
-     * Displays a message (with date and time, server as the sender) in the General Message Log in the UI.
+     * Displays a message (with date and time, server as the sender) in the General Message Log.
+     * Can be called from any thread.
      *
      * @param text The text to display.
      */
     private void GMLog(String text) {
-        final LocalDateTime now = LocalDateTime.now();
-        String time = now.toLocalTime().toString();
-
-        final String sender = "SERVER: ";
-
-        String msg = time + ", " + sender + text;
-        _MessagesTerminal.Log(msg);
-
+        GMLog(LogLevel.INFO, text);
     }
 
-
     /**
-     * Displays a message (with date and time, server as the sender) in the General Message Log in the UI.
-     * This is a synchronised version of the GMLog method, which is suited for access by the MainAcceptor thread.
+     * Displays a message (with date and time, server as the sender) in the General Message Log, if its level is logged.
+     * Can be called from any thread.
      *
-     * @param text The text to display.
+     * @param level The level of the message.
+     * @param text  The text to display.
      */
-    private synchronized void GMLogSync(String text) {
-        Runnable runnable = new Runnable() {
-            @Override
-            public void run() {
-                GMLog(text);
-            }
-        };
-        SwingUtilities.invokeLater(runnable);
+    private void GMLog(LogLevel level, String text) {
+        _Log.Log(level, "SERVER: ", text);
     }
 
 
@@ -404,16 +680,60 @@ public class Server {
      * @param matchID     The id (name) of the match.
      */
     public void AMatchHasAnded(ActiveMatch activeMatch, int matchID) {
-        GMLogSync("Match \"" + Integer.toString(matchID) + "\" has ended.");
-        _Matches.remove(activeMatch);
+        GMLog("Match \"" + Integer.toString(matchID) + "\" has ended.");
+        _Matches.Remove(activeMatch);
+    }
+
+
+    /**
+     * Sets how the sessions will be run. Takes effect when the server is started the next time.
+     *
+     * @param executionMode The execution mode to use.
+     */
+    public void set_ExecutionMode(ServerExecutionMode executionMode) {
+        _ExecutionMode = executionMode;
     }
 
+    /**
+     * Sets the most sessions served at the same time. Further connections are refused until a session ends.
+     *
+     * @param maxSessions The most sessions. 0 means no limit.
+     */
+    public void set_MaxSessions(int maxSessions) {
+        _MaxSessions = maxSessions;
+    }
+
+    /**
+     * Sets the number of event loops in the event loop mode. Takes effect when the server is started the next time.
+     *
+     * @param eventLoopCount The number of event loops. 0 means one per processor core.
+     */
+    public void set_EventLoopCount(int eventLoopCount) {
+        _EventLoopCount = eventLoopCount;
+    }
+
+    /**
+     * Returns the number of sessions that have not ended yet.
+     *
+     * @return The number of open sessions.
+     */
+    public int get_OpenSessionCount() {
+        return _OpenSessionCount.get();
+    }
+
+    /**
+     * Getter for the log of the server.
+     * @return The log the sessions and matches write to as well.
+     */
+    public AsyncLogger get_Logger() {
+        return _Log;
+    }
 
     /**
-     * Getter for the terminal for the server logs.
-     * @return A terminal where messages can be printed.
+     * Getter for the metrics of the server.
+     * @return The counters of the server, e.g. to take a snapshot of them for a dashboard.
      */
-    public LogTerminal getTerminal() {
-        return _MessagesTerminal;
+    public ServerMetrics get_Metrics() {
+        return _Metrics;
     }
 }
@@ -0,0 +1,865 @@
+package ModelLayer.Networking;
+
+import ControlLayer.SharedResources;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * The counters of the server: traffic by message type, relay latency, lobby wait, sessions, matches and failed sendings.
+ * The network threads only increment striped counters (LongAdder), without locks and without allocating, so the
+ * counting costs next to nothing even when every session thread counts at the same time. The current numbers of
+ * sessions, matches and waiting players are not counted but read from the server when asked for.
+ * Exported through JMX while the server runs (see Register), and readable at once by TakeSnapshot (e.g. for a dashboard).
+ */
+public class ServerMetrics implements ServerMetricsMBean {
+
+    /**
+     * The number of message types counted one by one. Any other type is counted in the last slot.
+     */
+    public static final int TYPE_SLOTS = 17;
+
+    /**
+     * Traffic by message type (see Slot).
+     */
+    private final LongAdder[] _MessagesIn = NewCounters(TYPE_SLOTS);
+    private final LongAdder[] _BytesIn = NewCounters(TYPE_SLOTS);
+    private final LongAdder[] _MessagesOut = NewCounters(TYPE_SLOTS);
+    private final LongAdder[] _BytesOut = NewCounters(TYPE_SLOTS);
+
+    /**
+     * The time a match took to pass a received message on to the opponent's outbox.
+     */
+    private final LatencyHistogram _RelayLatency = new LatencyHistogram();
+
+    /**
+     * The time the paired players waited in the lobby.
+     */
+    private final LatencyHistogram _LobbyWait = new LatencyHistogram();
+
+    /**
+     * The round trips the clients measured and reported in their pings.
+     */
+    private final LatencyHistogram _RoundTrip = new LatencyHistogram();
+
+    /**
+     * The totals of the sessions and matches.
+     */
+    private final LongAdder _SessionsAccepted = new LongAdder();
+    private final LongAdder _SessionsRefused = new LongAdder();
+    private final LongAdder _MatchesCreated = new LongAdder();
+
+    /**
+     * The number of failed sendings.
+     */
+    private final LongAdder _SendExceptions = new LongAdder();
+
+    /**
+     * The most failed sendings in a row of any session.
+     */
+    private final AtomicInteger _MostSendExceptionsInARow = new AtomicInteger();
+
+    /**
+     * The number of sessions closed because sending failed too many times in a row.
+     */
+    private final LongAdder _SessionsClosedBySendExceptions = new LongAdder();
+
+    /**
+     * Read the current number of sessions, matches and waiting players from the server.
+     */
+    private final IntSupplier _ActiveSessions;
+    private final IntSupplier _ActiveMatches;
+    private final IntSupplier _WaitingPlayers;
+
+    /**
+     * The name the metrics are registered under with the platform MBean server. Null while not registered.
+     */
+    private ObjectName _RegisteredName;
+
+    /**
+     * The counters of a server.
+     *
+     * @param activeSessions Tells the number of sessions that have not ended yet.
+     * @param activeMatches  Tells the number of ongoing matches.
+     * @param waitingPlayers Tells the number of players waiting in the lobby.
+     */
+    public ServerMetrics(IntSupplier activeSessions, IntSupplier activeMatches, IntSupplier waitingPlayers) {
+        _ActiveSessions = activeSessions;
+        _ActiveMatches = activeMatches;
+        _WaitingPlayers = waitingPlayers;
+    }
+
+    /**
+     * Counts a message received from a client.
+     *
+     * @param type  The type of the message (see MessageType).
+     * @param bytes The size of its frame, header included.
+     */
+    void MessageReceived(int type, int bytes) {
+        int slot = Slot(type);
+        _MessagesIn[slot].increment();
+        _BytesIn[slot].add(bytes);
+    }
+
+    /**
+     * Counts a message sent to a client.
+     *
+     * @param type  The type of the message (see MessageType).
+     * @param bytes The size of its frame, header included.
+     */
+    void MessageSent(int type, int bytes) {
+        int slot = Slot(type);
+        _MessagesOut[slot].increment();
+        _BytesOut[slot].add(bytes);
+    }
+
+    /**
+     * Records how long a match took to pass a received message on to the opponent.
+     *
+     * @param nanos The time in nanoseconds.
+     */
+    void MessageRelayed(long nanos) {
+        _RelayLatency.Record(nanos);
+    }
+
+    /**
+     * Records how long a player waited in the lobby before being paired.
+     *
+     * @param nanos The time in nanoseconds.
+     */
+    void PlayerPaired(long nanos) {
+        _LobbyWait.Record(nanos);
+    }
+
+    /**
+     * Records the round trip a client has reported.
+     *
+     * @param nanos The round trip in nanoseconds.
+     */
+    void RoundTripReported(long nanos) {
+        _RoundTrip.Record(nanos);
+    }
+
+    /**
+     * Counts an accepted connection.
+     */
+    void SessionAccepted() {
+        _SessionsAccepted.increment();
+    }
+
+    /**
+     * Counts a connection refused because the server was full.
+     */
+    void SessionRefused() {
+        _SessionsRefused.increment();
+    }
+
+    /**
+     * Counts a new match.
+     */
+    void MatchCreated() {
+        _MatchesCreated.increment();
+    }
+
+    /**
+     * Counts a failed sending.
+     *
+     * @param inARow The number of failed sendings in a row of the session, this one included.
+     */
+    void SendFailed(int inARow) {
+        _SendExceptions.increment();
+        int most = _MostSendExceptionsInARow.get();
+        while (inARow > most && !_MostSendExceptionsInARow.compareAndSet(most, inARow)) {
+            most = _MostSendExceptionsInARow.get();
+        }
+    }
+
+    /**
+     * Counts a session closed because sending failed too many times in a row.
+     */
+    void SessionClosedBySendExceptions() {
+        _SessionsClosedBySendExceptions.increment();
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server as "SRV_JMX_DOMAIN:type=ServerMetrics,port=...".
+     * An earlier registration under the same name (e.g. of a server that was not stopped) is replaced.
+     *
+     * @param port The port of the server, which tells the servers of one process apart.
+     * @throws JMException If the metrics could not be registered.
+     */
+    synchronized void Register(int port) throws JMException {
+        Unregister();
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(SharedResources.SRV_JMX_DOMAIN + ":type=ServerMetrics,port=" + Integer.toString(port));
+        if (mBeanServer.isRegistered(name))
+            mBeanServer.unregisterMBean(name);
+        mBeanServer.registerMBean(this, name);
+        _RegisteredName = name;
+    }
+
+    /**
+     * Removes the metrics from the platform MBean server. Does nothing if they are not registered.
+     *
+     * @throws JMException If the metrics could not be removed.
+     */
+    synchronized void Unregister() throws JMException {
+        if (_RegisteredName == null)
+            return;
+        ObjectName name = _RegisteredName;
+        _RegisteredName = null;
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        if (mBeanServer.isRegistered(name))
+            mBeanServer.unregisterMBean(name);
+    }
+
+    /**
+     * Takes a copy of all the metrics. The counters keep running while it is taken.
+     *
+     * @return The metrics as they are now.
+     */
+    public Snapshot TakeSnapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Returns the number of messages received from the clients.
+     *
+     * @return The number of messages.
+     */
+    @Override
+    public long get_MessagesIn() {
+        return Sum(_MessagesIn);
+    }
+
+    /**
+     * Returns the number of bytes received from the clients.
+     *
+     * @return The number of bytes, frame headers included.
+     */
+    @Override
+    public long get_BytesIn() {
+        return Sum(_BytesIn);
+    }
+
+    /**
+     * Returns the number of messages sent to the clients.
+     *
+     * @return The number of messages.
+     */
+    @Override
+    public long get_MessagesOut() {
+        return Sum(_MessagesOut);
+    }
+
+    /**
+     * Returns the number of bytes sent to the clients.
+     *
+     * @return The number of bytes, frame headers included.
+     */
+    @Override
+    public long get_BytesOut() {
+        return Sum(_BytesOut);
+    }
+
+    /**
+     * Returns the number of messages received, by message type.
+     *
+     * @return The numbers, indexed by the MessageType constants.
+     */
+    @Override
+    public long[] get_MessagesInByType() {
+        return Sums(_MessagesIn);
+    }
+
+    /**
+     * Returns the number of bytes received, by message type.
+     *
+     * @return The numbers, indexed by the MessageType constants.
+     */
+    @Override
+    public long[] get_BytesInByType() {
+        return Sums(_BytesIn);
+    }
+
+    /**
+     * Returns the number of messages sent, by message type.
+     *
+     * @return The numbers, indexed by the MessageType constants.
+     */
+    @Override
+    public long[] get_MessagesOutByType() {
+        return Sums(_MessagesOut);
+    }
+
+    /**
+     * Returns the number of bytes sent, by message type.
+     *
+     * @return The numbers, indexed by the MessageType constants.
+     */
+    @Override
+    public long[] get_BytesOutByType() {
+        return Sums(_BytesOut);
+    }
+
+    /**
+     * Returns the number of sessions that have not ended yet.
+     *
+     * @return The number of sessions.
+     */
+    @Override
+    public int get_ActiveSessions() {
+        return _ActiveSessions.getAsInt();
+    }
+
+    /**
+     * Returns the number of ongoing matches.
+     *
+     * @return The number of matches.
+     */
+    @Override
+    public int get_ActiveMatches() {
+        return _ActiveMatches.getAsInt();
+    }
+
+    /**
+     * Returns the number of players waiting in the lobby.
+     *
+     * @return The number of players.
+     */
+    @Override
+    public int get_WaitingPlayers() {
+        return _WaitingPlayers.getAsInt();
+    }
+
+    /**
+     * Returns the number of connections accepted.
+     *
+     * @return The number of connections.
+     */
+    @Override
+    public long get_SessionsAccepted() {
+        return _SessionsAccepted.sum();
+    }
+
+    /**
+     * Returns the number of connections refused because the server was full.
+     *
+     * @return The number of connections.
+     */
+    @Override
+    public long get_SessionsRefused() {
+        return _SessionsRefused.sum();
+    }
+
+    /**
+     * Returns the number of matches created.
+     *
+     * @return The number of matches.
+     */
+    @Override
+    public long get_MatchesCreated() {
+        return _MatchesCreated.sum();
+    }
+
+    /**
+     * Returns the number of failed sendings.
+     *
+     * @return The number of failed sendings.
+     */
+    @Override
+    public long get_SendExceptions() {
+        return _SendExceptions.sum();
+    }
+
+    /**
+     * Returns the most failed sendings in a row of any session.
+     *
+     * @return The most failed sendings in a row.
+     */
+    @Override
+    public int get_MostSendExceptionsInARow() {
+        return _MostSendExceptionsInARow.get();
+    }
+
+    /**
+     * Returns the number of failed sendings in a row after which a session is closed.
+     *
+     * @return SharedResources.SRV_MAX_SESSION_EXCEPTION_INAROW.
+     */
+    @Override
+    public int get_SendExceptionThreshold() {
+        return SharedResources.SRV_MAX_SESSION_EXCEPTION_INAROW;
+    }
+
+    /**
+     * Returns the number of sessions closed because sending failed too many times in a row.
+     *
+     * @return The number of sessions.
+     */
+    @Override
+    public long get_SessionsClosedBySendExceptions() {
+        return _SessionsClosedBySendExceptions.sum();
+    }
+
+    /**
+     * Returns the number of messages relayed from one player to the other.
+     *
+     * @return The number of relayed messages.
+     */
+    @Override
+    public long get_RelayCount() {
+        return _RelayLatency.get_Count();
+    }
+
+    /**
+     * Returns the average time a match took to pass a received message on to the opponent.
+     *
+     * @return The average in microseconds.
+     */
+    @Override
+    public long get_RelayLatencyMeanMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(_RelayLatency.TakeSnapshot().get_MeanNanos());
+    }
+
+    /**
+     * Returns the time 99% of the relayed messages did not exceed.
+     *
+     * @return The time in microseconds, rounded up to a power of two.
+     */
+    @Override
+    public long get_RelayLatencyP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(_RelayLatency.TakeSnapshot().PercentileNanos(99));
+    }
+
+    /**
+     * Returns the longest time a message took to be relayed.
+     *
+     * @return The time in microseconds.
+     */
+    @Override
+    public long get_RelayLatencyMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(_RelayLatency.TakeSnapshot().get_MaxNanos());
+    }
+
+    /**
+     * Returns the average time the paired players waited in the lobby.
+     *
+     * @return The average in milliseconds.
+     */
+    @Override
+    public long get_LobbyWaitMeanMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(_LobbyWait.TakeSnapshot().get_MeanNanos());
+    }
+
+    /**
+     * Returns the time 99% of the paired players did not wait longer than.
+     *
+     * @return The time in milliseconds, rounded up to a power of two.
+     */
+    @Override
+    public long get_LobbyWaitP99Millis() {
+        return TimeUnit.NANOSECONDS.toMillis(_LobbyWait.TakeSnapshot().PercentileNanos(99));
+    }
+
+    /**
+     * Returns the longest time a paired player waited in the lobby.
+     *
+     * @return The time in milliseconds.
+     */
+    @Override
+    public long get_LobbyWaitMaxMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(_LobbyWait.TakeSnapshot().get_MaxNanos());
+    }
+
+    /**
+     * Returns the average round trip the clients reported.
+     *
+     * @return The average in microseconds.
+     */
+    @Override
+    public long get_RoundTripMeanMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(_RoundTrip.TakeSnapshot().get_MeanNanos());
+    }
+
+    /**
+     * Returns the round trip 99% of the clients' reports did not exceed.
+     *
+     * @return The time in microseconds, rounded up to a power of two.
+     */
+    @Override
+    public long get_RoundTripP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(_RoundTrip.TakeSnapshot().PercentileNanos(99));
+    }
+
+    /**
+     * Describes all the metrics in a few lines of text.
+     *
+     * @return The description of the metrics.
+     */
+    @Override
+    public String Describe() {
+        return TakeSnapshot().Describe();
+    }
+
+    /**
+     * Finds the counter slot of a message type.
+     *
+     * @param type The type of the message (see MessageType).
+     * @return The slot of the type, or the last slot for an unknown type.
+     */
+    private static int Slot(int type) {
+        return type >= 0 && type < TYPE_SLOTS - 1 ? type : TYPE_SLOTS - 1;
+    }
+
+    /**
+     * Creates a row of counters.
+     *
+     * @param count The number of counters.
+     * @return The counters, all at 0.
+     */
+    private static LongAdder[] NewCounters(int count) {
+        LongAdder[] counters = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+
+    /**
+     * Adds up a row of counters.
+     *
+     * @param counters The counters.
+     * @return Their total.
+     */
+    private static long Sum(LongAdder[] counters) {
+        long total = 0;
+        for (LongAdder counter : counters) {
+            total += counter.sum();
+        }
+        return total;
+    }
+
+    /**
+     * Reads a row of counters.
+     *
+     * @param counters The counters.
+     * @return Their values.
+     */
+    private static long[] Sums(LongAdder[] counters) {
+        long[] values = new long[counters.length];
+        for (int i = 0; i < counters.length; i++) {
+            values[i] = counters[i].sum();
+        }
+        return values;
+    }
+
+    /**
+     * A copy of all the metrics taken at one moment.
+     */
+    public static final class Snapshot {
+
+        /**
+         * When the copy was taken (System.currentTimeMillis).
+         */
+        private final long _TakenAt = System.currentTimeMillis();
+
+        /**
+         * Traffic by message type, indexed by the MessageType constants.
+         */
+        private final long[] _MessagesIn;
+        private final long[] _BytesIn;
+        private final long[] _MessagesOut;
+        private final long[] _BytesOut;
+
+        /**
+         * The current numbers of sessions, matches and waiting players.
+         */
+        private final int _ActiveSessions;
+        private final int _ActiveMatches;
+        private final int _WaitingPlayers;
+
+        /**
+         * The totals of the sessions, matches and failed sendings.
+         */
+        private final long _SessionsAccepted;
+        private final long _SessionsRefused;
+        private final long _MatchesCreated;
+        private final long _SendExceptions;
+        private final int _MostSendExceptionsInARow;
+        private final long _SessionsClosedBySendExceptions;
+
+        /**
+         * The durations.
+         */
+        private final LatencyHistogram.Snapshot _RelayLatency;
+        private final LatencyHistogram.Snapshot _LobbyWait;
+        private final LatencyHistogram.Snapshot _RoundTrip;
+
+        private Snapshot(ServerMetrics metrics) {
+            _MessagesIn = Sums(metrics._MessagesIn);
+            _BytesIn = Sums(metrics._BytesIn);
+            _MessagesOut = Sums(metrics._MessagesOut);
+            _BytesOut = Sums(metrics._BytesOut);
+            _ActiveSessions = metrics.get_ActiveSessions();
+            _ActiveMatches = metrics.get_ActiveMatches();
+            _WaitingPlayers = metrics.get_WaitingPlayers();
+            _SessionsAccepted = metrics.get_SessionsAccepted();
+            _SessionsRefused = metrics.get_SessionsRefused();
+            _MatchesCreated = metrics.get_MatchesCreated();
+            _SendExceptions = metrics.get_SendExceptions();
+            _MostSendExceptionsInARow = metrics.get_MostSendExceptionsInARow();
+            _SessionsClosedBySendExceptions = metrics.get_SessionsClosedBySendExceptions();
+            _RelayLatency = metrics._RelayLatency.TakeSnapshot();
+            _LobbyWait = metrics._LobbyWait.TakeSnapshot();
+            _RoundTrip = metrics._RoundTrip.TakeSnapshot();
+        }
+
+        /**
+         * Returns when the copy was taken.
+         *
+         * @return The time (System.currentTimeMillis).
+         */
+        public long get_TakenAt() {
+            return _TakenAt;
+        }
+
+        /**
+         * Returns the number of messages received of a type.
+         *
+         * @param type The type of the message (see MessageType).
+         * @return The number of messages.
+         */
+        public long get_MessagesIn(int type) {
+            return _MessagesIn[Slot(type)];
+        }
+
+        /**
+         * Returns the number of bytes received in messages of a type.
+         *
+         * @param type The type of the message (see MessageType).
+         * @return The number of bytes, frame headers included.
+         */
+        public long get_BytesIn(int type) {
+            return _BytesIn[Slot(type)];
+        }
+
+        /**
+         * Returns the number of messages sent of a type.
+         *
+         * @param type The type of the message (see MessageType).
+         * @return The number of messages.
+         */
+        public long get_MessagesOut(int type) {
+            return _MessagesOut[Slot(type)];
+        }
+
+        /**
+         * Returns the number of bytes sent in messages of a type.
+         *
+         * @param type The type of the message (see MessageType).
+         * @return The number of bytes, frame headers included.
+         */
+        public long get_BytesOut(int type) {
+            return _BytesOut[Slot(type)];
+        }
+
+        /**
+         * Returns the number of messages received from the clients.
+         *
+         * @return The number of messages.
+         */
+        public long get_MessagesIn() {
+            return Total(_MessagesIn);
+        }
+
+        /**
+         * Returns the number of bytes received from the clients.
+         *
+         * @return The number of bytes, frame headers included.
+         */
+        public long get_BytesIn() {
+            return Total(_BytesIn);
+        }
+
+        /**
+         * Returns the number of messages sent to the clients.
+         *
+         * @return The number of messages.
+         */
+        public long get_MessagesOut() {
+            return Total(_MessagesOut);
+        }
+
+        /**
+         * Returns the number of bytes sent to the clients.
+         *
+         * @return The number of bytes, frame headers included.
+         */
+        public long get_BytesOut() {
+            return Total(_BytesOut);
+        }
+
+        /**
+         * Returns the number of sessions that have not ended yet.
+         *
+         * @return The number of sessions.
+         */
+        public int get_ActiveSessions() {
+            return _ActiveSessions;
+        }
+
+        /**
+         * Returns the number of ongoing matches.
+         *
+         * @return The number of matches.
+         */
+        public int get_ActiveMatches() {
+            return _ActiveMatches;
+        }
+
+        /**
+         * Returns the number of players waiting in the lobby.
+         *
+         * @return The number of players.
+         */
+        public int get_WaitingPlayers() {
+            return _WaitingPlayers;
+        }
+
+        /**
+         * Returns the number of connections accepted.
+         *
+         * @return The number of connections.
+         */
+        public long get_SessionsAccepted() {
+            return _SessionsAccepted;
+        }
+
+        /**
+         * Returns the number of connections refused because the server was full.
+         *
+         * @return The number of connections.
+         */
+        public long get_SessionsRefused() {
+            return _SessionsRefused;
+        }
+
+        /**
+         * Returns the number of matches created.
+         *
+         * @return The number of matches.
+         */
+        public long get_MatchesCreated() {
+            return _MatchesCreated;
+        }
+
+        /**
+         * Returns the number of failed sendings.
+         *
+         * @return The number of failed sendings.
+         */
+        public long get_SendExceptions() {
+            return _SendExceptions;
+        }
+
+        /**
+         * Returns the most failed sendings in a row of any session.
+         *
+         * @return The most failed sendings in a row.
+         */
+        public int get_MostSendExceptionsInARow() {
+            return _MostSendExceptionsInARow;
+        }
+
+        /**
+         * Returns the number of sessions closed because sending failed too many times in a row.
+         *
+         * @return The number of sessions.
+         */
+        public long get_SessionsClosedBySendExceptions() {
+            return _SessionsClosedBySendExceptions;
+        }
+
+        /**
+         * Returns the time the matches took to pass the received messages on to the opponents.
+         *
+         * @return The durations.
+         */
+        public LatencyHistogram.Snapshot get_RelayLatency() {
+            return _RelayLatency;
+        }
+
+        /**
+         * Returns the time the paired players waited in the lobby.
+         *
+         * @return The durations.
+         */
+        public LatencyHistogram.Snapshot get_LobbyWait() {
+            return _LobbyWait;
+        }
+
+        /**
+         * Returns the round trips the clients reported.
+         *
+         * @return The durations.
+         */
+        public LatencyHistogram.Snapshot get_RoundTrip() {
+            return _RoundTrip;
+        }
+
+        /**
+         * Describes the metrics for the log.
+         *
+         * @return A few lines of text.
+         */
+        public String Describe() {
+            String newLine = System.lineSeparator();
+            StringBuilder text = new StringBuilder();
+            text.append("Sessions: active ").append(_ActiveSessions)
+                    .append(", accepted ").append(_SessionsAccepted)
+                    .append(", refused ").append(_SessionsRefused)
+                    .append(". Matches: active ").append(_ActiveMatches)
+                    .append(", created ").append(_MatchesCreated)
+                    .append(". Waiting in the lobby: ").append(_WaitingPlayers).append('.').append(newLine);
+            text.append("In: ").append(get_MessagesIn()).append(" messages, ").append(get_BytesIn()).append(" bytes")
+                    .append(". Out: ").append(get_MessagesOut()).append(" messages, ").append(get_BytesOut()).append(" bytes.").append(newLine);
+            for (int type = 0; type < TYPE_SLOTS; type++) {
+                if (_MessagesIn[type] == 0 && _MessagesOut[type] == 0)
+                    continue;
+                text.append("  ").append(type == TYPE_SLOTS - 1 ? "Other" : "Type " + Integer.toString(type))
+                        .append(": in ").append(_MessagesIn[type]).append(" (").append(_BytesIn[type]).append(" bytes)")
+                        .append(", out ").append(_MessagesOut[type]).append(" (").append(_BytesOut[type]).append(" bytes)")
+                        .append(newLine);
+            }
+            text.append("Relay latency: ").append(_RelayLatency.Describe(TimeUnit.MICROSECONDS)).append('.').append(newLine);
+            text.append("Lobby wait: ").append(_LobbyWait.Describe(TimeUnit.MILLISECONDS)).append('.').append(newLine);
+            text.append("Round trip: ").append(_RoundTrip.Describe(TimeUnit.MICROSECONDS)).append('.').append(newLine);
+            text.append("Send exceptions: ").append(_SendExceptions)
+                    .append(", most in a row ").append(_MostSendExceptionsInARow)
+                    .append("/").append(SharedResources.SRV_MAX_SESSION_EXCEPTION_INAROW)
+                    .append(", sessions closed ").append(_SessionsClosedBySendExceptions).append('.');
+            return text.toString();
+        }
+
+        /**
+         * Adds up the traffic of all message types.
+         *
+         * @param values The traffic by message type.
+         * @return The total.
+         */
+        private static long Total(long[] values) {
+            long total = 0;
+            for (long value : values) {
+                total += value;
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package ModelLayer.Networking;
+
+/**
+ * The metrics of a running server as seen by JMX (e.g. JConsole or VisualVM), see ServerMetrics.
+ * The arrays by message type are indexed by the MessageType constants.
+ */
+public interface ServerMetricsMBean {
+
+    /**
+     * @return The number of messages received from the clients.
+     */
+    long get_MessagesIn();
+
+    /**
+     * @return The number of bytes received from the clients, frame headers included.
+     */
+    long get_BytesIn();
+
+    /**
+     * @return The number of messages sent to the clients.
+     */
+    long get_MessagesOut();
+
+    /**
+     * @return The number of bytes sent to the clients, frame headers included.
+     */
+    long get_BytesOut();
+
+    /**
+     * @return The number of messages received, by message type.
+     */
+    long[] get_MessagesInByType();
+
+    /**
+     * @return The number of bytes received, by message type.
+     */
+    long[] get_BytesInByType();
+
+    /**
+     * @return The number of messages sent, by message type.
+     */
+    long[] get_MessagesOutByType();
+
+    /**
+     * @return The number of bytes sent, by message type.
+     */
+    long[] get_BytesOutByType();
+
+    /**
+     * @return The number of sessions that have not ended yet.
+     */
+    int get_ActiveSessions();
+
+    /**
+     * @return The number of ongoing matches.
+     */
+    int get_ActiveMatches();
+
+    /**
+     * @return The number of players waiting in the lobby.
+     */
+    int get_WaitingPlayers();
+
+    /**
+     * @return The number of connections accepted.
+     */
+    long get_SessionsAccepted();
+
+    /**
+     * @return The number of connections refused because the server was full.
+     */
+    long get_SessionsRefused();
+
+    /**
+     * @return The number of matches created.
+     */
+    long get_MatchesCreated();
+
+    /**
+     * @return The number of failed sendings.
+     */
+    long get_SendExceptions();
+
+    /**
+     * @return The most failed sendings in a row of any session.
+     */
+    int get_MostSendExceptionsInARow();
+
+    /**
+     * @return The number of failed sendings in a row after which a session is closed (SRV_MAX_SESSION_EXCEPTION_INAROW).
+     */
+    int get_SendExceptionThreshold();
+
+    /**
+     * @return The number of sessions closed because sending failed too many times in a row.
+     */
+    long get_SessionsClosedBySendExceptions();
+
+    /**
+     * @return The number of messages relayed from one player to the other.
+     */
+    long get_RelayCount();
+
+    /**
+     * @return The average time a match took to pass a received message on to the opponent's outbox, in microseconds.
+     */
+    long get_RelayLatencyMeanMicros();
+
+    /**
+     * @return The time 99% of the relayed messages did not exceed, in microseconds (rounded up to a power of two).
+     */
+    long get_RelayLatencyP99Micros();
+
+    /**
+     * @return The longest time a message took to be relayed, in microseconds.
+     */
+    long get_RelayLatencyMaxMicros();
+
+    /**
+     * @return The average time the paired players waited in the lobby, in milliseconds.
+     */
+    long get_LobbyWaitMeanMillis();
+
+    /**
+     * @return The time 99% of the paired players did not wait longer than, in milliseconds (rounded up to a power of two).
+     */
+    long get_LobbyWaitP99Millis();
+
+    /**
+     * @return The longest time a paired player waited in the lobby, in milliseconds.
+     */
+    long get_LobbyWaitMaxMillis();
+
+    /**
+     * @return The average round trip the clients reported in their pings, in microseconds.
+     */
+    long get_RoundTripMeanMicros();
+
+    /**
+     * @return The round trip 99% of the clients' reports did not exceed, in microseconds (rounded up to a power of two).
+     */
+    long get_RoundTripP99Micros();
+
+    /**
+     * Describes all the metrics in a few lines of text.
+     *
+     * @return The description of the metrics.
+     */
+    String Describe();
+}
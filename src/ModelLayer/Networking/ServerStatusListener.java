@@ -0,0 +1,17 @@
+package ModelLayer.Networking;
+
+/**
+ * Gets told when the server has started or stopped, e.g. to update the server screen.
+ */
+public interface ServerStatusListener {
+
+    /**
+     * Called when the server has started successfully.
+     */
+    void ServerIsUp();
+
+    /**
+     * Called when the server has stopped.
+     */
+    void ServerIsDown();
+}
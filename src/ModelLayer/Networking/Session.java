@@ -1,61 +1,99 @@
 package ModelLayer.Networking;
 
 import ControlLayer.SharedResources;
+import ModelLayer.Enumerations.LogLevel;
 import ModelLayer.Networking.Messages.Message;
+import ModelLayer.Networking.Messages.MessageHello;
+import ModelLayer.Networking.Messages.MessageInGameInput;
 import ModelLayer.Networking.Messages.MessageMapRequest;
+import ModelLayer.Networking.Messages.MessagePing;
 import ModelLayer.Networking.Messages.MessageType;
-import ViewLayer.Screens.ServerScr.LogTerminal;
-import javafx.collections.ListChangeListener;
-import javafx.collections.ObservableList;
-import javafx.collections.ObservableMap;
-
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+
+import java.io.*;
 import java.net.Socket;
-import java.time.LocalDateTime;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Represents a session between the server and a client.
  * Each session instance is "executed" by the Server on a separate thread.
+ * The message handling is shared with the NioSession, which is driven by an event loop instead of its own thread.
+ * Outgoing messages are queued in the session's outbox and written out by a single writer, in order.
  */
 class Session implements Runnable {
 
+    /**
+     * The first two bytes a client of the original protocol sends: the magic number of a Java serialisation stream.
+     * A framed client starts with the length of its hello frame instead, which is far shorter.
+     */
+    static final int LEGACY_STREAM_MAGIC = ObjectStreamConstants.STREAM_MAGIC & 0xFFFF;
+
     /**
      * Socket towards the connected client.
      */
-    private final Socket _ClientSocket;
+    final Socket _ClientSocket;
 
     /**
-     * Terminal to display logs, messages.
+     * The log of the server.
      */
-    private final LogTerminal _Terminal;
+    private final AsyncLogger _Log;
+    /**
+     * The counters of the server. Counts the traffic and the failed sendings of this session.
+     */
+    final ServerMetrics _Metrics;
     /**
      * Lobby for clients waiting for opponent to play on a specific map. This is shared between the threads.
-     * The session is listening to the changes of this Map.
      */
-    private final ObservableMap<Socket, String> _Lobby;
+    private final MatchmakingLobby _Lobby;
+    /**
+     * The ticket of the client's last request in the lobby. Null if the client has not requested an opponent.
+     */
+    private volatile MatchmakingLobby.Ticket _LobbyTicket = null;
+    /**
+     * Creates the threads for the short tasks this session starts (platform or virtual threads).
+     */
+    private final ThreadFactory _ThreadFactory;
+    /**
+     * The OutputStream that is provided by the socket. Messages are written to it as frames
+     * (or through _LegacyOut for a client of the original protocol).
+     */
+    volatile DataOutputStream _Out;
+    /**
+     * The InputStream that is provided by the socket. Messages are read from it as frames.
+     */
+    private volatile DataInputStream _In;
+    /**
+     * Frames the messages of this session. Sends with the codec negotiated in the hello exchange.
+     * Encoding is only done by the writer, reading only by the listener.
+     */
+    final FrameCodec _Frames = new FrameCodec();
+    /**
+     * The serialisation stream towards a client of the original protocol, which reads one object stream without frames.
+     * Null for framed clients. Set before the writer starts, used only by the writer.
+     */
+    private volatile ObjectOutputStream _LegacyOut;
     /**
-     * The active matches (games) between clients. This is shared between the threads.
-     * The session is listening to the changes of this List.
+     * The queue of outgoing messages and frames. Drained by the writer thread (or the event loop of a NioSession).
      */
-    private final ObservableList<ActiveMatch> _Matches;
+    final SessionOutbox _Outbox = new SessionOutbox(SharedResources.SRV_OUTBOX_CAPACITY, this::WakeUpWriter);
     /**
-     * The OutputStream that is provided by the socket.
+     * The thread that writes the queued messages to the socket. Null until the session runs.
      */
-    private volatile ObjectOutputStream _ObjOut;
+    private volatile Thread _WriterThread;
     /**
-     * The InputStream that is provided by the socket.
+     * Set to true when the session ends. The writer stops after writing out what is still queued.
      */
-    private volatile ObjectInputStream _ObjIn;
+    private volatile boolean _IsWriterStopped = false;
     /**
      * Set to true when major exception occurs and the main Run method should stop.
      */
-    private boolean isMajorExceptionOccurred = false;
+    volatile boolean isMajorExceptionOccurred = false;
     /**
      * Represents the match the player is currently in. Null if not part of any match.
+     * Set by the thread that paired the players, read by the session's own threads.
      */
-    private ActiveMatch _CurrentMatch = null;
+    private volatile ActiveMatch _CurrentMatch = null;
     /**
      * The last received Map request message from the client (sent from the client's launch screen)
      */
@@ -64,11 +102,15 @@ class Session implements Runnable {
      * Set to be true once the client sends a goodbye message, which means it finished the communication.
      * This will stop the sessions's Run if turns true.
      */
-    private boolean _GoodbyeReceived = false;
+    volatile boolean _GoodbyeReceived = false;
     /**
      * True when the server decides on shutting down itself. If this true, the session stops the Run.
      */
-    private boolean _IsServerShutsDown = false;
+    volatile boolean _IsServerShutsDown = false;
+    /**
+     * Called once the session has ended, so the server can forget it. Null if nobody needs to know.
+     */
+    private volatile Runnable _EndedListener;
 
     /**
      * Counts the number of listening related exceptions raised in a row.
@@ -83,12 +125,23 @@ class Session implements Runnable {
      * This is used to manage fault tolerance.
      * Hitting a number of exceptions in a row will cause stop listening and shut the session.
      */
-    private int _SendExceptionsInARowCounter = 0;
+    private volatile int _SendExceptionsInARowCounter = 0;
 
     /**
      * Represents the player number within a match. This could be either 1 or 2 when valid.
      */
-    private int _AssignedPlayerNumber = -1;
+    private volatile int _AssignedPlayerNumber = -1;
+
+    /**
+     * The round trip towards the client, as the client measured it and reported in its last ping, in nanoseconds.
+     * MessagePing.UNKNOWN until the client reports one (older clients never do).
+     */
+    private volatile long _RoundTripNanos = MessagePing.UNKNOWN;
+
+    /**
+     * The client's clock minus the server's clock, as the client measured it, in nanoseconds.
+     */
+    private volatile long _ClockOffsetNanos = 0;
 
     /**
      * Signals the associated ActiveMatch that this session (player) is ready to start the game.
@@ -97,68 +150,83 @@ class Session implements Runnable {
             _CurrentMatch.MatchIsReadyToStart(_AssignedPlayerNumber, _LastMapRequestMsg.get_CarImageFileIndex());
 
 
+    /**
+     * Writes the queued messages to the socket in order, on the session's writer thread.
+     * Everything queued at the time is written before a single flush, so a burst of messages becomes one socket write.
+     */
+    private final Runnable WriteQueuedMessages = () ->
+    {
+        while (true) {
+            _Outbox.ClearWakeUp();
+            boolean isWritten = false;
+            Object item;
+            while ((item = _Outbox.Poll()) != null) {
+                isWritten |= WriteQueuedItem(item);
+            }
+
+            if (isWritten) {
+                try {
+                    //Forgets the objects written so far, so the stream does not keep every message of the session.
+                    if (_LegacyOut != null)
+                        _LegacyOut.reset();
+                    _Out.flush();
+                } catch (IOException e) {
+                    SendingFailed(e, "Flushing the socket");
+                }
+            }
+
+            if (_IsWriterStopped)
+                break;
+            LockSupport.park(this);
+        }
+    };
+
+
     /**
      * Represents a session between the server and a client.
      * Each session instance is "executed" by the Server on a separate thread.
      *
      * @param _ClientSocket Socket towards the client.
-     * @param _Terminal     Terminal to display logs, messages.
+     * @param log           The log of the server.
+     * @param metrics       The counters of the server.
      * @param _Lobby        Lobby for clients waiting for opponent to play on a specific map.
-     * @param _Matches      The observable list of matches. The Session is listening to this to see if it become a member of a match.
+     * @param threadFactory Creates the threads for the tasks the session runs detached. Null if RunDetached is overridden.
      */
-    public Session(Socket _ClientSocket, LogTerminal _Terminal, ObservableMap<Socket, String> _Lobby, ObservableList<ActiveMatch> _Matches) {
+    public Session(Socket _ClientSocket, AsyncLogger log, ServerMetrics metrics, MatchmakingLobby _Lobby, ThreadFactory threadFactory) {
         this._ClientSocket = _ClientSocket;
-        this._Terminal = _Terminal;
+        _Log = log;
+        _Metrics = metrics;
         this._Lobby = _Lobby;
-        this._Matches = _Matches;
-
-        //Adding listener / event handler to the _Matches observable list
-        _Matches.addListener(this::HandleMatchesListChange);
+        _ThreadFactory = threadFactory;
     }
 
     /**
-     * Handles when change happens in the _Matches shared observable list
-     * @param c The change that occurred
+     * Called by the MatchRegistry when this player has been put into a new match.
+     *
+     * @param match        The new match.
+     * @param playerNumber The player number of this player in the match (either 1 or 2).
      */
-    private void HandleMatchesListChange(ListChangeListener.Change<? extends ActiveMatch> c) {
-
-        while (c.next()) {
-            //If a new match has been created.
-            if (c.wasAdded()) {
-                //Check if this player (socket or session) is part of that match
-                ActiveMatch newMatch = c.getAddedSubList().get(0);
-                if (newMatch.HasThisPlayer(_ClientSocket)) {
-                    //Retrieve player number
-                    _AssignedPlayerNumber = newMatch.WhichPlayerNumberIsThisSocket(_ClientSocket);
-                    //Assign this session to the socket within the new ActiveMatch object
-                    newMatch.AssignSessionToSocket(_AssignedPlayerNumber, this);
-                    //Set the new match be the current match
-                    _CurrentMatch = newMatch;
+    void JoinedMatch(ActiveMatch match, int playerNumber) {
+        //The player number is set first, so it is valid whenever the match is visible.
+        _AssignedPlayerNumber = playerNumber;
+        _CurrentMatch = match;
 
-                    SessionLog("Match found for this player.");
+        SessionLog("Match found for this player.");
 
-                    //Send "ready to start game" message on a seperate thread to the ActiveMath
-                    Thread readySignal = new Thread(ReadyToStartGame);
-                    readySignal.start();
-
-                }
-            }
+        //Send "ready to start game" message on a seperate thread to the ActiveMath
+        RunDetached(ReadyToStartGame);
+    }
 
-            if (c.wasRemoved()) {
-                //This event is only relevant if currently this session was in game.
-                if (_CurrentMatch != null) {
-                    //Check if the removed match is the one this session participates in.
-                    if (c.getRemoved().get(0).HasThisPlayer(_ClientSocket)) {
-                        SessionLog("Match has ended.");
-
-                        //Needs to notify the client that the match has been closed.
-                        Message msg = new Message(MessageType.MATCHHASENDED);
-                        if (!SendMessage(msg))
-                            SessionLog("ERROR while sending match ended message.");
-                    }
-                }
-            }
-        }
+    /**
+     * Called by the MatchRegistry when a match of this player has ended.
+     * A match only ends once both players have left it, so the client is not notified.
+     *
+     * @param match The match that has ended.
+     */
+    void MatchEnded(ActiveMatch match) {
+        //Only relevant if this session is still in that match (not in a newer one already).
+        if (_CurrentMatch == match)
+            SessionLog("Match has ended.");
     }
 
     /**
@@ -169,10 +237,53 @@ class Session implements Runnable {
      * - The server is in the process of shutting down
      * - Too many sending exceptions happened in a row (in which case the session will also close completely)
      *
+     * The message is queued and written out by the session's writer in order, so the caller is not blocked.
+     * Car status updates should be sent by SendCarStatus instead, so they can be conflated.
+     *
      * @param msg The message to deliver.
-     * @return Returns true if operation was successful. Returns false if it failed.
+     * @return Returns true if the message has been queued. Returns false if it cannot be sent.
+     */
+    public boolean SendMessage(Message msg) {
+        if (!IsSendingAllowed())
+            return false;
+
+        _Outbox.Offer(msg);
+        return true;
+    }
+
+    /**
+     * Sends a car status update to the connected client. If the previous update of the same car has not been
+     * written out yet (the client is slow), it is replaced by this one. The same rules apply as for SendMessage.
+     *
+     * @param sourceCar The car the update is about (the sender's player number).
+     * @param update    A MessageCarStatusUpdate, or an already encoded frame of one (e.g. relayed from the opponent
+     *                  without decoding it) that uses this session's send codec.
+     * @return Returns true if the update has been queued. Returns false if it cannot be sent or has been dropped.
+     */
+    boolean SendCarStatus(int sourceCar, Object update) {
+        if (!IsSendingAllowed())
+            return false;
+
+        return _Outbox.OfferLatest(sourceCar, update);
+    }
+
+    /**
+     * Returns an array to copy a relayed frame into, which is then given to SendCarStatus. The array is reused once
+     * the frame has been written out, so the caller must not keep it.
+     *
+     * @param size The size of the frame (length prefix and payload).
+     * @return An array of at least the given size. The length prefix tells the size of the frame in it.
      */
-    public synchronized boolean SendMessage(Message msg) {
+    byte[] TakeFrameBuffer(int size) {
+        return _Outbox.TakeFrameBuffer(size);
+    }
+
+    /**
+     * Checks if anything can be sent to the client. Flags a major exception if sending failed too many times.
+     *
+     * @return False if the client said goodbye, the socket is closed, the server shuts down or sending failed too many times.
+     */
+    private boolean IsSendingAllowed() {
         //Check if the client already said goodbye and won't receive messages anymore.
         if (_GoodbyeReceived)
             return false;
@@ -188,37 +299,190 @@ class Session implements Runnable {
 
         //If sending exceptions are over the treshold, then refuse sending.
         if (_SendExceptionsInARowCounter > SharedResources.SRV_MAX_SESSION_EXCEPTION_INAROW) {
+            if (!isMajorExceptionOccurred)
+                _Metrics.SessionClosedBySendExceptions();
             isMajorExceptionOccurred = true;
             return false;
         }
+        return true;
+    }
 
+    /**
+     * Counts and logs a failed sending.
+     *
+     * @param e           The exception raised during sending.
+     * @param description Tells what was being sent.
+     */
+    void SendingFailed(Exception e, String description) {
+        _SendExceptionsInARowCounter++;
+        _Metrics.SendFailed(_SendExceptionsInARowCounter);
+        SessionLog(LogLevel.WARN, "SendMessage ERROR: " + e.getMessage() +
+                " [" + description +
+                "]. Threshold status: " + Integer.toString(_SendExceptionsInARowCounter) +
+                "/" + Integer.toString(SharedResources.SRV_MAX_SESSION_EXCEPTION_INAROW));
+    }
 
-        boolean result = true;
+    /**
+     * Encodes an item taken from the outbox into a frame. The frame is counted as sent.
+     *
+     * @param item A Message or an already encoded frame (byte array).
+     * @return A buffer that is ready to be read and contains exactly one frame. Only valid until the next call.
+     * @throws IOException If the message could not be encoded.
+     */
+    ByteBuffer EncodeQueuedItem(Object item) throws IOException {
+        if (item instanceof byte[]) {
+            //Only relayed position updates are queued already encoded.
+            byte[] frame = (byte[]) item;
+            int length = FrameCodec.FrameLength(frame);
+            _Metrics.MessageSent(MessageType.INGAMEPOSITIONUPDATE, length);
+            return ByteBuffer.wrap(frame, 0, length);
+        }
+        Message msg = (Message) item;
+        //The answer to a ping tells when it has actually been sent, the time it waited in the outbox is part of the trip.
+        if (msg.getType() == MessageType.PONG)
+            ((MessagePing) msg).set_TransmitTime(System.nanoTime());
+        ByteBuffer frame = _Frames.Encode(msg);
+        _Metrics.MessageSent(msg.getType(), frame.remaining());
+        return frame;
+    }
+
+    /**
+     * Writes one queued item to the socket's buffered stream. Does not flush. Runs on the writer thread.
+     *
+     * @param item A Message or an already encoded frame (byte array).
+     * @return True if the item has been written.
+     */
+    private boolean WriteQueuedItem(Object item) {
         try {
-            _ObjOut.writeObject(msg);
-            _ObjOut.flush();
+            if (_LegacyOut != null) {
+                WriteLegacyMessage((Message) item);
+                return true;
+            }
+            ByteBuffer frame = EncodeQueuedItem(item);
+            _Out.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+            _Outbox.Recycle(item);
             _SendExceptionsInARowCounter = 0;
+            return true;
         } catch (Exception e) {
-            _SendExceptionsInARowCounter++;
-            SessionLog("SendMessage ERROR: " + e.getMessage() +
-                    " [Message type: " + Integer.toString(msg.getType()) +
-                    "]. Threshold status: " + Integer.toString(_SendExceptionsInARowCounter) +
-                    "/" + Integer.toString(SharedResources.SRV_MAX_SESSION_EXCEPTION_INAROW));
-            result = false;
+            SendingFailed(e, DescribeQueuedItem(item));
+            return false;
         }
-        return result;
     }
 
     /**
-     * Opens object input and object output streams of the provided socket.
+     * Writes a message to the serialisation stream of a client of the original protocol. Does not flush.
+     * Only messages are queued for such a client, relayed frames are only sent to clients of the binary codec.
+     *
+     * @param msg The message to write.
+     * @throws IOException If the message could not be written.
+     */
+    private void WriteLegacyMessage(Message msg) throws IOException {
+        int before = _Out.size();
+        //The object stream passes each object on to _Out as a whole, so the difference is the size of the message.
+        _LegacyOut.writeObject(msg);
+        _SendExceptionsInARowCounter = 0;
+        _Metrics.MessageSent(msg.getType(), _Out.size() - before);
+    }
+
+    /**
+     * Describes an item of the outbox for the logs.
+     *
+     * @param item A Message or an already encoded frame (byte array).
+     * @return The description of the item.
+     */
+    String DescribeQueuedItem(Object item) {
+        if (item instanceof byte[])
+            return "Relayed frame of " + Integer.toString(FrameCodec.FrameLength((byte[]) item)) + " bytes";
+        return "Message type: " + Integer.toString(((Message) item).getType());
+    }
+
+    /**
+     * Wakes up the writer as new items are in the outbox.
+     */
+    void WakeUpWriter() {
+        Thread writer = _WriterThread;
+        if (writer != null)
+            LockSupport.unpark(writer);
+    }
+
+    /**
+     * Starts the writer thread that drains the outbox.
+     */
+    private void StartWriter() {
+        _WriterThread = NewThread(WriteQueuedMessages);
+        _WriterThread.start();
+    }
+
+    /**
+     * Stops the writer thread after it has written out what is still queued, and waits for it
+     * (at most SRV_OUTBOX_DRAIN_TIMEOUT), so the last messages are written before the socket is closed.
+     * A writer stuck on a client that does not read is left behind; closing the socket stops it.
+     */
+    private void StopWriter() {
+        _IsWriterStopped = true;
+        WakeUpWriter();
+
+        Thread writer = _WriterThread;
+        if (writer == null || writer == Thread.currentThread())
+            return;
+        try {
+            writer.join(SharedResources.SRV_OUTBOX_DRAIN_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive())
+            SessionLog(LogLevel.WARN, "The writer has not finished in time, queued messages may be lost.");
+    }
+
+    /**
+     * Tells if this session's client can receive frames of the binary codec, so they can be relayed to it unchanged.
+     *
+     * @return True if the binary codec has been agreed with the client.
+     */
+    boolean IsReceivingBinaryFrames() {
+        return _Frames.is_SendingBinary();
+    }
+
+    /**
+     * Tells if the client speaks the original protocol: one object stream, no frames, no codec and no other
+     * message than the original ones (e.g. it cannot send its inputs to a match simulated on the server).
+     *
+     * @return True for a client of the original protocol.
+     */
+    boolean IsLegacyClient() {
+        return _LegacyOut != null;
+    }
+
+    /**
+     * Runs a task without blocking the caller (e.g. signalling the match or delivering a message to the opponent).
+     * The blocking session starts a new thread for it, created by the session's thread factory.
+     *
+     * @param task The task to run.
+     */
+    void RunDetached(Runnable task) {
+        NewThread(task).start();
+    }
+
+    /**
+     * Creates a thread with the session's thread factory.
+     *
+     * @param task The task the thread runs.
+     * @return The new thread, not started yet.
+     */
+    Thread NewThread(Runnable task) {
+        return _ThreadFactory.newThread(task);
+    }
+
+    /**
+     * Opens the input and output streams of the provided socket.
      *
      * @return Returns true if operation was successful. Returns false if not.
      */
     public boolean OpenStreams() {
         boolean result = true;
         try {
-            _ObjIn = new ObjectInputStream(_ClientSocket.getInputStream());
-            _ObjOut = new ObjectOutputStream(_ClientSocket.getOutputStream());
+            _In = new DataInputStream(new BufferedInputStream(_ClientSocket.getInputStream()));
+            _Out = new DataOutputStream(new BufferedOutputStream(_ClientSocket.getOutputStream()));
         } catch (Exception e) {
             result = false;
         }
@@ -239,129 +503,377 @@ class Session implements Runnable {
     @Override
     public void run() {
         //Check if streams are available. If not, then end running.
-        if (_ObjIn == null || _ObjOut == null)
+        if (_In == null || _Out == null)
             return;
 
 
+        //Clients of the original protocol send one object stream without frames.
+        try {
+            if (IsLegacyStream(_In)) {
+                ServeLegacyStream(_In);
+                return;
+            }
+        } catch (IOException e) {
+            ConnectionLost(e.getMessage());
+            EndSession();
+            return;
+        }
+
         //Streams are ready, wait for requests.
-        SessionLog("Session has started. Waiting for messages.");
-        Message msg; //Latest received messages will be stored here.
+        SessionLog(LogLevel.DEBUG, "Session has started. Waiting for messages.");
+        StartWriter();
+        while (IsListening()) {
+            try {
+                //Read the message frame from the stream
+                HandleIncomingFrame(_Frames.ReadPayload(_In));
+            } catch (Exception e) {
+                HandleListeningException(e);
+            }
+        }
+
+        EndSession();
+    }
+
+    /**
+     * Tells if the client speaks the original protocol, by the first two bytes it sends. Does not consume them.
+     * Blocks until they have arrived.
+     *
+     * @param in The stream from the client, before anything has been read from it.
+     * @return True if the client has started a Java serialisation stream instead of sending a frame.
+     * @throws IOException If the stream is closed before two bytes have arrived.
+     */
+    static boolean IsLegacyStream(DataInputStream in) throws IOException {
+        in.mark(FrameCodec.HEADER_SIZE);
+        int first = in.readUnsignedShort();
+        in.reset();
+        return first == LEGACY_STREAM_MAGIC;
+    }
 
+    /**
+     * Serves a client of the original protocol on the calling thread until the session ends.
+     * The client reads and writes one Java serialisation stream in each direction, without frames, and never
+     * offers a codec, so everything it gets is written as serialised objects by the session's writer.
+     * _Out must be open already.
+     *
+     * @param in The stream from the client, from the header of its serialisation stream.
+     */
+    void ServeLegacyStream(InputStream in) {
+        SessionLog(LogLevel.DEBUG, "Session has started with a client of the original protocol. Waiting for messages.");
+        CountingInputStream countedIn = new CountingInputStream(in);
+        ObjectInputStream objectIn;
+        try {
+            //Same order as the original server: the client's stream header is read first, then ours is sent.
+            objectIn = new ObjectInputStream(countedIn);
+            _LegacyOut = new ObjectOutputStream(_Out);
+            _LegacyOut.flush();
+        } catch (IOException e) {
+            ConnectionLost("Could not open the object streams: " + e.getMessage());
+            EndSession();
+            return;
+        }
 
-        while (!_ClientSocket.isClosed() && !_IsServerShutsDown && !isMajorExceptionOccurred) {
+        StartWriter();
+        while (IsListening()) {
             try {
-                //Read the message object from the stream
-                msg = (Message) _ObjIn.readObject();
+                long before = countedIn.get_Count();
+                Object o = objectIn.readObject();
+                if (!(o instanceof Message))
+                    throw new IOException("Unexpected object received: " + o.getClass().getName());
+                Message msg = (Message) o;
+                _Metrics.MessageReceived(msg.getType(), (int) (countedIn.get_Count() - before));
+                HandleIncomingMessage(msg);
+            } catch (Exception e) {
+                HandleListeningException(e);
+            }
+        }
 
-                //If no exceptions occurred, then zero out the exceptions counter
-                _ExceptionsInARowCounter = 0;
+        EndSession();
+    }
 
-                //If Hello message sent, then print out to the console.
-                if (msg.getType() == MessageType.HELLO) {
-                    SessionLog("Hello message received from the client.");
-                    continue;
-                }
+    /**
+     * Chooses the best codec offered by the client and tells it to the client.
+     * Everything written after the switch uses the new codec. The answer itself may be written with either codec,
+     * as the client recognises the codec of every frame.
+     *
+     * @param hello The hello message of the client with the offered codecs.
+     */
+    private void NegotiateCodec(MessageHello hello) {
+        int codecId = MessageCodecs.Choose(hello.get_CodecMask() & MessageCodecs.SUPPORTED_MASK);
+        MessageHello answer = new MessageHello();
+        answer.set_CodecMask(codecId);
+        if (SendMessage(answer)) {
+            _Frames.set_SendCodec(codecId);
+            SessionLog(LogLevel.DEBUG, "Codec agreed with the client: " + (codecId == MessageCodecs.BINARY_ID ? "binary" : "serialised") + ".");
+        }
+    }
 
-                //If the client is looking for an opponent to play with on a specific map
-                if (msg.getType() == MessageType.LOOKINGFOROPPONENT) {
-                    _LastMapRequestMsg = (MessageMapRequest) msg;
-                    SessionLog("Map request received from the client.");
-                    //Check if this is not a duplicate request. If not, add to the lobby.
-                    if (!_Lobby.containsKey(_ClientSocket)) {
-                        _Lobby.put(_ClientSocket, _LastMapRequestMsg.get_MapName());
-                    }
-                    continue;
-                }
+    /**
+     * Tells if the session should keep listening to the client.
+     *
+     * @return False once the socket is closed, the server shuts down or too many exceptions happened in a row.
+     */
+    boolean IsListening() {
+        return !_ClientSocket.isClosed() && !_IsServerShutsDown && !isMajorExceptionOccurred;
+    }
 
-                //If it is a car status update or crash message, the notify the other player.
-                if (msg.getType() == MessageType.INGAMEPOSITIONUPDATE || msg.getType() == MessageType.INGAMECRASH) {
-                    if (_CurrentMatch != null) {
-                        _CurrentMatch.TransmitMessage(_AssignedPlayerNumber, msg);
-                    }
-                    continue;
-                }
+    /**
+     * Handles the payload of a frame received from the client.
+     * Position updates in the binary codec are relayed to the opponent without decoding them, if the opponent
+     * understands the binary codec too. Everything else is decoded and handled by HandleIncomingMessage.
+     *
+     * @param payload The payload of the frame. Only valid during this call.
+     * @throws IOException If the payload is corrupt, or the socket could not be closed after a goodbye message.
+     */
+    void HandleIncomingFrame(ByteBuffer payload) throws IOException {
+        int frameSize = FrameCodec.HEADER_SIZE + payload.remaining();
+        int binaryType = MessageCodecs.PeekBinaryType(payload);
+        //Binary position updates are counted before they are relayed, as they may never be decoded.
+        if (binaryType == MessageType.INGAMEPOSITIONUPDATE)
+            _Metrics.MessageReceived(MessageType.INGAMEPOSITIONUPDATE, frameSize);
+
+        ActiveMatch match = _CurrentMatch;
+        if (match != null && binaryType == MessageType.INGAMEPOSITIONUPDATE) {
+            if (match.RelayFrame(_AssignedPlayerNumber, payload)) {
+                _ExceptionsInARowCounter = 0;
+                return;
+            }
+        }
 
+        Message msg = _Frames.Decode(payload);
+        if (msg == null) {
+            //A position update whose keyframe never arrived. The next keyframe puts the opponent's car right.
+            _ExceptionsInARowCounter = 0;
+            return;
+        }
+        if (binaryType != MessageType.INGAMEPOSITIONUPDATE)
+            _Metrics.MessageReceived(msg.getType(), frameSize);
+        HandleIncomingMessage(msg);
+    }
 
-                //If player dropped message arrives then remove the the session from the launch lobby
-                if (msg.getType() == MessageType.PLAYERDROPPED) {
-                    SessionLog("Player dropped message received from the client.");
-                    //Check if the player was in a lobby
-                    if (_Lobby.containsKey(_ClientSocket)) {
-                        _Lobby.remove(_ClientSocket);
-                        _LastMapRequestMsg = null;
-                    }
-                    continue;
-                }
+    /**
+     * Follows up a message received from the client with the appropriate action based on the message's type.
+     *
+     * @param msg The received message.
+     * @throws IOException If the socket could not be closed after a goodbye message.
+     */
+    void HandleIncomingMessage(Message msg) throws IOException {
+        //If no exceptions occurred, then zero out the exceptions counter
+        _ExceptionsInARowCounter = 0;
+
+        //If Hello message sent, then print out to the console.
+        if (msg.getType() == MessageType.HELLO) {
+            SessionLog(LogLevel.DEBUG, "Hello message received from the client.");
+            //Clients that offer codecs get an answer. Older clients send a plain hello and stay on serialised frames.
+            if (msg instanceof MessageHello)
+                NegotiateCodec((MessageHello) msg);
+            return;
+        }
 
-                //If GOODBYE message arrives then remove from the lobby
-                //or notify the other player about this player leaving the match.
-                //Finally close the socket and session.
-                if (msg.getType() == MessageType.GOODBYE) {
-                    _GoodbyeReceived = true;
-
-                    //Check if the player was in a lobby
-                    if (_Lobby.containsKey(_ClientSocket)) {
-                        _Lobby.remove(_ClientSocket);
-                        _LastMapRequestMsg = null;
-                    }
-                    if (_CurrentMatch != null) {
-                        _CurrentMatch.PlayerHasLeft(_AssignedPlayerNumber);
-                    }
-
-                    //Close connection. This terminates the loop as well.
-                    _ClientSocket.close();
-                    SessionLog("Goodbye message received.");
-                }
+        //If the client is looking for an opponent to play with on a specific map
+        if (msg.getType() == MessageType.LOOKINGFOROPPONENT) {
+            SessionLog(LogLevel.DEBUG, "Map request received from the client.");
+            //Check if this is not a duplicate request. If not, add to the lobby.
+            //A duplicate is ignored as a whole, so the match starts with the car of the request the ticket was made for.
+            MatchmakingLobby.Ticket ticket = _LobbyTicket;
+            if (ticket == null || !ticket.IsWaiting()) {
+                _LastMapRequestMsg = (MessageMapRequest) msg;
+                _LobbyTicket = _Lobby.Join(this, _LastMapRequestMsg.get_MapName());
+            }
+            return;
+        }
 
+        //If the client does not want to wait for an opponent any more
+        if (msg.getType() == MessageType.CANCELLOOKINGFOROPPONENT) {
+            if (_Lobby.Cancel(_LobbyTicket))
+                SessionLog(LogLevel.DEBUG, "Map request cancelled by the client.");
+            return;
+        }
 
-            } catch (Exception e) {
-                //Errors can be ignored if the server is shutting down or the client sent goodbye already
-                // or the socket is already become closed. Write these out to the console.
-                boolean isExpected = false;
-                isExpected = (isExpected || _IsServerShutsDown);
-                isExpected = (isExpected || _GoodbyeReceived);
-                isExpected = (isExpected || _ClientSocket.isClosed());
-                if (isExpected) {
-                    SessionLog("An exception captured during listening to the client. " +
-                            "However this was expected and don't need to follow up. Message: " + e.getMessage());
-                }
+        //The client measures the round trip and the clock offset. Answered straight away, ahead of the game logic.
+        if (msg.getType() == MessageType.PING) {
+            AnswerPing((MessagePing) msg, System.nanoTime());
+            return;
+        }
 
-                //If this is an unexpected exception, but still within the threshold: print out the error, but do nothing.
-                if (!isExpected && _ExceptionsInARowCounter < SharedResources.SRV_MAX_SESSION_EXCEPTION_INAROW) {
-                    _ExceptionsInARowCounter++;
-                    SessionLog("Major exception, but within the threshold limit (" +
-                            Integer.toString(_ExceptionsInARowCounter) + "/"
-                            + Integer.toString(SharedResources.SRV_MAX_SESSION_EXCEPTION_INAROW) + "). " +
-                            "Message: " + e.getMessage());
-                }
+        //If it is a car status update or crash message, the notify the other player.
+        if (msg.getType() == MessageType.INGAMEPOSITIONUPDATE || msg.getType() == MessageType.INGAMECRASH) {
+            if (_CurrentMatch != null) {
+                _CurrentMatch.TransmitMessage(_AssignedPlayerNumber, msg);
+            }
+            return;
+        }
 
-                //If this is an unexpected exception and over the threshold, then print stack trace
-                // and notify the opponent if there is.
-                if (!isExpected && _ExceptionsInARowCounter >= SharedResources.SRV_MAX_SESSION_EXCEPTION_INAROW) {
-                    isMajorExceptionOccurred = true;
-                    e.printStackTrace();
-                    SessionLog("Error. Too much unexpected exceptions happened during listening to the client. Message: " + e.getMessage());
-                    if (_CurrentMatch != null)
-                        _CurrentMatch.PlayerHasLeft(_AssignedPlayerNumber);
-                }
+        //If the match is simulated on the server, the client only sends the keys its player presses.
+        if (msg.getType() == MessageType.INGAMEINPUT) {
+            if (_CurrentMatch != null) {
+                _CurrentMatch.ApplyInput(_AssignedPlayerNumber, (MessageInGameInput) msg);
+            }
+            return;
+        }
 
+        //If player dropped message arrives then remove the the session from the launch lobby
+        if (msg.getType() == MessageType.PLAYERDROPPED) {
+            SessionLog(LogLevel.DEBUG, "Player dropped message received from the client.");
+            //Check if the player was in a lobby
+            if (_Lobby.Cancel(_LobbyTicket)) {
+                _LastMapRequestMsg = null;
             }
+            return;
         }
 
+        //If GOODBYE message arrives then remove from the lobby
+        //or notify the other player about this player leaving the match.
+        //Finally close the socket and session.
+        if (msg.getType() == MessageType.GOODBYE) {
+            _GoodbyeReceived = true;
+
+            //Check if the player was in a lobby
+            if (_Lobby.Cancel(_LobbyTicket)) {
+                _LastMapRequestMsg = null;
+            }
+            if (_CurrentMatch != null) {
+                _CurrentMatch.PlayerHasLeft(_AssignedPlayerNumber);
+            }
+
+            //Close connection. This terminates the loop as well.
+            _ClientSocket.close();
+            SessionLog(LogLevel.DEBUG, "Goodbye message received.");
+        }
+    }
+
+    /**
+     * Answers a ping of the client with the times it was received and (once written out) sent,
+     * and takes over the round trip and the clock offset the client has measured so far.
+     *
+     * @param ping       The ping of the client.
+     * @param receivedAt The time the ping was received (System.nanoTime).
+     */
+    private void AnswerPing(MessagePing ping, long receivedAt) {
+        if (ping.get_RoundTrip() != MessagePing.UNKNOWN) {
+            _RoundTripNanos = ping.get_RoundTrip();
+            //The client measures the server's clock minus its own.
+            _ClockOffsetNanos = -ping.get_ClockOffset();
+            _Metrics.RoundTripReported(ping.get_RoundTrip());
+        }
+
+        MessagePing pong = new MessagePing(MessageType.PONG);
+        pong.set_OriginateTime(ping.get_OriginateTime());
+        pong.set_ReceiveTime(receivedAt);
+        SendMessage(pong);
+    }
+
+    /**
+     * Returns the round trip towards the client, as the client measured it.
+     *
+     * @return The round trip in nanoseconds, or MessagePing.UNKNOWN if the client has not reported one.
+     */
+    long get_RoundTripNanos() {
+        return _RoundTripNanos;
+    }
+
+    /**
+     * Returns the offset of the client's clock, as the client measured it.
+     *
+     * @return The client's clock minus the server's clock, in nanoseconds. 0 if the client has not reported one.
+     */
+    long get_ClockOffsetNanos() {
+        return _ClockOffsetNanos;
+    }
+
+    /**
+     * Handles an exception raised while listening to the client.
+     * Expected exceptions (e.g. during shutdown) are only logged. Unexpected exceptions are counted and once
+     * they reach the threshold the session stops and the opponent gets notified.
+     *
+     * @param e The exception that occurred.
+     */
+    void HandleListeningException(Exception e) {
+        //Errors can be ignored if the server is shutting down or the client sent goodbye already
+        // or the socket is already become closed. Write these out to the console.
+        boolean isExpected = false;
+        isExpected = (isExpected || _IsServerShutsDown);
+        isExpected = (isExpected || _GoodbyeReceived);
+        isExpected = (isExpected || _ClientSocket.isClosed());
+        if (isExpected) {
+            SessionLog(LogLevel.DEBUG, "An exception captured during listening to the client. " +
+                    "However this was expected and don't need to follow up. Message: " + e.getMessage());
+        }
+
+        //If this is an unexpected exception, but still within the threshold: print out the error, but do nothing.
+        if (!isExpected && _ExceptionsInARowCounter < SharedResources.SRV_MAX_SESSION_EXCEPTION_INAROW) {
+            _ExceptionsInARowCounter++;
+            SessionLog(LogLevel.WARN, "Major exception, but within the threshold limit (" +
+                    Integer.toString(_ExceptionsInARowCounter) + "/"
+                    + Integer.toString(SharedResources.SRV_MAX_SESSION_EXCEPTION_INAROW) + "). " +
+                    "Message: " + e.getMessage());
+        }
+
+        //If this is an unexpected exception and over the threshold, then print stack trace
+        // and notify the opponent if there is.
+        if (!isExpected && _ExceptionsInARowCounter >= SharedResources.SRV_MAX_SESSION_EXCEPTION_INAROW) {
+            isMajorExceptionOccurred = true;
+            e.printStackTrace();
+            SessionLog(LogLevel.ERROR, "Error. Too much unexpected exceptions happened during listening to the client. Message: " + e.getMessage());
+            if (_CurrentMatch != null)
+                _CurrentMatch.PlayerHasLeft(_AssignedPlayerNumber);
+        }
+    }
+
+    /**
+     * Called when the connection is known to be gone (e.g. the client closed its end).
+     * Unless the end was expected, stops the session and notifies the opponent straight away.
+     *
+     * @param reason The description of what happened.
+     */
+    void ConnectionLost(String reason) {
+        if (_IsServerShutsDown || _GoodbyeReceived || isMajorExceptionOccurred)
+            return;
+
+        isMajorExceptionOccurred = true;
+        SessionLog(LogLevel.WARN, "Connection to the client is lost: " + reason);
+        if (_CurrentMatch != null)
+            _CurrentMatch.PlayerHasLeft(_AssignedPlayerNumber);
+    }
+
+    /**
+     * Tries to close the client socket if it is not closed yet. Called once the session stops listening.
+     */
+    void EndSession() {
+        StopWriter();
+
+        //A client that disappears while waiting must not be paired with anyone.
+        if (_Lobby.Cancel(_LobbyTicket))
+            SessionLog(LogLevel.DEBUG, "Removed from the lobby.");
+
         //Try to close the client socket if it is not closed yet.
         if (_ClientSocket != null)
             if (!_ClientSocket.isClosed()) {
-                SessionLog("Trying to close client socket.");
+                SessionLog(LogLevel.DEBUG, "Trying to close client socket.");
                 try {
                     _ClientSocket.close();
-                    SessionLog("Client socket is closed.");
+                    SessionLog(LogLevel.DEBUG, "Client socket is closed.");
                 } catch (IOException e) {
-                    SessionLog("Could not close the client socket: " + e.getMessage());
+                    SessionLog(LogLevel.WARN, "Could not close the client socket: " + e.getMessage());
                     e.printStackTrace();
                 }
             }
 
-        SessionLog("Session is closed.");
+        SessionLog(LogLevel.DEBUG, "Session is closed. Outbox: max depth " + Integer.toString(_Outbox.get_MaxDepth()) +
+                ", coalesced " + Long.toString(_Outbox.get_CoalescedCount()) +
+                ", dropped " + Long.toString(_Outbox.get_DroppedCount()) + ".");
+
+        Runnable listener = _EndedListener;
+        if (listener != null)
+            listener.run();
+    }
+
+    /**
+     * Sets what to call once the session has ended.
+     *
+     * @param listener Called on the session's thread after the socket is closed.
+     */
+    void set_EndedListener(Runnable listener) {
+        _EndedListener = listener;
     }
 
 
@@ -370,9 +882,20 @@ class Session implements Runnable {
      * and the session as the sender. If already in game, then displays the player number too.
      * @param text The text to display in the terminal.
      */
-    private void SessionLog(String text) {
-        final LocalDateTime now = LocalDateTime.now();
-        String time = now.toLocalTime().toString();
+    void SessionLog(String text) {
+        SessionLog(LogLevel.INFO, text);
+    }
+
+    /**
+     * Displays a text in a terminal if its level is logged. Also places the timestamp
+     * and the session as the sender. If already in game, then displays the player number too.
+     * @param level The level of the text.
+     * @param text  The text to display in the terminal.
+     */
+    void SessionLog(LogLevel level, String text) {
+        //The sender is only put together for the lines that are logged.
+        if (!_Log.IsEnabled(level))
+            return;
 
         String sender = "(SESSION " + _ClientSocket.getInetAddress().toString();
         if (_AssignedPlayerNumber != -1)
@@ -380,11 +903,23 @@ class Session implements Runnable {
         else
             sender += "): ";
 
-        String msg = time + ", " + sender + text;
-        _Terminal.Log(msg);
+        _Log.Log(level, sender, text);
     }
 
 
+    /**
+     * Called by the server when the client's request has waited in the lobby for too long and has been taken out.
+     * Tells the client that it should stop waiting, unless it speaks the original protocol, which has no answer
+     * for this in the lobby and would show an error.
+     */
+    void LobbyRequestExpired() {
+        SessionLog("No opponent found in time. Removed from the lobby.");
+        if (IsLegacyClient())
+            return;
+        if (!SendMessage(new Message(MessageType.MATCHHASENDED)))
+            SessionLog(LogLevel.WARN, "ERROR while sending match ended message.");
+    }
+
     /**
      * Called by the server when it shuts down. Notifies the session to ignore exceptions.
      */
@@ -392,5 +927,42 @@ class Session implements Runnable {
         _IsServerShutsDown = true;
     }
 
+    /**
+     * Counts the bytes read through it, so the size of the messages of the original protocol can be reported.
+     * Only used by the session's listening thread.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private long _Count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
 
+        long get_Count() {
+            return _Count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0)
+                _Count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            if (count > 0)
+                _Count += count;
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long count = super.skip(n);
+            _Count += count;
+            return count;
+        }
+    }
 }
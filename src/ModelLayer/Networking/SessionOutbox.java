@@ -0,0 +1,281 @@
+package ModelLayer.Networking;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+/**
+ * The ordered queue of outgoing items of one session. Any thread can add items, only the session's writer
+ * (a writer thread or the event loop) takes them out, in the order they were added.
+ * An item is either a Message to encode or an already encoded frame (byte array).
+ * <p>
+ * Car status updates are conflated: each source car has a slot in the queue, and a newer update overwrites the
+ * unsent older one in its slot instead of queueing behind it. A slow client therefore only gets the latest
+ * position instead of an ever growing backlog. Control messages (e.g. crash, player dropped, server down) always
+ * keep their place. A status update that arrives after a control message gets a new slot behind it, so it is never
+ * sent before a control message that was queued earlier.
+ * A queued binary keyframe is never overwritten by a delta, as the delta would be useless without it:
+ * the delta gets a new slot behind the keyframe instead. A newer keyframe replaces the queued keyframe and drops
+ * the delta behind it, so a car never has more than two slots in the queue.
+ * The queue is bounded for status updates: once full, new ones are dropped and counted. Control messages are always queued.
+ * <p>
+ * Relayed frames are copied into arrays taken from the outbox (see TakeFrameBuffer). They come back once the writer
+ * has written them out or a newer update has overwritten them, so relaying does not allocate an array per update.
+ * Such an array may be longer than its frame, the length prefix tells where the frame ends (see FrameCodec.FrameLength).
+ */
+class SessionOutbox {
+
+    /**
+     * The size of the reused frame arrays. Takes every binary status update; larger frames get an array of their own.
+     */
+    private static final int FRAME_BUFFER_SIZE = 16;
+
+    /**
+     * The queued items in sending order. Status updates are represented by their slot.
+     */
+    private final ArrayDeque<Object> _Items = new ArrayDeque<>();
+
+    /**
+     * The queued slots that can still be overwritten, by source car. A slot is closed once it is taken by the
+     * writer or a control message is queued behind it.
+     */
+    private final HashMap<Integer, StatusSlot> _OpenSlots = new HashMap<>();
+
+    /**
+     * The number of status updates the queue takes.
+     */
+    private final int _Capacity;
+
+    /**
+     * Frame arrays ready to be filled again. Holds at most _Capacity arrays.
+     */
+    private final ArrayDeque<byte[]> _FreeFrames = new ArrayDeque<>();
+
+    /**
+     * Wakes up the writer when new items arrive.
+     */
+    private final Runnable _WakeUp;
+
+    /**
+     * True while the writer has been woken up but has not started draining yet. Prevents waking it up for every item.
+     */
+    private boolean _IsWakeUpPending = false;
+
+    /**
+     * The highest depth reached so far.
+     */
+    private int _MaxDepth = 0;
+
+    /**
+     * The number of status updates dropped because the queue was full.
+     */
+    private long _DroppedCount = 0;
+
+    /**
+     * The number of unsent status updates overwritten by a newer one.
+     */
+    private long _CoalescedCount = 0;
+
+    /**
+     * The ordered queue of outgoing items of one session.
+     *
+     * @param capacity The number of status updates the queue takes.
+     * @param wakeUp   Wakes up the writer when new items arrive.
+     */
+    SessionOutbox(int capacity, Runnable wakeUp) {
+        _Capacity = capacity;
+        _WakeUp = wakeUp;
+    }
+
+    /**
+     * Adds a control message to the end of the queue and wakes up the writer if needed.
+     * Status updates arriving afterwards are queued behind it.
+     *
+     * @param item A Message or an encoded frame (byte array).
+     */
+    void Offer(Object item) {
+        boolean isWakeUpNeeded;
+        synchronized (this) {
+            _Items.addLast(item);
+            _OpenSlots.clear();
+            isWakeUpNeeded = Queued();
+        }
+        if (isWakeUpNeeded)
+            _WakeUp.run();
+    }
+
+    /**
+     * Adds a car status update. Overwrites the unsent update of the same car if there is one,
+     * otherwise queues a new slot at the end of the queue.
+     *
+     * @param sourceCar The car the update is about (e.g. the sender's player number).
+     * @param item      A MessageCarStatusUpdate or an encoded frame (byte array) of one.
+     * @return False if the update has been dropped as the queue is full.
+     */
+    boolean OfferLatest(int sourceCar, Object item) {
+        boolean isWakeUpNeeded;
+        synchronized (this) {
+            boolean isKeyframe = item instanceof byte[] && FrameCodec.IsKeyframe((byte[]) item);
+            StatusSlot slot = _OpenSlots.get(sourceCar);
+            if (slot != null) {
+                if (isKeyframe && slot._Keyframe != null && !slot._Keyframe._IsTaken) {
+                    //The new keyframe makes both the queued keyframe and the delta behind it obsolete.
+                    _Items.remove(slot);
+                    RecycleLocked(slot._Item);
+                    _OpenSlots.put(sourceCar, slot._Keyframe);
+                    slot = slot._Keyframe;
+                    _CoalescedCount++;
+                }
+                if (isKeyframe || !slot._IsKeyframe) {
+                    RecycleLocked(slot._Item);
+                    slot._Item = item;
+                    slot._IsKeyframe = isKeyframe;
+                    _CoalescedCount++;
+                    return true;
+                }
+            }
+
+            if (_Items.size() >= _Capacity) {
+                _DroppedCount++;
+                RecycleLocked(item);
+                return false;
+            }
+
+            StatusSlot keyframe = slot;
+            slot = new StatusSlot(sourceCar, item, isKeyframe);
+            slot._Keyframe = keyframe;
+            _Items.addLast(slot);
+            _OpenSlots.put(sourceCar, slot);
+            isWakeUpNeeded = Queued();
+        }
+        if (isWakeUpNeeded)
+            _WakeUp.run();
+        return true;
+    }
+
+    /**
+     * Updates the statistics after an item has been queued and tells if the writer needs to be woken up.
+     *
+     * @return True if the writer is not woken up yet.
+     */
+    private boolean Queued() {
+        if (_Items.size() > _MaxDepth)
+            _MaxDepth = _Items.size();
+
+        if (_IsWakeUpPending)
+            return false;
+        _IsWakeUpPending = true;
+        return true;
+    }
+
+    /**
+     * Takes the first item out of the queue. Only called by the writer.
+     *
+     * @return The first item (the latest update for a status slot), or null if the queue is empty.
+     */
+    synchronized Object Poll() {
+        Object item = _Items.pollFirst();
+        if (item instanceof StatusSlot) {
+            StatusSlot slot = (StatusSlot) item;
+            slot._IsTaken = true;
+            //Closes the slot: newer updates go to a new slot at the end of the queue.
+            if (_OpenSlots.get(slot._SourceCar) == slot)
+                _OpenSlots.remove(slot._SourceCar);
+            return slot._Item;
+        }
+        return item;
+    }
+
+    /**
+     * Returns an array to copy a relayed frame into before it is given to OfferLatest. Called by any thread.
+     *
+     * @param size The size of the frame (length prefix and payload).
+     * @return An array of at least the given size, with undefined content.
+     */
+    synchronized byte[] TakeFrameBuffer(int size) {
+        if (size > FRAME_BUFFER_SIZE)
+            return new byte[size];
+        byte[] frame = _FreeFrames.pollFirst();
+        return frame != null ? frame : new byte[FRAME_BUFFER_SIZE];
+    }
+
+    /**
+     * Gives back a taken item once the writer has written it out, so its array can be filled again.
+     * Only called by the writer, after the bytes have been copied (e.g. into the socket's buffered stream).
+     *
+     * @param item The item returned by Poll. Only frame arrays are kept, anything else is ignored.
+     */
+    synchronized void Recycle(Object item) {
+        RecycleLocked(item);
+    }
+
+    /**
+     * Keeps a frame array that is no longer queued for TakeFrameBuffer. Called with the lock held.
+     *
+     * @param item A queued item that has been written out or overwritten.
+     */
+    private void RecycleLocked(Object item) {
+        if (item instanceof byte[] && ((byte[]) item).length == FRAME_BUFFER_SIZE && _FreeFrames.size() < _Capacity)
+            _FreeFrames.addLast((byte[]) item);
+    }
+
+    /**
+     * Called by the writer before it starts draining the queue. Items added afterwards wake it up again.
+     */
+    synchronized void ClearWakeUp() {
+        _IsWakeUpPending = false;
+    }
+
+    /**
+     * Returns the number of queued items.
+     *
+     * @return The current depth of the queue.
+     */
+    synchronized int get_Depth() {
+        return _Items.size();
+    }
+
+    /**
+     * Returns the highest depth the queue has reached.
+     *
+     * @return The highest depth.
+     */
+    synchronized int get_MaxDepth() {
+        return _MaxDepth;
+    }
+
+    /**
+     * Returns the number of status updates dropped because the queue was full.
+     *
+     * @return The number of dropped updates.
+     */
+    synchronized long get_DroppedCount() {
+        return _DroppedCount;
+    }
+
+    /**
+     * Returns the number of unsent status updates that have been overwritten by a newer one.
+     *
+     * @return The number of coalesced updates.
+     */
+    synchronized long get_CoalescedCount() {
+        return _CoalescedCount;
+    }
+
+    /**
+     * The place of one car's latest status update within the queue.
+     */
+    private static class StatusSlot {
+        final int _SourceCar;
+        Object _Item;
+        boolean _IsKeyframe;
+        /** The queued keyframe slot this delta's slot was opened behind, or null. */
+        StatusSlot _Keyframe;
+        boolean _IsTaken;
+
+        StatusSlot(int sourceCar, Object item, boolean isKeyframe) {
+            _SourceCar = sourceCar;
+            _Item = item;
+            _IsKeyframe = isKeyframe;
+        }
+    }
+}
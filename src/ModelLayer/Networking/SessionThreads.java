@@ -0,0 +1,75 @@
+package ModelLayer.Networking;
+
+import ModelLayer.Enumerations.ServerExecutionMode;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates the threads that run the blocking sessions and the short tasks they start
+ * (signalling the match, relaying a message to the opponent).
+ * Virtual threads are looked up by reflection, so the application still compiles and runs on older Java versions.
+ */
+public final class SessionThreads {
+
+    /**
+     * The factory of virtual threads, or null if the running Java version has no virtual threads.
+     */
+    private static final ThreadFactory VIRTUAL_FACTORY = LookUpVirtualThreadFactory();
+
+    /**
+     * Static helper, not meant to be instantiated.
+     */
+    private SessionThreads() {
+    }
+
+    /**
+     * Tells if the running Java version can create virtual threads.
+     *
+     * @return True if virtual threads are available.
+     */
+    public static boolean IsVirtualThreadSupported() {
+        return VIRTUAL_FACTORY != null;
+    }
+
+    /**
+     * Returns a thread factory matching the execution mode.
+     * Falls back to platform threads if virtual threads are asked for but not available.
+     *
+     * @param mode The execution mode of the server.
+     * @return The factory to create the session threads with.
+     */
+    public static ThreadFactory CreateFactory(ServerExecutionMode mode) {
+        if (mode == ServerExecutionMode.VIRTUAL_THREAD && VIRTUAL_FACTORY != null)
+            return VIRTUAL_FACTORY;
+        return CreatePlatformFactory();
+    }
+
+    /**
+     * Returns a factory of ordinary (platform) threads, named "Session-N".
+     *
+     * @return The factory of platform threads.
+     */
+    public static ThreadFactory CreatePlatformFactory() {
+        final AtomicLong counter = new AtomicLong(0);
+        return task -> new Thread(task, "Session-" + Long.toString(counter.getAndIncrement()));
+    }
+
+    /**
+     * Looks up Thread.ofVirtual().name("VSession-", 0).factory() by reflection.
+     *
+     * @return The factory of virtual threads, or null if not available.
+     */
+    private static ThreadFactory LookUpVirtualThreadFactory() {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = ofVirtual.invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "VSession-", 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
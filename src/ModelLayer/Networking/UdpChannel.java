@@ -0,0 +1,204 @@
+package ModelLayer.Networking;
+
+import ControlLayer.SharedResources;
+import ModelLayer.Networking.Messages.Message;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * The client side of the UDP channel that carries the position updates of a match (see UdpRelay for the layout).
+ * Sending is done by the status writer, receiving by a listener thread; they do not share state.
+ * Received updates that are not newer than the last one are dropped, so an update delayed by the network
+ * never moves the opponent's car back.
+ */
+final class UdpChannel {
+
+    /**
+     * The channel, connected to the server's UDP port.
+     */
+    private final DatagramChannel _Channel;
+
+    /**
+     * Identifies this client's datagrams on the server.
+     */
+    private final int _Token;
+
+    /**
+     * Encodes the sent and decodes the received updates. Has its own snapshot state, separate from the TCP connection.
+     */
+    private final BinaryMessageCodec _Codec = new BinaryMessageCodec();
+
+    /**
+     * Reusable buffer of the datagrams to send.
+     */
+    private final ByteBuffer _SendBuffer = ByteBuffer.allocate(SharedResources.NET_UDP_MAX_PACKET_SIZE);
+
+    /**
+     * Reusable buffer of the received datagrams.
+     */
+    private final ByteBuffer _ReceiveBuffer = ByteBuffer.allocate(SharedResources.NET_UDP_MAX_PACKET_SIZE);
+
+    /**
+     * The sequence number of the last sent datagram.
+     */
+    private int _SendSequence = 0;
+
+    /**
+     * The sequence number of the last received update.
+     */
+    private int _LastReceivedSequence;
+
+    /**
+     * True once an update has been received.
+     */
+    private boolean _HasReceived = false;
+
+    /**
+     * True once the server has echoed a registration, so the channel is known to work both ways.
+     */
+    private volatile boolean _IsConfirmed = false;
+
+    /**
+     * The number of received updates dropped because they were not newer than the last one.
+     */
+    private volatile long _StaleCount = 0;
+
+    /**
+     * The client side of the UDP channel.
+     *
+     * @param channel The channel, connected to the server's UDP port.
+     * @param token   Identifies this client's datagrams on the server.
+     */
+    private UdpChannel(DatagramChannel channel, int token) {
+        _Channel = channel;
+        _Token = token;
+    }
+
+    /**
+     * Opens a channel towards the server's UDP port.
+     *
+     * @param server The address of the server.
+     * @param port   The UDP port of the server.
+     * @param token  Identifies this client's datagrams on the server.
+     * @return The open channel.
+     * @throws IOException If the channel could not be opened.
+     */
+    static UdpChannel Open(InetAddress server, int port, int token) throws IOException {
+        DatagramChannel channel = DatagramChannel.open();
+        try {
+            channel.connect(new InetSocketAddress(server, port));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new UdpChannel(channel, token);
+    }
+
+    /**
+     * Sends a datagram without payload, which registers this client's address on the server.
+     * The server echoes it back, which confirms the channel.
+     *
+     * @throws IOException If the datagram could not be sent.
+     */
+    void SendRegistration() throws IOException {
+        StartDatagram();
+        _SendBuffer.flip();
+        _Channel.write(_SendBuffer);
+    }
+
+    /**
+     * Sends a message as one datagram.
+     *
+     * @param msg The message to send (a position update).
+     * @throws IOException If the message could not be encoded or sent.
+     */
+    void Send(Message msg) throws IOException {
+        StartDatagram();
+        try {
+            _Codec.Encode(msg, _SendBuffer);
+        } catch (BufferOverflowException e) {
+            throw new IOException("Message is too large for a datagram.");
+        }
+        _SendBuffer.flip();
+        _Channel.write(_SendBuffer);
+    }
+
+    /**
+     * Writes the token and the next sequence number into the send buffer.
+     */
+    private void StartDatagram() {
+        _SendBuffer.clear();
+        _SendBuffer.putInt(_Token);
+        _SendBuffer.putInt(++_SendSequence);
+    }
+
+    /**
+     * Waits for the next datagram and decodes it.
+     *
+     * @return The received message, or null if the datagram carries no usable update (e.g. it is old, or the
+     * echo of a registration).
+     * @throws IOException If the channel is closed or the datagram is corrupt.
+     */
+    Message Receive() throws IOException {
+        _ReceiveBuffer.clear();
+        _Channel.read(_ReceiveBuffer);
+        _ReceiveBuffer.flip();
+        if (_ReceiveBuffer.remaining() < UdpRelay.HEADER_SIZE)
+            return null;
+
+        if (_ReceiveBuffer.remaining() == UdpRelay.HEADER_SIZE) {
+            _IsConfirmed = true;
+            return null;
+        }
+
+        //Compared by their difference, so the numbers may wrap around.
+        int sequence = _ReceiveBuffer.getInt(4);
+        if (_HasReceived && sequence - _LastReceivedSequence <= 0) {
+            _StaleCount++;
+            return null;
+        }
+        _HasReceived = true;
+        _LastReceivedSequence = sequence;
+
+        _ReceiveBuffer.position(UdpRelay.HEADER_SIZE);
+        try {
+            return _Codec.Decode(_ReceiveBuffer);
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt datagram received: " + e.toString());
+        }
+    }
+
+    /**
+     * Tells if the server has echoed a registration, so updates can be sent on this channel.
+     *
+     * @return True if the channel is confirmed.
+     */
+    boolean is_Confirmed() {
+        return _IsConfirmed;
+    }
+
+    /**
+     * Returns the number of received updates dropped because they were not newer than the last one.
+     *
+     * @return The number of stale updates.
+     */
+    long get_StaleCount() {
+        return _StaleCount;
+    }
+
+    /**
+     * Closes the channel. A thread waiting in Receive gets an exception.
+     */
+    void Close() {
+        try {
+            _Channel.close();
+        } catch (IOException e) {
+            //Nothing to do, the channel is not used anymore.
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package ModelLayer.Networking;
+
+import ControlLayer.SharedResources;
+import ModelLayer.Networking.Messages.Message;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The server side of the UDP channel that carries the position updates of a match.
+ * Over TCP, one lost segment holds back every later update until it is resent, although only the newest
+ * position matters. Datagrams are not held back: a lost one is simply replaced by the next one.
+ * <pre>
+ * datagram    token (4), sequence number (4), payload of a binary frame (the message without the length prefix)
+ * </pre>
+ * Every client of a match gets a random token (see MessageUdpChannel) that identifies its datagrams and its
+ * address, which is learnt from the datagrams themselves. A datagram without payload only registers the address
+ * and is echoed back, so the client knows that the channel works both ways.
+ * Updates are relayed to the opponent unchanged (the token replaced with 0) through the match. Datagrams that
+ * are not newer than the last one from the same client are dropped. Until the opponent has a working UDP channel
+ * and a keyframe has come to start it with, the update is decoded and sent over its TCP connection instead.
+ * One thread receives and relays all the datagrams.
+ */
+class UdpRelay {
+
+    /**
+     * The size of the token and the sequence number in front of every datagram.
+     */
+    static final int HEADER_SIZE = 8;
+
+    /**
+     * The channel bound to the server's port.
+     */
+    private final DatagramChannel _Channel;
+
+    /**
+     * The port the channel is bound to.
+     */
+    private final int _Port;
+
+    /**
+     * The server, for logging.
+     */
+    private final Server _Server;
+
+    /**
+     * The registered clients by their token.
+     */
+    private final ConcurrentHashMap<Integer, Endpoint> _Endpoints = new ConcurrentHashMap<>();
+
+    /**
+     * Generates the tokens. They must not be guessable, as they identify the sender of a datagram.
+     */
+    private final SecureRandom _Random = new SecureRandom();
+
+    /**
+     * The thread receiving the datagrams.
+     */
+    private Thread _ReceiverThread;
+
+    /**
+     * True until the relay is stopped.
+     */
+    private volatile boolean _IsRunning = false;
+
+    /**
+     * The number of datagrams relayed to the opponent.
+     */
+    private volatile long _RelayedCount = 0;
+
+    /**
+     * The number of datagrams dropped because they were not newer than the last one of the same client.
+     */
+    private volatile long _StaleCount = 0;
+
+    /**
+     * The number of datagrams dropped because of an unknown token.
+     */
+    private volatile long _UnknownCount = 0;
+
+    /**
+     * Receives the datagrams and relays them, until the relay is stopped. Runs on the receiver thread.
+     */
+    private void ReceiveDatagrams() {
+        ByteBuffer buffer = ByteBuffer.allocate(SharedResources.NET_UDP_MAX_PACKET_SIZE);
+        while (_IsRunning) {
+            try {
+                buffer.clear();
+                SocketAddress sender = _Channel.receive(buffer);
+                buffer.flip();
+                HandleDatagram(buffer, sender);
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                //A single bad datagram or an unreachable client must not stop the relay.
+                if (_IsRunning)
+                    _Server.EventLoopError("UDP relay error: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * The server side of the UDP channel.
+     *
+     * @param channel The channel bound to the server's port.
+     * @param port    The port the channel is bound to.
+     * @param server  The server, for logging.
+     */
+    private UdpRelay(DatagramChannel channel, int port, Server server) {
+        _Channel = channel;
+        _Port = port;
+        _Server = server;
+    }
+
+    /**
+     * Binds a UDP channel to a port and starts relaying.
+     *
+     * @param port   The port to bind to (the same number as the TCP port of the server).
+     * @param server The server, for logging.
+     * @return The running relay.
+     * @throws IOException If the port cannot be bound.
+     */
+    static UdpRelay Start(int port, Server server) throws IOException {
+        DatagramChannel channel = DatagramChannel.open();
+        try {
+            channel.bind(new InetSocketAddress(port));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        UdpRelay relay = new UdpRelay(channel, port, server);
+        relay._IsRunning = true;
+        relay._ReceiverThread = new Thread(relay::ReceiveDatagrams, "UdpRelay");
+        relay._ReceiverThread.setDaemon(true);
+        relay._ReceiverThread.start();
+        return relay;
+    }
+
+    /**
+     * Stops relaying and closes the channel.
+     */
+    void Stop() {
+        _IsRunning = false;
+        _Endpoints.clear();
+        try {
+            _Channel.close();
+        } catch (IOException e) {
+            _Server.EventLoopError("Could not close the UDP channel: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Registers a client of a match and gives it a token.
+     *
+     * @param match        The match of the client.
+     * @param playerNumber The player number of the client in the match.
+     * @return The registration of the client.
+     */
+    Endpoint Register(ActiveMatch match, int playerNumber) {
+        while (true) {
+            int token = _Random.nextInt();
+            if (token == 0)
+                continue;
+            Endpoint endpoint = new Endpoint(token, match, playerNumber);
+            if (_Endpoints.putIfAbsent(token, endpoint) == null)
+                return endpoint;
+        }
+    }
+
+    /**
+     * Removes the registration of a client. Its datagrams are dropped afterwards.
+     *
+     * @param endpoint The registration to remove. Ignored if null.
+     */
+    void Unregister(Endpoint endpoint) {
+        if (endpoint != null)
+            _Endpoints.remove(endpoint._Token, endpoint);
+    }
+
+    /**
+     * Checks a received datagram and passes it to the match of its sender.
+     * Called on the receiver thread.
+     *
+     * @param datagram The received datagram, flipped.
+     * @param sender   The address it came from.
+     * @throws IOException If the echo of a registration could not be sent.
+     */
+    private void HandleDatagram(ByteBuffer datagram, SocketAddress sender) throws IOException {
+        if (datagram.remaining() < HEADER_SIZE)
+            return;
+
+        Endpoint endpoint = _Endpoints.get(datagram.getInt(0));
+        if (endpoint == null) {
+            _UnknownCount++;
+            return;
+        }
+
+        //Compared by their difference, so the numbers may wrap around.
+        int sequence = datagram.getInt(4);
+        if (endpoint._HasSequence && sequence - endpoint._LastSequence <= 0) {
+            _StaleCount++;
+            return;
+        }
+        endpoint._HasSequence = true;
+        endpoint._LastSequence = sequence;
+        endpoint._Address = sender;
+
+        if (datagram.remaining() == HEADER_SIZE) {
+            datagram.putInt(0, 0);
+            _Channel.send(datagram, sender);
+            return;
+        }
+
+        endpoint._Match.RelayDatagram(endpoint, datagram);
+    }
+
+    /**
+     * Sends a received datagram to another client unchanged, apart from the token. Called on the receiver thread.
+     *
+     * @param receiver The client to send to. Must have an address (see Endpoint.CanForward).
+     * @param datagram The received datagram.
+     * @throws IOException If the datagram could not be sent.
+     */
+    void Forward(Endpoint receiver, ByteBuffer datagram) throws IOException {
+        datagram.putInt(0, 0);
+        datagram.position(0);
+        _Channel.send(datagram, receiver._Address);
+        _RelayedCount++;
+    }
+
+    /**
+     * Returns the port the channel is bound to.
+     *
+     * @return The UDP port.
+     */
+    int get_Port() {
+        return _Port;
+    }
+
+    /**
+     * Returns the number of datagrams relayed to the opponent.
+     *
+     * @return The number of relayed datagrams.
+     */
+    long get_RelayedCount() {
+        return _RelayedCount;
+    }
+
+    /**
+     * Returns the number of datagrams dropped because they were not newer than the last one of the same client.
+     *
+     * @return The number of stale datagrams.
+     */
+    long get_StaleCount() {
+        return _StaleCount;
+    }
+
+    /**
+     * Returns the number of datagrams dropped because of an unknown token.
+     *
+     * @return The number of datagrams from unknown senders.
+     */
+    long get_UnknownCount() {
+        return _UnknownCount;
+    }
+
+    /**
+     * The registration of one client of a match.
+     */
+    static final class Endpoint {
+
+        /**
+         * Identifies the client's datagrams.
+         */
+        private final int _Token;
+
+        /**
+         * The match of the client.
+         */
+        private final ActiveMatch _Match;
+
+        /**
+         * The player number of the client in the match.
+         */
+        private final int _PlayerNumber;
+
+        /**
+         * Decodes the client's updates if they have to be sent over TCP. Only used by the receiver thread.
+         */
+        private final BinaryMessageCodec _Decoder = new BinaryMessageCodec();
+
+        /**
+         * The address of the client's last datagram. Null until the first one arrives.
+         */
+        private volatile SocketAddress _Address;
+
+        /**
+         * The sequence number of the client's last datagram. Only used by the receiver thread.
+         */
+        private int _LastSequence;
+
+        /**
+         * True once a datagram has arrived from the client. Only used by the receiver thread.
+         */
+        private boolean _HasSequence = false;
+
+        /**
+         * True once the opponent's updates are forwarded to the client as datagrams. Only used by the receiver thread.
+         */
+        private boolean _IsForwardedTo = false;
+
+        /**
+         * The registration of one client of a match.
+         *
+         * @param token        Identifies the client's datagrams.
+         * @param match        The match of the client.
+         * @param playerNumber The player number of the client in the match.
+         */
+        private Endpoint(int token, ActiveMatch match, int playerNumber) {
+            _Token = token;
+            _Match = match;
+            _PlayerNumber = playerNumber;
+        }
+
+        /**
+         * Returns the token that identifies the client's datagrams.
+         *
+         * @return The token.
+         */
+        int get_Token() {
+            return _Token;
+        }
+
+        /**
+         * Returns the player number of the client in the match.
+         *
+         * @return Either 1 or 2.
+         */
+        int get_PlayerNumber() {
+            return _PlayerNumber;
+        }
+
+        /**
+         * Tells if a datagram of the opponent can be forwarded to the client. Called on the receiver thread.
+         * The first forwarded one has to be a keyframe: the updates before went over TCP, so the decoder of the
+         * client's UDP channel has no keyframe a delta could refer to. Once started, forwarding goes on.
+         *
+         * @param datagram A datagram of the opponent.
+         * @return True if the datagram can be forwarded, false if it has to go over TCP.
+         */
+        boolean CanForward(ByteBuffer datagram) {
+            if (!_IsForwardedTo && _Address != null && CarSnapshotCodec.IsKeyframe(datagram, HEADER_SIZE))
+                _IsForwardedTo = true;
+            return _IsForwardedTo;
+        }
+
+        /**
+         * Decodes the update carried by a datagram of this client. Called on the receiver thread.
+         *
+         * @param datagram The received datagram.
+         * @return The decoded message, or null if it cannot be used (e.g. a delta whose keyframe was lost, or corrupt).
+         */
+        Message Decode(ByteBuffer datagram) {
+            datagram.position(HEADER_SIZE);
+            try {
+                return _Decoder.Decode(datagram);
+            } catch (IOException | RuntimeException e) {
+                return null;
+            }
+        }
+    }
+}
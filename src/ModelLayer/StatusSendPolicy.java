@@ -0,0 +1,111 @@
+package ModelLayer;
+
+import ControlLayer.SharedResources;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides which status updates of the local car are worth sending to the opponent.
+ * - A change caused by the player (turning, starting or stopping to accelerate, starting or stopping to move, an impact)
+ *   is sent straight away. <br>
+ * - A moving car is sent at a steady interval, which grows with the jitter of the link (a jittery link is usually a
+ *   congested one, and the opponent's JitterBuffer smooths the sparser updates anyway). <br>
+ * - A car standing still only sends a heartbeat every SharedResources.CLN_STATUS_HEARTBEAT_INTERVAL milliseconds. <br>
+ * Two updates are never sent closer than SharedResources.CLN_STATUS_MIN_INTERVAL to each other, the opponent's
+ * JitterBuffer relies on it to spread out a bunch of late updates.
+ * The intervals are measured on the frames' wall time, which wanders by a few milliseconds around the frame rate
+ * (the game timer schedules a frame from the previous one's due time), so they are met with half a frame of slack.
+ * Only used by the game loop's thread.
+ */
+final class StatusSendPolicy {
+
+    /**
+     * An interval counts as elapsed this much earlier. A frame arriving a little less than a frame after
+     * a late one (or after an update sent between two frames) is still sent on time.
+     */
+    private static final long SLACK_NANOS = TimeUnit.MILLISECONDS.toNanos(SharedResources.FRAMERATE) / 2;
+
+    /**
+     * True once an update has been sent in the current game.
+     */
+    private boolean _HasSent = false;
+
+    /**
+     * The time the last update was sent (System.nanoTime).
+     */
+    private long _LastSentAt;
+
+    /**
+     * The status in the last update sent.
+     */
+    private int _LastX;
+    private int _LastY;
+    private float _LastAngle;
+    private int _LastVirtualSpeed;
+    private boolean _LastIsAccelerating;
+    private boolean _LastImpactSoundToPlay;
+
+    /**
+     * The interval a moving car is sent at, in nanoseconds.
+     */
+    private long _SteadyIntervalNanos = TimeUnit.MILLISECONDS.toNanos(SharedResources.FRAMERATE);
+
+    /**
+     * Forgets the last update sent, e.g. when a new game starts. The next update is sent.
+     */
+    void Reset() {
+        _HasSent = false;
+        _SteadyIntervalNanos = TimeUnit.MILLISECONDS.toNanos(SharedResources.FRAMERATE);
+    }
+
+    /**
+     * Sets the interval a moving car is sent at from the jitter of the link: one frame, plus twice the jitter,
+     * at most SharedResources.CLN_STATUS_MAX_INTERVAL milliseconds.
+     *
+     * @param jitterNanos The mean deviation of the round trip towards the server, in nanoseconds.
+     */
+    void AdaptToLink(long jitterNanos) {
+        long interval = TimeUnit.MILLISECONDS.toNanos(SharedResources.FRAMERATE) + 2 * Math.max(0, jitterNanos);
+        _SteadyIntervalNanos = Math.min(interval, TimeUnit.MILLISECONDS.toNanos(SharedResources.CLN_STATUS_MAX_INTERVAL));
+    }
+
+    /**
+     * Decides if a status of the car has to be sent. If so, the status is remembered as the last one sent.
+     *
+     * @param x                  The location of the car on the X axis.
+     * @param y                  The location of the car on the Y axis.
+     * @param angle              The angle of the car.
+     * @param virtualSpeed       The virtual speed of the car.
+     * @param isAccelerating     True if the car is accelerating.
+     * @param impactSoundToPlay  True if the car has just hit something.
+     * @param now                The current time (System.nanoTime).
+     * @return True if the status has to be sent.
+     */
+    boolean ShouldSend(int x, int y, float angle, int virtualSpeed, boolean isAccelerating, boolean impactSoundToPlay, long now) {
+        if (_HasSent) {
+            long sinceLastSent = now - _LastSentAt;
+            if (sinceLastSent < TimeUnit.MILLISECONDS.toNanos(SharedResources.CLN_STATUS_MIN_INTERVAL))
+                return false;
+
+            boolean isInputChange = angle != _LastAngle || isAccelerating != _LastIsAccelerating
+                    || impactSoundToPlay != _LastImpactSoundToPlay || (virtualSpeed == 0) != (_LastVirtualSpeed == 0);
+            boolean isMoved = x != _LastX || y != _LastY || virtualSpeed != _LastVirtualSpeed;
+
+            if (!isInputChange) {
+                long interval = isMoved ? _SteadyIntervalNanos : TimeUnit.MILLISECONDS.toNanos(SharedResources.CLN_STATUS_HEARTBEAT_INTERVAL);
+                if (sinceLastSent < interval - SLACK_NANOS)
+                    return false;
+            }
+        }
+
+        _HasSent = true;
+        _LastSentAt = now;
+        _LastX = x;
+        _LastY = y;
+        _LastAngle = angle;
+        _LastVirtualSpeed = virtualSpeed;
+        _LastIsAccelerating = isAccelerating;
+        _LastImpactSoundToPlay = impactSoundToPlay;
+        return true;
+    }
+}
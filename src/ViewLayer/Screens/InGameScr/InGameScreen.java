@@ -29,6 +29,14 @@ public class InGameScreen extends JPanel implements ActionListener, KeyListener
      * A background image for the map.
      */
     private JLabel _MapBackGroundTexture = null;
+    /**
+     * Receives the pressed keys instead of the local car if set, e.g. the replay controls.
+     */
+    private KeyListener _KeyHandler = null;
+    /**
+     * Displays the position and the controls of a replay. Only created while watching a replay.
+     */
+    private JLabel _ReplayStatusLabel = null;
 
     /**
      * Displays the cars, Heads Up Displays and the map during the game.
@@ -166,11 +174,17 @@ public class InGameScreen extends JPanel implements ActionListener, KeyListener
 
     /**
      * Handles when a key gets pressed. If it is one of the valid control keys, it calls the local CarInGameDisplayLabel object.
+     * If a key handler is set, the key is passed to it instead.
      * @param e The keyEvent
      */
     @Override
     public void keyPressed(KeyEvent e)
     {
+        if (_KeyHandler != null) {
+            _KeyHandler.keyPressed(e);
+            return;
+        }
+
         if (Arrays.asList(SharedResources.GCS_ControlKeys_Player_1).contains(e.getKeyCode())) {
             _CarLabels[CurrentGameSession.get_RealPlayerIndex()].ControlKeyPressed(e.getKeyCode());
         }
@@ -178,11 +192,17 @@ public class InGameScreen extends JPanel implements ActionListener, KeyListener
 
     /**
      * Handles when a key gets released. If it is one of the valid control keys, it calls the local CarInGameDisplayLabel object.
+     * If a key handler is set, the key is passed to it instead.
      * @param e The keyEvent
      */
     @Override
     public void keyReleased(KeyEvent e)
     {
+        if (_KeyHandler != null) {
+            _KeyHandler.keyReleased(e);
+            return;
+        }
+
         if (Arrays.asList(SharedResources.GCS_ControlKeys_Player_1).contains(e.getKeyCode())) {
             _CarLabels[CurrentGameSession.get_RealPlayerIndex()].ControlKeyReleased(e.getKeyCode());
         }
@@ -201,4 +221,34 @@ public class InGameScreen extends JPanel implements ActionListener, KeyListener
         repaint();
     }
 
+    /**
+     * Sets a handler that receives the pressed and released keys instead of the local car.
+     * @param keyHandler The handler, or null to control the local car again.
+     */
+    public void set_KeyHandler(KeyListener keyHandler)
+    {
+        _KeyHandler = keyHandler;
+    }
+
+    /**
+     * Displays the status of a replay on the top of the screen, over the map.
+     * @param status The text to display. Can be HTML.
+     */
+    public void ShowReplayStatus(String status)
+    {
+        if (_ReplayStatusLabel == null)
+        {
+            _ReplayStatusLabel = new JLabel();
+            _ReplayStatusLabel.setFont(SharedResources.RPL_Status_Font);
+            _ReplayStatusLabel.setOpaque(true);
+            _ReplayStatusLabel.setBackground(SharedResources.RPL_Status_Bg_Color);
+            _ReplayStatusLabel.setHorizontalAlignment(SwingConstants.CENTER);
+            _ReplayStatusLabel.setBounds(SharedResources.RPL_Status_X, SharedResources.RPL_Status_Y, SharedResources.RPL_Status_Width, SharedResources.RPL_Status_Height);
+            this.add(_ReplayStatusLabel, 0); //On the top of the map and the cars
+        }
+
+        _ReplayStatusLabel.setText(status);
+        _ReplayStatusLabel.setVisible(true);
+    }
+
 }
@@ -1,15 +1,29 @@
 package ViewLayer.Screens.ServerScr;
 
 import ControlLayer.SharedResources;
+import ModelLayer.Networking.LogSink;
 
 import javax.swing.*;
+import javax.swing.text.BadLocationException;
 import java.awt.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * An uneditable (for the user) textarea which displays system/networking messages, logs.
  * Used on the server screen and the launch screen.
  */
-public class LogTerminal extends JTextArea {
+public class LogTerminal extends JTextArea implements LogSink {
+
+    /**
+     * The lines logged from other threads that have not been displayed yet.
+     */
+    private final ConcurrentLinkedQueue<String> _PendingLines = new ConcurrentLinkedQueue<>();
+
+    /**
+     * True while the pending lines are scheduled to be displayed on the Swing thread.
+     */
+    private final AtomicBoolean _IsDisplayScheduled = new AtomicBoolean(false);
 
     /**
      * An uneditable (for the user) textarea which displays system/networking messages, logs.
@@ -27,19 +41,50 @@ public class LogTerminal extends JTextArea {
 
 
     /**
-     * Adds a text to the terminal output.
+     * Adds a text to the terminal output. Can be called from any thread.
+     * The lines are collected and added on the Swing thread in batches, so a busy server does not flood it.
+     * Only the last SharedResources.SRV_LOG_UI_MAX_LINES lines are kept.
      *
      * @param msg The message to be added.
      */
+    @Override
     public void Log(String msg) {
-        append(msg);
-        append("\n");
+        _PendingLines.add(msg);
+        if (_IsDisplayScheduled.compareAndSet(false, true))
+            SwingUtilities.invokeLater(this::DisplayPendingLines);
+    }
+
+    /**
+     * Adds the pending lines to the text and removes the oldest lines above the limit. Runs on the Swing thread.
+     */
+    private void DisplayPendingLines() {
+        //Cleared first: lines added from now on schedule a new batch.
+        _IsDisplayScheduled.set(false);
+
+        StringBuilder text = new StringBuilder();
+        String line;
+        while ((line = _PendingLines.poll()) != null) {
+            text.append(line).append('\n');
+        }
+        if (text.length() == 0)
+            return;
+        append(text.toString());
+
+        int excessLines = getLineCount() - 1 - SharedResources.SRV_LOG_UI_MAX_LINES;
+        if (excessLines > 0) {
+            try {
+                replaceRange("", 0, getLineEndOffset(excessLines - 1));
+            } catch (BadLocationException e) {
+                setText("");
+            }
+        }
     }
 
     /**
      * Deletes the current content of the terminal.
      */
     public void Reset() {
+        _PendingLines.clear();
         setText("");
     }
 }
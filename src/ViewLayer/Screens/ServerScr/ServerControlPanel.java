@@ -1,6 +1,7 @@
 package ViewLayer.Screens.ServerScr;
 
 import ControlLayer.SharedResources;
+import ModelLayer.Enumerations.ServerExecutionMode;
 
 import javax.swing.*;
 import java.awt.*;
@@ -21,6 +22,11 @@ class ServerControlPanel extends JPanel {
      */
     private final JComboBox<Integer> _Ports = new JComboBox<>(SharedResources.SCP_VALID_PORT_NUMBERS);
 
+    /**
+     * Execution mode selection box. Tells how the server runs the client sessions.
+     */
+    private final JComboBox<ServerExecutionMode> _ExecutionModes = new JComboBox<>(ServerExecutionMode.values());
+
     /**
      * Start or stop server button
      */
@@ -33,12 +39,12 @@ class ServerControlPanel extends JPanel {
     public ServerControlPanel() {
         setLayout(null);
         setBackground(new Color(255, 255, 255));
-        setSize(450, 80);
+        setSize(560, 80);
 
         //Main title settings
         JLabel _TitleLabel = new JLabel(SharedResources.SCP_SERVER_LAUNCHER);
         _TitleLabel.setLocation(0, 5);
-        _TitleLabel.setSize(450, 30);
+        _TitleLabel.setSize(560, 30);
         _TitleLabel.setFont(SharedResources.SRS_FontFaceLarge);
         _TitleLabel.setHorizontalAlignment(SwingConstants.CENTER);
 
@@ -66,8 +72,20 @@ class ServerControlPanel extends JPanel {
         _Ports.setSize(80, 20);
         _Ports.setFont(SharedResources.SRS_FontFaceMedium);
 
+        //Execution mode title label settings
+        JLabel _ExecutionModeTitle = new JLabel(SharedResources.SCP_EXECUTION_MODE_TEXT);
+        _ExecutionModeTitle.setLocation(260, 35);
+        _ExecutionModeTitle.setSize(130, 20);
+        _ExecutionModeTitle.setFont(SharedResources.SRS_FontFaceMedium);
+
+        //Execution mode combobox settings
+        _ExecutionModes.setLocation(260, 55);
+        _ExecutionModes.setSize(130, 20);
+        _ExecutionModes.setFont(SharedResources.SRS_FontFaceMedium);
+        _ExecutionModes.setSelectedItem(SharedResources.SRV_DEFAULT_EXECUTION_MODE);
+
         //Start or stop button settings
-        _StartStopButton.setLocation(275, 55);
+        _StartStopButton.setLocation(400, 55);
         _StartStopButton.setSize(150, 20);
         _StartStopButton.setFont(SharedResources.SRS_FontFaceMedium);
         _StartStopButton.setBackground(new Color(255, 255, 255));
@@ -78,6 +96,8 @@ class ServerControlPanel extends JPanel {
         add(_ServerIPTile);
         add(_Ports);
         add(_PortsTitle);
+        add(_ExecutionModes);
+        add(_ExecutionModeTitle);
         add(_StartStopButton);
 
         setLocation(0, 0);
@@ -104,6 +124,15 @@ class ServerControlPanel extends JPanel {
         return (int) _Ports.getSelectedItem();
     }
 
+    /**
+     * Returns the currently selected execution mode.
+     *
+     * @return The currently selected execution mode.
+     */
+    public ServerExecutionMode GetSelectedExecutionMode() {
+        return (ServerExecutionMode) _ExecutionModes.getSelectedItem();
+    }
+
     /**
      * Changes the IP or host address within the user read-only textarea.
      *
@@ -2,6 +2,7 @@ package ViewLayer.Screens.ServerScr;
 
 import ControlLayer.ServerEngine;
 import ControlLayer.SharedResources;
+import ModelLayer.Enumerations.ServerExecutionMode;
 
 import javax.swing.*;
 import java.awt.*;
@@ -59,7 +60,7 @@ public class ServerScreen extends JPanel implements ActionListener {
 
         //Add Control panel
         add(_ControlPanel);
-        _ControlPanel.setLocation(200, 10);
+        _ControlPanel.setLocation(145, 10);
         _ControlPanel.setVisible(true);
         _StartServerButton = _ControlPanel.AddStartButtonEventListener(this);
 
@@ -113,6 +114,14 @@ public class ServerScreen extends JPanel implements ActionListener {
         return _ControlPanel.GetSelectedPort();
     }
 
+    /**
+     * Returns the user selected execution mode from the mode combobox.
+     * @return The way the server should run the client sessions.
+     */
+    public ServerExecutionMode GetSelectedExecutionMode() {
+        return _ControlPanel.GetSelectedExecutionMode();
+    }
+
     /**
      * Clears the texts from the terminals' screens.
      */
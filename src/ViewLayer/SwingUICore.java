@@ -10,11 +10,13 @@ import ViewLayer.Screens.MainMenuScr.MainMenuScreen;
 import ViewLayer.Screens.ServerScr.ServerScreen;
 
 import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.File;
 import java.util.ArrayList;
 
 /**
@@ -57,6 +59,10 @@ public class SwingUICore extends JFrame implements ActionListener {
      * New game button in the menu bar
      */
     private JMenuItem _NewGameMenuButton;
+    /**
+     * Watch a replay button in the menu bar
+     */
+    private JMenuItem _WatchReplayMenuButton;
     /**
      * Help--About button in menu bar
      */
@@ -158,6 +164,8 @@ public class SwingUICore extends JFrame implements ActionListener {
         //Submenus for new game
         _NewGameMenuButton = new JMenuItem(SharedResources.MB_StartNewGameMenuString);
         GameMenu.add(_NewGameMenuButton);
+        _WatchReplayMenuButton = new JMenuItem(SharedResources.MB_WatchReplayMenuString);
+        GameMenu.add(_WatchReplayMenuButton);
 
         //Submenus for help
         _HelpAboutMenuButton = new JMenuItem(SharedResources.MB_HelpAboutMenuString);
@@ -180,6 +188,7 @@ public class SwingUICore extends JFrame implements ActionListener {
 
         //Add event listening to this JFrame
         _NewGameMenuButton.addActionListener(this);
+        _WatchReplayMenuButton.addActionListener(this);
         _HelpAboutMenuButton.addActionListener(this);
         _HelpControlMenuButton.addActionListener(this);
         _HelpCollisionMenuButton.addActionListener(this);
@@ -303,6 +312,15 @@ public class SwingUICore extends JFrame implements ActionListener {
     }
 
 
+    /**
+     * Displays why a replay cannot be played.
+     *
+     * @param errorMsg The description of the error.
+     */
+    public void DisplayReplayErrorPopup(String errorMsg) {
+        JOptionPane.showMessageDialog(this, SharedResources.RPL_OpenError_Message + errorMsg, SharedResources.RPL_OpenError_Title, JOptionPane.PLAIN_MESSAGE);
+    }
+
     /**
      * Handle events when user clicks on the buttons on the menu bar.
      *
@@ -324,6 +342,16 @@ public class SwingUICore extends JFrame implements ActionListener {
             return;
         }
 
+        //When the "Watch a replay" button pressed
+        if (e.getSource() == _WatchReplayMenuButton)
+        {
+            JFileChooser chooser = new JFileChooser(new File(SharedResources.SRV_REPLAY_DIRECTORY));
+            chooser.setFileFilter(new FileNameExtensionFilter(SharedResources.RPL_FileDescription, SharedResources.RPL_FileExtension));
+            if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION)
+                SharedResources.MainController.UserInitiatesReplay(chooser.getSelectedFile());
+            return;
+        }
+
         //When the Help->About button pressed
         if(e.getSource() == _HelpAboutMenuButton)
         {